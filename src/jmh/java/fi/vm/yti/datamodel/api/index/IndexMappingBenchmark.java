@@ -0,0 +1,58 @@
+package fi.vm.yti.datamodel.api.index;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.topbraid.shacl.vocabulary.SH;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.vm.yti.datamodel.api.index.model.IndexClassDTO;
+import fi.vm.yti.datamodel.api.service.BenchmarkFixtures;
+
+/**
+ * Mapping of class resources to search index documents, including serialization of the documents as done by
+ * the bulk indexer. Compare with FramingBenchmark.frameClasses for the framing based mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexMappingBenchmark {
+
+    @Param({ "small", "medium", "large" })
+    public String profile;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Model classes;
+
+    @Setup
+    public void setup() {
+        classes = BenchmarkFixtures.classes(BenchmarkFixtures.load(profile));
+    }
+
+    @Benchmark
+    public void mapClasses(Blackhole blackhole) {
+        List<Resource> shapes = classes.listSubjectsWithProperty(RDF.type, SH.NodeShape).toList();
+        for (Resource shape : shapes) {
+            blackhole.consume(objectMapper.valueToTree(new IndexClassDTO(shape)));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.util.ResourceUtils;
+import org.apache.jena.vocabulary.DCTerms;
+import org.topbraid.shacl.vocabulary.SH;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * Fixture profiles for the benchmarks. The small profile is fixtures/profile.trig as such. The medium and large
+ * profiles replicate its class graphs with new IRIs until the profile has the given number of classes, so that
+ * the repository does not need to carry multi-megabyte fixture files.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String MODEL = "http://uri.suomi.fi/datamodel/ns/bench";
+    public static final String HAS_PART_GRAPH = MODEL + "#HasPartGraph";
+
+    private static final Map<String, Integer> PROFILE_CLASSES = Map.of(
+        "small", 0,
+        "medium", 500,
+        "large", 5000);
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @param profile small, medium or large
+     * @return dataset in the layout of the core dataset: model graph, HasPartGraph and one graph per class
+     */
+    public static Dataset load(String profile) {
+        Integer classes = PROFILE_CLASSES.get(profile);
+        if (classes == null) {
+            throw new IllegalArgumentException("Unknown profile: " + profile);
+        }
+
+        Dataset template = DatasetFactory.create();
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/fixtures/profile.trig")) {
+            RDFDataMgr.read(template, in, Lang.TRIG);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        List<String> classGraphs = template.getNamedModel(HAS_PART_GRAPH)
+            .listObjectsOfProperty(DCTerms.hasPart)
+            .mapWith(node -> node.asResource().getURI())
+            .toList();
+
+        if (classes <= classGraphs.size()) {
+            return template;
+        }
+
+        Dataset dataset = DatasetFactory.create();
+        dataset.addNamedModel(MODEL, template.getNamedModel(MODEL));
+        Model hasPartGraph = ModelFactory.createDefaultModel();
+        Resource model = hasPartGraph.createResource(MODEL);
+
+        for (int i = 0; i < classes; i++) {
+            String templateGraph = classGraphs.get(i % classGraphs.size());
+            Model classGraph = ModelFactory.createDefaultModel().add(template.getNamedModel(templateGraph));
+            String graph = templateGraph;
+
+            // Original class graphs are kept as such so that sh:node references stay valid
+            if (i >= classGraphs.size()) {
+                graph = templateGraph + (i / classGraphs.size());
+                ResourceUtils.renameResource(classGraph.getResource(templateGraph), graph);
+                List<Resource> propertyShapes = classGraph.listObjectsOfProperty(SH.property).mapWith(RDFNode::asResource).toList();
+                for (Resource propertyShape : propertyShapes) {
+                    String id = graph + " " + propertyShape.getURI();
+                    ResourceUtils.renameResource(propertyShape, "urn:uuid:" + UUID.nameUUIDFromBytes(id.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+
+            dataset.addNamedModel(graph, classGraph);
+            model.addProperty(DCTerms.hasPart, hasPartGraph.createResource(graph));
+        }
+
+        dataset.addNamedModel(HAS_PART_GRAPH, hasPartGraph);
+        return dataset;
+    }
+
+    /**
+     * @return union of the class graphs of the dataset, i.e. what the class index and export queries construct
+     */
+    public static Model classes(Dataset dataset) {
+        Model classes = ModelFactory.createDefaultModel();
+        Iterator<String> names = dataset.listNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!name.equals(MODEL) && !name.equals(HAS_PART_GRAPH)) {
+                classes.add(dataset.getNamedModel(name));
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return model graph together with all of its parts, i.e. the contents of the export graph
+     */
+    public static Model exportGraph(Dataset dataset) {
+        Model export = classes(dataset);
+        export.add(dataset.getNamedModel(MODEL));
+        export.add(dataset.getNamedModel(HAS_PART_GRAPH));
+        export.setNsPrefixes(LDHelper.PREFIX_MAP);
+        export.setNsPrefix("bench", MODEL + "#");
+        return export;
+    }
+}
@@ -0,0 +1,89 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.system.Txn;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Serves a fixture dataset from an in-process Fuseki as the core and scheme datasets, and wires the services
+ * the schema benchmarks need against it in the same way Spring does. Dependencies the benchmarked code paths
+ * do not touch are left null.
+ */
+public final class FixtureServer implements AutoCloseable {
+
+    private final FusekiServer server;
+    private final FusekiConnectionPool connectionPool;
+    private final EndpointServices endpointServices;
+    private final JenaClient jenaClient;
+    private final GraphManager graphManager;
+
+    public FixtureServer(Dataset fixture) {
+        Dataset core = DatasetFactory.createTxnMem();
+        Txn.executeWrite(core, () -> {
+            Iterator<String> names = fixture.listNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                core.addNamedModel(name, fixture.getNamedModel(name));
+            }
+        });
+
+        int port = freePort();
+        server = FusekiServer.create()
+            .port(port)
+            .loopback(true)
+            .add("/core", core)
+            .add("/scheme", DatasetFactory.createTxnMem())
+            .build()
+            .start();
+
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.setEndpoint("http://localhost:" + port);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BackendMetrics backendMetrics = new BackendMetrics(meterRegistry);
+        connectionPool = new FusekiConnectionPool(properties, meterRegistry, backendMetrics);
+        endpointServices = new EndpointServices(properties);
+        jenaClient = new JenaClient(endpointServices, connectionPool, properties, new FusekiResilience(properties, meterRegistry), backendMetrics);
+        GraphRegistry graphRegistry = new GraphRegistry(endpointServices, jenaClient);
+        graphRegistry.refresh();
+        graphManager = new GraphManager(endpointServices, jenaClient, null, null, null, null, null, null, null, graphRegistry, properties);
+    }
+
+    public JsonSchemaWriter jsonSchemaWriter() {
+        return new JsonSchemaWriter(endpointServices,
+            Json.createWriterFactory(Map.of(JsonGenerator.PRETTY_PRINTING, true)),
+            graphManager,
+            new ValueListManager(endpointServices, jenaClient),
+            jenaClient);
+    }
+
+    public XMLSchemaWriter xmlSchemaWriter() {
+        return new XMLSchemaWriter(endpointServices, graphManager, jenaClient);
+    }
+
+    @Override
+    public void close() {
+        connectionPool.close();
+        server.stop();
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import fi.vm.yti.datamodel.api.utils.Frames;
+
+/**
+ * JSON-LD 1.1 framing of class and model documents for the search index and plain JSON-LD serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FramingBenchmark {
+
+    @Param({ "small", "medium", "large" })
+    public String profile;
+
+    private ModelManager modelManager;
+    private Model classes;
+    private Model exportGraph;
+
+    @Setup
+    public void setup() {
+        modelManager = new ModelManager();
+        Dataset dataset = BenchmarkFixtures.load(profile);
+        classes = BenchmarkFixtures.classes(dataset);
+        exportGraph = BenchmarkFixtures.exportGraph(dataset);
+    }
+
+    @Benchmark
+    public JsonNode frameClasses() throws IOException {
+        return modelManager.toFramedJsonNode(classes, Frames.esClassFrame);
+    }
+
+    @Benchmark
+    public String writeJsonLd() {
+        return modelManager.writeModelToJSONLDString(exportGraph);
+    }
+}
@@ -0,0 +1,67 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of posted JSON-LD and removal of a resource from the export graph, as done on every model and resource
+ * update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelParseBenchmark {
+
+    @Param({ "small", "medium", "large" })
+    public String profile;
+
+    private ModelManager modelManager;
+    private String exportJsonLd;
+    private Model exportGraph;
+    private Model resourceGraph;
+
+    @Setup
+    public void setup() {
+        modelManager = new ModelManager();
+        Dataset dataset = BenchmarkFixtures.load(profile);
+        exportGraph = BenchmarkFixtures.exportGraph(dataset);
+        exportJsonLd = modelManager.writeModelToJSONLDString(exportGraph);
+        resourceGraph = dataset.getNamedModel(BenchmarkFixtures.MODEL + "#Person");
+    }
+
+    @Benchmark
+    public Model parseJsonLd() {
+        return modelManager.createJenaModelFromJSONLDString(exportJsonLd);
+    }
+
+    /**
+     * Includes copying of the export graph, which is also measured by {@link #copyExportGraph()}
+     */
+    @Benchmark
+    public Model removeResourceStatements() {
+        Model export = ModelFactory.createDefaultModel().add(exportGraph);
+        return modelManager.removeResourceStatements(resourceGraph, export);
+    }
+
+    @Benchmark
+    public Model copyExportGraph() {
+        return ModelFactory.createDefaultModel().add(exportGraph);
+    }
+}
@@ -0,0 +1,63 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON Schema and XML Schema generation against an in-process Fuseki. The numbers include the SPARQL round trips
+ * over loopback, which is how the writers run in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SchemaBenchmark {
+
+    @Param({ "small", "medium", "large" })
+    public String profile;
+
+    private FixtureServer server;
+    private JsonSchemaWriter jsonSchemaWriter;
+    private XMLSchemaWriter xmlSchemaWriter;
+
+    @Setup
+    public void setup() {
+        server = new FixtureServer(BenchmarkFixtures.load(profile));
+        jsonSchemaWriter = server.jsonSchemaWriter();
+        xmlSchemaWriter = server.xmlSchemaWriter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public String jsonSchema() {
+        return jsonSchemaWriter.newModelSchema(BenchmarkFixtures.MODEL, "fi");
+    }
+
+    @Benchmark
+    public String multilingualJsonSchema() {
+        return jsonSchemaWriter.newMultilingualModelSchema(BenchmarkFixtures.MODEL);
+    }
+
+    @Benchmark
+    public String xmlSchema() {
+        return xmlSchemaWriter.newModelSchema(BenchmarkFixtures.MODEL, "fi");
+    }
+}
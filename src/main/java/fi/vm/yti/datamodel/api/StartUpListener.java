@@ -3,9 +3,12 @@ package fi.vm.yti.datamodel.api;
 import fi.vm.yti.datamodel.api.index.ElasticConnector;
 import fi.vm.yti.datamodel.api.index.SearchIndexManager;
 import fi.vm.yti.datamodel.api.service.GraphManager;
+import fi.vm.yti.datamodel.api.service.GraphRegistry;
 import fi.vm.yti.datamodel.api.service.GroupManagementService;
 import fi.vm.yti.datamodel.api.service.NamespaceManager;
+import fi.vm.yti.datamodel.api.service.OrganizationModelCache;
 import fi.vm.yti.datamodel.api.service.RHPOrganizationManager;
+import fi.vm.yti.datamodel.api.utils.QueryLibrary;
 import fi.vm.yti.migration.MigrationInitializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +30,8 @@ public class StartUpListener {
     private final ElasticConnector elasticConnector;
     private final SearchIndexManager searchIndexManager;
     private final GroupManagementService groupManagementService;
+    private final OrganizationModelCache organizationModelCache;
+    private final GraphRegistry graphRegistry;
 
     @Autowired
     StartUpListener(RHPOrganizationManager rhpOrganizationManager,
@@ -35,7 +40,9 @@ public class StartUpListener {
                     ElasticConnector elasticConnector,
                     SearchIndexManager searchIndexManager,
                     MigrationInitializer migrationInitializer,
-                    GroupManagementService groupManagementService
+                    GroupManagementService groupManagementService,
+                    OrganizationModelCache organizationModelCache,
+                    GraphRegistry graphRegistry
                     /* XXX: dependency to enforce init order */) {
 
         this.rhpOrganizationManager = rhpOrganizationManager;
@@ -44,14 +51,18 @@ public class StartUpListener {
         this.elasticConnector = elasticConnector;
         this.searchIndexManager = searchIndexManager;
         this.groupManagementService = groupManagementService;
+        this.organizationModelCache = organizationModelCache;
+        this.graphRegistry = graphRegistry;
     }
 
     @PostConstruct
     public void contextInitialized() {
         logger.info("System is starting ...");
+        compileQueryTemplates();
 
         initDefaultNamespaces();
         initRHPOrganizations();
+        reconcileGraphRegistry();
         initElasticsearchIndices();
         groupManagementService.updateUsers();
     }
@@ -64,6 +75,25 @@ public class StartUpListener {
     @Scheduled(cron = "0 */5 * * * *")
     void initRHPOrganizations() {
         rhpOrganizationManager.initOrganizationsFromRHP();
+        try {
+            organizationModelCache.refresh();
+        } catch (Exception ex) {
+            logger.warn("Could not refresh organization models", ex);
+        }
+    }
+
+    @Scheduled(cron = "0 */5 * * * *")
+    void reconcileGraphRegistry() {
+        try {
+            graphRegistry.refresh();
+        } catch (Exception ex) {
+            logger.warn("Could not refresh graph registry", ex);
+        }
+    }
+
+    private void compileQueryTemplates() {
+        // Loading the query library parses the templates, so a broken query fails the startup
+        logger.info("Compiled " + QueryLibrary.templates().size() + " query templates");
     }
 
     private void initServiceCategories() {
@@ -77,9 +107,18 @@ public class StartUpListener {
     private void initElasticsearchIndices() {
         try {
             elasticConnector.waitForESNodes();
-            searchIndexManager.reindex();
+            if (!searchIndexManager.syncIndexes()) {
+                searchIndexManager.reindex();
+            }
         } catch (Exception e) {
             logger.warn("Elasticsearch initialization failed!", e);
         }
     }
+
+    @Scheduled(cron = "0 */5 * * * *")
+    void syncElasticsearchIndices() {
+        if (!searchIndexManager.getReindexStatus().isRunning()) {
+            searchIndexManager.syncIndexes();
+        }
+    }
 }
@@ -10,6 +10,20 @@ public final class ApplicationProperties {
     private String fusekiPassword;
     private String fusekiUser;
     private boolean provenance;
+    private int fusekiMaxConnections = 100;
+    private int fusekiMaxConnectionsPerRoute = 50;
+    private int fusekiConnectTimeoutMs = 5000;
+    private int fusekiConnectionRequestTimeoutMs = 30000;
+    private int fusekiSocketTimeoutMs = 300000;
+    private long fusekiKeepAliveMs = 20000;
+    private long fusekiDeadlineMs = 120000;
+    private int fusekiRetries = 2;
+    private long fusekiRetryBaseDelayMs = 100;
+    private long fusekiRetryMaxDelayMs = 2000;
+    private int fusekiBulkheadMaxCalls = 40;
+    private long fusekiBulkheadMaxWaitMs = 2000;
+    private int fusekiCircuitFailureThreshold = 5;
+    private long fusekiCircuitOpenMs = 10000;
     private String defaultGroupManagementAPI;
     private String privateGroupManagementAPI;
     private String defaultTerminologyAPI;
@@ -24,6 +38,20 @@ public final class ApplicationProperties {
     private String elasticHttpPort;
     private String elasticHttpScheme;
     private boolean allowComplexElasticQueries;
+    private int elasticBulkActions = 1000;
+    private int elasticBulkSizeMb = 5;
+    private int elasticBulkConcurrency = 2;
+    private int reindexThreads = 4;
+    private int reindexMaxFailedModels = 10;
+    private boolean elasticIncrementalSync = true;
+    private int exportCacheMaxSizeMb = 32;
+    private boolean modelResponseCache = false;
+    private String provenanceJournalDir;
+    private int provenanceJournalMaxSizeMb = 64;
+    private long provenanceJournalMaxWaitMs = 5000;
+    private int provenanceJournalBatchSize = 100;
+    private boolean lazyExportGraph = false;
+    private long graphRegistryMaxAgeMs = 30000;
     private String defaultLocalCodeServerAPI;
     private boolean devMode;
     private boolean messagingEnabled;
@@ -55,6 +83,118 @@ public final class ApplicationProperties {
         this.fusekiUser = fusekiUser;
     }
 
+    public int getFusekiMaxConnections() {
+        return fusekiMaxConnections;
+    }
+
+    public void setFusekiMaxConnections(final int fusekiMaxConnections) {
+        this.fusekiMaxConnections = fusekiMaxConnections;
+    }
+
+    public int getFusekiMaxConnectionsPerRoute() {
+        return fusekiMaxConnectionsPerRoute;
+    }
+
+    public void setFusekiMaxConnectionsPerRoute(final int fusekiMaxConnectionsPerRoute) {
+        this.fusekiMaxConnectionsPerRoute = fusekiMaxConnectionsPerRoute;
+    }
+
+    public int getFusekiConnectTimeoutMs() {
+        return fusekiConnectTimeoutMs;
+    }
+
+    public void setFusekiConnectTimeoutMs(final int fusekiConnectTimeoutMs) {
+        this.fusekiConnectTimeoutMs = fusekiConnectTimeoutMs;
+    }
+
+    public int getFusekiConnectionRequestTimeoutMs() {
+        return fusekiConnectionRequestTimeoutMs;
+    }
+
+    public void setFusekiConnectionRequestTimeoutMs(final int fusekiConnectionRequestTimeoutMs) {
+        this.fusekiConnectionRequestTimeoutMs = fusekiConnectionRequestTimeoutMs;
+    }
+
+    public int getFusekiSocketTimeoutMs() {
+        return fusekiSocketTimeoutMs;
+    }
+
+    public void setFusekiSocketTimeoutMs(final int fusekiSocketTimeoutMs) {
+        this.fusekiSocketTimeoutMs = fusekiSocketTimeoutMs;
+    }
+
+    public long getFusekiKeepAliveMs() {
+        return fusekiKeepAliveMs;
+    }
+
+    public void setFusekiKeepAliveMs(final long fusekiKeepAliveMs) {
+        this.fusekiKeepAliveMs = fusekiKeepAliveMs;
+    }
+
+    public long getFusekiDeadlineMs() {
+        return fusekiDeadlineMs;
+    }
+
+    public void setFusekiDeadlineMs(final long fusekiDeadlineMs) {
+        this.fusekiDeadlineMs = fusekiDeadlineMs;
+    }
+
+    public int getFusekiRetries() {
+        return fusekiRetries;
+    }
+
+    public void setFusekiRetries(final int fusekiRetries) {
+        this.fusekiRetries = fusekiRetries;
+    }
+
+    public long getFusekiRetryBaseDelayMs() {
+        return fusekiRetryBaseDelayMs;
+    }
+
+    public void setFusekiRetryBaseDelayMs(final long fusekiRetryBaseDelayMs) {
+        this.fusekiRetryBaseDelayMs = fusekiRetryBaseDelayMs;
+    }
+
+    public long getFusekiRetryMaxDelayMs() {
+        return fusekiRetryMaxDelayMs;
+    }
+
+    public void setFusekiRetryMaxDelayMs(final long fusekiRetryMaxDelayMs) {
+        this.fusekiRetryMaxDelayMs = fusekiRetryMaxDelayMs;
+    }
+
+    public int getFusekiBulkheadMaxCalls() {
+        return fusekiBulkheadMaxCalls;
+    }
+
+    public void setFusekiBulkheadMaxCalls(final int fusekiBulkheadMaxCalls) {
+        this.fusekiBulkheadMaxCalls = fusekiBulkheadMaxCalls;
+    }
+
+    public long getFusekiBulkheadMaxWaitMs() {
+        return fusekiBulkheadMaxWaitMs;
+    }
+
+    public void setFusekiBulkheadMaxWaitMs(final long fusekiBulkheadMaxWaitMs) {
+        this.fusekiBulkheadMaxWaitMs = fusekiBulkheadMaxWaitMs;
+    }
+
+    public int getFusekiCircuitFailureThreshold() {
+        return fusekiCircuitFailureThreshold;
+    }
+
+    public void setFusekiCircuitFailureThreshold(final int fusekiCircuitFailureThreshold) {
+        this.fusekiCircuitFailureThreshold = fusekiCircuitFailureThreshold;
+    }
+
+    public long getFusekiCircuitOpenMs() {
+        return fusekiCircuitOpenMs;
+    }
+
+    public void setFusekiCircuitOpenMs(final long fusekiCircuitOpenMs) {
+        this.fusekiCircuitOpenMs = fusekiCircuitOpenMs;
+    }
+
     public boolean isProvenance() {
         return provenance;
     }
@@ -175,6 +315,118 @@ public final class ApplicationProperties {
         this.allowComplexElasticQueries = allowComplexElasticQueries;
     }
 
+    public int getElasticBulkActions() {
+        return elasticBulkActions;
+    }
+
+    public void setElasticBulkActions(int elasticBulkActions) {
+        this.elasticBulkActions = elasticBulkActions;
+    }
+
+    public int getElasticBulkSizeMb() {
+        return elasticBulkSizeMb;
+    }
+
+    public void setElasticBulkSizeMb(int elasticBulkSizeMb) {
+        this.elasticBulkSizeMb = elasticBulkSizeMb;
+    }
+
+    public int getElasticBulkConcurrency() {
+        return elasticBulkConcurrency;
+    }
+
+    public void setElasticBulkConcurrency(int elasticBulkConcurrency) {
+        this.elasticBulkConcurrency = elasticBulkConcurrency;
+    }
+
+    public int getReindexThreads() {
+        return reindexThreads;
+    }
+
+    public void setReindexThreads(int reindexThreads) {
+        this.reindexThreads = reindexThreads;
+    }
+
+    public int getReindexMaxFailedModels() {
+        return reindexMaxFailedModels;
+    }
+
+    public void setReindexMaxFailedModels(int reindexMaxFailedModels) {
+        this.reindexMaxFailedModels = reindexMaxFailedModels;
+    }
+
+    public int getExportCacheMaxSizeMb() {
+        return exportCacheMaxSizeMb;
+    }
+
+    public void setExportCacheMaxSizeMb(int exportCacheMaxSizeMb) {
+        this.exportCacheMaxSizeMb = exportCacheMaxSizeMb;
+    }
+
+    public boolean isModelResponseCache() {
+        return modelResponseCache;
+    }
+
+    public void setModelResponseCache(boolean modelResponseCache) {
+        this.modelResponseCache = modelResponseCache;
+    }
+
+    public boolean isLazyExportGraph() {
+        return lazyExportGraph;
+    }
+
+    public void setLazyExportGraph(boolean lazyExportGraph) {
+        this.lazyExportGraph = lazyExportGraph;
+    }
+
+    public String getProvenanceJournalDir() {
+        return provenanceJournalDir;
+    }
+
+    public void setProvenanceJournalDir(String provenanceJournalDir) {
+        this.provenanceJournalDir = provenanceJournalDir;
+    }
+
+    public int getProvenanceJournalMaxSizeMb() {
+        return provenanceJournalMaxSizeMb;
+    }
+
+    public void setProvenanceJournalMaxSizeMb(int provenanceJournalMaxSizeMb) {
+        this.provenanceJournalMaxSizeMb = provenanceJournalMaxSizeMb;
+    }
+
+    public long getProvenanceJournalMaxWaitMs() {
+        return provenanceJournalMaxWaitMs;
+    }
+
+    public void setProvenanceJournalMaxWaitMs(long provenanceJournalMaxWaitMs) {
+        this.provenanceJournalMaxWaitMs = provenanceJournalMaxWaitMs;
+    }
+
+    public long getGraphRegistryMaxAgeMs() {
+        return graphRegistryMaxAgeMs;
+    }
+
+    public void setGraphRegistryMaxAgeMs(long graphRegistryMaxAgeMs) {
+        this.graphRegistryMaxAgeMs = graphRegistryMaxAgeMs;
+    }
+
+    public int getProvenanceJournalBatchSize() {
+        return provenanceJournalBatchSize;
+    }
+
+    public void setProvenanceJournalBatchSize(int provenanceJournalBatchSize) {
+        this.provenanceJournalBatchSize = provenanceJournalBatchSize;
+    }
+
+    public boolean isElasticIncrementalSync() {
+        return elasticIncrementalSync;
+    }
+
+    public void setElasticIncrementalSync(boolean elasticIncrementalSync) {
+        this.elasticIncrementalSync = elasticIncrementalSync;
+    }
+
     public String getDefaultLocalCodeServerAPI() {
         return this.defaultLocalCodeServerAPI;
     }
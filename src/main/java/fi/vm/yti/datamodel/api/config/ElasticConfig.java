@@ -14,6 +14,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import fi.vm.yti.datamodel.api.service.BackendMetrics;
+
 /**
  * @author amiika
  */
@@ -22,10 +24,13 @@ import org.springframework.context.annotation.Configuration;
 public class ElasticConfig {
 
     private final ApplicationProperties config;
+    private final BackendMetrics backendMetrics;
 
     @Autowired
-    public ElasticConfig(ApplicationProperties config) {
+    public ElasticConfig(ApplicationProperties config,
+                         BackendMetrics backendMetrics) {
         this.config = config;
+        this.backendMetrics = backendMetrics;
     }
 
     @Bean
@@ -37,6 +42,10 @@ public class ElasticConfig {
             requestConfigBuilder -> requestConfigBuilder
                 .setConnectTimeout(5000)
                 .setSocketTimeout(60000))
+            .setHttpClientConfigCallback(
+                httpClientBuilder -> httpClientBuilder
+                    .addInterceptorFirst(backendMetrics.requestStartInterceptor())
+                    .addInterceptorLast(backendMetrics.elasticsearchResponseInterceptor()))
             .setMaxRetryTimeoutMillis(60000)
         );
         return client;
@@ -0,0 +1,75 @@
+package fi.vm.yti.datamodel.api.config;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import fi.vm.yti.datamodel.api.service.BackendMetrics;
+
+/**
+ * Tags backend metrics recorded while serving a request with the method and matched route template, e.g.
+ * "GET /class". The tag is kept until the response entity is written, so calls made by StreamingOutput entities are
+ * recorded under the route that returned them.
+ */
+@Provider
+public class EndpointMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        BackendMetrics.clearEndpoint();
+        if (requestContext.getUriInfo() instanceof ExtendedUriInfo) {
+            String route = route(((ExtendedUriInfo) requestContext.getUriInfo()).getMatchedTemplates());
+            if (route != null) {
+                BackendMetrics.setEndpoint(requestContext.getMethod() + " " + route);
+            }
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext,
+                       ContainerResponseContext responseContext) {
+        if (!responseContext.hasEntity()) {
+            BackendMetrics.clearEndpoint();
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        try {
+            context.proceed();
+        } finally {
+            BackendMetrics.clearEndpoint();
+        }
+    }
+
+    /**
+     * Joins the matched templates, which Jersey lists from the resource method up to the root resource
+     */
+    private static String route(List<UriTemplate> templates) {
+        if (templates == null || templates.isEmpty()) {
+            return null;
+        }
+        StringBuilder route = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            String template = templates.get(i).getTemplate();
+            if (template.isEmpty() || template.equals("/")) {
+                continue;
+            }
+            if (!template.startsWith("/")) {
+                route.append('/');
+            }
+            route.append(template.endsWith("/") ? template.substring(0, template.length() - 1) : template);
+        }
+        return route.length() > 0 ? route.toString() : "/";
+    }
+}
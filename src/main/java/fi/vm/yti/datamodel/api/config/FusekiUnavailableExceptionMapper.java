@@ -0,0 +1,20 @@
+package fi.vm.yti.datamodel.api.config;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import fi.vm.yti.datamodel.api.service.FusekiUnavailableException;
+
+@Provider
+public class FusekiUnavailableExceptionMapper
+    implements ExceptionMapper<FusekiUnavailableException> {
+
+    @Override
+    public Response toResponse(FusekiUnavailableException exception) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+            .header("Retry-After", Math.max(1, (exception.getRetryAfterMs() + 999) / 1000))
+            .entity(exception.getMessage())
+            .type("text/plain").build();
+    }
+}
@@ -62,10 +62,15 @@ public class JerseyConfig extends ResourceConfig {
         register(DeflateEncoder.class);
         register(JsonParseExceptionMapper.class);
         register(IllegalArgumentExceptionMapper.class);
+        register(FusekiUnavailableExceptionMapper.class);
+        register(EndpointMetricsFilter.class);
         register((ContainerResponseFilter) (req, resp) -> {
-            resp.getHeaders().add("Cache-Control", "no-cache, no-store, must-revalidate");
-            resp.getHeaders().add("Pragma", "no-cache");
-            resp.getHeaders().add("Expires", "0");
+            // Resources that support revalidation set their own Cache-Control
+            if (!resp.getHeaders().containsKey("Cache-Control")) {
+                resp.getHeaders().add("Cache-Control", "no-cache, no-store, must-revalidate");
+                resp.getHeaders().add("Pragma", "no-cache");
+                resp.getHeaders().add("Expires", "0");
+            }
 
             resp.getHeaders().add("Access-Control-Allow-Origin", "*");
             resp.getHeaders().add("Access-Control-Allow-Headers", "content-type");
@@ -12,8 +12,6 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Response;
 
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
@@ -25,6 +23,7 @@ import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import fi.vm.yti.datamodel.api.service.EndpointServices;
+import fi.vm.yti.datamodel.api.service.JenaClient;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -38,13 +37,16 @@ public class Count {
 
     private final EndpointServices endpointServices;
     private final ObjectMapper objectMapper;
+    private final JenaClient jenaClient;
     private static final Logger logger = LoggerFactory.getLogger(Count.class.getName());
 
     @Autowired
     Count(EndpointServices endpointServices,
-          ObjectMapper objectMapper) {
+          ObjectMapper objectMapper,
+          JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.objectMapper = objectMapper;
+        this.jenaClient = jenaClient;
     }
 
     @GET
@@ -78,8 +80,8 @@ public class Count {
         mapping.put(LDHelper.curieToURI("owl:DatatypeProperty"),"attributes");
         mapping.put(LDHelper.curieToURI("owl:AnnotationProperty"),"annotations");
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), query)) {
-            ResultSet results = qexec.execSelect();
+        try {
+            ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), query);
             List<String> resultVars = results.getResultVars();
 
             Map object = new HashMap<String, String>();
@@ -11,9 +11,15 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.function.Supplier;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 import org.slf4j.Logger;
@@ -33,6 +39,7 @@ public class ExportModel {
     private final JsonSchemaWriter jsonSchemaWriter;
     private final OpenAPIWriter openAPIWriter;
     private final XMLSchemaWriter xmlSchemaWriter;
+    private final ExportCache exportCache;
     private final String rawContentType = "text/plain;charset=utf-8";
 
     @Autowired
@@ -42,7 +49,8 @@ public class ExportModel {
                 ContextWriter contextWriter,
                 JsonSchemaWriter jsonSchemaWriter,
                 OpenAPIWriter openAPIWriter,
-                XMLSchemaWriter xmlSchemaWriter) {
+                XMLSchemaWriter xmlSchemaWriter,
+                ExportCache exportCache) {
         this.idManager = idManager;
         this.jerseyResponseManager = jerseyResponseManager;
         this.jerseyClient = jerseyClient;
@@ -50,17 +58,20 @@ public class ExportModel {
         this.jsonSchemaWriter = jsonSchemaWriter;
         this.openAPIWriter = openAPIWriter;
         this.xmlSchemaWriter = xmlSchemaWriter;
+        this.exportCache = exportCache;
     }
 
     @GET
     @Operation(description = "Get model from service")
     @ApiResponses(value = {
+        @ApiResponse(responseCode = "304", description = "Export has not changed since the version given in If-None-Match"),
         @ApiResponse(responseCode = "400", description = "Invalid model supplied"),
         @ApiResponse(responseCode = "403", description = "Invalid model id"),
         @ApiResponse(responseCode = "404", description = "Service not found"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     public Response getExportModel(
+        @Context Request request,
         @Parameter(description = "Requested resource", schema = @Schema(defaultValue = "default")) @QueryParam("graph") String graph,
         @Parameter(description = "Raw / PlainText boolean", schema = @Schema(defaultValue = "false")) @QueryParam("raw") boolean raw,
         @Parameter(description = "Languages to export") @QueryParam("lang") String lang,
@@ -81,43 +92,71 @@ public class ExportModel {
 
         logger.info("Exporting format: " + ctype);
 
+        final String modelGraph = graph;
+        final String exportLang = lang;
+
         if (ctype.equals("application/ld+json+context")) {
-            String context = contextWriter.newModelContext(graph);
-            if (context != null) {
-                return jerseyResponseManager.ok(context, raw ? rawContentType : "application/json");
-            } else {
-                return jerseyResponseManager.notFound();
-            }
+            return cachedExport(request, modelGraph, ctype, null, raw ? rawContentType : "application/json",
+                () -> contextWriter.newModelContext(modelGraph),
+                jerseyResponseManager::notFound);
         } else if (ctype.equals("application/vnd+oai+openapi+json")) {
-            String apiStub = openAPIWriter.newOpenApiStub(graph, lang);
+            Response apiStub = cachedExport(request, modelGraph, ctype, exportLang, raw ? rawContentType : "application/json",
+                () -> openAPIWriter.newOpenApiStub(modelGraph, exportLang),
+                () -> null);
             if (apiStub != null) {
-                return jerseyResponseManager.ok(apiStub, raw ? rawContentType : "application/json");
+                return apiStub;
             }
         } else if (ctype.equals("application/schema+json")) {
-            String schema = null;
             if (lang != null && !lang.equals("undefined") && !lang.equals("null")) {
                 logger.info("Exporting schema in " + lang);
-                schema = jsonSchemaWriter.newModelSchema(graph, lang);
+                return cachedExport(request, modelGraph, ctype, exportLang, raw ? rawContentType : "application/schema+json",
+                    () -> jsonSchemaWriter.newModelSchema(modelGraph, exportLang),
+                    jerseyResponseManager::langNotDefined);
             } else {
-                schema = jsonSchemaWriter.newMultilingualModelSchema(graph);
-            }
-            if (schema != null) {
-                return jerseyResponseManager.ok(schema, raw ? rawContentType : "application/schema+json");
-            } else {
-                return jerseyResponseManager.langNotDefined();
+                return cachedExport(request, modelGraph, ctype, null, raw ? rawContentType : "application/schema+json",
+                    () -> jsonSchemaWriter.newMultilingualModelSchema(modelGraph),
+                    jerseyResponseManager::langNotDefined);
             }
         } else if (ctype.equals("application/xml")) {
-
-            String schema = xmlSchemaWriter.newModelSchema(graph, lang);
-
-            if (schema != null) {
-                return jerseyResponseManager.ok(schema, raw ? rawContentType : "application/xml");
-            } else {
-                return jerseyResponseManager.langNotDefined();
-            }
+            return cachedExport(request, modelGraph, ctype, exportLang, raw ? rawContentType : "application/xml",
+                () -> xmlSchemaWriter.newModelSchema(modelGraph, exportLang),
+                jerseyResponseManager::langNotDefined);
         }
 
         /* IF ctype is none of the above try to export graph in RDF format */
         return jerseyClient.getExportGraph(graph, raw, lang, ctype);
     }
+
+    /**
+     * Serves a generated export from the export cache. The ETag changes whenever the model is modified, so clients
+     * can poll with If-None-Match and get 304 without the export being generated.
+     */
+    private Response cachedExport(Request request,
+                                  String graph,
+                                  String format,
+                                  String lang,
+                                  String contentType,
+                                  Supplier<String> generator,
+                                  Supplier<Response> notFound) {
+        ExportCache.ExportKey key = exportCache.getKey(graph, format, lang, contentType);
+        if (key == null) {
+            String export = generator.get();
+            return export != null ? jerseyResponseManager.ok(export, contentType) : notFound.get();
+        }
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        EntityTag etag = key.getEntityTag();
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).build();
+        }
+
+        String export = exportCache.get(key, generator);
+        if (export == null) {
+            return notFound.get();
+        }
+        return Response.ok().entity(export).type(contentType).tag(etag).cacheControl(cacheControl).build();
+    }
 }
@@ -0,0 +1,55 @@
+package fi.vm.yti.datamodel.api.endpoint.genericapi;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.vm.yti.datamodel.api.index.SearchIndexManager;
+import fi.vm.yti.datamodel.api.security.AuthorizationManager;
+import fi.vm.yti.datamodel.api.service.JerseyResponseManager;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@Component
+@Path("v1/reindex/status")
+@Tag(name = "Admin")
+public class ReindexStatus {
+
+    private final SearchIndexManager searchIndexManager;
+    private final AuthorizationManager authorizationManager;
+    private final JerseyResponseManager jerseyResponseManager;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    ReindexStatus(SearchIndexManager searchIndexManager,
+                  AuthorizationManager authorizationManager,
+                  JerseyResponseManager jerseyResponseManager,
+                  ObjectMapper objectMapper) {
+        this.searchIndexManager = searchIndexManager;
+        this.authorizationManager = authorizationManager;
+        this.jerseyResponseManager = jerseyResponseManager;
+        this.objectMapper = objectMapper;
+    }
+
+    @GET
+    @Produces("application/json")
+    @Operation(description = "Returns progress of the running or latest ES reindexing")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Reindex status"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    public Response getReindexStatus() {
+        if (!authorizationManager.hasRightToDropDatabase()) {
+            return jerseyResponseManager.unauthorized();
+        }
+        return jerseyResponseManager.ok(objectMapper.valueToTree(searchIndexManager.getReindexStatus()));
+    }
+}
@@ -83,7 +83,7 @@ public class Resolve {
         final String graphName = graphManager.getServiceGraphNameWithPrefix(graphPrefix);
 
         if (graphName == null) {
-            logger.info("Graph not found: " + graphName);
+            logger.info("Graph not found: " + graphPrefix);
             return Response.status(404).build();
         }
 
@@ -95,10 +95,9 @@ public class Resolve {
                 return jerseyResponseManager.invalidParameter();
             }
             Date modified = graphManager.modelContentModified(graphName);
-            if (modified != null) {
-                if (modifiedSince.after(modified)) {
-                    return Response.notModified().header("Last-Modified", DateUtils.formatDate(modified)).build();
-                }
+            // HTTP dates have second precision
+            if (modified != null && modified.getTime() / 1000 <= modifiedSince.getTime() / 1000) {
+                return Response.notModified().header("Last-Modified", DateUtils.formatDate(modified)).build();
             }
         }
 
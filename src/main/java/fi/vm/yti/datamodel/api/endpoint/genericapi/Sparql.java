@@ -2,8 +2,10 @@ package fi.vm.yti.datamodel.api.endpoint.genericapi;
 
 import fi.vm.yti.datamodel.api.security.AuthorizationManager;
 import fi.vm.yti.datamodel.api.service.EndpointServices;
+import fi.vm.yti.datamodel.api.service.JenaClient;
 import fi.vm.yti.datamodel.api.security.AuthorizationManagerImpl;
 import fi.vm.yti.datamodel.api.service.JerseyResponseManager;
+import fi.vm.yti.datamodel.api.service.ModelManager;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,6 +15,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.*;
@@ -22,10 +25,9 @@ import org.springframework.stereotype.Component;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStream;
-import java.io.StringWriter;
+import java.util.Iterator;
 
 @Component
 @Path("v1/sparql")
@@ -35,14 +37,20 @@ public class Sparql {
     private final AuthorizationManager authorizationManager;
     private final EndpointServices endpointServices;
     private final JerseyResponseManager jerseyResponseManager;
+    private final ModelManager modelManager;
+    private final JenaClient jenaClient;
 
     @Autowired
     Sparql(AuthorizationManager authorizationManager,
            EndpointServices endpointServices,
-           JerseyResponseManager jerseyResponseManager) {
+           JerseyResponseManager jerseyResponseManager,
+           ModelManager modelManager,
+           JenaClient jenaClient) {
         this.authorizationManager = authorizationManager;
         this.endpointServices = endpointServices;
         this.jerseyResponseManager = jerseyResponseManager;
+        this.modelManager = modelManager;
+        this.jenaClient = jenaClient;
     }
 
     @GET
@@ -72,24 +80,28 @@ public class Sparql {
             return Response.status(400).build();
         }
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getSparqlAddress(service), query)) {
-
-            OutputStream outs = new ByteArrayOutputStream();
-            ResultSet results = qexec.execSelect();
-
-            if (accept.equals("text/csv")) {
-                ResultSetFormatter.outputAsCSV(outs, results);
-            } else {
-                ResultSetFormatter.outputAsJSON(outs, results);
-            }
-
-            return Response
-                .ok(outs.toString(), accept)
-                .build();
+        JenaClient.QueryStream<ResultSet> select;
 
+        try {
+            select = jenaClient.openSelect(endpointServices.getSparqlAddress(service), query);
         } catch (QueryException ex) {
             return Response.status(500).build();
         }
+
+        // Rows are written as they are read from the service
+        StreamingOutput output = outs -> {
+            try (select) {
+                if (accept.equals("text/csv")) {
+                    ResultSetFormatter.outputAsCSV(outs, select.getResults());
+                } else {
+                    ResultSetFormatter.outputAsJSON(outs, select.getResults());
+                }
+            }
+        };
+
+        return Response
+            .ok(output, accept)
+            .build();
     }
 
     @GET
@@ -120,20 +132,32 @@ public class Sparql {
             return Response.status(400).build();
         }
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getSparqlAddress(service), query)) {
+        Lang rdfLang = RDFLanguages.contentTypeToLang(ContentType.create(accept));
 
-            OutputStream outs = new ByteArrayOutputStream();
-            Model results = qexec.execConstruct();
+        if (rdfLang == null) {
+            return jerseyResponseManager.invalidParameter();
+        }
 
-            StringWriter writer = new StringWriter();
-            ContentType contentType = ContentType.create(accept);
-            Lang rdfLang = RDFLanguages.contentTypeToLang(contentType);
-            RDFDataMgr.write(writer, results, RDFWriterRegistry.defaultSerialization(rdfLang));
+        RDFFormat streamingFormat = modelManager.getStreamingFormat(rdfLang);
+        String sparqlService = endpointServices.getSparqlAddress(service);
 
+        try {
+            if (streamingFormat != null) {
+                // Triples are written as they are read from the service
+                JenaClient.QueryStream<Iterator<Triple>> triples = jenaClient.openConstructTriples(sparqlService, query);
+                return Response
+                    .ok(modelManager.writeStreamToStream(streamingFormat, writer -> {
+                        try (triples) {
+                            triples.getResults().forEachRemaining(writer::triple);
+                        }
+                    }), accept)
+                    .build();
+            }
+
+            Model results = jenaClient.constructFromService(queryString, sparqlService);
             return Response
-                .ok(writer.toString(), accept)
+                .ok(modelManager.writeModelToStream(results, RDFWriterRegistry.defaultSerialization(rdfLang)), accept)
                 .build();
-
         } catch (QueryException ex) {
             return Response.status(500).build();
         }
@@ -161,8 +185,7 @@ public class Sparql {
 
         try {
             UpdateRequest queryObj = UpdateFactory.create(query);
-            UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getSparqlUpdateAddress(service));
-            qexec.execute();
+            jenaClient.updateToService(queryObj, endpointServices.getSparqlUpdateAddress(service));
         } catch (UpdateException | QueryParseException ex) {
             return Response.status(400).build();
         }
@@ -10,6 +10,7 @@ import fi.vm.yti.datamodel.api.security.AuthorizationManagerImpl;
 import fi.vm.yti.datamodel.api.service.*;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 import fi.vm.yti.datamodel.api.utils.QueryLibrary;
+import fi.vm.yti.datamodel.api.utils.QueryTemplate;
 import fi.vm.yti.security.AuthenticatedUserProvider;
 import fi.vm.yti.security.YtiUser;
 import io.swagger.v3.oas.annotations.Operation;
@@ -20,13 +21,15 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 
 import org.apache.jena.iri.IRI;
 import org.apache.jena.iri.IRIException;
-import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.RiotException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 
 import java.util.Map;
@@ -57,6 +60,7 @@ public class Class {
     private final ModelManager modelManager;
     private final SearchIndexManager searchIndexManager;
     private final ObjectMapper objectMapper;
+    private final VersionManager versionManager;
 
     @Autowired
     Class(AuthorizationManager authorizationManager,
@@ -70,7 +74,8 @@ public class Class {
           ProvenanceManager provenanceManager,
           ModelManager modelManager,
           SearchIndexManager searchIndexManager,
-          ObjectMapper objectMapper) {
+          ObjectMapper objectMapper,
+          VersionManager versionManager) {
 
         this.authorizationManager = authorizationManager;
         this.userProvider = userProvider;
@@ -84,6 +89,7 @@ public class Class {
         this.modelManager = modelManager;
         this.searchIndexManager = searchIndexManager;
         this.objectMapper = objectMapper;
+        this.versionManager = versionManager;
     }
 
     @GET
@@ -103,28 +109,21 @@ public class Class {
         if (id == null || id.equals("undefined") || id.equals("default")) {
 
             /* If no id is provided create a list of classes */
-            ParameterizedSparqlString pss = new ParameterizedSparqlString();
-            // TODO: Create namespacemap from all models
-            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-
-            String queryString = "";
+            QueryTemplate.Binding query;
 
             if (model != null && !model.equals("undefined")) {
-                queryString = QueryLibrary.listClassesQuery;
-                pss.setIri("library", model);
-                pss.setIri("hasPartGraph", model + "#HasPartGraph");
+                query = QueryLibrary.listClassesTemplate.bind()
+                    .iri("library", model)
+                    .iri("hasPartGraph", model + "#HasPartGraph");
             } else {
                 if (requiredBy != null && !requiredBy.equals("undefined")) {
-                    queryString = QueryLibrary.requiredClassQuery;
-                    pss.setIri("library", requiredBy);
+                    query = QueryLibrary.requiredClassTemplate.bind().iri("library", requiredBy);
                 } else {
-                    queryString = QueryLibrary.listClassesQuery;
+                    query = QueryLibrary.listClassesTemplate.bind();
                 }
             }
 
-            pss.setCommandText(queryString);
-
-            return jerseyClient.constructGraphFromServiceWithNamespaces(pss.toString(), endpointServices.getCoreSparqlAddress());
+            return jerseyClient.constructGraphFromServiceWithNamespaces(query, endpointServices.getCoreSparqlAddress());
 
         } else {
 
@@ -136,8 +135,6 @@ public class Class {
                 return jerseyClient.getGraphResponseFromService(id, endpointServices.getProvReadWriteAddress());
             }
 
-            ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
             /* Get Map of namespaces from id-graph */
 
             Map<String, String> namespaceMap = namespaceManager.getCoreNamespaceMap(id);
@@ -146,18 +143,17 @@ public class Class {
                 return jerseyResponseManager.notFound();
             }
 
-            pss.setNsPrefixes(namespaceMap);
-
-            String queryString = QueryLibrary.classQuery;
-            pss.setCommandText(queryString);
-
-            pss.setIri("graph", id);
+            QueryTemplate.Binding query = QueryLibrary.classTemplate.bind()
+                .prefixes(namespaceMap)
+                .iri("graph", id);
 
             if (model != null && !model.equals("undefined")) {
-                pss.setIri("library", model);
+                query.iri("library", model);
             }
 
-            return jerseyClient.constructNonEmptyGraphFromService(pss.toString(), endpointServices.getCoreSparqlAddress());
+            /* Version is read before the graph, so a concurrent write can only make the tag older than the body */
+            EntityTag version = versionManager.getVersion(id);
+            return versionManager.tag(jerseyClient.constructNonEmptyGraphFromService(query, endpointServices.getCoreSparqlAddress()), version);
         }
     }
 
@@ -170,6 +166,7 @@ public class Class {
         @ApiResponse(responseCode = "405", description = "Update not allowed"),
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "400", description = "Invalid graph supplied"),
+        @ApiResponse(responseCode = "412", description = "Class has been modified"),
         @ApiResponse(responseCode = "500", description = "Bad data?")
     })
     public Response postClass(
@@ -179,7 +176,8 @@ public class Class {
         @Parameter(description = "OLD Class ID")
         @QueryParam("oldid") String oldid,
         @Parameter(description = "Model ID", required = true)
-        @QueryParam("model") String model) {
+        @QueryParam("model") String model,
+        @Context HttpHeaders headers) {
 
         try {
 
@@ -202,6 +200,7 @@ public class Class {
             }
 
             String provUUID = null;
+            EntityTag version = null;
 
             if (isNotEmpty(body)) {
 
@@ -218,48 +217,56 @@ public class Class {
                     return jerseyResponseManager.unauthorized();
                 }
 
-                /* Rename ID if oldIdIRI exists */
-                if (oldIdIRI != null) {
-                    /* Prevent overwriting existing resources */
-                    if (graphManager.isExistingGraph(idIRI)) {
-                        logger.warn(idIRI + " is existing graph!");
-                        return jerseyResponseManager.usedIRI();
+                String currentId = oldIdIRI != null ? oldid : id;
+                try (VersionManager.GraphLock lock = versionManager.lock(currentId)) {
+                    if (!versionManager.ifMatch(headers, () -> versionManager.getVersion(currentId))) {
+                        return jerseyResponseManager.preconditionFailed();
+                    }
+
+                    /* Rename ID if oldIdIRI exists */
+                    if (oldIdIRI != null) {
+                        /* Prevent overwriting existing resources */
+                        if (graphManager.isExistingGraph(idIRI)) {
+                            logger.warn(idIRI + " is existing graph!");
+                            return jerseyResponseManager.usedIRI();
+                        } else {
+                            ReusableClass oldClass = new ReusableClass(oldIdIRI, graphManager);
+
+                            if(!oldClass.getStatus().equals(updateClass.getStatus())) {
+                                updateClass.setStatusModified();
+                            }
+
+                            if (graphManager.modelStatusRestrictsRemoving(oldIdIRI)) {
+                                logger.warn(idIRI + " is existing graph!");
+                                return jerseyResponseManager.depedencies();
+                            } else {
+                                graphManager.updateResourceWithNewId(updateClass, oldClass);
+                                provUUID = updateClass.getProvUUID();
+                                logger.info("Changed class id from:" + oldid + " to " + id);
+                                searchIndexManager.removeClass(oldid);
+                                searchIndexManager.createIndexClass(updateClass);
+                            }
+                        }
                     } else {
-                        ReusableClass oldClass = new ReusableClass(oldIdIRI, graphManager);
+                        ReusableClass oldClass = new ReusableClass(idIRI, graphManager);
 
                         if(!oldClass.getStatus().equals(updateClass.getStatus())) {
                             updateClass.setStatusModified();
                         }
 
-                        if (graphManager.modelStatusRestrictsRemoving(oldIdIRI)) {
-                            logger.warn(idIRI + " is existing graph!");
-                            return jerseyResponseManager.depedencies();
-                        } else {
-                            graphManager.updateResourceWithNewId(updateClass, oldClass);
-                            provUUID = updateClass.getProvUUID();
-                            logger.info("Changed class id from:" + oldid + " to " + id);
-                            searchIndexManager.removeClass(oldid);
-                            searchIndexManager.createIndexClass(updateClass);
-                        }
-                    }
-                } else {
-                    ReusableClass oldClass = new ReusableClass(idIRI, graphManager);
-
-                    if(!oldClass.getStatus().equals(updateClass.getStatus())) {
-                        updateClass.setStatusModified();
+                        graphManager.updateResource(updateClass,oldClass);
+                        provUUID = updateClass.getProvUUID();
+                        searchIndexManager.updateIndexClass(updateClass);
                     }
 
-                    graphManager.updateResource(updateClass,oldClass);
-                    provUUID = updateClass.getProvUUID();
-                    searchIndexManager.updateIndexClass(updateClass);
-                }
+                    searchIndexManager.updateIndexModel(updateClass.getModelId());
 
-                searchIndexManager.updateIndexModel(updateClass.getModelId());
+                    if (provenanceManager.getProvMode()) {
+                        provenanceManager.createProvEntityBundle(updateClass.getId(), updateClass.asGraph(), user.getId(), updateClass.getProvUUID(), oldIdIRI);
+                    }
 
-                if (provenanceManager.getProvMode()) {
-                    provenanceManager.createProvEntityBundle(updateClass.getId(), updateClass.asGraph(), user.getId(), updateClass.getProvUUID(), oldIdIRI);
+                    version = versionManager.getVersion(id);
                 }
-
             } else {
                 /* IF NO JSON-LD POSTED TRY TO CREATE REFERENCE FROM MODEL TO CLASS ID */
 
@@ -279,7 +286,7 @@ public class Class {
             }
 
             if (provUUID != null) {
-                return jerseyResponseManager.successUuid(provUUID);
+                return versionManager.tag(jerseyResponseManager.successUuid(provUUID), version);
             } else {
                 return jerseyResponseManager.notCreated();
             }
@@ -343,7 +350,7 @@ public class Class {
                     provenanceManager.createProvenanceActivityFromModel(newClass.getId(), newClass.asGraph(), newClass.getProvUUID(), user.getId());
                 }
 
-                return jerseyResponseManager.successUrnUuid(newClass.getProvUUID(), newClass.getId());
+                return versionManager.tag(jerseyResponseManager.successUrnUuid(newClass.getProvUUID(), newClass.getId()), versionManager.getVersion(newClass.getId()));
             }
 
         } catch (IllegalArgumentException ex) {
@@ -358,13 +365,15 @@ public class Class {
         @ApiResponse(responseCode = "204", description = "Graph is deleted"),
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "404", description = "No such graph"),
-        @ApiResponse(responseCode = "401", description = "Unauthorized")
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "412", description = "Class has been modified")
     })
     public Response deleteClass(
         @Parameter(description = "Model ID", required = true)
         @QueryParam("model") String model,
         @Parameter(description = "Class ID", required = true)
-        @QueryParam("id") String id) {
+        @QueryParam("id") String id,
+        @Context HttpHeaders headers) {
 
         /* Check that URIs are valid */
         IRI modelIRI, idIRI;
@@ -390,12 +399,17 @@ public class Class {
                     return jerseyResponseManager.unauthorized();
                 }
 
-                provenanceManager.deleteProvenanceFromResource(deleteClass.getId());
+                try (VersionManager.GraphLock lock = versionManager.lock(id)) {
+                    if (!versionManager.ifMatch(headers, () -> versionManager.getVersion(id))) {
+                        return jerseyResponseManager.preconditionFailed();
+                    }
 
-                graphManager.deleteResource(deleteClass);
-                searchIndexManager.removeClass(id);
-                searchIndexManager.updateIndexModel(deleteClass.getModelId());
+                    provenanceManager.deleteProvenanceFromResource(deleteClass.getId());
 
+                    graphManager.deleteResource(deleteClass);
+                    searchIndexManager.removeClass(id);
+                    searchIndexManager.updateIndexModel(deleteClass.getModelId());
+                }
             } catch (IllegalArgumentException ex) {
                 logger.warn(ex.toString());
                 return jerseyResponseManager.unexpected();
@@ -21,12 +21,22 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import org.apache.jena.datatypes.DatatypeFormatException;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.iri.IRI;
 import org.apache.jena.iri.IRIException;
 import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.NodeIterator;
 import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -36,11 +46,16 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +66,11 @@ import org.slf4j.LoggerFactory;
 public class History {
 
     private static final Logger logger = LoggerFactory.getLogger(History.class.getName());
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    @Context
+    UriInfo uriInfo;
 
     private final NamespaceManager namespaceManager;
     private final EndpointServices endpointServices;
@@ -87,7 +107,7 @@ public class History {
 
     @GET
     @Produces("application/ld+json")
-    @Operation(description = "Get activity history for the resource")
+    @Operation(description = "Get activity history for the resource. Activity lists are paged, newest first, and the next page is linked with a Link header.")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "400", description = "Invalid model supplied"),
         @ApiResponse(responseCode = "404", description = "Service not found"),
@@ -95,51 +115,108 @@ public class History {
     })
     public Response getHistory(
         @Parameter(description = "resource id") @QueryParam("id") String id,
-        @Parameter(description = "Peek", schema = @Schema(defaultValue = "false")) @QueryParam("peek") boolean peek) {
+        @Parameter(description = "Peek", schema = @Schema(defaultValue = "false")) @QueryParam("peek") boolean peek,
+        @Parameter(description = "Only activities of the model") @QueryParam("model") String model,
+        @Parameter(description = "Only activities of the user UUID") @QueryParam("user") String userId,
+        @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE, schema = @Schema(defaultValue = "" + DEFAULT_PAGE_SIZE)) @QueryParam("limit") Integer limit,
+        @Parameter(description = "Cursor from the next link of the previous page") @QueryParam("after") String after) {
         YtiUser user = userProvider.getUser();
         // TODO: Remove or refactor history
 
         if (id == null || id.equals("undefined") || id.equals("default") || peek) {
 
-            ParameterizedSparqlString pss = new ParameterizedSparqlString();
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
 
-            Map<String, String> namespacemap = namespaceManager.getCoreNamespaceMap();
-            namespacemap.putAll(LDHelper.PREFIX_MAP);
+            if (pageSize < 1) {
+                return jerseyResponseManager.invalidParameter();
+            }
 
-            pss.setNsPrefixes(namespacemap);
+            ParameterizedSparqlString pss = new ParameterizedSparqlString();
+            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
 
-            String queryString = "CONSTRUCT { "
-                + "?activity a prov:Activity . "
-                + "?activity prov:wasAttributedTo ?user . "
-                + "?activity dcterms:modified ?modified . "
-                + "?activity dcterms:identifier ?entity . "
-                + " } "
+            String queryString = "SELECT ?activity ?user ?modified ?entity "
                 + "WHERE {"
                 + "GRAPH ?activity {"
                 + "?activity a prov:Activity . "
+                + (model != null ? "?activity rdfs:isDefinedBy ?modelFilter . " : "")
                 + "?activity prov:used ?entity . "
                 + "?entity a prov:Entity . "
                 + "?entity prov:wasAttributedTo ?user . "
                 + "?entity prov:generatedAtTime ?modified . "
-                + "}} ORDER BY DESC(?modified)";
+                + "}"
+                + (id != null && peek ? "FILTER(?activity = ?activityFilter) " : "")
+                + (userId != null ? "FILTER(?user = ?userFilter) " : "")
+                + (after != null ? "FILTER(?modified < ?afterModified || (?modified = ?afterModified && STR(?activity) < ?afterActivity)) " : "")
+                + "} ORDER BY DESC(?modified) DESC(STR(?activity)) "
+                // One extra row tells whether there is a next page
+                + "LIMIT " + (pageSize + 1);
 
             pss.setCommandText(queryString);
 
-            if (id != null && peek) {
-                pss.setIri("activity", id);
+            try {
+                if (id != null && peek) {
+                    pss.setIri("activityFilter", idManager.constructIRI(id));
+                }
+                if (model != null) {
+                    pss.setIri("modelFilter", idManager.constructIRI(model));
+                }
+                if (userId != null) {
+                    pss.setIri("userFilter", "urn:uuid:" + UUID.fromString(userId));
+                }
+                if (after != null) {
+                    String[] cursor = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8).split("\\|", 2);
+                    pss.setLiteral("afterModified", ResourceFactory.createTypedLiteral(cursor[0], XSDDatatype.XSDdateTime));
+                    pss.setLiteral("afterActivity", cursor[1]);
+                }
+            } catch (IRIException | IllegalArgumentException | ArrayIndexOutOfBoundsException | DatatypeFormatException ex) {
+                return jerseyResponseManager.invalidParameter();
             }
 
+            ResultSet results = jenaClient.selectQuery(endpointServices.getProvReadSparqlAddress(), pss.asQuery());
 
-            Model provModel = jenaClient.constructFromService(pss.toString(), endpointServices.getProvReadSparqlAddress());
+            Model provModel = ModelFactory.createDefaultModel();
+            provModel.setNsPrefixes(LDHelper.PREFIX_MAP);
+            List<String> userUuids = new ArrayList<>();
+            String nextCursor = null;
+            int rows = 0;
+
+            while (results.hasNext()) {
+                QuerySolution soln = results.nextSolution();
+                Resource activity = soln.getResource("activity");
+                Literal modified = soln.getLiteral("modified");
+                if (++rows > pageSize) {
+                    break;
+                }
+                if (rows == pageSize) {
+                    nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString((modified.getLexicalForm() + "|" + activity.getURI()).getBytes(StandardCharsets.UTF_8));
+                }
+                Resource activityResource = provModel.createResource(activity.getURI());
+                activityResource.addProperty(RDF.type, LDHelper.curieToResource("prov:Activity"));
+                activityResource.addProperty(wasAttributedTo, soln.getResource("user"));
+                activityResource.addLiteral(DCTerms.modified, modified);
+                activityResource.addProperty(DCTerms.identifier, soln.getResource("entity"));
+                userUuids.add(soln.getResource("user").getURI().replace("urn:uuid:", ""));
+            }
+
+            if (rows <= pageSize) {
+                nextCursor = null;
+            }
 
             if (user.isSuperuser() || user.getOrganizationsInRole().size() > 0) {
-                provModel.add(groupService.getUsersAsModel());
+                provModel.add(groupService.getUsersAsModel(userUuids));
                 LDHelper.denormalizePredicate(provModel, wasAttributedTo);
             } else {
                 LDHelper.removePredicates(provModel, wasAttributedTo);
             }
 
-            return jerseyClient.constructResponseFromGraph(provModel);
+            Response response = jerseyClient.constructResponseFromGraph(provModel);
+
+            if (nextCursor != null) {
+                URI next = uriInfo.getRequestUriBuilder().replaceQueryParam("after", nextCursor).build();
+                response = Response.fromResponse(response).link(next, "next").build();
+            }
+
+            return response;
 
         } else {
             logger.info("Gettin " + id + " from prov");
@@ -20,6 +20,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 
 import org.slf4j.Logger;
@@ -40,6 +43,7 @@ public class ModelPositions {
     private final ModelManager modelManager;
     private final IDManager idManager;
     private final GraphManager graphManager;
+    private final VersionManager versionManager;
 
     @Autowired
     ModelPositions(AuthorizationManager authorizationManager,
@@ -49,7 +53,8 @@ public class ModelPositions {
                    JenaClient jenaClient,
                    ModelManager modelManager,
                    IDManager idManager,
-                   GraphManager graphManager) {
+                   GraphManager graphManager,
+                   VersionManager versionManager) {
 
         this.authorizationManager = authorizationManager;
         this.jerseyClient = jerseyClient;
@@ -59,6 +64,7 @@ public class ModelPositions {
         this.modelManager = modelManager;
         this.idManager = idManager;
         this.graphManager = graphManager;
+        this.versionManager = versionManager;
     }
 
     @GET
@@ -73,7 +79,9 @@ public class ModelPositions {
         @Parameter(description = "Graph id", schema = @Schema(defaultValue = "default"))
         @QueryParam("model") String model) {
 
-        return jerseyClient.getNonEmptyGraphResponseFromService(model + "#PositionGraph", endpointServices.getCoreReadAddress(), "application/ld+json", false);
+        /* Version is read before the graph, so a concurrent write can only make the tag older than the body */
+        EntityTag version = versionManager.getPositionsVersion(model);
+        return versionManager.tag(jerseyClient.getNonEmptyGraphResponseFromService(model + "#PositionGraph", endpointServices.getCoreReadAddress(), "application/ld+json", false), version);
 
     }
 
@@ -86,6 +94,7 @@ public class ModelPositions {
         @ApiResponse(responseCode = "405", description = "Update not allowed"),
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "400", description = "Invalid graph supplied"),
+        @ApiResponse(responseCode = "412", description = "Positions have been modified"),
         @ApiResponse(responseCode = "500", description = "Bad data?")
     })
     public Response putModelPositions(
@@ -93,7 +102,8 @@ public class ModelPositions {
             String body,
         @Parameter(description = "Model ID", required = true)
         @QueryParam("model")
-            String model) {
+            String model,
+        @Context HttpHeaders headers) {
 
         if (model.equals("default")) {
             return jerseyResponseManager.invalidIRI();
@@ -120,11 +130,19 @@ public class ModelPositions {
             return jerseyResponseManager.invalidParameter();
         }
 
-        // TODO: Does this fix the strange duplication bug?
-        jenaClient.deleteModelFromCore(model+"#PositionGraph");
+        try (VersionManager.GraphLock lock = versionManager.lock(model + "#PositionGraph")) {
+            if (!versionManager.ifMatch(headers, () -> versionManager.getPositionsVersion(model))) {
+                return jerseyResponseManager.preconditionFailed();
+            }
 
-        jenaClient.putModelToCore(model + "#PositionGraph", newPositions);
+            // TODO: Does this fix the strange duplication bug?
+            jenaClient.deleteModelFromCore(model+"#PositionGraph");
 
-        return jerseyResponseManager.okEmptyContent();
+            jenaClient.putModelToCore(model + "#PositionGraph", newPositions);
+
+            EntityTag version = versionManager.updatePositionsVersion(model);
+
+            return versionManager.tag(jerseyResponseManager.okEmptyContent(), version);
+        }
     }
 }
@@ -2,9 +2,9 @@ package fi.vm.yti.datamodel.api.endpoint.model;
 
 import java.util.UUID;
 
-import fi.vm.yti.datamodel.api.index.FrameManager;
 import fi.vm.yti.datamodel.api.index.SearchIndexManager;
 import fi.vm.yti.datamodel.api.model.DataModel;
+import fi.vm.yti.datamodel.api.model.VersionStatusDTO;
 import fi.vm.yti.datamodel.api.security.AuthorizationManager;
 import fi.vm.yti.datamodel.api.service.*;
 import fi.vm.yti.security.AuthenticatedUserProvider;
@@ -25,6 +25,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.HtmlUtils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 
@@ -41,30 +43,55 @@ public class ModelVersion {
     private final IDManager idManager;
     private final JerseyResponseManager jerseyResponseManager;
     private final GraphManager graphManager;
-    private final FrameManager frameManager;
     private final ServiceDescriptionManager serviceDescriptionManager;
     private final SearchIndexManager searchIndexManager;
     private final ProvenanceManager provenanceManager;
+    private final ObjectMapper objectMapper;
 
     @Autowired
     ModelVersion(AuthorizationManager authorizationManager,
                  AuthenticatedUserProvider userProvider,
                  GraphManager graphManager,
-                 FrameManager frameManager,
                  ServiceDescriptionManager serviceDescriptionManager,
                  IDManager idManager,
                  JerseyResponseManager jerseyResponseManager,
                  SearchIndexManager searchIndexManager,
-                 ProvenanceManager provenanceManager) {
+                 ProvenanceManager provenanceManager,
+                 ObjectMapper objectMapper) {
         this.authorizationManager = authorizationManager;
         this.userProvider = userProvider;
         this.idManager = idManager;
         this.graphManager = graphManager;
-        this.frameManager = frameManager;
         this.jerseyResponseManager = jerseyResponseManager;
         this.serviceDescriptionManager = serviceDescriptionManager;
         this.searchIndexManager = searchIndexManager;
         this.provenanceManager = provenanceManager;
+        this.objectMapper = objectMapper;
+    }
+
+    @GET
+    @Path("status")
+    @Produces("application/json")
+    @Operation(description = "Returns progress of the running or a recently finished versioning")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Versioning status"),
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "404", description = "No versioning to the given URI found")
+    })
+    public Response getVersionStatus(
+        @Parameter(description = "New version URI") @QueryParam("uri") String uri) {
+
+        if (userProvider.getUser().isAnonymous()) {
+            return jerseyResponseManager.unauthorized();
+        }
+
+        VersionStatusDTO status = uri != null ? graphManager.getVersionStatus(uri) : null;
+
+        if (status == null) {
+            return jerseyResponseManager.notFound();
+        }
+
+        return jerseyResponseManager.ok(objectMapper.valueToTree(status));
     }
 
     @POST
@@ -146,8 +173,7 @@ public class ModelVersion {
                 searchIndexManager.initClassIndexFromModel(newId);
                 searchIndexManager.initPredicateIndexFromModel(newId);
 
-                dataModel.add(frameManager.constructExportGraph(newModelIRI.toString()));
-                graphManager.putToGraph(dataModel, newModelIRI.toString() + "#ExportGraph");
+                graphManager.rebuildExportGraph(newModelIRI.toString());
 
                 logger.info("Created export graph");
 
@@ -3,6 +3,7 @@
  */
 package fi.vm.yti.datamodel.api.endpoint.model;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -13,17 +14,19 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 
 import org.apache.jena.iri.IRI;
 import org.apache.jena.iri.IRIException;
-import org.apache.jena.query.DatasetAccessor;
-import org.apache.jena.query.DatasetAccessorFactory;
-import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.riot.RiotException;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.OWL;
@@ -35,19 +38,24 @@ import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import fi.vm.yti.datamodel.api.index.SearchIndexManager;
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.model.DataModel;
 import fi.vm.yti.datamodel.api.security.AuthorizationManager;
 import fi.vm.yti.datamodel.api.service.EndpointServices;
+import fi.vm.yti.datamodel.api.service.ExportCache;
 import fi.vm.yti.datamodel.api.service.GraphManager;
 import fi.vm.yti.datamodel.api.service.IDManager;
 import fi.vm.yti.datamodel.api.service.JerseyClient;
+import fi.vm.yti.datamodel.api.service.JenaClient;
 import fi.vm.yti.datamodel.api.service.JerseyResponseManager;
 import fi.vm.yti.datamodel.api.service.ModelManager;
+import fi.vm.yti.datamodel.api.service.NamespaceManager;
 import fi.vm.yti.datamodel.api.service.ProvenanceManager;
 import fi.vm.yti.datamodel.api.service.RHPOrganizationManager;
 import fi.vm.yti.datamodel.api.service.ServiceDescriptionManager;
-import fi.vm.yti.datamodel.api.utils.LDHelper;
+import fi.vm.yti.datamodel.api.service.VersionManager;
 import fi.vm.yti.datamodel.api.utils.QueryLibrary;
+import fi.vm.yti.datamodel.api.utils.QueryTemplate;
 import fi.vm.yti.security.AuthenticatedUserProvider;
 import fi.vm.yti.security.Role;
 import fi.vm.yti.security.YtiUser;
@@ -78,6 +86,11 @@ public class Models {
     private final Property status = OWL.versionInfo;
     private final SearchIndexManager searchIndexManager;
     private final ObjectMapper objectMapper;
+    private final JenaClient jenaClient;
+    private final NamespaceManager namespaceManager;
+    private final ExportCache exportCache;
+    private final ApplicationProperties properties;
+    private final VersionManager versionManager;
 
     @Autowired
     Models(AuthorizationManager authorizationManager,
@@ -92,7 +105,12 @@ public class Models {
            RHPOrganizationManager rhpOrganizationManager,
            ModelManager modelManager,
            SearchIndexManager searchIndexManager,
-           ObjectMapper objectMapper) {
+           ObjectMapper objectMapper,
+           JenaClient jenaClient,
+           NamespaceManager namespaceManager,
+           ExportCache exportCache,
+           ApplicationProperties properties,
+           VersionManager versionManager) {
 
         this.searchIndexManager = searchIndexManager;
         this.authorizationManager = authorizationManager;
@@ -107,6 +125,11 @@ public class Models {
         this.rhpOrganizationManager = rhpOrganizationManager;
         this.modelManager = modelManager;
         this.objectMapper = objectMapper;
+        this.jenaClient = jenaClient;
+        this.namespaceManager = namespaceManager;
+        this.exportCache = exportCache;
+        this.properties = properties;
+        this.versionManager = versionManager;
     }
 
     @GET
@@ -124,10 +147,6 @@ public class Models {
 
         YtiUser user = userProvider.getUser();
 
-        String queryString = QueryLibrary.fullModelQuery;
-
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
         if ((id == null || id.equals("undefined")) && (prefix != null && !prefix.equals("undefined"))) {
             logger.info("Resolving prefix: " + prefix);
             id = graphManager.getServiceGraphNameWithPrefix(prefix);
@@ -152,40 +171,34 @@ public class Models {
                 return jerseyClient.getGraphResponseFromService(id, endpointServices.getProvReadWriteAddress());
             }
 
-            String sparqlService = endpointServices.getCoreSparqlAddress();
-            String graphService = endpointServices.getCoreReadWriteAddress();
+            QueryTemplate.Binding query = QueryLibrary.fullModelTemplate.bind().iri("graph", modelIRI);
 
-            /* TODO: Create Namespace service? */
-            DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(graphService);
-            Model model = accessor.getModel(id);
+            /* Version is read before the model and the cache key, so a concurrent write can only make the tag
+               older than the body and a later write based on it fails with 412 */
+            EntityTag version = versionManager.getVersion(id);
 
-            if (model == null) {
-                return jerseyResponseManager.notFound();
+            if (properties.isModelResponseCache()) {
+                ExportCache.ExportKey key = exportCache.getKey(id, "application/ld+json", null, "application/ld+json");
+                if (key == null) {
+                    return jerseyResponseManager.notFound();
+                }
+                final String modelId = id;
+                String modelResponse = exportCache.get(key, () -> constructModelResponse(modelId, query));
+                return modelResponse != null ? versionManager.tag(jerseyResponseManager.ok(modelResponse, "application/ld+json"), version) : jerseyResponseManager.notFound();
             }
 
-            pss.setNsPrefixes(model.getNsPrefixMap());
-
-            pss.setIri("graph", modelIRI);
-
-            pss.setCommandText(queryString);
-
-            return jerseyClient.constructGraphFromService(pss.toString(), sparqlService);
-
-        } else {
-
-            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+            String modelResponse = constructModelResponse(id, query);
+            return modelResponse != null ? versionManager.tag(jerseyResponseManager.ok(modelResponse, "application/ld+json"), version) : jerseyResponseManager.notFound();
 
-            queryString = QueryLibrary.fullModelsByGroupQuery;
+        }
 
-            if (group != null && !group.equals("undefined")) {
-                pss.setLiteral("groupCode", group);
-            }
+        QueryTemplate.Binding query = QueryLibrary.fullModelsByGroupTemplate.bind();
 
+        if (group != null && !group.equals("undefined")) {
+            query.literal("groupCode", group);
         }
 
-        pss.setCommandText(queryString);
-
-        Model modelList = graphManager.constructModelFromCoreGraph(pss.toString());
+        Model modelList = jenaClient.constructFromService(query, endpointServices.getCoreSparqlAddress());
 
         if (!user.isSuperuser()) {
             ResIterator rem = modelList.listSubjectsWithProperty(status, "INCOMPLETE");
@@ -212,6 +225,30 @@ public class Models {
 
     }
 
+    /**
+     * Constructs the model as JSON-LD using the prefixes stored with the model graph. The prefixes come from the
+     * namespace cache, which is refreshed only when dcterms:modified of the constructed model differs from the cached
+     * one, so the model graph is not downloaded on every request.
+     *
+     * @return JSON-LD or null if the model does not exist
+     */
+    private String constructModelResponse(String id,
+                                          QueryTemplate.Binding query) {
+        Model model = jenaClient.constructFromService(query, endpointServices.getCoreSparqlAddress());
+
+        Statement modifiedStatement = model.getProperty(ResourceFactory.createResource(id), DCTerms.modified);
+        String modified = modifiedStatement != null && modifiedStatement.getObject().isLiteral() ? modifiedStatement.getLiteral().getLexicalForm() : null;
+        Map<String, String> prefixes = namespaceManager.getModelNamespaceMap(id, modified);
+
+        if (prefixes == null) {
+            return null;
+        }
+
+        model.clearNsPrefixMap();
+        model.setNsPrefixes(prefixes);
+        return modelManager.writeModelToJSONLDString(model);
+    }
+
     /**
      * Replaces Graph in given service
      *
@@ -226,13 +263,15 @@ public class Models {
         @ApiResponse(responseCode = "405", description = "Update not allowed"),
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "404", description = "Service not found"),
+        @ApiResponse(responseCode = "412", description = "Model has been modified"),
         @ApiResponse(responseCode = "500", description = "Bad data?")
     })
     public Response postModel(
         @Parameter(description = "Updated model in application/ld+json", required = true)
             String body,
         @Parameter(description = "Model ID")
-        @QueryParam("id") String graph) {
+        @QueryParam("id") String graph,
+        @Context HttpHeaders headers) {
 
         try {
 
@@ -258,23 +297,29 @@ public class Models {
                 return jerseyResponseManager.unauthorized();
             }
 
-            if(!oldVocabulary.getStatus().equals(newVocabulary.getStatus())) {
-                newVocabulary.setStatusModified();
-            }
+            try (VersionManager.GraphLock lock = versionManager.lock(graph)) {
+                if (!versionManager.ifMatch(headers, () -> versionManager.getVersion(graph))) {
+                    return jerseyResponseManager.preconditionFailed();
+                }
 
-            UUID provUUID = UUID.fromString(newVocabulary.getProvUUID().replaceFirst("urn:uuid:", ""));
+                if(!oldVocabulary.getStatus().equals(newVocabulary.getStatus())) {
+                    newVocabulary.setStatusModified();
+                }
 
-            graphManager.updateModel(newVocabulary, oldVocabulary);
+                UUID provUUID = UUID.fromString(newVocabulary.getProvUUID().replaceFirst("urn:uuid:", ""));
 
-            searchIndexManager.updateIndexModel(newVocabulary);
+                graphManager.updateModel(newVocabulary, oldVocabulary);
 
-            serviceDescriptionManager.createGraphDescription(newVocabulary.getId(), user.getId(), newVocabulary.getOrganizations());
+                searchIndexManager.updateIndexModel(newVocabulary);
 
-            if (provenanceManager.getProvMode()) {
-                provenanceManager.createProvEntityBundle(newVocabulary.getId(), newVocabulary.asGraph(), user.getId(), newVocabulary.getProvUUID(), null);
-            }
+                serviceDescriptionManager.createGraphDescription(newVocabulary.getId(), user.getId(), newVocabulary.getOrganizations());
+
+                if (provenanceManager.getProvMode()) {
+                    provenanceManager.createProvEntityBundle(newVocabulary.getId(), newVocabulary.asGraph(), user.getId(), newVocabulary.getProvUUID(), null);
+                }
 
-            return jerseyResponseManager.successUrnUuid(provUUID);
+                return versionManager.tag(jerseyResponseManager.successUrnUuid(provUUID), versionManager.getVersion(graph));
+            }
 
         } catch (IllegalArgumentException ex) {
             logger.warn(ex.toString());
@@ -338,7 +383,7 @@ public class Models {
                 }
 
                 logger.info("Created new model: " + newVocabulary.getId());
-                return jerseyResponseManager.successUrnUuid(provUUID, newVocabulary.getId());
+                return versionManager.tag(jerseyResponseManager.successUrnUuid(provUUID, newVocabulary.getId()), versionManager.getVersion(newVocabulary.getId()));
             }
 
         } catch (IllegalArgumentException ex) {
@@ -358,11 +403,13 @@ public class Models {
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "404", description = "No such graph"),
         @ApiResponse(responseCode = "401", description = "Unauthorized"),
-        @ApiResponse(responseCode = "406", description = "Not acceptable")
+        @ApiResponse(responseCode = "406", description = "Not acceptable"),
+        @ApiResponse(responseCode = "412", description = "Model has been modified")
     })
     public Response deleteModel(
         @Parameter(description = "Model ID", required = true)
-        @QueryParam("id") String id) {
+        @QueryParam("id") String id,
+        @Context HttpHeaders headers) {
 
         /* Check that URIs are valid */
         IRI modelIRI;
@@ -390,13 +437,19 @@ public class Models {
             return jerseyResponseManager.unauthorized();
         }
 
-        searchIndexManager.removeModel(deleteModel.getId());
+        try (VersionManager.GraphLock lock = versionManager.lock(id)) {
+            if (!versionManager.ifMatch(headers, () -> versionManager.getVersion(id))) {
+                return jerseyResponseManager.preconditionFailed();
+            }
+
+            searchIndexManager.removeModel(deleteModel.getId());
 
-        provenanceManager.deleteProvenanceFromModel(deleteModel.getId());
+            provenanceManager.deleteProvenanceFromModel(deleteModel.getId());
 
-        graphManager.deleteVersionLinks(deleteModel.getId());
+            graphManager.deleteVersionLinks(deleteModel.getId());
 
-        graphManager.deleteModel(deleteModel);
+            graphManager.deleteModel(deleteModel);
+        }
 
         return jerseyResponseManager.ok();
     }
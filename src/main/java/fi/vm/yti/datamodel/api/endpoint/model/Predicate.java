@@ -18,13 +18,15 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 
 import org.apache.jena.iri.IRI;
 import org.apache.jena.iri.IRIException;
-import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.RiotException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import java.util.Map;
 
@@ -50,6 +52,7 @@ public class Predicate {
     private final ProvenanceManager provenanceManager;
     private final ModelManager modelManager;
     private final SearchIndexManager searchIndexManager;
+    private final VersionManager versionManager;
 
     @Autowired
     Predicate(AuthorizationManager authorizationManager,
@@ -62,7 +65,8 @@ public class Predicate {
               GraphManager graphManager,
               ProvenanceManager provenanceManager,
               ModelManager modelManager,
-              SearchIndexManager searchIndexManager) {
+              SearchIndexManager searchIndexManager,
+              VersionManager versionManager) {
 
         this.authorizationManager = authorizationManager;
         this.userProvider = userProvider;
@@ -75,6 +79,7 @@ public class Predicate {
         this.provenanceManager = provenanceManager;
         this.modelManager = modelManager;
         this.searchIndexManager = searchIndexManager;
+        this.versionManager = versionManager;
     }
 
     @GET
@@ -92,28 +97,21 @@ public class Predicate {
 
         if (id == null || id.equals("undefined") || id.equals("default")) {
 
-            ParameterizedSparqlString pss = new ParameterizedSparqlString();
-            // TODO: Create namespacemap from models
-            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-
-            String queryString = "";
+            QueryTemplate.Binding query;
 
             if (model != null && !model.equals("undefined")) {
-                queryString = QueryLibrary.listPredicatesQuery;
-                pss.setIri("library", model);
-                pss.setIri("hasPartGraph", model + "#HasPartGraph");
+                query = QueryLibrary.listPredicatesTemplate.bind()
+                    .iri("library", model)
+                    .iri("hasPartGraph", model + "#HasPartGraph");
             } else {
-                    if (requiredBy != null && !requiredBy.equals("undefined")) {
-                        queryString = QueryLibrary.requiredPredicateQuery;
-                        pss.setIri("library", requiredBy);
-                    } else {
-                        queryString = QueryLibrary.listPredicatesQuery;
-                    }
+                if (requiredBy != null && !requiredBy.equals("undefined")) {
+                    query = QueryLibrary.requiredPredicateTemplate.bind().iri("library", requiredBy);
+                } else {
+                    query = QueryLibrary.listPredicatesTemplate.bind();
                 }
+            }
 
-            pss.setCommandText(queryString);
-
-            return jerseyClient.constructGraphFromServiceWithNamespaces(pss.toString(), endpointServices.getCoreSparqlAddress());
+            return jerseyClient.constructGraphFromServiceWithNamespaces(query, endpointServices.getCoreSparqlAddress());
 
         } else {
 
@@ -125,8 +123,6 @@ public class Predicate {
                 return jerseyClient.getGraphResponseFromService(id, endpointServices.getProvReadWriteAddress());
             }
 
-            ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
             /* Get Map of namespaces from id-graph */
 
             Map<String, String> namespaceMap = namespaceManager.getCoreNamespaceMap(id);
@@ -136,18 +132,17 @@ public class Predicate {
                 return jerseyResponseManager.notFound();
             }
 
-            pss.setNsPrefixes(namespaceMap);
-
-            String queryString = QueryLibrary.predicateQuery;
-            pss.setCommandText(queryString);
-
-            pss.setIri("graph", id);
+            QueryTemplate.Binding query = QueryLibrary.predicateTemplate.bind()
+                .prefixes(namespaceMap)
+                .iri("graph", id);
 
             if (model != null && !model.equals("undefined")) {
-                pss.setIri("library", model);
+                query.iri("library", model);
             }
 
-            return jerseyClient.constructNonEmptyGraphFromService(pss.toString(), endpointServices.getCoreSparqlAddress());
+            /* Version is read before the graph, so a concurrent write can only make the tag older than the body */
+            EntityTag version = versionManager.getVersion(id);
+            return versionManager.tag(jerseyClient.constructNonEmptyGraphFromService(query, endpointServices.getCoreSparqlAddress()), version);
 
         }
 
@@ -162,6 +157,7 @@ public class Predicate {
         @ApiResponse(responseCode = "405", description = "Update not allowed"),
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "400", description = "Invalid graph supplied"),
+        @ApiResponse(responseCode = "412", description = "Property has been modified"),
         @ApiResponse(responseCode = "500", description = "Bad data?")
     })
     public Response postPredicate(
@@ -175,7 +171,8 @@ public class Predicate {
             String oldid,
         @Parameter(description = "Model ID", required = true)
         @QueryParam("model")
-            String model) {
+            String model,
+        @Context HttpHeaders headers) {
 
         try {
 
@@ -198,6 +195,7 @@ public class Predicate {
             }
 
             String provUUID = null;
+            EntityTag version = null;
 
             if (isNotEmpty(body)) {
 
@@ -215,44 +213,52 @@ public class Predicate {
                     return jerseyResponseManager.unauthorized();
                 }
 
-                /* Rename ID if oldIdIRI exists */
-                if (oldIdIRI != null) {
-                    /* Prevent overwriting existing resources */
-                    if (graphManager.isExistingGraph(idIRI)) {
-                        logger.warn(idIRI + " is existing graph!");
-                        return jerseyResponseManager.usedIRI();
+                String currentId = oldIdIRI != null ? oldid : id;
+                try (VersionManager.GraphLock lock = versionManager.lock(currentId)) {
+                    if (!versionManager.ifMatch(headers, () -> versionManager.getVersion(currentId))) {
+                        return jerseyResponseManager.preconditionFailed();
+                    }
+
+                    /* Rename ID if oldIdIRI exists */
+                    if (oldIdIRI != null) {
+                        /* Prevent overwriting existing resources */
+                        if (graphManager.isExistingGraph(idIRI)) {
+                            logger.warn(idIRI + " is existing graph!");
+                            return jerseyResponseManager.usedIRI();
+                        } else {
+                            ReusablePredicate oldPredicate = new ReusablePredicate(oldIdIRI,graphManager);
+
+                            if(!oldPredicate.getStatus().equals(updatePredicate.getStatus())) {
+                                updatePredicate.setStatusModified();
+                            }
+
+                            graphManager.updateResourceWithNewId(updatePredicate, oldPredicate);
+                            provUUID = updatePredicate.getProvUUID();
+                            logger.info("Changed predicate id from:" + oldid + " to " + id);
+                            searchIndexManager.removePredicate(oldid);
+                            searchIndexManager.createIndexPredicate(updatePredicate);
+                        }
                     } else {
-                        ReusablePredicate oldPredicate = new ReusablePredicate(oldIdIRI,graphManager);
+                        ReusablePredicate oldPredicate = new ReusablePredicate(idIRI,graphManager);
 
                         if(!oldPredicate.getStatus().equals(updatePredicate.getStatus())) {
                             updatePredicate.setStatusModified();
                         }
 
-                        graphManager.updateResourceWithNewId(updatePredicate, oldPredicate);
+                        graphManager.updateResource(updatePredicate, oldPredicate);
+                        logger.info("Updated " + updatePredicate.getId());
                         provUUID = updatePredicate.getProvUUID();
-                        logger.info("Changed predicate id from:" + oldid + " to " + id);
-                        searchIndexManager.removePredicate(oldid);
-                        searchIndexManager.createIndexPredicate(updatePredicate);
-                    }
-                } else {
-                    ReusablePredicate oldPredicate = new ReusablePredicate(idIRI,graphManager);
-
-                    if(!oldPredicate.getStatus().equals(updatePredicate.getStatus())) {
-                        updatePredicate.setStatusModified();
+                        searchIndexManager.updateIndexPredicate(updatePredicate);
                     }
 
-                    graphManager.updateResource(updatePredicate, oldPredicate);
-                    logger.info("Updated " + updatePredicate.getId());
-                    provUUID = updatePredicate.getProvUUID();
-                    searchIndexManager.updateIndexPredicate(updatePredicate);
-                }
+                    searchIndexManager.updateIndexModel(updatePredicate.getModelId());
 
-                searchIndexManager.updateIndexModel(updatePredicate.getModelId());
+                    if (provenanceManager.getProvMode()) {
+                        provenanceManager.createProvEntityBundle(updatePredicate.getId(), updatePredicate.asGraph(), user.getId(), updatePredicate.getProvUUID(), oldIdIRI);
+                    }
 
-                if (provenanceManager.getProvMode()) {
-                    provenanceManager.createProvEntityBundle(updatePredicate.getId(), updatePredicate.asGraph(), user.getId(), updatePredicate.getProvUUID(), oldIdIRI);
+                    version = versionManager.getVersion(id);
                 }
-
             } else {
 
                 if (!authorizationManager.hasRightToAddPredicateReference(modelIRI, id)) {
@@ -272,7 +278,7 @@ public class Predicate {
             }
 
             if (provUUID != null) {
-                return jerseyResponseManager.successUuid(provUUID);
+                return versionManager.tag(jerseyResponseManager.successUuid(provUUID), version);
             } else return jerseyResponseManager.notCreated();
 
         } catch (IllegalArgumentException ex) {
@@ -330,7 +336,7 @@ public class Predicate {
             }
 
             if (provUUID != null) {
-                return jerseyResponseManager.successUrnUuid(provUUID, newPredicate.getId());
+                return versionManager.tag(jerseyResponseManager.successUrnUuid(provUUID, newPredicate.getId()), versionManager.getVersion(newPredicate.getId()));
             } else {
                 return jerseyResponseManager.notCreated();
             }
@@ -350,13 +356,15 @@ public class Predicate {
         @ApiResponse(responseCode = "204", description = "Graph is deleted"),
         @ApiResponse(responseCode = "403", description = "Illegal graph parameter"),
         @ApiResponse(responseCode = "404", description = "No such graph"),
-        @ApiResponse(responseCode = "401", description = "Unauthorized")
+        @ApiResponse(responseCode = "401", description = "Unauthorized"),
+        @ApiResponse(responseCode = "412", description = "Property has been modified")
     })
     public Response deletePredicate(
         @Parameter(description = "Model ID", required = true)
         @QueryParam("model") String model,
         @Parameter(description = "Predicate ID", required = true)
-        @QueryParam("id") String id) {
+        @QueryParam("id") String id,
+        @Context HttpHeaders headers) {
 
         /* Check that URIs are valid */
         IRI modelIRI, idIRI;
@@ -379,12 +387,17 @@ public class Predicate {
                     return jerseyResponseManager.unauthorized();
                 }
 
-                provenanceManager.deleteProvenanceFromResource(deletePredicate.getId());
+                try (VersionManager.GraphLock lock = versionManager.lock(id)) {
+                    if (!versionManager.ifMatch(headers, () -> versionManager.getVersion(id))) {
+                        return jerseyResponseManager.preconditionFailed();
+                    }
 
-                graphManager.deleteResource(deletePredicate);
-                searchIndexManager.removePredicate(id);
-                searchIndexManager.updateIndexModel(deletePredicate.getModelId());
+                    provenanceManager.deleteProvenanceFromResource(deletePredicate.getId());
 
+                    graphManager.deleteResource(deletePredicate);
+                    searchIndexManager.removePredicate(id);
+                    searchIndexManager.updateIndexModel(deletePredicate.getModelId());
+                }
             } catch (IllegalArgumentException ex) {
                 logger.warn(ex.toString());
                 return jerseyResponseManager.unexpected();
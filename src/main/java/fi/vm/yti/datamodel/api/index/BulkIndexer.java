@@ -0,0 +1,127 @@
+package fi.vm.yti.datamodel.api.index;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * Streams documents to an index through a {@link BulkProcessor}. Requests are flushed when either the action count
+ * or the byte size limit is reached and at most the configured number of bulk requests are in flight at a time.
+ * Failed documents are reported one by one instead of failing the whole batch.
+ */
+public class BulkIndexer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkIndexer.class);
+    private static final int CLOSE_TIMEOUT = 300;
+
+    private final String index;
+    private final ObjectMapper objectMapper;
+    private final BulkProcessor processor;
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    BulkIndexer(RestHighLevelClient esClient,
+                ObjectMapper objectMapper,
+                String index,
+                int bulkActions,
+                int bulkSizeMb,
+                int concurrentRequests) {
+        this.index = index;
+        this.objectMapper = objectMapper;
+        this.processor = BulkProcessor.builder((request, bulkListener) -> esClient.bulkAsync(request, RequestOptions.DEFAULT, bulkListener), new Listener())
+            .setBulkActions(bulkActions)
+            .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+            .setConcurrentRequests(concurrentRequests)
+            .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100), 3))
+            .build();
+    }
+
+    public void add(String id,
+                    Object document) {
+        IndexRequest indexRequest = new IndexRequest(index, "doc", LDHelper.encode(id))
+            .source(objectMapper.convertValue(document, Map.class));
+        processor.add(indexRequest);
+    }
+
+    public long getIndexed() {
+        return indexed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of whole bulk requests that could not be executed, e.g. because ES was unreachable
+     */
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * Flushes remaining documents and waits for in-flight bulk requests to finish.
+     */
+    @Override
+    public void close() {
+        try {
+            if (!processor.awaitClose(CLOSE_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("Bulk indexing to \"" + index + "\" did not finish in " + CLOSE_TIMEOUT + "s");
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Bulk indexing to \"" + index + "\" interrupted");
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Bulk indexed " + indexed.get() + " documents to \"" + index + "\", " + failed.get() + " failed");
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId,
+                               BulkRequest request) {
+            logger.debug("Sending bulk of " + request.numberOfActions() + " documents to \"" + index + "\"");
+        }
+
+        @Override
+        public void afterBulk(long executionId,
+                              BulkRequest request,
+                              BulkResponse response) {
+            for (BulkItemResponse item : response) {
+                if (item.isFailed()) {
+                    failed.incrementAndGet();
+                    logger.warn("Could not index \"" + item.getId() + "\" to \"" + index + "\": " + item.getFailureMessage());
+                } else {
+                    indexed.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId,
+                              BulkRequest request,
+                              Throwable failure) {
+            failed.addAndGet(request.numberOfActions());
+            failedRequests.incrementAndGet();
+            logger.warn("Bulk request of " + request.numberOfActions() + " documents to \"" + index + "\" failed", failure);
+        }
+    }
+}
@@ -14,7 +14,6 @@ import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.SearchHit;
@@ -61,16 +60,13 @@ public class DeepResourceQueryFactory {
                                      String sortLang,
                                      Set<String> modelIds) {
 
-        QueryStringQueryBuilder queryStringQuery = luceneQueryFactory.buildPrefixSuffixQuery(query).field("label.*");
-        if (sortLang != null && sortLangPattern.matcher(sortLang).matches()) {
-            queryStringQuery = queryStringQuery.field("label." + sortLang, 10);
-        }
+        QueryBuilder labelQuery = luceneQueryFactory.buildLabelQuery(query, sortLang != null && sortLangPattern.matcher(sortLang).matches() ? sortLang : null);
 
         QueryBuilder finalQuery = modelIds != null ? QueryBuilders.boolQuery()
             .must(ElasticUtils.createStatusAndModelQuery("isDefinedBy", modelIds))
-            .must(queryStringQuery) :
+            .must(labelQuery) :
             QueryBuilders.boolQuery()
-                .must(queryStringQuery);
+                .must(labelQuery);
 
         SearchRequest sr = new SearchRequest("dm_resources")
             .source(new SearchSourceBuilder()
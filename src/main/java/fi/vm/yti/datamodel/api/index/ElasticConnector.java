@@ -1,27 +1,49 @@
 package fi.vm.yti.datamodel.api.index;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Singleton;
 
 import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexResponse;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.GetAliasesResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.transport.NodeDisconnectedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +52,7 @@ import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 
 @Singleton
@@ -38,22 +61,38 @@ public class ElasticConnector {
 
     private static final Logger logger = LoggerFactory.getLogger(ElasticConnector.class);
     private static final int ES_TIMEOUT = 300;
+    private static final int SCROLL_SIZE = 1000;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
 
     private final RestHighLevelClient esClient;
     private final ObjectMapper objectMapper;
-
+    private final ApplicationProperties properties;
 
     @Autowired
     public ElasticConnector(final RestHighLevelClient esClient,
-                            final ObjectMapper objectMapper) {
+                            final ObjectMapper objectMapper,
+                            final ApplicationProperties properties) {
         this.esClient = esClient;
         this.objectMapper = objectMapper;
+        this.properties = properties;
     }
 
     public RestHighLevelClient getEsClient() {
         return esClient;
     }
 
+    /**
+     * Creates a bulk indexer for the index. The indexer must be closed to flush the remaining documents.
+     * @param index index or alias name
+     * @return bulk indexer
+     */
+    public BulkIndexer createBulkIndexer(String index) {
+        return new BulkIndexer(esClient, objectMapper, index,
+            properties.getElasticBulkActions(),
+            properties.getElasticBulkSizeMb(),
+            properties.getElasticBulkConcurrency());
+    }
+
     public boolean indexExists(String index) throws IOException {
         return esClient.indices().exists(new GetIndexRequest().indices(index), RequestOptions.DEFAULT);
     }
@@ -93,12 +132,18 @@ public class ElasticConnector {
         return exists;
     }
 
-    public void createIndex(String index) {
-        createIndex(index, null);
+    public boolean createIndex(String index) {
+        return createIndex(index, null);
     }
 
-    public void createIndex(String index,
-                            String mapping) {
+    /**
+     * Create an index with the given mapping.
+     * @param index index name
+     * @param mapping index mapping as JSON string, or null
+     * @return true if the index was created
+     */
+    public boolean createIndex(String index,
+                               String mapping) {
         CreateIndexRequest request = new CreateIndexRequest(index);
         try {
             if (mapping != null && !mapping.isEmpty()) {
@@ -106,8 +151,96 @@ public class ElasticConnector {
             }
             CreateIndexResponse createIndexResponse = esClient.indices().create(request, RequestOptions.DEFAULT);
             logger.debug("Index \"" + index + "\" created: " + createIndexResponse.isAcknowledged());
+            return createIndexResponse.isAcknowledged();
         } catch (IOException ex) {
             logger.warn("Index creation failed for \"" + index + "\"", ex);
+            return false;
+        }
+    }
+
+    public void refreshIndex(String index) throws IOException {
+        esClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Returns concrete indices matching the given index name or wildcard pattern.
+     * @param pattern index name pattern, e.g. "dm_models_v*"
+     * @return set of index names
+     * @throws IOException
+     */
+    public Set<String> getIndices(String pattern) throws IOException {
+        GetIndexResponse response = esClient.indices().get(new GetIndexRequest().indices(pattern), RequestOptions.DEFAULT);
+        return new HashSet<>(Arrays.asList(response.getIndices()));
+    }
+
+    /**
+     * Returns concrete indices the alias currently points to.
+     * @param alias alias name
+     * @return set of index names, empty if alias does not exist
+     * @throws IOException
+     */
+    public Set<String> getIndicesForAlias(String alias) throws IOException {
+        GetAliasesRequest request = new GetAliasesRequest(alias);
+        if (!esClient.indices().existsAlias(request, RequestOptions.DEFAULT)) {
+            return Collections.emptySet();
+        }
+        GetAliasesResponse response = esClient.indices().getAlias(request, RequestOptions.DEFAULT);
+        return response.getAliases().keySet();
+    }
+
+    /**
+     * Atomically points each alias to its new index. Indices previously behind the alias are detached and
+     * a legacy concrete index having the alias name is removed in the same request.
+     * @param aliasToIndex map from alias name to the new index name
+     * @throws IOException
+     */
+    public void swapAliases(Map<String, String> aliasToIndex) throws IOException {
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        for (Map.Entry<String, String> entry : aliasToIndex.entrySet()) {
+            String alias = entry.getKey();
+            Set<String> current = getIndicesForAlias(alias);
+            if (!current.isEmpty()) {
+                request.addAliasAction(AliasActions.remove().indices(current.toArray(new String[0])).alias(alias));
+            } else if (indexExists(alias)) {
+                logger.info("Replacing legacy index \"" + alias + "\" with alias");
+                request.addAliasAction(AliasActions.removeIndex().index(alias));
+            }
+            request.addAliasAction(AliasActions.add().index(entry.getValue()).alias(alias));
+        }
+        AcknowledgedResponse response = esClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+        logger.info("Aliases " + aliasToIndex + " swapped: " + response.isAcknowledged());
+    }
+
+    /**
+     * Delete index generations of the alias, i.e. indices named "alias_v&lt;timestamp&gt;", that are older than the
+     * generation the alias points to. Newer generations are left alone as they may still be under construction.
+     * @param alias alias name
+     * @throws IOException
+     */
+    public void removeOldGenerations(String alias) throws IOException {
+        final String prefix = alias + "_v";
+        long current = getIndicesForAlias(alias).stream()
+            .mapToLong(index -> parseGeneration(prefix, index))
+            .max()
+            .orElse(-1);
+        for (String index : getIndices(prefix + "*")) {
+            long generation = parseGeneration(prefix, index);
+            if (generation >= 0 && generation < current) {
+                logger.info("Removing old index generation: " + index);
+                esClient.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT);
+            }
+        }
+    }
+
+    private static long parseGeneration(String prefix,
+                                        String index) {
+        if (!index.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(index.substring(prefix.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
         }
     }
 
@@ -158,6 +291,78 @@ public class ElasticConnector {
         }
     }
 
+    /**
+     * Returns source of a document stored with a plain (not IRI encoded) id.
+     * @param index index name
+     * @param id document id
+     * @return document source, or null if the index or the document does not exist
+     * @throws IOException
+     */
+    public Map<String, Object> getDocument(String index,
+                                           String id) throws IOException {
+        if (!indexExists(index)) {
+            return null;
+        }
+        GetResponse response = esClient.get(new GetRequest(index, "doc", id), RequestOptions.DEFAULT);
+        return response.isExists() ? response.getSourceAsMap() : null;
+    }
+
+    /**
+     * Creates or replaces a document stored with a plain (not IRI encoded) id. The index is created with
+     * dynamic mapping if it does not exist.
+     * @param index index name
+     * @param id document id
+     * @param obj document
+     * @throws IOException
+     */
+    public void saveDocument(String index,
+                             String id,
+                             Object obj) throws IOException {
+        IndexRequest indexReq = new IndexRequest(index, "doc", id)
+            .source(objectMapper.convertValue(obj, Map.class), XContentType.JSON)
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+        esClient.index(indexReq, RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Scrolls through all documents matching the query and collects a single source field of each.
+     * @param index index or alias name
+     * @param query query selecting the documents
+     * @param field source field to collect
+     * @return map from document id to the field value, documents without the field are left out
+     * @throws IOException
+     */
+    public Map<String, String> getFieldValues(String index,
+                                              QueryBuilder query,
+                                              String field) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        SearchRequest searchRequest = new SearchRequest(index)
+            .scroll(SCROLL_KEEP_ALIVE)
+            .source(new SearchSourceBuilder()
+                .query(query)
+                .fetchSource(new String[]{ field }, null)
+                .size(SCROLL_SIZE));
+        SearchResponse response = esClient.search(searchRequest, RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        try {
+            while (response.getHits().getHits().length > 0) {
+                for (SearchHit hit : response.getHits().getHits()) {
+                    Object value = hit.getSourceAsMap().get(field);
+                    if (value != null) {
+                        values.put(hit.getId(), value.toString());
+                    }
+                }
+                response = esClient.scroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE), RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        } finally {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            esClient.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+        }
+        return values;
+    }
+
     public DeleteResponse removeFromIndex(String id,
                                           String index) {
         String encId = LDHelper.encode(id);
@@ -174,4 +379,13 @@ public class ElasticConnector {
             return null;
         }
     }
+
+    /**
+     * Deletes the documents matching the request
+     *
+     * @return number of deleted documents
+     */
+    public long deleteByQuery(DeleteByQueryRequest request) throws IOException {
+        return esClient.deleteByQuery(request, RequestOptions.DEFAULT).getDeleted();
+    }
 }
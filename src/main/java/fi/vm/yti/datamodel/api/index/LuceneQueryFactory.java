@@ -1,14 +1,15 @@
 package fi.vm.yti.datamodel.api.index;
 
-import java.util.Arrays;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import javax.inject.Singleton;
 import javax.ws.rs.BadRequestException;
 
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.slf4j.Logger;
@@ -25,11 +26,15 @@ public class LuceneQueryFactory {
     private static final Logger logger = LoggerFactory.getLogger(LuceneQueryFactory.class);
 
     // https://www.elastic.co/guide/en/elasticsearch/reference/current/query-dsl-query-string-query.html
-    // TODO: Make unit tests for these.
     protected static final String plainQueryPatternString = "^(?:(?!(?:\\s++|^)(?:AND|OR|TO)(?:\\s|$))(?:\\w++|\\s++|(?<=\\w)-++))+$";
     protected static final String complexQueryPatternString = "^[-+:(){}\\[\\]*?~\"/<>=^&|!\\\\\\w\\s]+$";
     protected static final String asteriskQueryPatternString = "^(?:(?!(?:\\s++|^)(?:AND|OR|TO)(?:\\s|$))(?:\\w++|\\s++|(?<=[\\w*])-++|(?<!\\*)\\*(?=[\\w-])|(?<=[\\w-])\\*(?!\\*)))+$";
 
+    /**
+     * Length of the grams in the "labelNgram" field of the index mappings
+     */
+    private static final int NGRAM_SIZE = 3;
+
     private final Pattern plainQueryPattern = Pattern.compile(plainQueryPatternString, Pattern.UNICODE_CHARACTER_CLASS);
     private final Pattern plainSplitter = Pattern.compile("\\s+", Pattern.UNICODE_CHARACTER_CLASS);
     private final Pattern givenQueryPattern;
@@ -45,26 +50,35 @@ public class LuceneQueryFactory {
         }
     }
 
-    public QueryStringQueryBuilder buildPrefixSuffixQuery(final String query) {
+    /**
+     * Builds a query matching labels. Words of plain queries must each match a whole word, a word prefix or a
+     * substring of a label. Prefixes and substrings are looked up from the edge-n-gram "labelPrefix" and trigram
+     * "labelNgram" fields, which labels of every language are copied to. Substrings are matched as phrases of
+     * consecutive trigrams, so the trigrams of a word cannot match scattered over a label. Other queries accepted
+     * by the query pattern are used as query strings against the label fields.
+     *
+     * @param query       search query
+     * @param boostedLang language whose whole-word matches are boosted, or null
+     * @return label query
+     * @throws BadRequestException if the query is not valid
+     */
+    public QueryBuilder buildLabelQuery(final String query,
+                                        final String boostedLang) {
         if (query != null) {
             final String trimmed = query.trim();
-            if (!query.isEmpty()) {
-                String parsedQuery = null;
+            if (!trimmed.isEmpty()) {
                 if (plainQueryPattern.matcher(trimmed).matches()) {
-                    String[] splitQuery = plainSplitter.split(trimmed);
-                    if (splitQuery.length == 1) {
-                        parsedQuery = trimmed + " OR " + trimmed + "* OR *" + trimmed;
-                    } else if (splitQuery.length > 1) {
-                        parsedQuery = Arrays.stream(splitQuery).map(q -> "(" + q + " OR " + q + "* OR *" + q + ")").collect(Collectors.joining(" AND "));
+                    BoolQueryBuilder labelQuery = QueryBuilders.boolQuery();
+                    for (String word : plainSplitter.split(trimmed)) {
+                        labelQuery.must(buildWordQuery(word, boostedLang));
                     }
+                    return labelQuery;
                 } else if (givenQueryPattern.matcher(trimmed).matches()) {
-                    parsedQuery = trimmed;
-                }
-                if (parsedQuery != null) {
                     StandardQueryParser parser = new StandardQueryParser();
                     try {
                         parser.setAllowLeadingWildcard(true);
-                        return QueryBuilders.queryStringQuery(parser.parse(parsedQuery, "").toString());
+                        QueryStringQueryBuilder labelQuery = QueryBuilders.queryStringQuery(parser.parse(trimmed, "").toString()).field("label.*");
+                        return boostedLang != null ? labelQuery.field("label." + boostedLang, 10) : labelQuery;
                     } catch (QueryNodeException e) {
                         // nop
                     }
@@ -74,4 +88,19 @@ public class LuceneQueryFactory {
         logger.debug("Query string disqualified: '" + query + "'");
         throw new BadRequestException("Invalid query");
     }
+
+    private QueryBuilder buildWordQuery(final String word,
+                                        final String boostedLang) {
+        BoolQueryBuilder wordQuery = QueryBuilders.boolQuery()
+            .should(QueryBuilders.multiMatchQuery(word, "label.*").operator(Operator.AND))
+            .should(QueryBuilders.matchQuery("labelPrefix", word).operator(Operator.AND))
+            .minimumShouldMatch(1);
+        if (word.length() >= NGRAM_SIZE) {
+            wordQuery.should(QueryBuilders.matchPhraseQuery("labelNgram", word));
+        }
+        if (boostedLang != null) {
+            wordQuery.should(QueryBuilders.matchQuery("label." + boostedLang, word).operator(Operator.AND).boost(10));
+        }
+        return wordQuery;
+    }
 }
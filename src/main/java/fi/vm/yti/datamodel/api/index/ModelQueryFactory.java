@@ -15,7 +15,6 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.index.query.TermsQueryBuilder;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
@@ -71,9 +70,9 @@ public class ModelQueryFactory {
                                       Boolean includeIncomplete,
                                       Set<String> includeIncompleteFrom) {
 
-        QueryStringQueryBuilder labelQuery = null;
+        QueryBuilder labelQuery = null;
         if (!query.isEmpty()) {
-            labelQuery = luceneQueryFactory.buildPrefixSuffixQuery(query).field("label.*");
+            labelQuery = luceneQueryFactory.buildLabelQuery(query, null);
         }
 
         TermsQueryBuilder idQuery = null;
@@ -0,0 +1,97 @@
+package fi.vm.yti.datamodel.api.index;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.vm.yti.datamodel.api.index.model.ReindexStatusDTO;
+
+/**
+ * Progress of the latest reindex run. Updated by the reindex workers and read by the status endpoint, so all
+ * state is either volatile or concurrent. The status of a finished run is kept until the next run starts.
+ */
+class ReindexProgress {
+
+    private volatile boolean running;
+    private volatile String generation;
+    private volatile long started;
+    private volatile long finished;
+    private volatile Boolean successful;
+    private final AtomicInteger modelsTotal = new AtomicInteger();
+    private final AtomicInteger modelsDone = new AtomicInteger();
+    private final List<String> failedModels = new CopyOnWriteArrayList<>();
+    private final List<BulkIndexer> indexers = new CopyOnWriteArrayList<>();
+
+    void start(String generation) {
+        this.generation = generation;
+        this.started = System.currentTimeMillis();
+        this.finished = 0;
+        this.successful = null;
+        modelsTotal.set(0);
+        modelsDone.set(0);
+        failedModels.clear();
+        indexers.clear();
+        running = true;
+    }
+
+    void track(BulkIndexer indexer) {
+        indexers.add(indexer);
+    }
+
+    void setModelsTotal(int total) {
+        modelsTotal.set(total);
+    }
+
+    void modelDone() {
+        modelsDone.incrementAndGet();
+    }
+
+    void modelFailed(String modelId) {
+        failedModels.add(modelId);
+        modelsDone.incrementAndGet();
+    }
+
+    int getModelsFailed() {
+        return failedModels.size();
+    }
+
+    void finish(boolean successful) {
+        this.finished = System.currentTimeMillis();
+        this.successful = successful;
+        running = false;
+    }
+
+    ReindexStatusDTO toStatus() {
+        ReindexStatusDTO status = new ReindexStatusDTO();
+        status.setRunning(running);
+        status.setGeneration(generation);
+        if (started > 0) {
+            status.setStarted(new Date(started));
+        }
+        if (finished > 0) {
+            status.setFinished(new Date(finished));
+        }
+        status.setSuccessful(successful);
+        status.setModelsTotal(modelsTotal.get());
+        status.setModelsDone(modelsDone.get());
+        status.setModelsFailed(failedModels.size());
+        status.setFailedModels(new ArrayList<>(failedModels));
+
+        long indexed = 0;
+        long failed = 0;
+        for (BulkIndexer indexer : indexers) {
+            indexed += indexer.getIndexed();
+            failed += indexer.getFailed();
+        }
+        status.setDocumentsIndexed(indexed);
+        status.setDocumentsFailed(failed);
+
+        long end = finished > 0 ? finished : System.currentTimeMillis();
+        if (started > 0 && end > started) {
+            status.setDocumentsPerSecond(indexed * 1000.0 / (end - started));
+        }
+        return status;
+    }
+}
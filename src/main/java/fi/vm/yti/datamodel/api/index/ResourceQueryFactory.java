@@ -13,7 +13,6 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
@@ -126,16 +125,8 @@ public class ResourceQueryFactory {
             mustList.add(statusQuery);
         }
 
-        QueryStringQueryBuilder labelQuery = null;
-
         if (!query.isEmpty()) {
-            labelQuery = luceneQueryFactory.buildPrefixSuffixQuery(query).field("label.*");
-
-            if (sortLang != null && sortLangPattern.matcher(sortLang).matches()) {
-                labelQuery = labelQuery.field("label." + sortLang, 10);
-            }
-
-            mustList.add(labelQuery);
+            mustList.add(luceneQueryFactory.buildLabelQuery(query, sortLang != null && sortLangPattern.matcher(sortLang).matches() ? sortLang : null));
         }
 
         if (mustList.size() > 0) {
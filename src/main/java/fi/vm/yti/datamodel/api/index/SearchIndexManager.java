@@ -3,6 +3,10 @@ package fi.vm.yti.datamodel.api.index;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import javax.inject.Singleton;
@@ -10,16 +14,17 @@ import javax.inject.Singleton;
 import fi.vm.yti.datamodel.api.service.RHPOrganizationManager;
 import org.apache.jena.iri.IRI;
 import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequest;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.vocabulary.RDFS;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.index.reindex.BulkByScrollResponse;
 import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,7 +33,10 @@ import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
 
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.index.model.DeepSearchHitListDTO;
 import fi.vm.yti.datamodel.api.index.model.IndexClassDTO;
 import fi.vm.yti.datamodel.api.index.model.IndexModelDTO;
@@ -38,6 +46,7 @@ import fi.vm.yti.datamodel.api.index.model.IntegrationContainerRequest;
 import fi.vm.yti.datamodel.api.index.model.IntegrationResourceRequest;
 import fi.vm.yti.datamodel.api.index.model.ModelSearchRequest;
 import fi.vm.yti.datamodel.api.index.model.ModelSearchResponse;
+import fi.vm.yti.datamodel.api.index.model.ReindexStatusDTO;
 import fi.vm.yti.datamodel.api.index.model.ResourceSearchRequest;
 import fi.vm.yti.datamodel.api.index.model.ResourceSearchResponse;
 import fi.vm.yti.datamodel.api.model.AbstractClass;
@@ -45,6 +54,7 @@ import fi.vm.yti.datamodel.api.model.AbstractPredicate;
 import fi.vm.yti.datamodel.api.model.DataModel;
 import fi.vm.yti.datamodel.api.model.ReusableClass;
 import fi.vm.yti.datamodel.api.model.ReusablePredicate;
+import fi.vm.yti.datamodel.api.service.BackendMetrics;
 import fi.vm.yti.datamodel.api.service.GraphManager;
 import fi.vm.yti.datamodel.api.service.JenaClient;
 import fi.vm.yti.datamodel.api.service.ModelManager;
@@ -60,6 +70,83 @@ public class SearchIndexManager {
     private static final Logger logger = LoggerFactory.getLogger(SearchIndexManager.class);
     private static final String ELASTIC_INDEX_RESOURCE = "dm_resources";
     private static final String ELASTIC_INDEX_MODEL = "dm_models";
+    private static final String ELASTIC_INDEX_SYNC = "dm_sync";
+    private static final String SYNC_STATE_ID = "state";
+    private static final int MODEL_INDEX_CHUNK = 100;
+    /**
+     * Version of resource_mapping.json and model_mapping.json. Increase when the mappings change, so that the
+     * indexes are rebuilt with a full reindex instead of being synced incrementally.
+     */
+    static final int MAPPING_VERSION = 2;
+    /**
+     * Changes are looked up this much before the high-water mark, as timestamps are written with the clocks of
+     * all API nodes. Reindexing a document twice is harmless.
+     */
+    private static final long SYNC_OVERLAP_MILLIS = 60000;
+
+    private static final String MODIFIED_MODELS_QUERY = "SELECT DISTINCT ?model WHERE { " +
+        "{ GRAPH ?model { ?model a owl:Ontology . " +
+        "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP } " +
+        "OPTIONAL { ?model iow:contentModified ?contentModified . } " +
+        "OPTIONAL { ?model iow:statusModified ?statusModified . } " +
+        "OPTIONAL { ?model dcterms:modified ?modified . } " +
+        "FILTER(?contentModified > ?since || ?statusModified > ?since || ?modified > ?since) }" +
+        "} UNION { " +
+        "GRAPH ?resource { ?resource rdfs:isDefinedBy ?model . " +
+        "?resource a ?resourceType . VALUES ?resourceType { sh:NodeShape rdfs:Class owl:ObjectProperty owl:DatatypeProperty owl:AnnotationProperty } " +
+        "OPTIONAL { ?resource iow:statusModified ?statusModified . } " +
+        "OPTIONAL { ?resource dcterms:modified ?modified . } " +
+        "FILTER(?statusModified > ?since || ?modified > ?since) }" +
+        "GRAPH ?model { ?model a owl:Ontology . " +
+        "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}" +
+        "}}";
+
+    private static final String CLASS_INDEX_QUERY = "CONSTRUCT {" +
+        "?class sh:name ?prefLabel . " +
+        "?class sh:description ?definition . " +
+        "?class rdfs:isDefinedBy ?model . " +
+        "?class dcterms:modified ?modified . " +
+        "?class dcterms:created ?created . " +
+        "?class owl:versionInfo ?status . " +
+        "?class iow:statusModified ?statusModified . " +
+        "?class a ?type . " +
+        "} WHERE { " +
+        "GRAPH ?class { ?class rdf:type ?classType . VALUES ?classType { sh:NodeShape rdfs:Class }" +
+        "?class sh:name ?prefLabel . " +
+        "?class owl:versionInfo ?status . " +
+        "OPTIONAL { ?class sh:description ?definition . FILTER(lang(?definition)!='')}" +
+        "OPTIONAL { ?class iow:statusModified ?statusModified . }" +
+        "?class a ?type . " +
+        "?class dcterms:modified ?modified . " +
+        "?class dcterms:created ?created . " +
+        "?class rdfs:isDefinedBy ?model . }" +
+        "GRAPH ?model {?model a owl:Ontology  . ?model rdfs:label ?label . " +
+        "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}}";
+
+    private static final String PREDICATE_INDEX_QUERY = "CONSTRUCT {" +
+        "?predicate rdfs:label ?prefLabel . " +
+        "?predicate a ?predicateType . " +
+        "?predicate dcterms:modified ?modified . " +
+        "?predicate dcterms:created ?created . " +
+        "?predicate rdfs:range ?range . " +
+        "?predicate rdfs:comment ?definition . " +
+        "?predicate rdfs:isDefinedBy ?model . " +
+        "?predicate owl:versionInfo ?status . " +
+        "?predicate iow:statusModified ?statusModified . " +
+        "} WHERE { " +
+        "GRAPH ?predicate { ?predicate a ?predicateType . VALUES ?predicateType { owl:ObjectProperty owl:DatatypeProperty owl:AnnotationProperty }" +
+        "?predicate rdfs:isDefinedBy ?model . " +
+        "?predicate rdfs:label ?prefLabel . " +
+        "OPTIONAL { ?predicate rdfs:range ?range . } " +
+        "OPTIONAL { ?predicate iow:statusModified ?statusModified . }" +
+        "?predicate owl:versionInfo ?status . " +
+        "?predicate dcterms:modified ?modified . " +
+        "?predicate dcterms:created ?created . " +
+        "OPTIONAL { ?predicate rdfs:comment ?definition . FILTER(lang(?definition)!='')}" +
+        "}" +
+        "GRAPH ?model {?model a owl:Ontology  . ?model rdfs:label ?label . " +
+        "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}}";
+
     private final ElasticConnector esManager;
     private final JenaClient jenaClient;
     private final GraphManager graphManager;
@@ -68,6 +155,9 @@ public class SearchIndexManager {
     private final ModelQueryFactory modelQueryFactory;
     private final DeepResourceQueryFactory deepResourceQueryFactory;
     private final ResourceQueryFactory resourceQueryFactory;
+    private final ApplicationProperties properties;
+    private final BackendMetrics backendMetrics;
+    private final ReindexProgress reindexProgress = new ReindexProgress();
     private RestHighLevelClient esClient;
     private RHPOrganizationManager organizationManager;
 
@@ -80,7 +170,9 @@ public class SearchIndexManager {
                               final ModelQueryFactory modelQueryFactory,
                               final DeepResourceQueryFactory deepClassQueryFactory,
                               final ResourceQueryFactory resourceQueryFactory,
-                              final RHPOrganizationManager organizationManager) {
+                              final RHPOrganizationManager organizationManager,
+                              final ApplicationProperties properties,
+                              final BackendMetrics backendMetrics) {
         this.esManager = esManager;
         this.esClient = esManager.getEsClient();
         this.jenaClient = jenaClient;
@@ -91,25 +183,228 @@ public class SearchIndexManager {
         this.deepResourceQueryFactory = deepClassQueryFactory;
         this.resourceQueryFactory = resourceQueryFactory;
         this.organizationManager = organizationManager;
+        this.properties = properties;
+        this.backendMetrics = backendMetrics;
     }
 
     /**
-     * Drop, re-create and fill search indexes (model and resource indexes, the latter containing classes and predicates).
+     * Re-create and fill search indexes (model and resource indexes, the latter containing classes and predicates).
+     * New index generations are built next to the live ones and the read aliases are swapped only after the
+     * generations are fully loaded, so searches never hit an empty index. Older generations are removed afterwards.
+     * Progress of the run can be followed with {@link #getReindexStatus()}. Models whose resources could not be
+     * indexed are listed there; the generation is still published unless more than reindexMaxFailedModels failed.
+     * Right after the swap the new generation is synced with the changes made to core while it was being built, so
+     * models deleted during the build do not reappear in search results.
      */
-    public void reindex() {
+    public synchronized void reindex() {
+        final long startedAt = System.currentTimeMillis();
+        final String generation = "_v" + startedAt;
+        final String resourceIndex = ELASTIC_INDEX_RESOURCE + generation;
+        final String modelIndex = ELASTIC_INDEX_MODEL + generation;
+        boolean swapped = false;
+        reindexProgress.start(generation);
         try {
-            esManager.cleanIndex(ELASTIC_INDEX_RESOURCE);
-            esManager.cleanIndex(ELASTIC_INDEX_MODEL);
-            logger.info("Indexes cleaned");
-            esManager.createIndex(ELASTIC_INDEX_RESOURCE, getResourceMappings());
-            esManager.createIndex(ELASTIC_INDEX_MODEL, getModelMappings());
-            initSearchIndexes();
+            if (!esManager.createIndex(resourceIndex, getResourceMappings()) || !esManager.createIndex(modelIndex, getModelMappings())) {
+                throw new IOException("Could not create index generation " + generation);
+            }
+            initSearchIndexes(resourceIndex, modelIndex);
+            esManager.refreshIndex(resourceIndex);
+            esManager.refreshIndex(modelIndex);
+
+            Map<String, String> aliases = new LinkedHashMap<>();
+            aliases.put(ELASTIC_INDEX_RESOURCE, resourceIndex);
+            aliases.put(ELASTIC_INDEX_MODEL, modelIndex);
+            esManager.swapAliases(aliases);
             logger.info("Indexes initialized");
-        } catch (IOException ex) {
+            swapped = true;
+            saveSyncState(generation, startedAt);
+            catchUp();
+        } catch (IOException | RuntimeException ex) {
             logger.warn("Reindex failed!", ex);
+            if (!swapped) {
+                try {
+                    esManager.cleanIndex(resourceIndex);
+                    esManager.cleanIndex(modelIndex);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Could not remove failed index generation " + generation, e);
+                }
+                return;
+            }
+        } finally {
+            reindexProgress.finish(swapped);
+        }
+        try {
+            esManager.removeOldGenerations(ELASTIC_INDEX_RESOURCE);
+            esManager.removeOldGenerations(ELASTIC_INDEX_MODEL);
+        } catch (IOException ex) {
+            logger.warn("Could not remove old index generations", ex);
         }
     }
 
+    /**
+     * Brings the live indexes up to date with core. Models changed since the persisted high-water mark, either
+     * directly or through one of their resources, are indexed again together with their resources. Documents of
+     * deleted models and resources are removed. The high-water mark is stored in ES together with the index
+     * generation it belongs to, so a new or replaced index is never synced incrementally.
+     *
+     * @return false if incremental sync is disabled, there is no high-water mark for the current generation, the
+     * generation was built with older mappings or the sync failed, in which case a full reindex is needed to bring
+     * the indexes up to date
+     */
+    public synchronized boolean syncIndexes() {
+        if (!properties.isElasticIncrementalSync()) {
+            return false;
+        }
+        try {
+            Map<String, Object> state = esManager.getDocument(ELASTIC_INDEX_SYNC, SYNC_STATE_ID);
+            if (state == null || !isCurrentGeneration(state.get("generation"))) {
+                logger.info("No sync state for the current index generation");
+                return false;
+            }
+            if (!(state.get("mappingVersion") instanceof Number) || ((Number) state.get("mappingVersion")).intValue() != MAPPING_VERSION) {
+                logger.info("Index mappings have changed since the current index generation");
+                return false;
+            }
+            final long startedAt = System.currentTimeMillis();
+            final long syncedUntil = ((Number) state.get("syncedUntil")).longValue();
+
+            int removed = removeDeletedModels(getIndexableModelIds());
+            List<String> modifiedModels = getModifiedModelIds(new Date(syncedUntil - SYNC_OVERLAP_MILLIS));
+            if (!modifiedModels.isEmpty()) {
+                indexModifiedModels(modifiedModels);
+            }
+
+            saveSyncState(state.get("generation").toString(), startedAt);
+            if (removed > 0 || !modifiedModels.isEmpty()) {
+                logger.info("Index sync: " + modifiedModels.size() + " models updated, " + removed + " removed");
+            }
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Index sync failed", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Applies changes made to core during a reindex to the just published generation. Deleted models are removed
+     * even when incremental sync is disabled or fails.
+     */
+    private void catchUp() {
+        if (syncIndexes()) {
+            return;
+        }
+        try {
+            int removed = removeDeletedModels(getIndexableModelIds());
+            if (removed > 0) {
+                logger.info("Removed " + removed + " models deleted during reindex");
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Could not remove models deleted during reindex", ex);
+        }
+    }
+
+    private boolean isCurrentGeneration(Object generation) throws IOException {
+        return generation != null
+            && esManager.getIndicesForAlias(ELASTIC_INDEX_RESOURCE).contains(ELASTIC_INDEX_RESOURCE + generation)
+            && esManager.getIndicesForAlias(ELASTIC_INDEX_MODEL).contains(ELASTIC_INDEX_MODEL + generation);
+    }
+
+    private void saveSyncState(String generation,
+                               long syncedUntil) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("generation", generation);
+        state.put("syncedUntil", syncedUntil);
+        state.put("mappingVersion", MAPPING_VERSION);
+        try {
+            esManager.saveDocument(ELASTIC_INDEX_SYNC, SYNC_STATE_ID, state);
+        } catch (IOException ex) {
+            logger.warn("Could not save index sync state", ex);
+        }
+    }
+
+    /**
+     * Returns IRIs of models that were modified after the given time or that define resources modified after it
+     */
+    private List<String> getModifiedModelIds(Date since) {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setCommandText(MODIFIED_MODELS_QUERY);
+        Calendar sinceCal = Calendar.getInstance();
+        sinceCal.setTime(since);
+        pss.setLiteral("since", sinceCal);
+
+        ResultSet results = select(pss.asQuery());
+        List<String> modelIds = new ArrayList<>();
+        while (results.hasNext()) {
+            QuerySolution soln = results.nextSolution();
+            if (soln.contains("model") && soln.get("model").isURIResource()) {
+                modelIds.add(soln.getResource("model").getURI());
+            }
+        }
+        return modelIds;
+    }
+
+    private void indexModifiedModels(List<String> modelIds) throws IOException {
+        BulkIndexer resourceIndexer = esManager.createBulkIndexer(ELASTIC_INDEX_RESOURCE);
+        BulkIndexer modelIndexer = esManager.createBulkIndexer(ELASTIC_INDEX_MODEL);
+        try {
+            for (String modelId : modelIds) {
+                List<String> resourceIds = indexClasses(modelId, resourceIndexer);
+                resourceIds.addAll(indexPredicates(modelId, resourceIndexer));
+                removeDeletedResources(modelId, resourceIds);
+            }
+            indexModels(modelIds, modelIndexer);
+        } finally {
+            resourceIndexer.close();
+            modelIndexer.close();
+        }
+        if (resourceIndexer.getFailedRequests() > 0 || modelIndexer.getFailedRequests() > 0) {
+            throw new IOException("Bulk requests failed while syncing modified models");
+        }
+    }
+
+    /**
+     * Removes index documents of the model's resources that no longer exist in core
+     */
+    private void removeDeletedResources(String modelId,
+                                        List<String> existingIds) throws IOException {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(ELASTIC_INDEX_RESOURCE);
+        request.setQuery(QueryBuilders.boolQuery()
+            .must(QueryBuilders.termQuery("isDefinedBy", modelId))
+            .mustNot(QueryBuilders.idsQuery().addIds(existingIds.stream().map(LDHelper::encode).toArray(String[]::new))));
+        long deleted = esManager.deleteByQuery(request);
+        if (deleted > 0) {
+            logger.info("Removed " + deleted + " deleted resources of \"" + modelId + "\" from \"" + ELASTIC_INDEX_RESOURCE + "\"");
+        }
+    }
+
+    /**
+     * Removes indexed models, and their resources, whose graphs no longer exist in core
+     *
+     * @return number of removed models
+     */
+    private int removeDeletedModels(List<String> existingIds) throws IOException {
+        if (existingIds.isEmpty()) {
+            logger.warn("Could not find any models in core, skipping removal of deleted models");
+            return 0;
+        }
+        Set<String> existing = new HashSet<>(existingIds);
+        int removed = 0;
+        for (String indexedId : esManager.getFieldValues(ELASTIC_INDEX_MODEL, QueryBuilders.matchAllQuery(), "id").values()) {
+            String modelId = indexedId.startsWith("iow:") ? LDHelper.curieToURI(indexedId) : indexedId;
+            if (!existing.contains(modelId)) {
+                logger.info("Removing deleted model \"" + modelId + "\" from index");
+                removeModel(modelId);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public ReindexStatusDTO getReindexStatus() {
+        return reindexProgress.toStatus();
+    }
+
     public void createIndexClass(AbstractClass classResource) {
         logger.debug("Indexing: " + classResource.getId());
         IndexClassDTO indexClass = new IndexClassDTO(classResource);
@@ -156,8 +451,8 @@ public class SearchIndexManager {
         try {
             DeleteByQueryRequest resourceRequest = new DeleteByQueryRequest(ELASTIC_INDEX_RESOURCE);
             resourceRequest.setQuery(QueryBuilders.termQuery("isDefinedBy", id));
-            BulkByScrollResponse resourceResponse = esClient.deleteByQuery(resourceRequest, RequestOptions.DEFAULT);
-            logger.info("Removed " + resourceResponse.getDeleted() + " resources from \"" + ELASTIC_INDEX_RESOURCE + "\" for model \"" + id + "\"");
+            long deleted = esManager.deleteByQuery(resourceRequest);
+            logger.info("Removed " + deleted + " resources from \"" + ELASTIC_INDEX_RESOURCE + "\" for model \"" + id + "\"");
         } catch (Exception e) {
             logger.warn("Could not delete resources for model " + id + " from index", e);
         }
@@ -236,7 +531,7 @@ public class SearchIndexManager {
                 }
             }
             ModelSearchRequest containerRequest = new ModelSearchRequest(integrationRequest);
-            SearchResponse response = esClient.search(modelQueryFactory.createQuery(containerRequest), RequestOptions.DEFAULT);
+            SearchResponse response = search(modelQueryFactory.createQuery(containerRequest));
             ModelSearchResponse containerResponse = modelQueryFactory.parseResponse(response, containerRequest, null);
             return new IntegrationAPIResponse(containerResponse, containerRequest, path);
         } catch (IOException e) {
@@ -263,7 +558,7 @@ public class SearchIndexManager {
             try {
                 Set<String> modelIds = graphManager.getPriviledgedModels(request.getIncludeIncompleteFrom());
                 SearchRequest query = deepResourceQueryFactory.createQuery(request.getQuery(), request.getSortLang(), modelIds);
-                SearchResponse response = esClient.search(query, RequestOptions.DEFAULT);
+                SearchResponse response = search(query);
                 deepSearchHits = deepResourceQueryFactory.parseResponse(response, request);
             } catch (IOException e) {
                 throw new RuntimeException(e);
@@ -279,7 +574,7 @@ public class SearchIndexManager {
             } else {
                 finalQuery = modelQueryFactory.createQuery(request);
             }
-            SearchResponse response = esClient.search(finalQuery, RequestOptions.DEFAULT);
+            SearchResponse response = search(finalQuery);
             return modelQueryFactory.parseResponse(response, request, deepSearchHits);
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -292,7 +587,7 @@ public class SearchIndexManager {
         integrationRequest.setSearchTerm(integrationRequest.getSearchTerm() != null ? integrationRequest.getSearchTerm().trim() : "");
         try {
             ResourceSearchRequest resourceRequest = new ResourceSearchRequest(integrationRequest);
-            SearchResponse response = esClient.search(resourceQueryFactory.createQuery(resourceRequest), RequestOptions.DEFAULT);
+            SearchResponse response = search(resourceQueryFactory.createQuery(resourceRequest));
             ResourceSearchResponse resourceResponse = resourceQueryFactory.parseResponse(response, resourceRequest, false);
             return new IntegrationAPIResponse(resourceResponse, resourceRequest, path);
         } catch (IOException e) {
@@ -305,13 +600,19 @@ public class SearchIndexManager {
         try {
             SearchRequest finalQuery;
             finalQuery = resourceQueryFactory.createQuery(request);
-            SearchResponse response = esClient.search(finalQuery, RequestOptions.DEFAULT);
+            SearchResponse response = search(finalQuery);
             return resourceQueryFactory.parseResponse(response, request, true);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private SearchResponse search(SearchRequest request) throws IOException {
+        return backendMetrics.elasticsearch(String.join(",", request.indices()),
+            () -> esClient.search(request, RequestOptions.DEFAULT),
+            response -> response.getHits().getTotalHits());
+    }
+
     private String getResourceMappings() throws IOException {
         InputStream is = SearchIndexManager.class.getClassLoader().getResourceAsStream("resource_mapping.json");
         Object obj = objectMapper.readTree(is);
@@ -324,25 +625,30 @@ public class SearchIndexManager {
         return objectMapper.writeValueAsString(obj);
     }
 
-    private void bulkInsert(String indexName,
-                            JsonNode resourceList) throws IOException {
-        BulkRequest bulkRequest = new BulkRequest();
-        resourceList = resourceList.get("@graph");
+    /**
+     * Adds framed JSON-LD nodes to the indexer. Compacted "iow:" ids are expanded back to URIs.
+     */
+    private void addFramedNodes(JsonNode framed,
+                                BulkIndexer indexer) {
+        List<JsonNode> resourceList = new ArrayList<>();
+        if (framed.has("@graph")) {
+            framed.get("@graph").forEach(resourceList::add);
+        } else if (framed.has("id")) {
+            ObjectNode single = framed.deepCopy();
+            single.remove("@context");
+            resourceList.add(single);
+        }
         resourceList.forEach(resource -> {
             String resourceId = resource.get("id").asText();
             if (resourceId.startsWith("iow:")) {
                 resourceId = LDHelper.curieToURI(resourceId);
             }
-            IndexRequest indexRequest = new IndexRequest(indexName, "doc", LDHelper.encode(resourceId)).
-                source(objectMapper.convertValue(resource, Map.class));
-            bulkRequest.add(indexRequest);
+            indexer.add(resourceId, resource);
         });
-        BulkResponse bresp = esClient.bulk(bulkRequest, RequestOptions.DEFAULT);
-        logger.debug("Bulk insert status: " + bresp.status().getStatus());
     }
 
-    private void initModelIndex() throws IOException {
-        String qry = LDHelper.prefix + "CONSTRUCT {" +
+    private String modelIndexQuery(Collection<String> modelIds) {
+        return LDHelper.prefix + "CONSTRUCT {" +
             "?model rdfs:label ?prefLabel . " +
             "?model rdfs:comment ?comment . " +
             "?model dcterms:description ?definition . " +
@@ -359,6 +665,7 @@ public class SearchIndexManager {
             "?model dcterms:contributor ?orgID . " +
             "?model dcterms:isPartOf ?groupID . " +
             "} WHERE { " +
+            "VALUES ?model { " + LDHelper.concatStringWithReplace(modelIds, " ", "<@this>") + " } " +
             "GRAPH ?model { " +
             "?model a owl:Ontology . " +
             "?model rdfs:label ?prefLabel . " +
@@ -376,18 +683,30 @@ public class SearchIndexManager {
             "OPTIONAL { ?model rdfs:comment ?comment . FILTER(lang(?comment)!='') }" +
             "OPTIONAL { ?model iow:useContext ?useContext . }" +
             "}}";
+    }
 
-        Model model = jenaClient.constructFromCore(qry);
-        if (model.size() < 1) {
-            logger.warn("Could not find any models to index!");
-            return;
-        }
-        JsonNode nodes = modelManager.toFramedJsonNode(model, Frames.esModelFrame);
-        if (nodes == null) {
-            logger.warn("Could not parse JSON");
-            return;
+    /**
+     * Frames and indexes models in chunks of MODEL_INDEX_CHUNK models per query
+     *
+     * @return number of models sent to the indexer
+     */
+    private int indexModels(List<String> modelIds,
+                            BulkIndexer indexer) throws IOException {
+        int count = 0;
+        for (List<String> chunk : Lists.partition(modelIds, MODEL_INDEX_CHUNK)) {
+            Model model = jenaClient.constructFromCore(modelIndexQuery(chunk));
+            if (model.size() < 1) {
+                continue;
+            }
+            JsonNode nodes = modelManager.toFramedJsonNode(model, Frames.esModelFrame);
+            if (nodes == null) {
+                logger.warn("Could not parse JSON");
+                continue;
+            }
+            addFramedNodes(nodes, indexer);
+            count += chunk.size();
         }
-        bulkInsert(ELASTIC_INDEX_MODEL, nodes);
+        return count;
     }
 
     // TODO: Not in use. Should we use externalClass API instead?
@@ -431,182 +750,164 @@ public class SearchIndexManager {
             logger.warn("Could not parse JSON");
             return;
         }
-        bulkInsert(ELASTIC_INDEX_RESOURCE, nodes);
-    }
-
-    private void initClassIndex() throws IOException {
-        String qry = LDHelper.prefix + " CONSTRUCT {" +
-            "?class sh:name ?prefLabel . " +
-            "?class sh:description ?definition . " +
-            "?class rdfs:isDefinedBy ?model . " +
-            "?class dcterms:modified ?modified . " +
-            "?class dcterms:created ?created . " +
-            "?class owl:versionInfo ?status . " +
-            "?class iow:statusModified ?statusModified . " +
-            "?class a ?type . " +
-            "} WHERE { " +
-            "GRAPH ?class { ?class rdf:type ?classType . VALUES ?classType { sh:NodeShape rdfs:Class }" +
-            "?class sh:name ?prefLabel . " +
-            "?class owl:versionInfo ?status . " +
-            "OPTIONAL { ?class sh:description ?definition . FILTER(lang(?definition)!='')}" +
-            "OPTIONAL { ?class iow:statusModified ?statusModified . }" +
-            "?class a ?type . " +
-            "?class dcterms:modified ?modified . " +
-            "?class dcterms:created ?created . " +
-            "?class rdfs:isDefinedBy ?model . }" +
-            "GRAPH ?model {?model a owl:Ontology  . ?model rdfs:label ?label . " +
-            "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}}";
-        Model model = jenaClient.constructFromCore(qry);
-        if (model.size() < 1) {
-            logger.warn("Could not find any classes to index!");
-            return;
-        }
-        JsonNode nodes = modelManager.toFramedJsonNode(model, Frames.esClassFrame);
-        if (nodes == null) {
-            logger.warn("Could not parse JSON");
-            return;
+        try (BulkIndexer indexer = esManager.createBulkIndexer(ELASTIC_INDEX_RESOURCE)) {
+            addFramedNodes(nodes, indexer);
         }
-        bulkInsert(ELASTIC_INDEX_RESOURCE, nodes);
     }
 
-    public void initClassIndexFromModel(String modelId) {
-        String qry = " CONSTRUCT {" +
-            "?class sh:name ?prefLabel . " +
-            "?class sh:description ?definition . " +
-            "?class rdfs:isDefinedBy ?model . " +
-            "?class dcterms:modified ?modified . " +
-            "?class dcterms:created ?created . " +
-            "?class owl:versionInfo ?status . " +
-            "?class iow:statusModified ?statusModified . " +
-            "?class a ?type . " +
-            "} WHERE { " +
-            "GRAPH ?class { ?class rdf:type ?classType . VALUES ?classType { sh:NodeShape rdfs:Class }" +
-            "?class sh:name ?prefLabel . " +
-            "?class owl:versionInfo ?status . " +
-            "OPTIONAL { ?class sh:description ?definition . FILTER(lang(?definition)!='')}" +
-            "OPTIONAL { ?class iow:statusModified ?statusModified . }" +
-            "?class a ?type . " +
-            "?class dcterms:modified ?modified . " +
-            "?class dcterms:created ?created . " +
-            "?class rdfs:isDefinedBy ?model . }" +
-            "GRAPH ?model {?model a owl:Ontology  . ?model rdfs:label ?label . " +
+    /**
+     * Returns IRIs of all libraries and application profiles in core
+     *
+     * @return list of model IRIs
+     */
+    public List<String> getIndexableModelIds() {
+        String qry = "SELECT ?model WHERE { " +
+            "GRAPH ?model { ?model a owl:Ontology . " +
             "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}}";
 
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setIri("model",modelId);
         pss.setCommandText(qry);
 
-        Model model = jenaClient.constructFromCore(pss.asQuery().toString());
-        if (model.size() < 1) {
-            logger.warn("Could not find any classes to index!");
-            return;
-        }
-        JsonNode nodes = null;
-        try {
-            nodes = modelManager.toFramedJsonNode(model, Frames.esClassFrame);
-            if (nodes == null) {
-                logger.warn("Could not parse JSON");
-                return;
+        ResultSet results = select(pss.asQuery());
+        List<String> modelIds = new ArrayList<>();
+        while (results.hasNext()) {
+            QuerySolution soln = results.nextSolution();
+            if (soln.contains("model") && soln.get("model").isURIResource()) {
+                modelIds.add(soln.getResource("model").getURI());
             }
-            bulkInsert(ELASTIC_INDEX_RESOURCE, nodes);
-        } catch (IOException e) {
-            logger.warn("Could not parse JSON");
-            e.printStackTrace();
-            return;
         }
+        return modelIds;
     }
 
-    private void initPredicateIndex() throws IOException {
-        String qry = LDHelper.prefix + " CONSTRUCT {" +
-            "?predicate rdfs:label ?prefLabel . " +
-            "?predicate a ?predicateType . " +
-            "?predicate dcterms:modified ?modified . " +
-            "?predicate dcterms:created ?created . " +
-            "?predicate rdfs:range ?range . " +
-            "?predicate rdfs:comment ?definition . " +
-            "?predicate rdfs:isDefinedBy ?model . " +
-            "?predicate owl:versionInfo ?status . " +
-            "?predicate iow:statusModified ?statusModified . " +
-            "} WHERE { " +
-            "GRAPH ?predicate { ?predicate a ?predicateType . VALUES ?predicateType { owl:ObjectProperty owl:DatatypeProperty owl:AnnotationProperty }" +
-            "?predicate rdfs:isDefinedBy ?model . " +
-            "?predicate rdfs:label ?prefLabel . " +
-            "OPTIONAL { ?predicate rdfs:range ?range . } " +
-            "OPTIONAL { ?predicate iow:statusModified ?statusModified . }" +
-            "?predicate owl:versionInfo ?status . " +
-            "?predicate dcterms:modified ?modified . " +
-            "?predicate dcterms:created ?created . " +
-            "OPTIONAL { ?predicate rdfs:comment ?definition . FILTER(lang(?definition)!='')}" +
-            "}" +
-            "GRAPH ?model {?model a owl:Ontology  . ?model rdfs:label ?label . " +
-            "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}}";
-        Model model = jenaClient.constructFromCore(qry);
-        if (model.size() < 1) {
-            logger.warn("Could not find any predicates to index!");
-            return;
+    private Model constructModelResources(String query,
+                                          String modelId) {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("model", modelId);
+        pss.setCommandText(query);
+        return jenaClient.constructFromCore(pss.asQuery().toString());
+    }
+
+    /**
+     * Runs the select query against core
+     */
+    private ResultSet select(Query query) {
+        return jenaClient.selectQuery(jenaClient.getEndpointServices().getCoreSparqlAddress(), query);
+    }
+
+    /**
+     * Maps classes of the model to index documents without JSON-LD framing
+     *
+     * @return IRIs of the classes sent to the indexer
+     */
+    private List<String> indexClasses(String modelId,
+                                      BulkIndexer indexer) {
+        Model model = constructModelResources(CLASS_INDEX_QUERY, modelId);
+        List<String> ids = new ArrayList<>();
+        ResIterator classes = model.listSubjectsWithProperty(RDFS.isDefinedBy);
+        while (classes.hasNext()) {
+            IndexClassDTO indexClass = new IndexClassDTO(classes.next());
+            indexer.add(indexClass.getId(), indexClass);
+            ids.add(indexClass.getId());
         }
-        JsonNode nodes = modelManager.toFramedJsonNode(model, Frames.esPredicateFrame);
-        if (nodes == null) {
-            logger.warn("Could not parse JSON");
-            return;
+        return ids;
+    }
+
+    /**
+     * Maps predicates of the model to index documents without JSON-LD framing
+     *
+     * @return IRIs of the predicates sent to the indexer
+     */
+    private List<String> indexPredicates(String modelId,
+                                         BulkIndexer indexer) {
+        Model model = constructModelResources(PREDICATE_INDEX_QUERY, modelId);
+        List<String> ids = new ArrayList<>();
+        ResIterator predicates = model.listSubjectsWithProperty(RDFS.isDefinedBy);
+        while (predicates.hasNext()) {
+            IndexPredicateDTO indexPredicate = new IndexPredicateDTO(predicates.next());
+            indexer.add(indexPredicate.getId(), indexPredicate);
+            ids.add(indexPredicate.getId());
         }
-        bulkInsert(ELASTIC_INDEX_RESOURCE, nodes);
+        return ids;
     }
 
-    public void initPredicateIndexFromModel(String modelId) {
-        String qry = " CONSTRUCT {" +
-            "?predicate rdfs:label ?prefLabel . " +
-            "?predicate a ?predicateType . " +
-            "?predicate dcterms:modified ?modified . " +
-            "?predicate dcterms:created ?created . " +
-            "?predicate rdfs:range ?range . " +
-            "?predicate rdfs:comment ?definition . " +
-            "?predicate rdfs:isDefinedBy ?model . " +
-            "?predicate owl:versionInfo ?status . " +
-            "?predicate iow:statusModified ?statusModified . " +
-            "} WHERE { " +
-            "GRAPH ?predicate { ?predicate a ?predicateType . VALUES ?predicateType { owl:ObjectProperty owl:DatatypeProperty owl:AnnotationProperty }" +
-            "?predicate rdfs:isDefinedBy ?model . " +
-            "?predicate rdfs:label ?prefLabel . " +
-            "OPTIONAL { ?predicate rdfs:range ?range . } " +
-            "OPTIONAL { ?predicate iow:statusModified ?statusModified . }" +
-            "?predicate owl:versionInfo ?status . " +
-            "?predicate dcterms:modified ?modified . " +
-            "?predicate dcterms:created ?created . " +
-            "OPTIONAL { ?predicate rdfs:comment ?definition . FILTER(lang(?definition)!='')}" +
-            "}" +
-            "GRAPH ?model {?model a owl:Ontology  . ?model rdfs:label ?label . " +
-            "?model a ?modelType . VALUES ?modelType { dcap:MetadataVocabulary dcap:DCAP }}}";
+    public void initClassIndexFromModel(String modelId) {
+        try (BulkIndexer indexer = esManager.createBulkIndexer(ELASTIC_INDEX_RESOURCE)) {
+            if (indexClasses(modelId, indexer).isEmpty()) {
+                logger.warn("Could not find any classes to index!");
+            }
+        }
+    }
 
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setIri("model",modelId);
-        pss.setCommandText(qry);
+    public void initPredicateIndexFromModel(String modelId) {
+        try (BulkIndexer indexer = esManager.createBulkIndexer(ELASTIC_INDEX_RESOURCE)) {
+            if (indexPredicates(modelId, indexer).isEmpty()) {
+                logger.warn("Could not find any predicates to index!");
+            }
+        }
+    }
 
-        Model model = jenaClient.constructFromCore(pss.asQuery().toString());
-        if (model.size() < 1) {
-            logger.warn("Could not find any predicates to index!");
-            return;
+    /**
+     * Fills the given indexes. Classes and predicates are extracted and indexed model by model on a pool of
+     * reindexThreads workers, so that throughput is bounded by Fuseki and ES rather than by the number of models.
+     * Model documents are framed on the calling thread since framing modifies the shared frame contexts.
+     */
+    private void initSearchIndexes(String resourceIndex,
+                                   String modelIndex) throws IOException {
+        List<String> modelIds = getIndexableModelIds();
+        if (modelIds.isEmpty()) {
+            logger.warn("Could not find any models to index!");
         }
-        JsonNode nodes = null;
+        logger.info("Indexing " + modelIds.size() + " models");
+        reindexProgress.setModelsTotal(modelIds.size());
+
+        BulkIndexer resourceIndexer = esManager.createBulkIndexer(resourceIndex);
+        BulkIndexer modelIndexer = esManager.createBulkIndexer(modelIndex);
+        reindexProgress.track(resourceIndexer);
+        reindexProgress.track(modelIndexer);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getReindexThreads()));
         try {
-            nodes = modelManager.toFramedJsonNode(model, Frames.esPredicateFrame);
-            if (nodes == null) {
-                logger.warn("Could not parse JSON");
-                return;
+            List<Future<?>> tasks = new ArrayList<>();
+            for (String modelId : modelIds) {
+                tasks.add(executor.submit(() -> indexModelResources(modelId, resourceIndexer)));
             }
-            bulkInsert(ELASTIC_INDEX_RESOURCE, nodes);
-        } catch (IOException e) {
-            logger.warn("Could not parse JSON");
-            e.printStackTrace();
-            return;
+            indexModels(modelIds, modelIndexer);
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reindex interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Reindex task failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+            resourceIndexer.close();
+            modelIndexer.close();
+        }
+
+        int modelsFailed = reindexProgress.getModelsFailed();
+        if (modelsFailed > properties.getReindexMaxFailedModels()) {
+            throw new IOException("Could not index resources of " + modelsFailed + " models");
+        } else if (modelsFailed > 0) {
+            logger.warn("Resources of " + modelsFailed + " models are missing from index generation " + resourceIndex);
+        }
+        if (resourceIndexer.getFailedRequests() > 0 || modelIndexer.getFailedRequests() > 0) {
+            throw new IOException("Bulk requests failed, index generation is incomplete");
         }
     }
 
-    private void initSearchIndexes() throws IOException {
-        initClassIndex();
-        initPredicateIndex();
-        initModelIndex();
+    private void indexModelResources(String modelId,
+                                     BulkIndexer indexer) {
+        try {
+            indexClasses(modelId, indexer);
+            indexPredicates(modelId, indexer);
+            reindexProgress.modelDone();
+        } catch (RuntimeException ex) {
+            logger.warn("Could not index resources of " + modelId, ex);
+            reindexProgress.modelFailed(modelId);
+        }
     }
 }
@@ -2,7 +2,15 @@ package fi.vm.yti.datamodel.api.index.model;
 
 import java.util.Map;
 
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.topbraid.shacl.vocabulary.SH;
+
 import fi.vm.yti.datamodel.api.model.AbstractClass;
+import fi.vm.yti.datamodel.api.utils.LDHelper;
 
 public class IndexClassDTO extends IndexResourceDTO {
 
@@ -51,6 +59,23 @@ public class IndexClassDTO extends IndexResourceDTO {
         this.comment = classResource.getComment();
     }
 
+    /**
+     * Maps class resource from the index CONSTRUCT query result directly to the index document
+     *
+     * @param classResource class or shape resource
+     */
+    public IndexClassDTO(Resource classResource) {
+        this.id = classResource.getURI();
+        this.isDefinedBy = resourceValue(classResource, RDFS.isDefinedBy);
+        this.status = literalValue(classResource, OWL.versionInfo);
+        this.statusModified = literalValue(classResource, LDHelper.curieToProperty("iow:statusModified"));
+        this.modified = literalValue(classResource, DCTerms.modified);
+        this.created = literalValue(classResource, DCTerms.created);
+        this.type = classResource.hasProperty(RDF.type, RDFS.Class) ? "class" : "shape";
+        this.label = languageMap(classResource, SH.name);
+        this.comment = languageMap(classResource, SH.description);
+    }
+
     public String getId() {
         return id;
     }
@@ -2,10 +2,20 @@ package fi.vm.yti.datamodel.api.index.model;
 
 import java.util.Map;
 
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
 import fi.vm.yti.datamodel.api.model.AbstractPredicate;
+import fi.vm.yti.datamodel.api.utils.LDHelper;
 
 public class IndexPredicateDTO extends IndexResourceDTO {
 
+    private static final PrefixMapping RANGE_PREFIXES = PrefixMapping.Factory.create().setNsPrefixes(LDHelper.PREFIX_MAP).lock();
+
     private String id;
     private String isDefinedBy;
     private String status;
@@ -51,6 +61,33 @@ public class IndexPredicateDTO extends IndexResourceDTO {
         this.comment = predicate.getComment();
     }
 
+    /**
+     * Maps predicate resource from the index CONSTRUCT query result directly to the index document
+     *
+     * @param predicateResource attribute, association or annotation resource
+     */
+    public IndexPredicateDTO(Resource predicateResource) {
+        this.id = predicateResource.getURI();
+        this.isDefinedBy = resourceValue(predicateResource, RDFS.isDefinedBy);
+        this.status = literalValue(predicateResource, OWL.versionInfo);
+        this.statusModified = literalValue(predicateResource, LDHelper.curieToProperty("iow:statusModified"));
+        this.modified = literalValue(predicateResource, DCTerms.modified);
+        this.created = literalValue(predicateResource, DCTerms.created);
+        if (predicateResource.hasProperty(RDF.type, OWL.ObjectProperty)) {
+            this.type = "association";
+        } else if (predicateResource.hasProperty(RDF.type, OWL.AnnotationProperty)) {
+            this.type = "annotation";
+        } else {
+            this.type = "attribute";
+        }
+        this.label = languageMap(predicateResource, RDFS.label);
+        this.comment = languageMap(predicateResource, RDFS.comment);
+        String rangeValue = resourceValue(predicateResource, RDFS.range);
+        if (rangeValue != null) {
+            setRange(RANGE_PREFIXES.shortForm(rangeValue));
+        }
+    }
+
     public String getId() {
         return id;
     }
@@ -1,8 +1,15 @@
 package fi.vm.yti.datamodel.api.index.model;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+
 import fi.vm.yti.datamodel.api.model.AbstractClass;
 
 public class IndexResourceDTO {
@@ -55,6 +62,40 @@ public class IndexResourceDTO {
         this.comment = classResource.getComment();
     }
 
+    /**
+     * Lexical form of the first literal value of the property, or null
+     */
+    protected static String literalValue(Resource resource,
+                                         Property property) {
+        Statement statement = resource.getProperty(property);
+        if (statement == null || !statement.getObject().isLiteral()) {
+            return null;
+        }
+        return statement.getLiteral().getLexicalForm();
+    }
+
+    /**
+     * Language tagged values of the property as language to value map, or null if there are none
+     */
+    protected static Map<String, String> languageMap(Resource resource,
+                                                     Property property) {
+        Map<String, String> map = new HashMap<>();
+        resource.listProperties(property).forEachRemaining(statement -> {
+            RDFNode object = statement.getObject();
+            if (object.isLiteral()) {
+                Literal literal = object.asLiteral();
+                map.put(literal.getLanguage(), literal.getString());
+            }
+        });
+        return map.isEmpty() ? null : map;
+    }
+
+    protected static String resourceValue(Resource resource,
+                                          Property property) {
+        Resource value = resource.getPropertyResourceValue(property);
+        return value != null && value.isURIResource() ? value.getURI() : null;
+    }
+
     public String getId() {
         return id;
     }
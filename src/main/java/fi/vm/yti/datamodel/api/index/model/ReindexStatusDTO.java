@@ -0,0 +1,116 @@
+package fi.vm.yti.datamodel.api.index.model;
+
+import java.util.Date;
+import java.util.List;
+
+public class ReindexStatusDTO {
+
+    private boolean running;
+    private String generation;
+    private Date started;
+    private Date finished;
+    private Boolean successful;
+    private int modelsTotal;
+    private int modelsDone;
+    private int modelsFailed;
+    private long documentsIndexed;
+    private long documentsFailed;
+    private double documentsPerSecond;
+    private List<String> failedModels;
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(final boolean running) {
+        this.running = running;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(final String generation) {
+        this.generation = generation;
+    }
+
+    public Date getStarted() {
+        return started;
+    }
+
+    public void setStarted(final Date started) {
+        this.started = started;
+    }
+
+    public Date getFinished() {
+        return finished;
+    }
+
+    public void setFinished(final Date finished) {
+        this.finished = finished;
+    }
+
+    public Boolean getSuccessful() {
+        return successful;
+    }
+
+    public void setSuccessful(final Boolean successful) {
+        this.successful = successful;
+    }
+
+    public int getModelsTotal() {
+        return modelsTotal;
+    }
+
+    public void setModelsTotal(final int modelsTotal) {
+        this.modelsTotal = modelsTotal;
+    }
+
+    public int getModelsDone() {
+        return modelsDone;
+    }
+
+    public void setModelsDone(final int modelsDone) {
+        this.modelsDone = modelsDone;
+    }
+
+    public int getModelsFailed() {
+        return modelsFailed;
+    }
+
+    public void setModelsFailed(final int modelsFailed) {
+        this.modelsFailed = modelsFailed;
+    }
+
+    public long getDocumentsIndexed() {
+        return documentsIndexed;
+    }
+
+    public void setDocumentsIndexed(final long documentsIndexed) {
+        this.documentsIndexed = documentsIndexed;
+    }
+
+    public long getDocumentsFailed() {
+        return documentsFailed;
+    }
+
+    public void setDocumentsFailed(final long documentsFailed) {
+        this.documentsFailed = documentsFailed;
+    }
+
+    public double getDocumentsPerSecond() {
+        return documentsPerSecond;
+    }
+
+    public void setDocumentsPerSecond(final double documentsPerSecond) {
+        this.documentsPerSecond = documentsPerSecond;
+    }
+
+    public List<String> getFailedModels() {
+        return failedModels;
+    }
+
+    public void setFailedModels(final List<String> failedModels) {
+        this.failedModels = failedModels;
+    }
+}
@@ -0,0 +1,31 @@
+package fi.vm.yti.datamodel.api.migration.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import fi.vm.yti.datamodel.api.service.GraphManager;
+import fi.vm.yti.migration.MigrationTask;
+
+/**
+ * Rebuilds export graphs by copying graphs within the store, so that blank nodes in export graphs are shared with
+ * the model and resource graphs and can be removed when those graphs change
+ */
+@Component
+public class V4_ExportGraphs implements MigrationTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(V4_ExportGraphs.class.getName());
+    private final GraphManager graphManager;
+
+    @Autowired
+    V4_ExportGraphs(GraphManager graphManager) {
+        this.graphManager = graphManager;
+    }
+
+    @Override
+    public void migrate() {
+        logger.info("Rebuilding export graphs");
+        graphManager.rebuildExportGraphs();
+    }
+}
@@ -0,0 +1,97 @@
+package fi.vm.yti.datamodel.api.model;
+
+import java.util.Date;
+
+public class VersionStatusDTO {
+
+    private String model;
+    private String newModel;
+    private String phase;
+    private boolean running;
+    private Date started;
+    private Date finished;
+    private Boolean successful;
+    private int graphsTotal;
+    private int graphsRead;
+    private String error;
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(final String model) {
+        this.model = model;
+    }
+
+    public String getNewModel() {
+        return newModel;
+    }
+
+    public void setNewModel(final String newModel) {
+        this.newModel = newModel;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public void setPhase(final String phase) {
+        this.phase = phase;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(final boolean running) {
+        this.running = running;
+    }
+
+    public Date getStarted() {
+        return started;
+    }
+
+    public void setStarted(final Date started) {
+        this.started = started;
+    }
+
+    public Date getFinished() {
+        return finished;
+    }
+
+    public void setFinished(final Date finished) {
+        this.finished = finished;
+    }
+
+    public Boolean getSuccessful() {
+        return successful;
+    }
+
+    public void setSuccessful(final Boolean successful) {
+        this.successful = successful;
+    }
+
+    public int getGraphsTotal() {
+        return graphsTotal;
+    }
+
+    public void setGraphsTotal(final int graphsTotal) {
+        this.graphsTotal = graphsTotal;
+    }
+
+    public int getGraphsRead() {
+        return graphsRead;
+    }
+
+    public void setGraphsRead(final int graphsRead) {
+        this.graphsRead = graphsRead;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(final String error) {
+        this.error = error;
+    }
+}
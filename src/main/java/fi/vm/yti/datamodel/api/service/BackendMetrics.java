@@ -0,0 +1,298 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers and result size histograms for calls to Fuseki, Elasticsearch and other services. Meters are tagged with
+ * the route template of the API request that caused the call, e.g. "GET /class", which is set for the request thread
+ * by the Jersey endpoint filter and is "none" for background work. Percentile histograms are published only for the
+ * SLO timers fuseki.requests and elasticsearch.search, the other meters report counts, totals and maxima.
+ * <ul>
+ * <li>fuseki.requests: SPARQL and graph store calls made through JenaClient, tagged with dataset, operation
+ * (select, construct, ask, update, get, head, put, add, delete) and outcome. Result sizes in fuseki.result.size.</li>
+ * <li>fuseki.http.requests: every HTTP request to Fuseki, including direct query executions, until response headers
+ * are received. Tagged with dataset, operation and status.</li>
+ * <li>elasticsearch.requests: every Elasticsearch HTTP request tagged with index, operation and status, and
+ * elasticsearch.search with hit counts in elasticsearch.search.hits.</li>
+ * <li>external.requests: calls made with JAX-RS clients, such as group management and terminology calls, tagged
+ * with host, method and status. Recorded by {@link HttpClientMetricsFilter}.</li>
+ * <li>sparql.templates: executions of compiled query templates, tagged with the template and outcome.</li>
+ * </ul>
+ */
+@Service
+public class BackendMetrics {
+
+    private static final ThreadLocal<String> ENDPOINT = new ThreadLocal<>();
+    private static final String START_ATTRIBUTE = BackendMetrics.class.getName() + ".start";
+    private static final Pattern QUERY_FORM = Pattern.compile("\\b(SELECT|CONSTRUCT|ASK|DESCRIBE)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INDEX_GENERATION = Pattern.compile("_v\\d+(?=,|$)");
+    private static final Set<String> SLO_TIMERS = Set.of("fuseki.requests", "elasticsearch.search");
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public BackendMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    public static void setEndpoint(String endpoint) {
+        ENDPOINT.set(endpoint);
+    }
+
+    public static void clearEndpoint() {
+        ENDPOINT.remove();
+    }
+
+    public static String currentEndpoint() {
+        String endpoint = ENDPOINT.get();
+        return endpoint != null ? endpoint : "none";
+    }
+
+    /**
+     * Times the call as a Fuseki request
+     *
+     * @param dataset   dataset name, such as core or prov
+     * @param operation select, construct, ask, update, get, head, put, add or delete
+     * @param call      call to time
+     * @param size      result size in rows or triples, or -1 if not applicable
+     */
+    public <T> T fuseki(String dataset,
+                        String operation,
+                        Call<T, RuntimeException> call,
+                        ResultSize<T> size) {
+        return record("fuseki.requests", "fuseki.result.size", "dataset", dataset, operation, call, size);
+    }
+
+    /**
+     * Times the call as an Elasticsearch search
+     *
+     * @param index index or indices searched
+     * @param call  call to time
+     * @param hits  number of hits
+     */
+    public <T, E extends Exception> T elasticsearch(String index,
+                                                    Call<T, E> call,
+                                                    ResultSize<T> hits) throws E {
+        return record("elasticsearch.search", "elasticsearch.search.hits", "index", index, "search", call, hits);
+    }
+
+    /**
+     * Times the execution of a compiled query template
+     *
+     * @param template name of the template
+     * @param call     call to time
+     */
+    public <T> T template(String template,
+                          Call<T, RuntimeException> call) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } finally {
+            Timer.builder("sparql.templates")
+                .tag("template", template)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ResultSize<T> {
+
+        long of(T result);
+    }
+
+    private <T, E extends Exception> T record(String timerName,
+                                              String sizeName,
+                                              String targetTag,
+                                              String target,
+                                              String operation,
+                                              Call<T, E> call,
+                                              ResultSize<T> size) throws E {
+        String endpoint = currentEndpoint();
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            long resultSize = result != null && size != null ? size.of(result) : -1;
+            if (resultSize >= 0) {
+                DistributionSummary.builder(sizeName)
+                    .tag(targetTag, target)
+                    .tag("operation", operation)
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry)
+                    .record(resultSize);
+            }
+            return result;
+        } finally {
+            Timer.builder(timerName)
+                .tag(targetTag, target)
+                .tag("operation", operation)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram(SLO_TIMERS.contains(timerName))
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records the start of an Apache HTTP client request. Install together with {@link #fusekiResponseInterceptor()}
+     * or {@link #elasticsearchResponseInterceptor()}.
+     */
+    public HttpRequestInterceptor requestStartInterceptor() {
+        return (request, context) -> context.setAttribute(START_ATTRIBUTE, new RequestStart(System.nanoTime(), operation(request), currentEndpoint()));
+    }
+
+    public HttpResponseInterceptor fusekiResponseInterceptor() {
+        return (response, context) -> {
+            RequestStart start = (RequestStart) context.getAttribute(START_ATTRIBUTE);
+            if (start == null) {
+                return;
+            }
+            Timer.builder("fuseki.http.requests")
+                .tag("dataset", firstPathSegment(requestUri(context)))
+                .tag("operation", start.operation)
+                .tag("endpoint", start.endpoint)
+                .tag("status", Integer.toString(response.getStatusLine().getStatusCode()))
+                .register(meterRegistry)
+                .record(System.nanoTime() - start.nanoTime, TimeUnit.NANOSECONDS);
+        };
+    }
+
+    public HttpResponseInterceptor elasticsearchResponseInterceptor() {
+        return (response, context) -> {
+            RequestStart start = (RequestStart) context.getAttribute(START_ATTRIBUTE);
+            if (start == null) {
+                return;
+            }
+            URI uri = requestUri(context);
+            String path = uri.getPath() != null ? uri.getPath() : "";
+            Timer.builder("elasticsearch.requests")
+                .tag("index", elasticsearchIndex(uri))
+                .tag("operation", elasticsearchOperation(path, start.operation))
+                .tag("status", Integer.toString(response.getStatusLine().getStatusCode()))
+                .register(meterRegistry)
+                .record(System.nanoTime() - start.nanoTime, TimeUnit.NANOSECONDS);
+        };
+    }
+
+    private static final class RequestStart {
+
+        private final long nanoTime;
+        private final String operation;
+        private final String endpoint;
+
+        private RequestStart(long nanoTime,
+                             String operation,
+                             String endpoint) {
+            this.nanoTime = nanoTime;
+            this.operation = operation;
+            this.endpoint = endpoint;
+        }
+    }
+
+    private static URI requestUri(HttpContext context) {
+        Object request = context.getAttribute("http.request");
+        try {
+            if (request instanceof HttpRequestWrapper) {
+                return ((HttpRequestWrapper) request).getURI();
+            }
+            if (request instanceof HttpRequest) {
+                return URI.create(((HttpRequest) request).getRequestLine().getUri());
+            }
+        } catch (IllegalArgumentException ex) {
+            // Not worth failing the request for
+        }
+        return URI.create("/");
+    }
+
+    private static String firstPathSegment(URI uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        String[] segments = path.split("/");
+        return segments.length > 1 && !segments[1].isEmpty() ? segments[1] : "none";
+    }
+
+    /**
+     * Classifies a request by the endpoint of the dataset and the HTTP method. Query forms are read from GET
+     * queries. Queries sent as forms are classified by the requested result type.
+     */
+    private static String operation(HttpRequest request) {
+        String method = request.getRequestLine().getMethod().toLowerCase(Locale.ROOT);
+        URI uri;
+        try {
+            uri = URI.create(request.getRequestLine().getUri());
+        } catch (IllegalArgumentException ex) {
+            return method;
+        }
+        String path = uri.getPath() != null ? uri.getPath() : "";
+
+        if (path.endsWith("/update")) {
+            return "update";
+        }
+        if (path.endsWith("/sparql") || path.endsWith("/query")) {
+            String query = uri.getRawQuery();
+            if (query != null && query.contains("query=")) {
+                Matcher matcher = QUERY_FORM.matcher(URLDecoder.decode(query, StandardCharsets.UTF_8));
+                if (matcher.find()) {
+                    return matcher.group(1).toLowerCase(Locale.ROOT);
+                }
+            }
+            Header accept = request.getFirstHeader("Accept");
+            return accept != null && accept.getValue().contains("sparql-results") ? "select" : "construct";
+        }
+        return method;
+    }
+
+    /**
+     * Index generations such as dm_models_v1612345678 are reported by their alias, so that every reindex does not
+     * create a new set of meters
+     */
+    static String elasticsearchIndex(URI uri) {
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        if (path.startsWith("/_")) {
+            return "none";
+        }
+        return INDEX_GENERATION.matcher(firstPathSegment(uri)).replaceAll("");
+    }
+
+    private static String elasticsearchOperation(String path,
+                                                 String method) {
+        for (String operation : new String[]{ "_search", "_msearch", "_count", "_bulk", "_delete_by_query", "_update_by_query", "_doc", "_mapping", "_alias", "_settings" }) {
+            if (path.contains(operation)) {
+                return operation.substring(1);
+            }
+        }
+        return method;
+    }
+}
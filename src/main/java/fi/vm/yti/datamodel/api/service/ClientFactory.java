@@ -15,17 +15,21 @@ public class ClientFactory {
 
     private final SSLContext sslContext;
     private final ApplicationProperties properties;
+    private final HttpClientMetricsFilter metricsFilter;
 
     @Autowired
     ClientFactory(SSLContext sslContext,
-                  ApplicationProperties properties) {
+                  ApplicationProperties properties,
+                  HttpClientMetricsFilter metricsFilter) {
         this.sslContext = sslContext;
         this.properties = properties;
+        this.metricsFilter = metricsFilter;
     }
 
     public Client create() {
         return ClientBuilder.newBuilder()
             .sslContext(sslContext)
+            .register(metricsFilter)
             .build();
     }
 
@@ -34,6 +38,7 @@ public class ClientFactory {
             .sslContext(sslContext)
             .property(ClientProperties.CONNECT_TIMEOUT, 180000)
             .property(ClientProperties.READ_TIMEOUT, 180000)
+            .register(metricsFilter)
             .build();
     }
 
@@ -18,11 +18,14 @@ public class ContextWriter {
 
     private final EndpointServices endpointServices;
     private final JsonSchemaWriter jsonSchemaWriter;
+    private final JenaClient jenaClient;
 
     ContextWriter(EndpointServices endpointServices,
-                  JsonSchemaWriter jsonSchemaWriter) {
+                  JsonSchemaWriter jsonSchemaWriter,
+                  JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.jsonSchemaWriter = jsonSchemaWriter;
+        this.jenaClient = jenaClient;
     }
 
     /**
@@ -75,9 +78,9 @@ public class ContextWriter {
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
         pss.setCommandText(selectResources);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) return null;
 
@@ -158,41 +161,42 @@ public class ContextWriter {
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
         pss.setCommandText(selectResources);
 
-        QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-        ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
-        if (!results.hasNext()) return null;
-
-        int i = 0;
-        while (results.hasNext()) {
-            if (++i == Integer.MAX_VALUE) {
-                throw new RuntimeException("Too many items for iteration");
-            }
-            QuerySolution soln = results.nextSolution();
-            String resourceURI = soln.getResource("resource").toString();
-            String resourceName = soln.getLiteral("resourceName").toString();
-            String localResourceName = soln.contains("localResourceName") ? LDHelper.removeInvalidCharacters(soln.getLiteral("localResourceName").getString()) : null;
+            if (!results.hasNext()) return null;
 
-            if (soln.contains("targetClass")) {
-                resourceURI = soln.getResource("targetClass").toString();
-            }
+            int i = 0;
+            while (results.hasNext()) {
+                if (++i == Integer.MAX_VALUE) {
+                    throw new RuntimeException("Too many items for iteration");
+                }
+                QuerySolution soln = results.nextSolution();
+                String resourceURI = soln.getResource("resource").toString();
+                String resourceName = soln.getLiteral("resourceName").toString();
+                String localResourceName = soln.contains("localResourceName") ? LDHelper.removeInvalidCharacters(soln.getLiteral("localResourceName").getString()) : null;
 
-            JsonObjectBuilder resourceObject = Json.createObjectBuilder();
+                if (soln.contains("targetClass")) {
+                    resourceURI = soln.getResource("targetClass").toString();
+                }
 
-            String type = soln.contains("type") ? soln.getResource("type").getURI() : null;
+                JsonObjectBuilder resourceObject = Json.createObjectBuilder();
 
-            if (type != null && (type.equals(RDFS.Class.getURI()) || type.equals(SH.NodeShape.getURI()))) {
-                context.add(localResourceName != null && localResourceName.length() > 0 ? localResourceName : resourceName, resourceURI);
-            } else {
-                resourceObject.add("@id", resourceURI);
+                String type = soln.contains("type") ? soln.getResource("type").getURI() : null;
 
-                if (soln.contains("datatype")) {
-                    resourceObject.add("@type", soln.getResource("datatype").toString());
+                if (type != null && (type.equals(RDFS.Class.getURI()) || type.equals(SH.NodeShape.getURI()))) {
+                    context.add(localResourceName != null && localResourceName.length() > 0 ? localResourceName : resourceName, resourceURI);
                 } else {
-                    resourceObject.add("@type", "@id");
+                    resourceObject.add("@id", resourceURI);
+
+                    if (soln.contains("datatype")) {
+                        resourceObject.add("@type", soln.getResource("datatype").toString());
+                    } else {
+                        resourceObject.add("@type", "@id");
+                    }
+                    context.add(localResourceName != null && localResourceName.length() > 0 ? localResourceName : resourceName, resourceObject.build());
                 }
-                context.add(localResourceName != null && localResourceName.length() > 0 ? localResourceName : resourceName, resourceObject.build());
             }
         }
 
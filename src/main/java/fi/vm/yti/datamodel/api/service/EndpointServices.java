@@ -2,8 +2,6 @@ package fi.vm.yti.datamodel.api.service;
 
 import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 
-import org.apache.jena.rdfconnection.RDFConnection;
-import org.apache.jena.rdfconnection.RDFConnectionRemote;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -15,10 +13,6 @@ public final class EndpointServices {
         this.endpoint = properties.getEndpoint();
     }
 
-    public RDFConnection getCoreConnection() {
-        return RDFConnectionRemote.create().destination(endpoint + "/core/").build();
-    }
-
     public String getEndpoint() {
         return this.endpoint;
     }
@@ -55,6 +49,10 @@ public final class EndpointServices {
         return "http://localhost:3030/core/sparql";
     }
 
+    public String getLocalhostSchemesSparqlAddress() {
+        return "http://localhost:3030/scheme/sparql";
+    }
+
     public String getCoreSparqlUpdateAddress() {
         return endpoint + "/core/update";
     }
@@ -0,0 +1,197 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * Cache for generated model exports (JSON-LD context, JSON Schema, XML Schema and OpenAPI). Entries are keyed by
+ * model, format, language, response content type, the modification timestamps of the model and the modification
+ * timestamps of the code schemes referenced by its resources through dcam:memberOf, so a modified model or an updated
+ * code list never hits a stale entry even when the change was made on another node. The key doubles as the ETag of
+ * the export, so the raw and the typed response of the same export get different tags. The cache is bounded by the
+ * total size of the cached documents.
+ */
+@Service
+public class ExportCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportCache.class.getName());
+
+    private final JenaClient jenaClient;
+    private final EndpointServices endpointServices;
+    private final Cache<ExportKey, String> cache;
+
+    @Autowired
+    ExportCache(JenaClient jenaClient,
+                EndpointServices endpointServices,
+                ApplicationProperties properties) {
+        this.jenaClient = jenaClient;
+        this.endpointServices = endpointServices;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(properties.getExportCacheMaxSizeMb() * 1024L * 1024L)
+            .weigher((ExportKey key, String value) -> 2 * value.length())
+            .build();
+    }
+
+    /**
+     * Returns the cache key of the export, or null if the model does not exist. Costs one query to core, which
+     * reads the timestamps of the referenced code schemes from the scheme dataset through SERVICE.
+     *
+     * @param graph       model IRI
+     * @param format      export format
+     * @param lang        export language, or null
+     * @param contentType content type of the response
+     * @return export key
+     */
+    public ExportKey getKey(String graph,
+                            String format,
+                            String lang,
+                            String contentType) {
+        String version = getVersion(graph);
+        return version != null ? new ExportKey(graph, format, lang, contentType, version) : null;
+    }
+
+    /**
+     * Returns the cached export or generates and caches it. Exports that could not be generated are not cached.
+     *
+     * @param key       export key
+     * @param generator generator for the export
+     * @return export or null
+     */
+    public String get(ExportKey key,
+                      Supplier<String> generator) {
+        String export = cache.getIfPresent(key);
+        if (export == null) {
+            export = generator.get();
+            if (export != null) {
+                cache.put(key, export);
+            }
+        } else {
+            logger.debug("Export cache hit for " + key.graph);
+        }
+        return export;
+    }
+
+    /**
+     * Removes all cached exports of the model
+     *
+     * @param graph model IRI
+     */
+    public void invalidate(String graph) {
+        cache.asMap().keySet().removeIf(key -> key.graph.equals(graph));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private String getVersion(String graph) {
+        String query = "SELECT ?contentModified ?modified ?statusModified ?scheme ?schemeModified WHERE { "
+            + "GRAPH ?graph { ?graph a owl:Ontology . "
+            + "OPTIONAL { ?graph iow:contentModified ?contentModified . } "
+            + "OPTIONAL { ?graph dcterms:modified ?modified . } "
+            + "OPTIONAL { ?graph iow:statusModified ?statusModified . } "
+            + "} "
+            + "OPTIONAL { "
+            + "{ SELECT DISTINCT ?scheme WHERE { "
+            + "GRAPH ?modelPartGraph { ?graph dcterms:hasPart ?resource . } "
+            + "GRAPH ?resource { ?property dcam:memberOf ?scheme . } "
+            + "FILTER(isIRI(?scheme)) } } "
+            + "OPTIONAL { SERVICE SILENT ?schemeService { GRAPH ?scheme { ?scheme dcterms:modified ?schemeModified . } } } "
+            + "} "
+            + "} ORDER BY ?scheme ?schemeModified";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("graph", graph);
+        pss.setIri("modelPartGraph", graph + "#HasPartGraph");
+        pss.setIri("schemeService", endpointServices.getLocalhostSchemesSparqlAddress());
+        pss.setCommandText(query);
+
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        if (!results.hasNext()) {
+            return null;
+        }
+        QuerySolution soln = results.next();
+        StringBuilder version = new StringBuilder()
+            .append(lexicalForm(soln, "contentModified")).append('|')
+            .append(lexicalForm(soln, "modified")).append('|')
+            .append(lexicalForm(soln, "statusModified")).append('|');
+        while (soln != null) {
+            if (soln.contains("scheme") && !LDHelper.isInvalidIRI(soln.getResource("scheme").getURI())) {
+                version.append(soln.getResource("scheme").getURI()).append('=').append(lexicalForm(soln, "schemeModified")).append(';');
+            }
+            soln = results.hasNext() ? results.next() : null;
+        }
+        return version.toString();
+    }
+
+    private static String lexicalForm(QuerySolution soln,
+                                      String var) {
+        return soln.contains(var) && soln.get(var).isLiteral() ? soln.getLiteral(var).getLexicalForm() : "";
+    }
+
+    public static final class ExportKey {
+
+        private final String graph;
+        private final String format;
+        private final String lang;
+        private final String contentType;
+        private final String version;
+
+        private ExportKey(String graph,
+                          String format,
+                          String lang,
+                          String contentType,
+                          String version) {
+            this.graph = graph;
+            this.format = format;
+            this.lang = lang;
+            this.contentType = contentType;
+            this.version = version;
+        }
+
+        public EntityTag getEntityTag() {
+            String content = graph + "\n" + format + "\n" + lang + "\n" + contentType + "\n" + version;
+            return new EntityTag(Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).toString());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExportKey that = (ExportKey) o;
+            return graph.equals(that.graph) &&
+                format.equals(that.format) &&
+                Objects.equals(lang, that.lang) &&
+                Objects.equals(contentType, that.contentType) &&
+                version.equals(that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(graph, format, lang, contentType, version);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.jena.riot.web.HttpOp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Owns the HTTP connection pool used for all Fuseki access. The client is installed as the Jena default
+ * ({@link HttpOp#setDefaultHttpClient}), so DatasetAccessors, remote query executions and remote updates created
+ * anywhere in the application reuse the same keep-alive connections. Pool usage is published as
+ * "fuseki.pool.connections" gauges tagged with the connection state, and every request is timed by
+ * {@link BackendMetrics}.
+ */
+@Service
+public class FusekiConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(FusekiConnectionPool.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final RequestConfig requestConfig;
+    private final CloseableHttpClient httpClient;
+
+    @Autowired
+    public FusekiConnectionPool(ApplicationProperties properties,
+                                MeterRegistry meterRegistry,
+                                BackendMetrics backendMetrics) {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getFusekiMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getFusekiMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(2000);
+
+        requestConfig = RequestConfig.custom()
+            .setConnectTimeout(properties.getFusekiConnectTimeoutMs())
+            .setConnectionRequestTimeout(properties.getFusekiConnectionRequestTimeoutMs())
+            .setSocketTimeout(properties.getFusekiSocketTimeoutMs())
+            .build();
+
+        final long keepAlive = properties.getFusekiKeepAliveMs();
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+        };
+
+        // Content compression is enabled by default, i.e. gzip/deflate are accepted and decoded transparently
+        HttpClientBuilder builder = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(keepAliveStrategy)
+            .evictExpiredConnections()
+            .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+            .addInterceptorFirst(backendMetrics.requestStartInterceptor())
+            .addInterceptorLast(backendMetrics.fusekiResponseInterceptor());
+
+        if (properties.getFusekiPassword() != null && properties.getFusekiUser() != null) {
+            logger.debug("Setting fuseki user & password!");
+            CredentialsProvider credsProvider = new BasicCredentialsProvider();
+            credsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(properties.getFusekiUser(), properties.getFusekiPassword()));
+            builder.setDefaultCredentialsProvider(credsProvider);
+        } else {
+            logger.debug("No fuseki password found!");
+        }
+
+        httpClient = builder.build();
+        HttpOp.setDefaultHttpClient(httpClient);
+
+        registerGauge(meterRegistry, "leased", PoolStats::getLeased);
+        registerGauge(meterRegistry, "pending", PoolStats::getPending);
+        registerGauge(meterRegistry, "available", PoolStats::getAvailable);
+        registerGauge(meterRegistry, "max", PoolStats::getMax);
+
+        logger.info("Fuseki connection pool: " + properties.getFusekiMaxConnections() + " connections, " + properties.getFusekiMaxConnectionsPerRoute() + " per route");
+    }
+
+    private void registerGauge(MeterRegistry meterRegistry,
+                               String state,
+                               ToIntFunction<PoolStats> value) {
+        Gauge.builder("fuseki.pool.connections", connectionManager, manager -> value.applyAsInt(manager.getTotalStats()))
+            .tag("state", state)
+            .description("Fuseki HTTP connection pool usage")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns a view of the pooled client whose requests wait at most the given time for a pooled connection, for
+     * connecting and for each read. Used to bound calls that, unlike query executions, have no timeout of their own
+     * by the remaining time to their deadline. Closing the view does not close the pool.
+     *
+     * @param timeoutMs timeout in milliseconds
+     * @return client using the shared pool
+     */
+    public HttpClient withTimeout(long timeoutMs) {
+        int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeoutMs));
+        RequestConfig config = RequestConfig.copy(requestConfig)
+            .setConnectionRequestTimeout(cap(requestConfig.getConnectionRequestTimeout(), timeout))
+            .setConnectTimeout(cap(requestConfig.getConnectTimeout(), timeout))
+            .setSocketTimeout(cap(requestConfig.getSocketTimeout(), timeout))
+            .build();
+        return new TimeoutHttpClient(config);
+    }
+
+    private static int cap(int configured,
+                           int timeout) {
+        // Zero or negative means no timeout
+        return configured > 0 ? Math.min(configured, timeout) : timeout;
+    }
+
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException ex) {
+            logger.warn("Could not close Fuseki connection pool", ex);
+        }
+    }
+
+    /**
+     * Executes requests with the shared client, using the given request config instead of the default one
+     */
+    private final class TimeoutHttpClient extends CloseableHttpClient {
+
+        private final RequestConfig config;
+
+        private TimeoutHttpClient(RequestConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target,
+                                                  HttpRequest request,
+                                                  HttpContext context) throws IOException {
+            HttpClientContext clientContext = HttpClientContext.adapt(context != null ? context : new BasicHttpContext());
+            clientContext.setRequestConfig(config);
+            return httpClient.execute(target, request, clientContext);
+        }
+
+        @Override
+        public void close() {
+            // The pool is closed with the shared client
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public HttpParams getParams() {
+            return httpClient.getParams();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClientConnectionManager getConnectionManager() {
+            return httpClient.getConnectionManager();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Guards calls to Fuseki datasets. Each dataset (core, prov, imports, ...) has
+ * <ul>
+ * <li>a bulkhead limiting concurrent calls, so that a slow dataset cannot take all server threads</li>
+ * <li>a circuit breaker that rejects calls for a while after consecutive failures</li>
+ * <li>a deadline per call, within which idempotent calls are retried with jittered exponential backoff</li>
+ * </ul>
+ * Only transient failures (connection errors and 5xx responses) are retried and counted by the circuit breaker.
+ * Rejected calls throw {@link FusekiUnavailableException}.
+ * <p>
+ * Published metrics, tagged with the dataset: "fuseki.calls" timer tagged with the outcome, "fuseki.retries",
+ * "fuseki.circuit.state" (0 closed, 1 open, 2 half open) and "fuseki.bulkhead.available".
+ */
+@Service
+public class FusekiResilience {
+
+    private static final Logger logger = LoggerFactory.getLogger(FusekiResilience.class.getName());
+
+    private enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final ApplicationProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, DatasetGuard> guards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FusekiResilience(ApplicationProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Executes an idempotent call, retrying transient failures within the deadline
+     *
+     * @param service address of the dataset service
+     * @param call    call taking the remaining time to the deadline in milliseconds
+     */
+    public <T> T execute(String service,
+                         LongFunction<T> call) {
+        return execute(service, call, properties.getFusekiRetries(), null);
+    }
+
+    /**
+     * Executes a call that must not be repeated, such as a SPARQL update
+     *
+     * @param service address of the dataset service
+     * @param call    call taking the remaining time to the deadline in milliseconds
+     */
+    public <T> T executeOnce(String service,
+                             LongFunction<T> call) {
+        return execute(service, call, 0, null);
+    }
+
+    /**
+     * Executes an idempotent call opening a response stream, retrying transient failures within the deadline. The
+     * connection stays busy while the response is read, so the bulkhead permit of the call is held until the
+     * returned stream is closed.
+     *
+     * @param service address of the dataset service
+     * @param call    call taking the remaining time to the deadline in milliseconds
+     * @return stream that must be closed by the caller, or null if the call returned null
+     */
+    public InputStream executeStream(String service,
+                                     LongFunction<InputStream> call) {
+        return executeHolding(service, call, PermitReleasingInputStream::new);
+    }
+
+    /**
+     * Executes an idempotent call opening a result that is read after the call returns, retrying transient failures
+     * within the deadline. The bulkhead permit of the call is handed to the result, which must release it once it
+     * has been read.
+     *
+     * @param service address of the dataset service
+     * @param call    call taking the remaining time to the deadline in milliseconds
+     * @param holder  takes over the permit of a non-null result together with the action releasing it
+     * @return result returned by the holder, or null if the call returned null
+     */
+    public <T> T executeHolding(String service,
+                                LongFunction<T> call,
+                                BiFunction<T, Runnable, T> holder) {
+        return execute(service, call, properties.getFusekiRetries(), holder);
+    }
+
+    /**
+     * @param holder if given, takes over the bulkhead permit of a successful non-null result together with the
+     *               action releasing it, and returns the result handed to the caller
+     */
+    private <T> T execute(String service,
+                          LongFunction<T> call,
+                          int retries,
+                          BiFunction<T, Runnable, T> holder) {
+        DatasetGuard guard = guards.computeIfAbsent(datasetOf(service), DatasetGuard::new);
+        long deadline = System.currentTimeMillis() + properties.getFusekiDeadlineMs();
+
+        for (int attempt = 0; ; attempt++) {
+            RuntimeException failure;
+            boolean permitHeld = false;
+            guard.acquire();
+            long start = System.nanoTime();
+            try {
+                T result = call.apply(deadline - System.currentTimeMillis());
+                guard.succeeded(start);
+                if (holder != null && result != null) {
+                    result = holder.apply(result, guard::release);
+                    permitHeld = true;
+                }
+                return result;
+            } catch (RuntimeException ex) {
+                if (!isTransient(ex)) {
+                    // Fuseki answered, so the dataset is up
+                    guard.succeeded(start);
+                    throw ex;
+                }
+                guard.failed(start);
+                failure = ex;
+            } finally {
+                if (!permitHeld) {
+                    guard.release();
+                }
+            }
+
+            long delay = backoff(attempt);
+            if (attempt >= retries || System.currentTimeMillis() + delay >= deadline) {
+                throw failure;
+            }
+            logger.warn("Fuseki call to " + guard.dataset + " failed, retrying in " + delay + " ms: " + failure.getMessage());
+            guard.retries.increment();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw failure;
+            }
+        }
+    }
+
+    private long backoff(int attempt) {
+        long base = properties.getFusekiRetryBaseDelayMs();
+        long delay = Math.min(properties.getFusekiRetryMaxDelayMs(), base << Math.min(attempt, 16));
+        // Full jitter between half and the whole delay
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * @return true if the call failed before Fuseki answered or Fuseki answered with a 5xx or 429, in which case
+     * the call may succeed if it is repeated later
+     */
+    static boolean isTransient(RuntimeException ex) {
+        int code;
+        if (ex instanceof HttpException) {
+            code = ((HttpException) ex).getResponseCode();
+        } else if (ex instanceof QueryExceptionHTTP) {
+            code = ((QueryExceptionHTTP) ex).getResponseCode();
+        } else {
+            return false;
+        }
+        // No response code means that the request failed before a response was received
+        return code <= 0 || code >= 500 || code == 429;
+    }
+
+    /**
+     * @return dataset name from a service address such as http://fuseki:3030/core/sparql
+     */
+    public String datasetOf(String service) {
+        String endpoint = properties.getEndpoint();
+        if (endpoint == null || service == null || !service.startsWith(endpoint + "/")) {
+            return "other";
+        }
+        String path = service.substring(endpoint.length() + 1);
+        int slash = path.indexOf('/');
+        return slash > 0 ? path.substring(0, slash) : path;
+    }
+
+    /**
+     * Releases a bulkhead permit once when the stream is closed
+     */
+    private static final class PermitReleasingInputStream extends FilterInputStream {
+
+        private final Runnable release;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitReleasingInputStream(InputStream in,
+                                           Runnable release) {
+            super(in);
+            this.release = release;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    release.run();
+                }
+            }
+        }
+    }
+
+    private final class DatasetGuard {
+
+        private final String dataset;
+        private final Semaphore bulkhead;
+        private final Counter retries;
+        private final Timer succeeded;
+        private final Timer failed;
+        private final Counter rejected;
+
+        /* Circuit breaker state, guarded by this */
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInProgress;
+
+        private DatasetGuard(String dataset) {
+            this.dataset = dataset;
+            this.bulkhead = new Semaphore(properties.getFusekiBulkheadMaxCalls(), true);
+            this.retries = Counter.builder("fuseki.retries")
+                .tag("dataset", dataset)
+                .description("Retried Fuseki calls")
+                .register(meterRegistry);
+            this.succeeded = callTimer("success");
+            this.failed = callTimer("failure");
+            this.rejected = Counter.builder("fuseki.rejected")
+                .tag("dataset", dataset)
+                .description("Fuseki calls rejected by the circuit breaker or the bulkhead")
+                .register(meterRegistry);
+            Gauge.builder("fuseki.circuit.state", this, guard -> guard.circuitState().ordinal())
+                .tag("dataset", dataset)
+                .description("Fuseki circuit breaker state: 0 closed, 1 open, 2 half open")
+                .register(meterRegistry);
+            Gauge.builder("fuseki.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .tag("dataset", dataset)
+                .description("Available concurrent Fuseki calls")
+                .register(meterRegistry);
+        }
+
+        private Timer callTimer(String outcome) {
+            return Timer.builder("fuseki.calls")
+                .tag("dataset", dataset)
+                .tag("outcome", outcome)
+                .description("Fuseki calls")
+                .register(meterRegistry);
+        }
+
+        private synchronized CircuitState circuitState() {
+            return state;
+        }
+
+        void acquire() {
+            long openMs = properties.getFusekiCircuitOpenMs();
+            synchronized (this) {
+                if (state == CircuitState.OPEN) {
+                    long remaining = openedAt + openMs - System.currentTimeMillis();
+                    if (remaining > 0) {
+                        rejected.increment();
+                        throw new FusekiUnavailableException(dataset, "circuit breaker is open", remaining);
+                    }
+                    state = CircuitState.HALF_OPEN;
+                }
+                if (state == CircuitState.HALF_OPEN) {
+                    if (trialInProgress) {
+                        rejected.increment();
+                        throw new FusekiUnavailableException(dataset, "circuit breaker is half open", openMs);
+                    }
+                    trialInProgress = true;
+                }
+            }
+
+            boolean acquired = false;
+            try {
+                acquired = bulkhead.tryAcquire(properties.getFusekiBulkheadMaxWaitMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (!acquired) {
+                synchronized (this) {
+                    trialInProgress = false;
+                }
+                rejected.increment();
+                throw new FusekiUnavailableException(dataset, "too many concurrent calls", properties.getFusekiBulkheadMaxWaitMs());
+            }
+        }
+
+        void release() {
+            bulkhead.release();
+        }
+
+        synchronized void succeeded(long start) {
+            succeeded.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (state != CircuitState.CLOSED) {
+                logger.info("Fuseki circuit breaker for " + dataset + " closed");
+            }
+            state = CircuitState.CLOSED;
+            consecutiveFailures = 0;
+            trialInProgress = false;
+        }
+
+        synchronized void failed(long start) {
+            failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            trialInProgress = false;
+            consecutiveFailures++;
+            if (state == CircuitState.HALF_OPEN || (state == CircuitState.CLOSED && consecutiveFailures >= properties.getFusekiCircuitFailureThreshold())) {
+                logger.warn("Fuseki circuit breaker for " + dataset + " opened after " + consecutiveFailures + " consecutive failures");
+                state = CircuitState.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+    }
+}
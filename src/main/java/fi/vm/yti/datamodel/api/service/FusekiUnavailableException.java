@@ -0,0 +1,27 @@
+package fi.vm.yti.datamodel.api.service;
+
+/**
+ * Thrown when a call to a Fuseki dataset is rejected without being sent, because the circuit breaker of the
+ * dataset is open or too many calls to the dataset are already in progress.
+ */
+public class FusekiUnavailableException extends RuntimeException {
+
+    private final String dataset;
+    private final long retryAfterMs;
+
+    public FusekiUnavailableException(String dataset,
+                                      String reason,
+                                      long retryAfterMs) {
+        super("Fuseki dataset " + dataset + " is unavailable: " + reason);
+        this.dataset = dataset;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public String getDataset() {
+        return dataset;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
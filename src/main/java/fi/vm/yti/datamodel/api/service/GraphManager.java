@@ -3,40 +3,48 @@
  */
 package fi.vm.yti.datamodel.api.service;
 
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.config.UriProperties;
 import fi.vm.yti.datamodel.api.model.AbstractModel;
 import fi.vm.yti.datamodel.api.model.AbstractResource;
+import fi.vm.yti.datamodel.api.model.VersionStatusDTO;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 
-import org.apache.jena.atlas.web.HttpException;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.datatypes.xsd.XSDDateTime;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.iri.IRI;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sparql.modify.request.UpdateDrop;
 import org.apache.jena.update.UpdateException;
-import org.apache.jena.update.UpdateExecutionFactory;
-import org.apache.jena.update.UpdateProcessor;
 import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.util.FileManager;
 import org.apache.jena.util.ResourceUtils;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.RDF;
-import org.apache.jena.web.DatasetAdapter;
-import org.apache.jena.web.DatasetGraphAccessorHTTP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.topbraid.shacl.vocabulary.SH;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -44,6 +52,7 @@ import java.util.stream.Stream;
 public class GraphManager {
 
     private static final Logger logger = LoggerFactory.getLogger(GraphManager.class.getName());
+    private static final int GRAPH_FETCH_CHUNK = 200;
 
     private final EndpointServices endpointServices;
     private final JenaClient jenaClient;
@@ -51,8 +60,23 @@ public class GraphManager {
     private final ModelManager modelManager;
     private final UriProperties uriProperties;
     private final ServiceDescriptionManager serviceDescriptionManager;
+    private final ExportCache exportCache;
+    private final NamespaceManager namespaceManager;
+    private final OrganizationModelCache organizationModelCache;
+    private final GraphRegistry graphRegistry;
+    private final ApplicationProperties properties;
     private final String versionGraphURI = "urn:yti:metamodel:version";
+    /**
+     * Graph listing models whose export graph is rebuilt on next read, see {@link ApplicationProperties#isLazyExportGraph()}
+     */
+    private static final String STALE_EXPORT_GRAPHS = "urn:yti:metamodel:staleExportGraphs";
+    private static final String STALE_EXPORT_GRAPH_TYPE = "urn:yti:metamodel:StaleExportGraph";
     private final ExecutorService executor = Executors.newFixedThreadPool(1);
+    /* Progress of running and recent versionings by the IRI of the new version */
+    private final Cache<String, VersionProgress> versionProgress = CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .maximumSize(100)
+        .build();
 
     @Autowired
     GraphManager(EndpointServices endpointServices,
@@ -60,7 +84,12 @@ public class GraphManager {
                  TerminologyManager terminologyManager,
                  ModelManager modelManager,
                  ServiceDescriptionManager serviceDescriptionManager,
-                 UriProperties uriProperties) {
+                 UriProperties uriProperties,
+                 ExportCache exportCache,
+                 NamespaceManager namespaceManager,
+                 OrganizationModelCache organizationModelCache,
+                 GraphRegistry graphRegistry,
+                 ApplicationProperties properties) {
 
         this.endpointServices = endpointServices;
         this.jenaClient = jenaClient;
@@ -68,6 +97,11 @@ public class GraphManager {
         this.modelManager = modelManager;
         this.serviceDescriptionManager = serviceDescriptionManager;
         this.uriProperties = uriProperties;
+        this.exportCache = exportCache;
+        this.namespaceManager = namespaceManager;
+        this.organizationModelCache = organizationModelCache;
+        this.graphRegistry = graphRegistry;
+        this.properties = properties;
     }
 
     public static UpdateRequest renameIDRequest(IRI oldID,
@@ -417,19 +451,7 @@ public class GraphManager {
      * @return Returns graph as Jena model
      */
     public Model getCoreGraph(IRI graph) {
-
-        try {
-            return getCoreGraph(graph.toString());
-        } catch (HttpException ex) {
-            logger.warn(ex.toString());
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                logger.warn("Thread error", e);
-                Thread.currentThread().interrupt();
-            }
-            return getCoreGraph(graph.toString());
-        }
+        return getCoreGraph(graph.toString());
     }
 
     /**
@@ -476,6 +498,10 @@ public class GraphManager {
      */
     public boolean isExistingPrefix(String prefix) {
 
+        if (graphRegistry.containsGraph(uriProperties.getUriHostPathAddress() + prefix) || graphRegistry.isStandardPrefix(prefix)) {
+            return true;
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         String queryString = " ASK { {GRAPH ?graph { ?s ?p ?o . }} UNION { ?s a dcterms:Standard . ?s dcap:preferredXMLNamespacePrefix ?prefix . }}";
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
@@ -511,6 +537,10 @@ public class GraphManager {
      */
     public boolean isExistingGraph(String graphIRI) {
 
+        if (graphRegistry.containsGraph(graphIRI)) {
+            return true;
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         String queryString = " ASK { GRAPH ?graph { ?s ?p ?o }}";
         pss.setCommandText(queryString);
@@ -519,6 +549,9 @@ public class GraphManager {
         Query query = pss.asQuery();
         try {
             boolean b = jenaClient.askQuery(endpointServices.getCoreSparqlAddress(), query);
+            if (b) {
+                graphRegistry.addGraph(graphIRI);
+            }
             return b;
         } catch (Exception ex) {
             return false;
@@ -546,12 +579,19 @@ public class GraphManager {
 
         if (graphIRI.endsWith("#")) graphIRI = graphIRI.substring(0, graphIRI.length() - 1);
 
+        if (graphRegistry.containsServiceGraph(graphIRI)) {
+            return true;
+        }
+
         pss.setCommandText(queryString);
         pss.setIri("graphName", graphIRI);
 
         Query query = pss.asQuery();
         try {
             boolean b = jenaClient.askQuery(endpointServices.getCoreSparqlAddress(), query);
+            if (b) {
+                graphRegistry.addServiceGraph(graphIRI);
+            }
             return b;
         } catch (Exception ex) {
             return false;
@@ -566,6 +606,10 @@ public class GraphManager {
      */
     public boolean isExistingGraphBasedOnPrefix(String prefix) {
 
+        if (graphRegistry.getModelByPrefix(prefix) != null) {
+            return true;
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
         String queryString = " ASK { GRAPH ?graph { ?graph a owl:Ontology . ?graph dcap:preferredXMLNamespacePrefix ?prefix . }}";
@@ -581,36 +625,14 @@ public class GraphManager {
         }
     }
 
+    /**
+     * Returns models contributed by the organizations. Served from the organization model cache.
+     */
     public Set<String> getPriviledgedModels(Set<String> orgs) {
 
         if (orgs == null) return null;
 
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-        String selectModelIds =
-            "SELECT DISTINCT ?graph WHERE { "
-                + "GRAPH ?graph { " +
-                " ?graph a owl:Ontology . "
-                + "?graph dcterms:contributor ?orgs . "
-                + "VALUES ?orgs { " + LDHelper.concatStringWithReplace(orgs, " ", "<urn:uuid:@this>") + " }" +
-                "}}";
-
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setCommandText(selectModelIds);
-
-        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
-
-        Set<String> modelIds = new HashSet<>();
-
-        while (results.hasNext()) {
-            QuerySolution soln = results.nextSolution();
-            if (soln.contains("graph")) {
-                Resource resType = soln.getResource("graph");
-                modelIds.add(resType.getURI());
-            }
-        }
-
-        return modelIds;
-
+        return organizationModelCache.getModels(orgs);
     }
 
     /**
@@ -621,6 +643,11 @@ public class GraphManager {
      */
     public String getServiceGraphNameWithPrefix(String prefix) {
 
+        GraphRegistry.ModelNamespace modelNamespace = graphRegistry.getModelByPrefix(prefix);
+        if (modelNamespace != null) {
+            return modelNamespace.getGraph();
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         String selectResources =
             "SELECT ?graph WHERE { "
@@ -661,9 +688,14 @@ public class GraphManager {
 
     public PrefixMapping getPrefixMappingFromResource(IRI resource) {
 
+        GraphRegistry.ModelNamespace modelNamespace = graphRegistry.getModelOfResource(resource.toString());
+        if (modelNamespace != null && modelNamespace.getNamespace() != null) {
+            return PrefixMapping.Factory.create().setNsPrefix(modelNamespace.getPrefix(), modelNamespace.getNamespace());
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         String selectResources =
-            "SELECT ?prefix ?namespace WHERE { "
+            "SELECT ?graph ?prefix ?namespace WHERE { "
                 + "GRAPH ?graph { " +
                 " ?graph a owl:Ontology . " +
                 "?graph dcap:preferredXMLNamespacePrefix ?prefix . " +
@@ -690,6 +722,7 @@ public class GraphManager {
             }
             String prefix = soln.getLiteral("prefix").getString();
             String namespace = soln.getLiteral("namespace").getString();
+            graphRegistry.addResource(resource.toString(), soln.getResource("graph").getURI());
             PrefixMapping pm = PrefixMapping.Factory.create().setNsPrefix(prefix, namespace);
             return pm;
         }
@@ -701,12 +734,10 @@ public class GraphManager {
      */
     public void createDefaultGraph() {
 
-        DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(endpointServices.getCoreReadWriteAddress());
-
         Model m = ModelFactory.createDefaultModel();
         RDFDataMgr.read(m, LDHelper.getDefaultGraphInputStream(), RDFLanguages.JSONLD);
 
-        accessor.putModel("urn:csc:iow:sd", m);
+        jenaClient.putModelToCore("urn:csc:iow:sd", m);
 
     }
 
@@ -732,6 +763,7 @@ public class GraphManager {
         newQuery += "DROP SILENT GRAPH <" + model + "#HasPartGraph>; ";
         newQuery += "DROP SILENT GRAPH <" + model + "#ExportGraph>; ";
         newQuery += "DROP SILENT GRAPH <" + model + "#PositionGraph>; ";
+        newQuery += "DELETE WHERE { GRAPH <" + VersionManager.POSITION_VERSIONS_GRAPH + "> { <" + model + "#PositionGraph> ?p ?o . }}; ";
 
         int i = 0;
         while (results.hasNext()) {
@@ -759,15 +791,17 @@ public class GraphManager {
         pss.setIri("graph", id);
 
         logger.info("Removing model from " + id);
+        namespaceManager.invalidateModelNamespaceMap(id.toString());
+        organizationModelCache.removeModel(id.toString());
+        graphRegistry.removeModel(id.toString());
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
         /* TODO: remove when resolved JENA-1255 */
         // namespaceBugFix(id.toString());
 
         try {
-            qexec.execute();
+            jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
         } catch (UpdateException ex) {
             logger.warn(ex.toString());
         }
@@ -797,12 +831,12 @@ public class GraphManager {
         pss.setIri("graph", id);
 
         logger.warn("Removing graph " + id);
+        graphRegistry.removeGraph(id.toString());
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
         try {
-            qexec.execute();
+            jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
         } catch (UpdateException ex) {
             logger.warn(ex.toString());
         }
@@ -824,8 +858,7 @@ public class GraphManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
         /* OPTIONALLY. Ummm. Not really?
 
@@ -858,8 +891,7 @@ public class GraphManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /**
@@ -876,14 +908,9 @@ public class GraphManager {
 
         UpdateRequest queryObj = pss.asUpdate();
 
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
-
-        qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getProvSparqlUpdateAddress());
-        qexec.execute();
-
-        qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getTempConceptSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
+        jenaClient.updateToService(queryObj, endpointServices.getProvSparqlUpdateAddress());
+        jenaClient.updateToService(queryObj, endpointServices.getTempConceptSparqlUpdateAddress());
 
     }
 
@@ -896,8 +923,7 @@ public class GraphManager {
     public void renameID(IRI oldID,
                          IRI newID) {
         UpdateRequest queryObj = renameIDRequest(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /**
@@ -912,8 +938,7 @@ public class GraphManager {
                                                 IRI newID) {
 
         UpdateRequest queryObj = updateReferencesInPositionGraphRequest(modelID, oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
@@ -946,8 +971,7 @@ public class GraphManager {
         logger.warn("Updating references in " + modelID.toString());
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
@@ -968,8 +992,7 @@ public class GraphManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /**
@@ -997,51 +1020,44 @@ public class GraphManager {
         logger.warn("Updating references in " + modelID.toString() + "#ExportGraph");
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
     public void updateStatusAndProvInModel(IRI oldID,
                                            IRI newID) {
         UpdateRequest queryObj = updateStatusAndRevisionInModelRequest(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void updateStatusAndDerivationInModel(IRI oldID,
                                                  IRI newID) {
         UpdateRequest queryObj = updateStatusAndDerivationInModelRequest(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void renameObjectIRIinModel(IRI oldID,
                                        IRI newID) {
         UpdateRequest queryObj = updateObjectIRIInGraph(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void changeNamespaceInObjects(IRI oldID,
                                          IRI newID) {
         UpdateRequest queryObj = updateNamespaceInObject(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void changeNamespaceInResources(IRI oldID,
                                            IRI newID) {
         UpdateRequest queryObj = renameResourcesInNewGraphsQuery(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void changeStatusInNewGraphs(IRI oldID,
                                         IRI newID) {
         UpdateRequest queryObj = changeStatusInNewGraphsQuery(oldID, newID);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /**
@@ -1097,15 +1113,13 @@ public class GraphManager {
         pss.setIri("exportGraph", model + "#ExportGraph");
         pss.setIri("resource", resource);
         pss.setCommandText(query);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
 
         Model prefixModel = ModelFactory.createDefaultModel();
         prefixModel.setNsPrefixes(getPrefixMappingFromResource(resource));
         prefixModel.add(ResourceFactory.createResource(model.toString()), RDF.type, OWL.Ontology);
-        DatasetAccessor toAccessor = DatasetAccessorFactory.createHTTP(endpointServices.getCoreReadWriteAddress());
-        toAccessor.add(model.toString(), prefixModel);
-        toAccessor.add(model.toString() + "#ExportGraph", prefixModel);
+        jenaClient.addModelToCore(model.toString(), prefixModel);
+        jenaClient.addModelToCore(model.toString() + "#ExportGraph", prefixModel);
 
     }
 
@@ -1134,8 +1148,7 @@ public class GraphManager {
         pss.setLiteral("endStatus", endStatus);
         pss.setLiteral("statusModified", LDHelper.getDateTimeLiteral());
         pss.setCommandText(query);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /*
@@ -1231,8 +1244,7 @@ public class GraphManager {
         pss.setIri("to", to);
         pss.setCommandText(query);
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /**
@@ -1266,94 +1278,336 @@ public class GraphManager {
         return copyPss.asUpdate();
     }
 
-    public void createVersionGraphsWithJenaAdapter(Model oldModelGraph,
-                                                   String newPrefix,
-                                                   IRI model,
-                                                   IRI newModel) {
+    /**
+     * Creates a new version of the model. Graphs of the model are fetched with batched quad queries and renamed in
+     * memory. Resource, HasPart and Position graphs of the new version are then written with a single SPARQL Update
+     * that drops and inserts them in one transaction. The model graph is put last, so the version does not exist
+     * until everything else has been written and a failed versioning can simply be retried. Progress of the
+     * versioning can be followed with {@link #getVersionStatus(String)}.
+     */
+    public void createVersionGraphs(Model oldModelGraph,
+                                    String newPrefix,
+                                    IRI model,
+                                    IRI newModel) {
 
-        Literal created = LDHelper.getDateTimeLiteral();
+        VersionProgress progress = new VersionProgress(model.toString(), newModel.toString());
+        versionProgress.put(newModel.toString(), progress);
 
-        DatasetGraphAccessorHTTP accessor = new DatasetGraphAccessorHTTP(endpointServices.getCoreReadWriteAddress());
-        DatasetAdapter adapter = new DatasetAdapter(accessor);
-
-        Resource modelResource = oldModelGraph.getResource(model.toString());
-        ResourceUtils.renameResource(modelResource, newModel.toString());
-        oldModelGraph.setNsPrefix(newPrefix, newModel.toString() + "#");
-        Resource newModelResource = ResourceFactory.createResource(newModel.toString());
-        LDHelper.rewriteLiteral(oldModelGraph, newModelResource, DCTerms.created, created);
-        LDHelper.rewriteLiteral(oldModelGraph, newModelResource, DCTerms.modified, created);
-        LDHelper.rewriteLiteral(oldModelGraph, newModelResource, DCTerms.identifier, ResourceFactory.createPlainLiteral("urn:uuid:" + UUID.randomUUID().toString()));
-        LDHelper.removeLiteral(oldModelGraph, newModelResource, LDHelper.curieToProperty("iow:contentModified"));
-        LDHelper.rewriteLiteral(oldModelGraph, newModelResource, OWL.versionInfo, ResourceFactory.createPlainLiteral("INCOMPLETE"));
-        LDHelper.rewriteResourceReference(oldModelGraph, newModelResource, LDHelper.curieToProperty("prov:wasRevisionOf"), ResourceFactory.createResource(model.toString()));
-        LDHelper.rewriteLiteral(oldModelGraph, newModelResource, LDHelper.curieToProperty("dcap:preferredXMLNamespaceName"), ResourceFactory.createPlainLiteral(newModel.toString() + "#"));
-        LDHelper.rewriteLiteral(oldModelGraph, newModelResource, LDHelper.curieToProperty("dcap:preferredXMLNamespacePrefix"), ResourceFactory.createPlainLiteral(newPrefix));
-        renameObjectNamespaceInModel(oldModelGraph, model.toString() + "#", newModel.toString() + "#");
-        adapter.putModel(newModel.toString(), oldModelGraph);
-
-        Model oldHasPartGraph = adapter.getModel(model.toString() + "#HasPartGraph");
-
-        if (oldHasPartGraph != null && oldHasPartGraph.size() > 1) {
-
-            ResourceUtils.renameResource(oldHasPartGraph.getResource(model.toString()), newModel.toString());
-
-            Model oldPositionGraph = adapter.getModel(model.toString() + "#PositionGraph");
-            if (oldPositionGraph != null && oldPositionGraph.size() > 2) {
-                ResIterator positionResources = oldPositionGraph.listSubjects();
-                while (positionResources.hasNext()) {
-                    Resource posRes = positionResources.next();
-                    if (!posRes.isAnon()) {
-                        String posResId = posRes.getURI();
-                        if (posResId.startsWith(model.toString() + "#")) {
-                            String newPosId = posResId.replace(model.toString() + "#", newModel.toString() + "#");
-                            ResourceUtils.renameResource(posRes, newPosId);
+        try {
+            long started = System.currentTimeMillis();
+            Literal created = LDHelper.getDateTimeLiteral();
+            String oldNamespace = model.toString() + "#";
+            String newNamespace = newModel.toString() + "#";
+
+            Resource modelResource = oldModelGraph.getResource(model.toString());
+            ResourceUtils.renameResource(modelResource, newModel.toString());
+            oldModelGraph.setNsPrefix(newPrefix, newNamespace);
+            Resource newModelResource = ResourceFactory.createResource(newModel.toString());
+            LDHelper.rewriteLiteral(oldModelGraph, newModelResource, DCTerms.created, created);
+            LDHelper.rewriteLiteral(oldModelGraph, newModelResource, DCTerms.modified, created);
+            LDHelper.rewriteLiteral(oldModelGraph, newModelResource, DCTerms.identifier, ResourceFactory.createPlainLiteral("urn:uuid:" + UUID.randomUUID().toString()));
+            LDHelper.removeLiteral(oldModelGraph, newModelResource, LDHelper.curieToProperty("iow:contentModified"));
+            LDHelper.rewriteLiteral(oldModelGraph, newModelResource, OWL.versionInfo, ResourceFactory.createPlainLiteral("INCOMPLETE"));
+            LDHelper.rewriteResourceReference(oldModelGraph, newModelResource, LDHelper.curieToProperty("prov:wasRevisionOf"), ResourceFactory.createResource(model.toString()));
+            LDHelper.rewriteLiteral(oldModelGraph, newModelResource, LDHelper.curieToProperty("dcap:preferredXMLNamespaceName"), ResourceFactory.createPlainLiteral(newNamespace));
+            LDHelper.rewriteLiteral(oldModelGraph, newModelResource, LDHelper.curieToProperty("dcap:preferredXMLNamespacePrefix"), ResourceFactory.createPlainLiteral(newPrefix));
+            renameObjectNamespaceInModel(oldModelGraph, oldNamespace, newNamespace);
+
+            Map<String, Model> newGraphs = new LinkedHashMap<>();
+            Map<String, Model> modelGraphs = getGraphsFromCore(Arrays.asList(model.toString() + "#HasPartGraph", model.toString() + "#PositionGraph"), progress);
+            Model oldHasPartGraph = modelGraphs.get(model.toString() + "#HasPartGraph");
+
+            if (oldHasPartGraph != null && oldHasPartGraph.size() > 1) {
+
+                ResourceUtils.renameResource(oldHasPartGraph.getResource(model.toString()), newModel.toString());
+
+                Model oldPositionGraph = modelGraphs.get(model.toString() + "#PositionGraph");
+                if (oldPositionGraph != null && oldPositionGraph.size() > 2) {
+                    List<Resource> positionResources = oldPositionGraph.listSubjects().toList();
+                    for (Resource posRes : positionResources) {
+                        if (!posRes.isAnon() && posRes.getURI().startsWith(oldNamespace)) {
+                            ResourceUtils.renameResource(posRes, posRes.getURI().replace(oldNamespace, newNamespace));
                         }
                     }
+                    newGraphs.put(newNamespace + "PositionGraph", oldPositionGraph);
                 }
-                adapter.putModel(newModel.toString() + "#PositionGraph", oldPositionGraph);
-            }
-            NodeIterator hasPartObjects = oldHasPartGraph.listObjectsOfProperty(DCTerms.hasPart);
-
-            while (hasPartObjects.hasNext()) {
-                Resource hasPartResource = hasPartObjects.next().asResource();
-                String oldGraph = hasPartResource.getURI();
-                if (oldGraph.startsWith(model.toString() + "#")) {
-                    String newGraph = oldGraph.replace(model.toString() + "#", newModel.toString() + "#");
-                    logger.info("Creating version from " + oldGraph + " to " + newGraph);
-                    Model oldResourceGraph = adapter.getModel(oldGraph);
+
+                List<Resource> hasPartResources = new ArrayList<>();
+                oldHasPartGraph.listObjectsOfProperty(DCTerms.hasPart).forEachRemaining(node -> {
+                    if (node.isURIResource() && node.asResource().getURI().startsWith(oldNamespace)) {
+                        hasPartResources.add(node.asResource());
+                    }
+                });
+
+                Map<String, Model> resourceGraphs = getGraphsFromCore(hasPartResources.stream().map(Resource::getURI).collect(Collectors.toList()), progress);
+                logger.info("Creating version of " + resourceGraphs.size() + " resources from " + model + " to " + newModel);
+
+                for (Resource hasPartResource : hasPartResources) {
+                    String oldGraph = hasPartResource.getURI();
+                    String newGraph = oldGraph.replace(oldNamespace, newNamespace);
+                    Model oldResourceGraph = resourceGraphs.get(oldGraph);
                     if (oldResourceGraph != null) { // FIXME: References to removed resources?!?
                         Resource oldResource = oldResourceGraph.getResource(oldGraph);
                         ResourceUtils.renameResource(oldResource, newGraph);
                         Resource newResource = ResourceFactory.createResource(newGraph);
-                        oldResourceGraph.setNsPrefix(newPrefix, newModel.toString() + "#");
                         LDHelper.rewriteLiteral(oldResourceGraph, newResource, OWL.versionInfo, ResourceFactory.createPlainLiteral("DRAFT"));
                         LDHelper.rewriteLiteral(oldResourceGraph, newResource, DCTerms.created, created);
                         LDHelper.rewriteLiteral(oldResourceGraph, newResource, DCTerms.modified, created);
                         LDHelper.rewriteLiteral(oldResourceGraph, newResource, DCTerms.identifier, ResourceFactory.createPlainLiteral("urn:uuid:" + UUID.randomUUID().toString()));
                         LDHelper.rewriteResourceReference(oldResourceGraph, newResource, LDHelper.curieToProperty("rdfs:isDefinedBy"), newModelResource);
-                        renameObjectNamespaceInModel(oldResourceGraph, model.toString() + "#", newModel.toString() + "#");
+                        renameObjectNamespaceInModel(oldResourceGraph, oldNamespace, newNamespace);
                         LDHelper.rewriteResourceReference(oldResourceGraph, newResource, LDHelper.curieToProperty("prov:wasRevisionOf"), ResourceFactory.createResource(oldGraph));
 
-                        NodeIterator propertyNodes = oldResourceGraph.listObjectsOfProperty(SH.property);
-           
-                        int i = 0;
-                        while (propertyNodes.hasNext()) {
-                            if (++i == Integer.MAX_VALUE) {
-                                throw new RuntimeException("Too many items for iteration");
-                            }
-                            Resource propertyShape = propertyNodes.next().asResource();
+                        List<Resource> propertyShapes = oldResourceGraph.listObjectsOfProperty(SH.property).mapWith(RDFNode::asResource).toList();
+                        for (Resource propertyShape : propertyShapes) {
                             LDHelper.rewriteLiteral(oldResourceGraph, propertyShape, DCTerms.created, created);
                             ResourceUtils.renameResource(propertyShape, "urn:uuid:" + UUID.randomUUID().toString());
                         }
 
-                        adapter.putModel(newGraph, oldResourceGraph);
+                        newGraphs.put(newGraph, oldResourceGraph);
                         ResourceUtils.renameResource(hasPartResource, newGraph);
                     }
                 }
+                newGraphs.put(newNamespace + "HasPartGraph", oldHasPartGraph);
+            }
+
+            progress.writing();
+            replaceGraphsInCore(newGraphs);
+            jenaClient.putModelToCore(newModel.toString(), oldModelGraph);
+
+            logger.info("Created version " + newModel + " with " + newGraphs.size() + " graphs in " + (System.currentTimeMillis() - started) + " ms");
+            progress.finish();
+        } catch (RuntimeException ex) {
+            progress.fail(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns progress of the running or a recently finished versioning
+     *
+     * @param newModel IRI of the new version
+     * @return status, or null if no versioning to the IRI has been started on this node within the last hour
+     */
+    public VersionStatusDTO getVersionStatus(String newModel) {
+        VersionProgress progress = versionProgress.getIfPresent(newModel);
+        return progress != null ? progress.toStatus() : null;
+    }
+
+    /**
+     * Fetches named graphs from core with quad queries of at most GRAPH_FETCH_CHUNK graphs each
+     *
+     * @param graphs   graph IRIs
+     * @param progress progress of the versioning the graphs are read for
+     * @return models by graph IRI, missing graphs are left out
+     */
+    private Map<String, Model> getGraphsFromCore(Collection<String> graphs,
+                                                 VersionProgress progress) {
+        Map<String, Model> models = new HashMap<>();
+        progress.addGraphsTotal(graphs.size());
+        for (List<String> chunk : Iterables.partition(graphs, GRAPH_FETCH_CHUNK)) {
+            String query = "SELECT ?graph ?s ?p ?o WHERE { VALUES ?graph { " + LDHelper.concatStringWithReplace(chunk, " ", "<@this>") + " } GRAPH ?graph { ?s ?p ?o . } }";
+            ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), QueryFactory.create(query));
+            while (results.hasNext()) {
+                QuerySolution soln = results.next();
+                Model graphModel = models.computeIfAbsent(soln.getResource("graph").getURI(), g -> ModelFactory.createDefaultModel());
+                graphModel.add(soln.getResource("s"), graphModel.createProperty(soln.getResource("p").getURI()), soln.get("o"));
             }
-            adapter.putModel(newModel.toString() + "#HasPartGraph", oldHasPartGraph);
+            progress.graphsRead(chunk.size());
+        }
+        return models;
+    }
+
+    /**
+     * Replaces named graphs in core with a single SPARQL Update request, i.e. in one transaction
+     *
+     * @param graphs models by graph IRI
+     */
+    private void replaceGraphsInCore(Map<String, Model> graphs) {
+        if (graphs.isEmpty()) {
+            return;
+        }
+        jenaClient.updateBodyToService(replaceGraphsRequest(graphs), endpointServices.getCoreSparqlUpdateAddress());
+    }
+
+    private static UpdateRequest replaceGraphsRequest(Map<String, Model> graphs) {
+        UpdateRequest request = new UpdateRequest();
+        QuadDataAcc quads = new QuadDataAcc();
+        graphs.forEach((graph, graphModel) -> {
+            Node graphNode = NodeFactory.createURI(graph);
+            request.add(new UpdateDrop(graphNode, true));
+            graphModel.getGraph().find().forEachRemaining(triple -> quads.addQuad(new Quad(graphNode, triple)));
+        });
+        request.add(new UpdateDataInsert(quads));
+        return request;
+    }
+
+    /**
+     * Returns update that removes statements of the graph from the export graph of the model. Statements are
+     * matched as stored, blank nodes included, so export graphs must be filled by copying graphs within the store
+     * with {@link #copyGraphToExportGraphRequest(String, String)}.
+     *
+     * @param graph        Graph IRI as String
+     * @param model        Model IRI as String
+     * @param withOntology If false, statements about the ontology are kept as resource graphs repeat them
+     * @return UpdateRequest
+     */
+    public static UpdateRequest removeGraphFromExportGraphRequest(String graph,
+                                                                  String model,
+                                                                  boolean withOntology) {
+        return exportGraphDeltaRequest("DELETE", graph, model, withOntology);
+    }
+
+    /**
+     * Returns update that copies statements of the graph to the export graph of the model
+     *
+     * @param graph Graph IRI as String
+     * @param model Model IRI as String
+     * @return UpdateRequest
+     */
+    public static UpdateRequest copyGraphToExportGraphRequest(String graph,
+                                                              String model) {
+        return exportGraphDeltaRequest("INSERT", graph, model, true);
+    }
+
+    /**
+     * Returns update that replaces the statements of the model graph in the export graph of the model with the
+     * current content of the model graph. Statements of the export graph that are not found in the resource graphs
+     * or the hasPart graph of the model are removed, so the update does not depend on what the model graph
+     * contained before it was replaced.
+     *
+     * @param model Model IRI as String
+     * @return UpdateRequest
+     */
+    public static UpdateRequest replaceModelInExportGraphRequest(String model) {
+        String query = "DELETE { GRAPH ?exportGraph { ?s ?p ?o . } } " +
+            "WHERE { GRAPH ?exportGraph { ?s ?p ?o . } " +
+            "FILTER NOT EXISTS { GRAPH ?hasPartGraph { ?s ?p ?o . } } " +
+            "FILTER NOT EXISTS { GRAPH ?hasPartGraph { ?model dcterms:hasPart ?resource . } GRAPH ?resource { ?s ?p ?o . } } " +
+            "} ; " +
+            "INSERT { GRAPH ?exportGraph { ?s ?p ?o . } } WHERE { GRAPH ?model { ?s ?p ?o . } }";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("model", model);
+        pss.setIri("exportGraph", model + "#ExportGraph");
+        pss.setIri("hasPartGraph", model + "#HasPartGraph");
+        pss.setCommandText(query);
+        return pss.asUpdate();
+    }
+
+    private static UpdateRequest exportGraphDeltaRequest(String operation,
+                                                         String graph,
+                                                         String model,
+                                                         boolean withOntology) {
+        String query = operation + " { GRAPH ?exportGraph { ?s ?p ?o . } } " +
+            "WHERE { GRAPH ?graph { ?s ?p ?o . " +
+            (withOntology ? "" : "FILTER NOT EXISTS { ?s a owl:Ontology . } ") +
+            "}}";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("graph", graph);
+        pss.setIri("exportGraph", model + "#ExportGraph");
+        pss.setCommandText(query);
+        return pss.asUpdate();
+    }
+
+    /**
+     * Returns update that rebuilds the export graph of the model from the model graph and the graphs of its
+     * resources
+     *
+     * @param model Model IRI as String
+     * @return UpdateRequest
+     */
+    public static UpdateRequest rebuildExportGraphRequest(String model) {
+        String query = "DROP SILENT GRAPH ?exportGraph ; " +
+            "INSERT { GRAPH ?exportGraph { ?s ?p ?o . } } WHERE { GRAPH ?model { ?s ?p ?o . } } ; " +
+            "INSERT { GRAPH ?exportGraph { ?model dcterms:hasPart ?resource . ?s ?p ?o . } } " +
+            "WHERE { GRAPH ?hasPartGraph { ?model dcterms:hasPart ?resource . } GRAPH ?resource { ?s ?p ?o . } } ; " +
+            "DELETE WHERE { GRAPH ?staleGraph { ?model a ?stale . } }";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("model", model);
+        pss.setIri("exportGraph", model + "#ExportGraph");
+        pss.setIri("hasPartGraph", model + "#HasPartGraph");
+        pss.setIri("staleGraph", STALE_EXPORT_GRAPHS);
+        pss.setCommandText(query);
+        return pss.asUpdate();
+    }
+
+    private static UpdateRequest markExportGraphStaleRequest(String model) {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("model", model);
+        pss.setIri("staleGraph", STALE_EXPORT_GRAPHS);
+        pss.setIri("stale", STALE_EXPORT_GRAPH_TYPE);
+        pss.setCommandText("INSERT DATA { GRAPH ?staleGraph { ?model a ?stale . } }");
+        return pss.asUpdate();
+    }
+
+    /**
+     * Rebuilds the export graph of the model if resources have changed since it was last built. Does nothing
+     * unless export graphs are materialized lazily.
+     *
+     * @param model Model IRI as String
+     */
+    public void materializeExportGraph(String model) {
+        if (!properties.isLazyExportGraph()) {
+            return;
+        }
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setIri("model", model);
+        pss.setIri("staleGraph", STALE_EXPORT_GRAPHS);
+        pss.setCommandText("ASK { GRAPH ?staleGraph { ?model ?p ?o . } }");
+        if (jenaClient.askQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+            logger.debug("Rebuilding export graph of " + model);
+            rebuildExportGraph(model);
+        }
+    }
+
+    /**
+     * Rebuilds export graphs of all models whose resources have changed since their export graph was last built.
+     * Does nothing unless export graphs are materialized lazily.
+     */
+    public void materializeExportGraphs() {
+        if (!properties.isLazyExportGraph()) {
+            return;
+        }
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setIri("staleGraph", STALE_EXPORT_GRAPHS);
+        pss.setIri("stale", STALE_EXPORT_GRAPH_TYPE);
+        pss.setCommandText("SELECT ?model WHERE { GRAPH ?staleGraph { ?model a ?stale . } }");
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        int count = 0;
+        while (results.hasNext()) {
+            rebuildExportGraph(results.next().getResource("model").getURI());
+            count++;
+        }
+        if (count > 0) {
+            logger.info("Rebuilt " + count + " stale export graphs");
         }
+    }
+
+    public void rebuildExportGraph(String model) {
+        jenaClient.updateToService(rebuildExportGraphRequest(model), endpointServices.getCoreSparqlUpdateAddress());
+    }
 
+    /**
+     * Rebuilds export graphs of all models
+     */
+    public void rebuildExportGraphs() {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setCommandText("SELECT ?model WHERE { GRAPH ?model { ?model a owl:Ontology . ?model a ?type . VALUES ?type { dcap:MetadataVocabulary dcap:DCAP } } }");
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        int count = 0;
+        while (results.hasNext()) {
+            rebuildExportGraph(results.next().getResource("model").getURI());
+            count++;
+        }
+        logger.info("Rebuilt " + count + " export graphs");
     }
 
     public void renameObjectNamespaceInModel(Model model,
@@ -1382,14 +1636,13 @@ public class GraphManager {
                                 String newPrefix,
                                 IRI oldID,
                                 IRI newID) {
-        createVersionGraphsWithJenaAdapter(oldVocabulary, newPrefix, oldID, newID);
+        createVersionGraphs(oldVocabulary, newPrefix, oldID, newID);
     }
 
     public void changePrefixAndNamespaceFromModelCopy(IRI newID,
                                                       String newPrefix) {
         UpdateRequest queryObj = changePrefixAndNamespaceFromModelCopyQuery(newID, newPrefix);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public UpdateRequest insertNewGraphReferenceToModelRequest(String graph,
@@ -1426,8 +1679,7 @@ public class GraphManager {
     public void insertNewGraphReferenceToModel(String graph,
                                                String model) {
         UpdateRequest queryObj = insertNewGraphReferenceToModelRequest(graph, model);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
@@ -1441,8 +1693,7 @@ public class GraphManager {
                                                      String model) {
 
         UpdateRequest queryObj = insertNewGraphReferenceToExportGraphRequest(graph, model);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
@@ -1470,8 +1721,7 @@ public class GraphManager {
     public void insertExistingGraphReferenceToModel(String graph,
                                                     String model) {
         UpdateRequest queryObj = insertExistingGraphReferenceToModelRequest(graph, model);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void deleteGraphReferenceFromModel(IRI graph,
@@ -1482,22 +1732,19 @@ public class GraphManager {
     public void deletePositionGraphReferencesFromModel(String modelIRI,
                                                        String resourceIRI) {
         UpdateRequest queryObj = deleteReferencesFromPositionGraphRequest(modelIRI, resourceIRI);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void deleteGraphReferenceFromModel(String graph,
                                               String model) {
         UpdateRequest queryObj = deleteGraphReferenceFromModelRequest(graph, model);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public void deleteReferencedResourceFromExportModel(String graph,
                                                         String model) {
         UpdateRequest exportQueryObj = deleteReferencesFromExportGraphRequest(model, graph);
-        UpdateProcessor expQexec = UpdateExecutionFactory.createRemoteForm(exportQueryObj, endpointServices.getCoreSparqlUpdateAddress());
-        expQexec.execute();
+        jenaClient.updateToService(exportQueryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     public UpdateRequest deleteGraphReferenceFromModelRequest(String graph,
@@ -1558,8 +1805,7 @@ public class GraphManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
@@ -1567,17 +1813,7 @@ public class GraphManager {
                                               String model) {
         insertExistingGraphReferenceToModel(id, model);
         insertNewGraphReferenceToExportGraph(id, model);
-        addCoreGraphToCoreGraph(id, model + "#ExportGraph");
-
-        // FIXME: Refactored this earlier from RDFConnectionRemote to RDFConnection. Not working returns 500!?!?
-        /*
-        try(RDFConnection conn = endpointServices.getCoreConnection()) {
-            Txn.executeWrite(conn, ()-> {
-                conn.update(insertExistingGraphReferenceToModelRequest(id, model));
-                conn.update(insertNewGraphReferenceToExportGraphRequest(id, model));
-                conn.load(LDHelper.encode(model+"#ExportGraph"),conn.fetch(LDHelper.encode(id)));
-              });
-        }*/
+        jenaClient.updateToService(copyGraphToExportGraphRequest(id, model), endpointServices.getCoreSparqlUpdateAddress());
     }
 
     /**
@@ -1590,14 +1826,13 @@ public class GraphManager {
     public void addCoreGraphToCoreGraph(String fromGraph,
                                         String toGraph) throws NullPointerException {
 
-        DatasetAccessor fromAccessor = DatasetAccessorFactory.createHTTP(endpointServices.getCoreReadWriteAddress());
-        Model graphModel = fromAccessor.getModel(fromGraph);
+        Model graphModel = jenaClient.getModelFromCore(fromGraph);
 
         if (graphModel == null) {
             throw new NullPointerException();
         }
 
-        fromAccessor.add(toGraph, graphModel);
+        jenaClient.addModelToCore(toGraph, graphModel);
     }
 
     /**
@@ -1611,26 +1846,14 @@ public class GraphManager {
         logger.debug("Putting to " + id);
 
         // TODO: This is not saving prefixes and namespaces! How does it work?
-      /*  try(RDFConnection conn = endpointServices.getCoreConnection()) {
-            Txn.executeWrite(conn, ()->{
-                conn.put(LDHelper.encode(id), model);
-            });
-        } catch(Exception ex) {
-            logger.warn(ex.getMessage());
-        } */
-
-        DatasetGraphAccessorHTTP accessor = new DatasetGraphAccessorHTTP(endpointServices.getCoreReadWriteAddress());
-        DatasetAdapter adapter = new DatasetAdapter(accessor);
-        adapter.putModel(id, model);
+        jenaClient.putModelToCore(id, model);
 
     }
 
     public void addToGraph(Model model,
                            String id) {
         logger.debug("Adding to " + id);
-        DatasetGraphAccessorHTTP accessor = new DatasetGraphAccessorHTTP(endpointServices.getCoreReadWriteAddress());
-        DatasetAdapter adapter = new DatasetAdapter(accessor);
-        adapter.add(id, model);
+        jenaClient.addModelToCore(id, model);
     }
 
     /**
@@ -1652,12 +1875,6 @@ public class GraphManager {
      */
     public Model constructModelFromCoreGraph(String query) {
         return jenaClient.constructFromService(query, endpointServices.getCoreSparqlAddress());
-      /* try (RDFConnectionRemote conn = endpointServices.getCoreConnection()) {
-            return conn.queryConstruct(query);
-        } catch (Exception ex) {
-            logger.warn(ex.getMessage());
-            return null;
-        } */
     }
 
     public Model constructModelFromService(String query,
@@ -1706,11 +1923,13 @@ public class GraphManager {
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
         pss.setIri("graph", model);
         pss.setIri("exportGraph", model + "#ExportGraph");
-        pss.setLiteral("newDate", LDHelper.getDateTimeLiteral());
+        Literal newDate = LDHelper.getDateTimeLiteral();
+        pss.setLiteral("newDate", newDate);
         pss.setCommandText(query);
 
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
+        exportCache.invalidate(model);
+        graphRegistry.updateContentModified(model, ((XSDDateTime) newDate.getValue()).asCalendar().getTime());
     }
 
     /**
@@ -1721,6 +1940,12 @@ public class GraphManager {
      */
     public Date modelContentModified(String graphName) {
 
+        // Other nodes may have modified the model after the registry was loaded
+        GraphRegistry.ModelNamespace modelNamespace = graphRegistry.getModel(graphName);
+        if (modelNamespace != null && modelNamespace.isCurrent(properties.getGraphRegistryMaxAgeMs())) {
+            return modelNamespace.getContentModified();
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         String selectResources =
             "SELECT ?date WHERE { "
@@ -1757,30 +1982,49 @@ public class GraphManager {
         LDHelper.rewriteLiteral(resource.asGraph(), ResourceFactory.createResource(resource.getId()), LDHelper.curieToProperty("iow:statusModified"), created);
         LDHelper.rewriteLiteral(resource.asGraph(), ResourceFactory.createResource(resource.getId()), DCTerms.created, created);
         jenaClient.putModelToCore(resource.getId(), resource.asGraph());
+        graphRegistry.addResource(resource.getId(), resource.getModelId());
         insertNewGraphReferenceToModel(resource.getId(), resource.getModelId());
 
-        Model exportModel = resource.asGraphCopy();
-        exportModel.add(exportModel.createResource(resource.getModelId()), DCTerms.hasPart, exportModel.createResource(resource.getId()));
-
-        jenaClient.addModelToCore(resource.getModelId() + "#ExportGraph", exportModel);
+        UpdateRequest request = new UpdateRequest();
+        if (properties.isLazyExportGraph()) {
+            request.add(markExportGraphStaleRequest(resource.getModelId()));
+        } else {
+            request.add(insertNewGraphReferenceToExportGraphRequest(resource.getId(), resource.getModelId()));
+            request.add(copyGraphToExportGraphRequest(resource.getId(), resource.getModelId()));
+        }
+        jenaClient.updateToService(request, endpointServices.getCoreSparqlUpdateAddress());
 
         updateContentModified(resource.getModelId());
     }
 
+    /**
+     * Replaces the resource graph and the statements of the resource in the export graph of the model in one
+     * update, so the cost depends on the size of the resource and concurrent saves are applied one at a time
+     *
+     * @param modelId       Model IRI as String
+     * @param oldResourceId Current IRI of the resource
+     * @param resourceId    New IRI of the resource
+     * @param newModel      New resource graph
+     */
     public void updateResource(String modelId,
+                               String oldResourceId,
                                String resourceId,
-                               Model oldModel,
                                Model newModel) {
 
         Literal modified = LDHelper.getDateTimeLiteral();
         LDHelper.rewriteLiteral(newModel, ResourceFactory.createResource(resourceId), DCTerms.modified, modified);
 
-        Model exportModel = jenaClient.getModelFromCore(modelId + "#ExportGraph");
-        exportModel = modelManager.removeResourceStatements(oldModel, exportModel);
-        exportModel.add(newModel);
-
-        jenaClient.putModelToCore(modelId + "#ExportGraph", exportModel);
-        jenaClient.putModelToCore(resourceId, newModel);
+        UpdateRequest request = new UpdateRequest();
+        if (properties.isLazyExportGraph()) {
+            replaceGraphsRequest(Map.of(resourceId, newModel)).getOperations().forEach(request::add);
+            markExportGraphStaleRequest(modelId).getOperations().forEach(request::add);
+        } else {
+            removeGraphFromExportGraphRequest(oldResourceId, modelId, false).getOperations().forEach(request::add);
+            replaceGraphsRequest(Map.of(resourceId, newModel)).getOperations().forEach(request::add);
+            copyGraphToExportGraphRequest(resourceId, modelId).getOperations().forEach(request::add);
+        }
+        jenaClient.updateToService(request, endpointServices.getCoreSparqlUpdateAddress());
+        graphRegistry.addResource(resourceId, modelId);
 
         updateContentModified(modelId);
     }
@@ -1793,8 +2037,7 @@ public class GraphManager {
         Literal createdDate = oldModel.getRequiredProperty(ResourceFactory.createResource(resource.getId()), DCTerms.created).getLiteral();
         LDHelper.rewriteLiteral(resource.asGraph(), ResourceFactory.createResource(resource.getId()), DCTerms.created, createdDate);
 
-        final Model newModel = resource.asGraph();
-        updateResource(resource.getModelId(), resource.getId(), oldModel, newModel);
+        updateResource(resource.getModelId(), resource.getId(), resource.getId(), resource.asGraph());
     }
 
     public void updateResourceWithNewId(AbstractResource resource,
@@ -1805,28 +2048,38 @@ public class GraphManager {
         Literal createdDate = oldModel.getRequiredProperty(ResourceFactory.createResource(oldResource.getId()), DCTerms.created).getLiteral();
         LDHelper.rewriteLiteral(resource.asGraph(), ResourceFactory.createResource(resource.getId()), DCTerms.created, createdDate);
 
-        updateResource(resource.getModelId(), resource.getId(), oldModel, resource.asGraph());
+        updateResource(resource.getModelId(), oldResource.getId(), resource.getId(), resource.asGraph());
         removeGraph(oldResource.getIRI());
         updateResourceReferencesInAllGraphs(resource.getModelIRI(), oldResource.getIRI(), resource.getIRI());
         updateReferencesInPositionGraph(resource.getModelIRI(), oldResource.getIRI(), resource.getIRI());
     }
 
     public void deleteResource(AbstractResource resource) {
-        deleteResource(resource.getId(), resource.getModelId(), resource.asGraph());
+        deleteResource(resource.getId(), resource.getModelId());
     }
 
     public void deleteResource(String resourceId,
-                               String modelId,
-                               Model resourceModel) {
-        Model exportModel = jenaClient.getModelFromCore(modelId + "#ExportGraph");
-        exportModel = modelManager.removeResourceStatements(resourceModel, exportModel);
-        exportModel.remove(exportModel.createResource(modelId), DCTerms.hasPart, exportModel.createResource(resourceId));
+                               String modelId) {
+        UpdateRequest request;
+        if (properties.isLazyExportGraph()) {
+            request = markExportGraphStaleRequest(modelId);
+        } else {
+            request = removeGraphFromExportGraphRequest(resourceId, modelId, false);
+            ParameterizedSparqlString pss = new ParameterizedSparqlString();
+            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+            pss.setIri("model", modelId);
+            pss.setIri("resource", resourceId);
+            pss.setIri("exportGraph", modelId + "#ExportGraph");
+            pss.setCommandText("DELETE DATA { GRAPH ?exportGraph { ?model dcterms:hasPart ?resource . } }");
+            pss.asUpdate().getOperations().forEach(request::add);
+        }
 
-        jenaClient.putModelToCore(modelId + "#ExportGraph", exportModel);
+        jenaClient.updateToService(request, endpointServices.getCoreSparqlUpdateAddress());
         deleteGraphReferenceFromModel(resourceId, modelId);
         deletePositionGraphReferencesFromModel(modelId, resourceId);
         updateContentModified(modelId);
         jenaClient.deleteModelFromCore(resourceId);
+        graphRegistry.removeGraph(resourceId);
     }
 
     public void createModel(AbstractModel amodel) {
@@ -1839,7 +2092,10 @@ public class GraphManager {
 
         logger.info("Creating model " + amodel.getId());
         jenaClient.putModelToCore(amodel.getId(), amodel.asGraph());
-        jenaClient.putModelToCore(amodel.getId() + "#ExportGraph", amodel.asGraph());
+        rebuildExportGraph(amodel.getId());
+        namespaceManager.setModelNamespaceMap(amodel.getId(), amodel.asGraph());
+        graphRegistry.updateModel(amodel.getId(), amodel.asGraph());
+        organizationModelCache.updateModel(amodel.getId(), amodel.getOrganizations().stream().map(UUID::toString).collect(Collectors.toList()));
     }
 
     public void updateModel(AbstractModel amodel,
@@ -1851,38 +2107,13 @@ public class GraphManager {
         Literal createdDate = oldModel.getRequiredProperty(ResourceFactory.createResource(amodel.getId()), DCTerms.created).getLiteral();
         LDHelper.rewriteLiteral(amodel.asGraph(), ResourceFactory.createResource(amodel.getId()), DCTerms.created, createdDate);
 
-        Model exportModel = jenaClient.getModelFromCore(amodel.getId() + "#ExportGraph");
-
-        // OMG: Model.remove() doesnt remove RDFLists
-        Resource modelResource = ResourceFactory.createResource(amodel.getId());
-        if (exportModel.contains(modelResource, DCTerms.language)) {
-            Statement languageStatement = exportModel.getProperty(modelResource, DCTerms.language);
-            RDFList languageList = languageStatement.getObject().as(RDFList.class);
-            languageList.removeList();
-            languageStatement.remove();
-        }
-
-        // FIXME: This can be changed to if after data is updated in production
-        while (exportModel.contains(modelResource, DCTerms.relation)) {
-            Statement relatedStatement = exportModel.getProperty(modelResource, DCTerms.relation);
-            RDFList relatedLinkList = relatedStatement.getObject().as(RDFList.class);
-            relatedLinkList.asJavaList().forEach((node) -> {
-                node.asResource().removeProperties();
-            });
-            relatedLinkList.removeList();
-            relatedStatement.remove();
-        }
-
-        exportModel.getNsPrefixMap().forEach((key, value) -> {
-            exportModel.removeNsPrefix(key);
-        });
-
-        exportModel.setNsPrefixes(amodel.asGraph().getNsPrefixMap());
-
-        exportModel.remove(oldModel);
-        exportModel.add(amodel.asGraph());
-        jenaClient.putModelToCore(amodel.getId() + "#ExportGraph", exportModel);
+        // The model graph is put as a whole to keep its prefixes. Model statements, language and relation lists
+        // included, are then replaced in the export graph with one update.
         jenaClient.putModelToCore(amodel.getId(), amodel.asGraph());
+        jenaClient.updateToService(replaceModelInExportGraphRequest(amodel.getId()), endpointServices.getCoreSparqlUpdateAddress());
+        namespaceManager.setModelNamespaceMap(amodel.getId(), amodel.asGraph());
+        graphRegistry.updateModel(amodel.getId(), amodel.asGraph());
+        organizationModelCache.updateModel(amodel.getId(), amodel.getOrganizations().stream().map(UUID::toString).collect(Collectors.toList()));
     }
 
     public void deleteModel(AbstractModel amodel) {
@@ -1927,8 +2158,7 @@ public class GraphManager {
         logger.info("Removing version references with " + graph);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
     }
 
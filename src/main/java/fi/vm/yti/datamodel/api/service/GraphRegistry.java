@@ -0,0 +1,384 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.jena.datatypes.DatatypeFormatException;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.datatypes.xsd.XSDDateTime;
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.DCTerms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * In-memory registry of graphs, model prefixes and namespaces and resource models in core. Used to answer
+ * existence and prefix checks, to route prefixes to model graphs and to look up prefix maps and content
+ * modification times without a round trip.
+ * <p>
+ * The registry only answers positively. A graph, prefix or resource not found here may still exist in core, so
+ * callers query core on a miss. Changes made through this node are applied as they happen and the registry is
+ * reconciled against core periodically, which also covers changes made on other nodes. Changes made while the
+ * registry is being reloaded are applied to the reloaded registry as well before it replaces the current one.
+ */
+@Service
+public class GraphRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphRegistry.class.getName());
+    private static final String SERVICE_DESCRIPTION_GRAPH = "urn:csc:iow:sd";
+
+    private final EndpointServices endpointServices;
+    private final JenaClient jenaClient;
+
+    private volatile Registry registry = new Registry();
+    private volatile long loadedAt;
+
+    /* Changes made during a refresh, guarded by mutationLock. Null when no refresh is running. */
+    private final Object mutationLock = new Object();
+    private List<Consumer<Registry>> mutationsDuringRefresh;
+
+    @Autowired
+    GraphRegistry(EndpointServices endpointServices,
+                  JenaClient jenaClient) {
+        this.endpointServices = endpointServices;
+        this.jenaClient = jenaClient;
+    }
+
+    public static class ModelNamespace {
+
+        private final String graph;
+        private final String prefix;
+        private final String namespace;
+        private final String modified;
+        private final Date contentModified;
+        private final boolean local;
+        private final long recordedAt = System.currentTimeMillis();
+
+        ModelNamespace(String graph,
+                       String prefix,
+                       String namespace,
+                       String modified,
+                       Date contentModified,
+                       boolean local) {
+            this.graph = graph;
+            this.prefix = prefix;
+            this.namespace = namespace;
+            this.modified = modified;
+            this.contentModified = contentModified;
+            this.local = local;
+        }
+
+        public String getGraph() {
+            return graph;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        /**
+         * @return lexical form of dcterms:modified of the model, or null
+         */
+        public String getModified() {
+            return modified;
+        }
+
+        /**
+         * @return iow:contentModified of the model, or null if the content has not been modified
+         */
+        public Date getContentModified() {
+            return contentModified;
+        }
+
+        /**
+         * Entries loaded from core do not reflect changes made on other nodes since the load, so they are current
+         * only for a while. Entries written through this node are current until the next reload.
+         *
+         * @param maxAgeMs how old an entry loaded from core may be
+         * @return true if the entry was written through this node or loaded from core at most maxAgeMs ago
+         */
+        public boolean isCurrent(long maxAgeMs) {
+            return local || System.currentTimeMillis() - recordedAt <= maxAgeMs;
+        }
+    }
+
+    private static class Registry {
+
+        private final Set<String> graphs = ConcurrentHashMap.newKeySet();
+        private final Set<String> serviceGraphs = ConcurrentHashMap.newKeySet();
+        private final Set<String> standardPrefixes = ConcurrentHashMap.newKeySet();
+        private final Map<String, ModelNamespace> modelsByPrefix = new ConcurrentHashMap<>();
+        private final Map<String, ModelNamespace> modelsByGraph = new ConcurrentHashMap<>();
+        private final Map<String, String> modelsByResource = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The registry misses models created on other nodes since it was loaded, and everything before the first load
+     *
+     * @param maxAgeMs how long ago the registry may have been loaded from core
+     * @return true if the registry was loaded from core at most maxAgeMs ago
+     */
+    public boolean isCurrent(long maxAgeMs) {
+        long loaded = loadedAt;
+        return loaded > 0 && System.currentTimeMillis() - loaded <= maxAgeMs;
+    }
+
+    public boolean containsGraph(String graph) {
+        return registry.graphs.contains(graph);
+    }
+
+    public boolean containsServiceGraph(String graphName) {
+        return registry.serviceGraphs.contains(graphName);
+    }
+
+    public boolean isStandardPrefix(String prefix) {
+        return registry.standardPrefixes.contains(prefix);
+    }
+
+    /**
+     * @param prefix preferred prefix of the model
+     * @return model using the prefix, or null if not known
+     */
+    public ModelNamespace getModelByPrefix(String prefix) {
+        return registry.modelsByPrefix.get(prefix);
+    }
+
+    /**
+     * @param graph model IRI
+     * @return model, or null if not known
+     */
+    public ModelNamespace getModel(String graph) {
+        return registry.modelsByGraph.get(graph);
+    }
+
+    /**
+     * @return preferred prefixes and namespaces of all known models
+     */
+    public Map<String, String> getNamespaceMap() {
+        Map<String, String> namespaces = new HashMap<>();
+        for (ModelNamespace model : registry.modelsByPrefix.values()) {
+            if (model.getNamespace() != null) {
+                namespaces.put(model.getPrefix(), model.getNamespace());
+            }
+        }
+        return namespaces;
+    }
+
+    /**
+     * @param resource ID of the resource
+     * @return model the resource is defined in, or null if not known
+     */
+    public ModelNamespace getModelOfResource(String resource) {
+        Registry current = registry;
+        String model = current.modelsByResource.get(resource);
+        return model != null ? current.modelsByGraph.get(model) : null;
+    }
+
+    public void addGraph(String graph) {
+        mutate(current -> current.graphs.add(graph));
+    }
+
+    public void addServiceGraph(String graphName) {
+        mutate(current -> current.serviceGraphs.add(graphName));
+    }
+
+    public void removeGraph(String graph) {
+        mutate(current -> {
+            current.graphs.remove(graph);
+            current.modelsByResource.remove(graph);
+        });
+    }
+
+    /**
+     * Registers model graph, export graph and the prefix and namespace of the model
+     *
+     * @param model ID of the model
+     * @param graph model graph
+     */
+    public void updateModel(String model,
+                            Model graph) {
+        Resource modelResource = graph.getResource(model);
+        Statement prefix = modelResource.getProperty(LDHelper.curieToProperty("dcap:preferredXMLNamespacePrefix"));
+        Statement namespace = modelResource.getProperty(LDHelper.curieToProperty("dcap:preferredXMLNamespaceName"));
+        Statement modified = modelResource.getProperty(DCTerms.modified);
+        Statement contentModified = modelResource.getProperty(LDHelper.curieToProperty("iow:contentModified"));
+        ModelNamespace modelNamespace = prefix != null && prefix.getObject().isLiteral() ? new ModelNamespace(model, prefix.getString(),
+            namespace != null && namespace.getObject().isLiteral() ? namespace.getString() : null,
+            modified != null && modified.getObject().isLiteral() ? modified.getLiteral().getLexicalForm() : null,
+            contentModified != null && contentModified.getObject().isLiteral() ? parseDateTime(contentModified.getLiteral().getLexicalForm()) : null, true) : null;
+        mutate(current -> {
+            current.graphs.add(model);
+            current.graphs.add(model + "#ExportGraph");
+            if (modelNamespace != null) {
+                putModel(current, modelNamespace);
+            }
+        });
+    }
+
+    /**
+     * Records a new content modification time of a known model
+     *
+     * @param model           ID of the model
+     * @param contentModified new iow:contentModified of the model
+     */
+    public void updateContentModified(String model,
+                                      Date contentModified) {
+        mutate(current -> {
+            ModelNamespace modelNamespace = current.modelsByGraph.get(model);
+            if (modelNamespace != null) {
+                putModel(current, new ModelNamespace(modelNamespace.getGraph(), modelNamespace.getPrefix(), modelNamespace.getNamespace(), modelNamespace.getModified(), contentModified, true));
+            }
+        });
+    }
+
+    public void addResource(String resource,
+                            String model) {
+        mutate(current -> {
+            current.graphs.add(resource);
+            current.modelsByResource.put(resource, model);
+        });
+    }
+
+    /**
+     * Forgets model graphs, resources of the model and its service description
+     *
+     * @param model ID of the model
+     */
+    public void removeModel(String model) {
+        mutate(current -> {
+            current.graphs.removeIf(graph -> graph.equals(model) || graph.startsWith(model + "#"));
+            current.modelsByResource.values().removeIf(model::equals);
+            current.serviceGraphs.remove(model);
+            ModelNamespace modelNamespace = current.modelsByGraph.remove(model);
+            if (modelNamespace != null) {
+                current.modelsByPrefix.remove(modelNamespace.getPrefix(), modelNamespace);
+            }
+        });
+    }
+
+    /**
+     * Applies the change to the current registry and records it for the registry being reloaded, if any
+     */
+    private void mutate(Consumer<Registry> mutation) {
+        synchronized (mutationLock) {
+            mutation.accept(registry);
+            if (mutationsDuringRefresh != null) {
+                mutationsDuringRefresh.add(mutation);
+            }
+        }
+    }
+
+    /**
+     * Reloads the registry from core
+     */
+    public synchronized void refresh() {
+        synchronized (mutationLock) {
+            mutationsDuringRefresh = new ArrayList<>();
+        }
+        try {
+            long startedAt = System.currentTimeMillis();
+            Registry loaded = load();
+            synchronized (mutationLock) {
+                // Changes made during the reload may or may not be visible in what was loaded
+                mutationsDuringRefresh.forEach(mutation -> mutation.accept(loaded));
+                registry = loaded;
+                loadedAt = startedAt;
+            }
+            logger.info("Loaded graph registry with " + loaded.graphs.size() + " graphs and " + loaded.modelsByPrefix.size() + " models");
+        } finally {
+            synchronized (mutationLock) {
+                mutationsDuringRefresh = null;
+            }
+        }
+    }
+
+    private Registry load() {
+        Registry loaded = new Registry();
+
+        select("SELECT DISTINCT ?graph WHERE { GRAPH ?graph { } }",
+            soln -> loaded.graphs.add(soln.getResource("graph").getURI()));
+
+        select("SELECT ?graph ?prefix ?namespace ?modified ?contentModified WHERE { GRAPH ?graph { "
+                + "?graph a owl:Ontology . "
+                + "?graph dcap:preferredXMLNamespacePrefix ?prefix . "
+                + "OPTIONAL { ?graph dcap:preferredXMLNamespaceName ?namespace . } "
+                + "OPTIONAL { ?graph dcterms:modified ?modified . } "
+                + "OPTIONAL { ?graph iow:contentModified ?contentModified . } "
+                + "}}",
+            soln -> putModel(loaded, new ModelNamespace(soln.getResource("graph").getURI(),
+                soln.getLiteral("prefix").getString(),
+                soln.contains("namespace") ? soln.getLiteral("namespace").getString() : null,
+                soln.contains("modified") ? soln.getLiteral("modified").getLexicalForm() : null,
+                soln.contains("contentModified") ? parseDateTime(soln.getLiteral("contentModified").getLexicalForm()) : null, false)));
+
+        select("SELECT ?resource ?graph WHERE { GRAPH ?resource { ?resource rdfs:isDefinedBy ?graph . }}",
+            soln -> {
+                if (soln.get("graph").isURIResource()) {
+                    loaded.modelsByResource.put(soln.getResource("resource").getURI(), soln.getResource("graph").getURI());
+                }
+            });
+
+        select("SELECT ?prefix WHERE { ?s a dcterms:Standard . ?s dcap:preferredXMLNamespacePrefix ?prefix . }",
+            soln -> loaded.standardPrefixes.add(soln.getLiteral("prefix").getString()));
+
+        select("SELECT ?graphName WHERE { GRAPH <" + SERVICE_DESCRIPTION_GRAPH + "> { "
+                + "?service a sd:Service . "
+                + "?service sd:availableGraphs ?graphCollection . "
+                + "?graphCollection a sd:GraphCollection . "
+                + "?graphCollection sd:namedGraph ?graph . "
+                + "?graph sd:name ?graphName . "
+                + "}}",
+            soln -> loaded.serviceGraphs.add(soln.getResource("graphName").getURI()));
+
+        return loaded;
+    }
+
+    private static void putModel(Registry target,
+                                 ModelNamespace modelNamespace) {
+        ModelNamespace previous = target.modelsByGraph.put(modelNamespace.getGraph(), modelNamespace);
+        if (previous != null) {
+            target.modelsByPrefix.remove(previous.getPrefix(), previous);
+        }
+        target.modelsByPrefix.put(modelNamespace.getPrefix(), modelNamespace);
+    }
+
+    private static Date parseDateTime(String lexicalForm) {
+        try {
+            return ((XSDDateTime) XSDDatatype.XSDdateTime.parse(lexicalForm)).asCalendar().getTime();
+        } catch (DatatypeFormatException ex) {
+            logger.warn("Invalid content modification time: " + lexicalForm);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the query against core
+     */
+    private void select(String query,
+                        Consumer<QuerySolution> consumer) {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setCommandText(query);
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        results.forEachRemaining(consumer);
+    }
+}
@@ -1,9 +1,9 @@
 package fi.vm.yti.datamodel.api.service;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.core.GenericType;
@@ -31,7 +31,7 @@ public class GroupManagementService {
 
     private static final Logger logger = LoggerFactory.getLogger(GroupManagementService.class.getName());
 
-    private Map<UUID,GroupManagementUserDTO> users;
+    private volatile UserSnapshot users;
     private final ClientFactory clientFactory;
     private final ApplicationProperties applicationProperties;
     private final ObjectMapper objectMapper;
@@ -43,7 +43,7 @@ public class GroupManagementService {
         this.clientFactory = clientFactory;
         this.applicationProperties = applicationProperties;
         this.objectMapper = objectMapper;
-        this.users = new HashMap<>();
+        this.users = new UserSnapshot(Map.of());
         logger.info("Initializing Group management?");
     }
 
@@ -56,27 +56,50 @@ public class GroupManagementService {
         final String url = applicationProperties.getDefaultGroupManagementAPI().replace("public-api","private-api")+"users";
         Client client = clientFactory.create();
         List<GroupManagementUserDTO> userList = client.target(url).request(MediaType.APPLICATION_JSON).get(new GenericType<List<GroupManagementUserDTO>>(){});
-        userList.forEach(user -> users.put(user.getId(), user));
+        Map<String,GroupManagementUserDTO> userMap = new HashMap<>();
+        userList.forEach(user -> userMap.put(user.getId().toString(), user));
+        users = new UserSnapshot(userMap);
+        logger.debug("Loaded " + userMap.size() + " users");
     }
 
+    /**
+     * Returns names of all users. The model is shared between callers and must not be modified.
+     */
     public Model getUsersAsModel() {
-        Model model = ModelFactory.createDefaultModel();
-        users.forEach((uuid,user)->{
-            Resource userResource = model.createResource("urn:uuid:"+uuid.toString());
-            userResource.addLiteral(FOAF.name, user.getFirstName()+" "+user.getLastName());
-        });
-        return model;
+        return users.model;
     }
 
-    public Model getUsersAsModel(List<String> uuids) {
+    public Model getUsersAsModel(Collection<String> uuids) {
+        UserSnapshot snapshot = users;
         Model model = ModelFactory.createDefaultModel();
-        users.forEach((uuid,user)->{
-            if(uuids.contains(uuid.toString())) {
-                Resource userResource = model.createResource("urn:uuid:" + uuid.toString());
-                userResource.addLiteral(FOAF.name, user.getFirstName()+" "+user.getLastName());
+        uuids.forEach(uuid -> {
+            GroupManagementUserDTO user = snapshot.users.get(uuid);
+            if (user != null) {
+                addUser(model, user);
             }
         });
         return model;
     }
 
+    private static void addUser(Model model,
+                                GroupManagementUserDTO user) {
+        Resource userResource = model.createResource("urn:uuid:" + user.getId().toString());
+        userResource.addLiteral(FOAF.name, user.getFirstName() + " " + user.getLastName());
+    }
+
+    /**
+     * Users by UUID string and their names as RDF. Replaced as a whole on every update and never modified after.
+     */
+    private static final class UserSnapshot {
+
+        private final Map<String,GroupManagementUserDTO> users;
+        private final Model model;
+
+        private UserSnapshot(Map<String,GroupManagementUserDTO> users) {
+            this.users = Map.copyOf(users);
+            this.model = ModelFactory.createDefaultModel();
+            this.users.values().forEach(user -> addUser(this.model, user));
+        }
+    }
+
 }
@@ -0,0 +1,55 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times requests made with JAX-RS clients as "external.requests", tagged with the target host, HTTP method,
+ * response status and the API endpoint that caused the request. Register on each client.
+ */
+@Component
+public class HttpClientMetricsFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final String START_PROPERTY = HttpClientMetricsFilter.class.getName() + ".start";
+    private static final String ENDPOINT_PROPERTY = HttpClientMetricsFilter.class.getName() + ".endpoint";
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public HttpClientMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+        requestContext.setProperty(ENDPOINT_PROPERTY, BackendMetrics.currentEndpoint());
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext,
+                       ClientResponseContext responseContext) {
+        Object start = requestContext.getProperty(START_PROPERTY);
+        if (!(start instanceof Long)) {
+            return;
+        }
+        String host = requestContext.getUri().getHost();
+        Timer.builder("external.requests")
+            .tag("host", host != null ? host : "none")
+            .tag("method", requestContext.getMethod())
+            .tag("status", Integer.toString(responseContext.getStatus()))
+            .tag("endpoint", String.valueOf(requestContext.getProperty(ENDPOINT_PROPERTY)))
+            .register(meterRegistry)
+            .record(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -5,17 +5,11 @@ package fi.vm.yti.datamodel.api.service;
 
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 
-import org.apache.jena.query.DatasetAccessor;
-import org.apache.jena.query.DatasetAccessorFactory;
 import org.apache.jena.query.ParameterizedSparqlString;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
-import org.apache.jena.update.UpdateExecutionFactory;
-import org.apache.jena.update.UpdateProcessor;
 import org.apache.jena.update.UpdateRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -27,12 +21,15 @@ public class ImportManager {
 
     private final EndpointServices endpointServices;
     private final GraphManager graphManager;
+    private final JenaClient jenaClient;
 
     @Autowired
     ImportManager(EndpointServices endpointServices,
-                  GraphManager graphManager) {
+                  GraphManager graphManager,
+                  JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.graphManager = graphManager;
+        this.jenaClient = jenaClient;
     }
 
     /**
@@ -93,8 +90,7 @@ public class ImportManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
 
         updateResourceGraphs(graph, map);
 
@@ -136,8 +132,7 @@ public class ImportManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     private void updateResourceGraphs(String model,
@@ -150,18 +145,15 @@ public class ImportManager {
         pss.setNsPrefix("rdfs", "http://www.w3.org/2000/01/rdf-schema#");
         pss.setCommandText(selectResources);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
 
-            ResultSet results = qexec.execSelect();
-
-            while (results.hasNext()) {
-                QuerySolution soln = results.nextSolution();
-                constructGraphs(model, soln.getResource("resource").toString(), map);
-                addIndexNumberToProperties(soln.getResource("resource").toString());
-            }
-
-            removeDuplicatesFromModel(model);
+        while (results.hasNext()) {
+            QuerySolution soln = results.nextSolution();
+            constructGraphs(model, soln.getResource("resource").toString(), map);
+            addIndexNumberToProperties(soln.getResource("resource").toString());
         }
+
+        removeDuplicatesFromModel(model);
     }
 
     private void addIndexNumberToProperties(String resource) {
@@ -174,14 +166,11 @@ public class ImportManager {
         pss.setIri("resource", resource);
         pss.setCommandText(selectResources);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
-
-            ResultSet results = qexec.execSelect();
-            int id = 1;
-            while (results.hasNext()) {
-                QuerySolution soln = results.nextSolution();
-                addIndexToProperty(resource, soln.getResource("property").toString(), id++);
-            }
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        int id = 1;
+        while (results.hasNext()) {
+            QuerySolution soln = results.nextSolution();
+            addIndexToProperty(resource, soln.getResource("property").toString(), id++);
         }
     }
 
@@ -208,8 +197,7 @@ public class ImportManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 
     private void constructGraphs(String graph,
@@ -270,13 +258,8 @@ public class ImportManager {
 
         pss.setCommandText(query);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
-
-            Model results = qexec.execConstruct();
-
-            DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(endpointServices.getCoreReadWriteAddress());
-            accessor.add(resource, results);
-        }
+        Model results = jenaClient.constructFromService(pss.asQuery().toString(), endpointServices.getCoreSparqlAddress());
+        jenaClient.addModelToCore(resource, results);
 
     }
 
@@ -305,7 +288,6 @@ public class ImportManager {
         pss.setCommandText(query);
 
         UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getCoreSparqlUpdateAddress());
-        qexec.execute();
+        jenaClient.updateToService(queryObj, endpointServices.getCoreSparqlUpdateAddress());
     }
 }
@@ -1,12 +1,14 @@
 package fi.vm.yti.datamodel.api.service;
 
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClients;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.DatasetAccessor;
 import org.apache.jena.query.DatasetAccessorFactory;
 import org.apache.jena.query.Query;
@@ -14,8 +16,10 @@ import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetRewindable;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.web.HttpOp;
+import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
 import org.apache.jena.update.UpdateExecutionFactory;
 import org.apache.jena.update.UpdateProcessor;
 import org.apache.jena.update.UpdateRequest;
@@ -25,6 +29,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import fi.vm.yti.datamodel.api.utils.QueryTemplate;
 
 @Service
 public final class JenaClient {
@@ -32,148 +37,325 @@ public final class JenaClient {
     static final private Logger logger = LoggerFactory.getLogger(JenaClient.class.getName());
 
     private final EndpointServices endpointServices;
-    private final DatasetAccessor coreService;
-    private final DatasetAccessor importService;
-    private final DatasetAccessor provService;
-    private final DatasetAccessor schemeService;
+    private final FusekiConnectionPool connectionPool;
 
     private final ApplicationProperties properties;
+    private final FusekiResilience resilience;
+    private final BackendMetrics metrics;
 
     @Autowired
     JenaClient(EndpointServices endpointServices,
-               ApplicationProperties properties) {
+               FusekiConnectionPool connectionPool,
+               ApplicationProperties properties,
+               FusekiResilience resilience,
+               BackendMetrics metrics) {
         this.properties = properties;
         this.endpointServices = endpointServices;
-        this.coreService = DatasetAccessorFactory.createHTTP(endpointServices.getCoreReadWriteAddress());
-        this.importService = DatasetAccessorFactory.createHTTP(endpointServices.getImportsReadWriteAddress());
-        this.provService = DatasetAccessorFactory.createHTTP(endpointServices.getProvReadWriteAddress());
-        this.schemeService = DatasetAccessorFactory.createHTTP(endpointServices.getSchemesReadWriteAddress());
-
-        if (properties.getFusekiPassword() != null && properties.getFusekiUser() != null) {
-            logger.debug("Setting fuseki user & password!");
-            CredentialsProvider credsProvider = new BasicCredentialsProvider();
-            Credentials credentials = new UsernamePasswordCredentials(properties.getFusekiUser(), properties.getFusekiPassword());
-            credsProvider.setCredentials(AuthScope.ANY, credentials);
-            HttpClient httpclient = HttpClients.custom()
-                .setDefaultCredentialsProvider(credsProvider)
-                .build();
-            HttpOp.setDefaultHttpClient(httpclient);
-        } else {
-            logger.debug("No fuseki password found!");
-        }
-
+        this.connectionPool = connectionPool;
+        this.resilience = resilience;
+        this.metrics = metrics;
     }
 
     public Model getModelFromSchemes(String graph) {
         logger.debug("Getting model from " + graph);
-        return schemeService.getModel(graph);
+        String service = endpointServices.getSchemesReadWriteAddress();
+        return execute(service, "get", Model::size, deadline -> graphStore(service, deadline).getModel(graph));
     }
 
     public void putToImports(String graph,
                              Model model) {
         logger.debug("Storing import to " + graph);
-        importService.putModel(graph, model);
+        String service = endpointServices.getImportsReadWriteAddress();
+        execute(service, "put", null, deadline -> {
+            graphStore(service, deadline).putModel(graph, model);
+            return null;
+        });
     }
 
     public Model getModelFromCore(String graph) {
         logger.debug("Getting model from core " + graph);
-        return coreService.getModel(graph);
+        String service = endpointServices.getCoreReadWriteAddress();
+        return execute(service, "get", Model::size, deadline -> graphStore(service, deadline).getModel(graph));
+    }
+
+    /**
+     * Opens a graph for reading without loading it into a model. The caller must close the stream, which also
+     * releases the Fuseki bulkhead permit held while the graph is read.
+     *
+     * @param service graph store address
+     * @param graph   graph name
+     * @param accept  requested RDF content type
+     * @return graph content, or null if the graph does not exist
+     */
+    public InputStream getGraphStream(String service,
+                                      String graph,
+                                      String accept) {
+        logger.debug("Opening " + graph + " from " + service);
+        return metrics.fuseki(resilience.datasetOf(service), "get", () -> resilience.executeStream(service,
+            deadline -> HttpOp.execHttpGet(service + "?graph=" + URLEncoder.encode(graph, StandardCharsets.UTF_8), accept, connectionPool.withTimeout(deadline), null)), null);
     }
 
     public Model getModelFromProv(String graph) {
         logger.debug("Getting model from prov " + graph);
-        return provService.getModel(graph);
+        String service = endpointServices.getProvReadWriteAddress();
+        return execute(service, "get", Model::size, deadline -> graphStore(service, deadline).getModel(graph));
     }
 
     public boolean containsSchemaModel(String graph) {
-        return importService.containsModel(graph);
+        String service = endpointServices.getImportsReadWriteAddress();
+        return execute(service, "head", null, deadline -> graphStore(service, deadline).containsModel(graph));
     }
 
     public void deleteModelFromCore(String graph) {
         logger.debug("Deleting model from " + graph);
-        coreService.deleteModel(graph);
+        String service = endpointServices.getCoreReadWriteAddress();
+        execute(service, "delete", null, deadline -> {
+            graphStore(service, deadline).deleteModel(graph);
+            return null;
+        });
     }
 
     public void deleteModelFromScheme(String graph) {
         logger.debug("Deleting codelist from " + graph);
-        schemeService.deleteModel(graph);
+        String service = endpointServices.getSchemesReadWriteAddress();
+        execute(service, "delete", null, deadline -> {
+            graphStore(service, deadline).deleteModel(graph);
+            return null;
+        });
     }
 
     public boolean isInCore(String graph) {
-        return coreService.containsModel(graph);
+        String service = endpointServices.getCoreReadWriteAddress();
+        return execute(service, "head", null, deadline -> graphStore(service, deadline).containsModel(graph));
     }
 
     public void putModelToCore(String graph,
                                Model model) {
         logger.debug("Putting model to " + graph);
-        coreService.putModel(graph, model);
+        String service = endpointServices.getCoreReadWriteAddress();
+        execute(service, "put", null, deadline -> {
+            graphStore(service, deadline).putModel(graph, model);
+            return null;
+        });
     }
 
     public void addModelToCore(String graph,
                                Model model) {
         logger.debug("Adding model to " + graph);
-        coreService.add(graph, model);
+        String service = endpointServices.getCoreReadWriteAddress();
+        executeOnce(service, "add", deadline -> {
+            graphStore(service, deadline).add(graph, model);
+            return null;
+        });
     }
 
     public void putModelToProv(String graph,
                                Model model) {
         logger.debug("Putting to prov " + graph);
-        provService.putModel(graph, model);
+        String service = endpointServices.getProvReadWriteAddress();
+        execute(service, "put", null, deadline -> {
+            graphStore(service, deadline).putModel(graph, model);
+            return null;
+        });
     }
 
     public void updateToService(UpdateRequest req,
                                 String service) {
         logger.debug("Sending UpdateRequest to " + service);
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(req, service);
-        qexec.execute();
+        executeOnce(service, "update", deadline -> {
+            UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(req, service, connectionPool.withTimeout(deadline));
+            qexec.execute();
+            return null;
+        });
     }
 
+    /**
+     * Sends the update as the request body instead of a form parameter, which suits large updates
+     */
+    public void updateBodyToService(UpdateRequest req,
+                                    String service) {
+        logger.debug("Sending UpdateRequest body to " + service);
+        executeOnce(service, "update", deadline -> {
+            UpdateProcessor qexec = UpdateExecutionFactory.createRemote(req, service, connectionPool.withTimeout(deadline));
+            qexec.execute();
+            return null;
+        });
+    }
+
+    /**
+     * Sends the construct query as is, without parsing it first
+     */
     public Model constructFromService(String query,
                                       String service) {
         logger.debug("Constructing from " + service);
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query)) {
-            return qexec.execConstruct();
-        }
+        return execute(service, "construct", Model::size, deadline -> {
+            try (QueryEngineHTTP qexec = new QueryEngineHTTP(service, query)) {
+                qexec.setTimeout(deadline);
+                return qexec.execConstruct();
+            }
+        });
+    }
+
+    public Model constructFromService(QueryTemplate.Binding query,
+                                      String service) {
+        return metrics.template(query.getTemplateName(), () -> constructFromService(query.toString(), service));
     }
 
     public Model constructFromCore(String query) {
         logger.debug("Constructing from " + endpointServices.getCoreSparqlAddress());
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), query)) {
-            return qexec.execConstruct();
-        }
+        return constructFromService(query, endpointServices.getCoreSparqlAddress());
     }
 
     public Model constructFromExt(String query) {
         logger.debug("Constructing from " + endpointServices.getCoreSparqlAddress());
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getImportsSparqlAddress(), query)) {
-            return qexec.execConstruct();
-        }
+        return constructFromService(query, endpointServices.getImportsSparqlAddress());
     }
 
     public boolean askQuery(String service,
                             Query query,
                             String graph) {
         logger.debug("Asking from " + service + " in graph " + graph);
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query, graph)) {
-            return qexec.execAsk();
-        }
+        return execute(service, "ask", null, deadline -> {
+            try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query, graph)) {
+                qexec.setTimeout(deadline);
+                return qexec.execAsk();
+            }
+        });
     }
 
     public boolean askQuery(String service,
                             Query query) {
         logger.debug("Asking from " + service);
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query)) {
-            return qexec.execAsk();
-        }
+        return execute(service, "ask", null, deadline -> {
+            try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query)) {
+                qexec.setTimeout(deadline);
+                return qexec.execAsk();
+            }
+        });
     }
 
     public ResultSet selectQuery(String service,
                                  Query query) {
         logger.debug("Select from " + service);
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query)) {
-            // ResultSet needs to be copied in order to use it after the connection is closed
-            return ResultSetFactory.copyResults(qexec.execSelect());
+        return execute(service, "select", ResultSetRewindable::size, deadline -> {
+            try (QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query)) {
+                qexec.setTimeout(deadline);
+                // ResultSet needs to be copied in order to use it after the connection is closed
+                return ResultSetFactory.copyResults(qexec.execSelect());
+            }
+        });
+    }
+
+    /**
+     * Sends the select query as is, without parsing it first
+     */
+    public ResultSet selectQuery(String service,
+                                 String query) {
+        logger.debug("Select from " + service);
+        return execute(service, "select", ResultSetRewindable::size, deadline -> {
+            try (QueryEngineHTTP qexec = new QueryEngineHTTP(service, query)) {
+                qexec.setTimeout(deadline);
+                return ResultSetFactory.copyResults(qexec.execSelect());
+            }
+        });
+    }
+
+    /**
+     * Opens a select query whose results are read from the response as they are used. The caller must close the
+     * returned stream, which also releases the Fuseki bulkhead permit held while the results are read.
+     */
+    public QueryStream<ResultSet> openSelect(String service,
+                                             Query query) {
+        logger.debug("Streaming select from " + service);
+        return metrics.fuseki(resilience.datasetOf(service), "select", () -> resilience.executeHolding(service,
+            deadline -> open(service, query, deadline, QueryExecution::execSelect), QueryStream::holding), null);
+    }
+
+    /**
+     * Opens a construct query whose triples are read from the response as they are used. The caller must close the
+     * returned stream, which also releases the Fuseki bulkhead permit held while the triples are read.
+     */
+    public QueryStream<Iterator<Triple>> openConstructTriples(String service,
+                                                              Query query) {
+        logger.debug("Streaming construct from " + service);
+        return metrics.fuseki(resilience.datasetOf(service), "construct", () -> resilience.executeHolding(service,
+            deadline -> open(service, query, deadline, QueryExecution::execConstructTriples), QueryStream::holding), null);
+    }
+
+    private static <T> QueryStream<T> open(String service,
+                                           Query query,
+                                           long deadline,
+                                           Function<QueryExecution, T> results) {
+        QueryExecution qexec = QueryExecutionFactory.sparqlService(service, query);
+        try {
+            // Bounds the wait for each read of the response, not the time to read all of it
+            qexec.setTimeout(deadline);
+            return new QueryStream<>(qexec, results.apply(qexec), null);
+        } catch (RuntimeException ex) {
+            qexec.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Results of a query that are read from the response as they are used. Closing the stream closes the
+     * response and releases the Fuseki bulkhead permit of the query once.
+     */
+    public static final class QueryStream<T> implements AutoCloseable {
+
+        private final QueryExecution qexec;
+        private final T results;
+        private final Runnable release;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private QueryStream(QueryExecution qexec,
+                            T results,
+                            Runnable release) {
+            this.qexec = qexec;
+            this.results = results;
+            this.release = release;
+        }
+
+        private QueryStream<T> holding(Runnable release) {
+            return new QueryStream<>(qexec, results, release);
         }
+
+        public T getResults() {
+            return results;
+        }
+
+        @Override
+        public void close() {
+            try {
+                qexec.close();
+            } finally {
+                if (release != null && released.compareAndSet(false, true)) {
+                    release.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Graph store protocol calls have no timeout of their own, so their requests are bounded by the remaining time
+     * to the deadline of the call
+     */
+    private DatasetAccessor graphStore(String service,
+                                       long deadline) {
+        return DatasetAccessorFactory.createHTTP(service, connectionPool.withTimeout(deadline));
+    }
+
+    private <T> T execute(String service,
+                          String operation,
+                          BackendMetrics.ResultSize<T> size,
+                          LongFunction<T> call) {
+        return metrics.fuseki(resilience.datasetOf(service), operation, () -> resilience.execute(service, call), size);
+    }
+
+    private <T> T executeOnce(String service,
+                              String operation,
+                              LongFunction<T> call) {
+        return metrics.fuseki(resilience.datasetOf(service), operation, () -> resilience.executeOnce(service, call), null);
     }
 
     public EndpointServices getEndpointServices() {
@@ -6,6 +6,8 @@ package fi.vm.yti.datamodel.api.service;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -17,13 +19,11 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.StatusType;
 
 import org.apache.jena.atlas.web.ContentType;
-import org.apache.jena.query.ParameterizedSparqlString;
-import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.RDFWriterRegistry;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.uri.UriComponent;
@@ -33,6 +33,7 @@ import org.springframework.stereotype.Service;
 
 import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
+import fi.vm.yti.datamodel.api.utils.QueryTemplate;
 
 @Service
 public class JerseyClient {
@@ -45,25 +46,34 @@ public class JerseyClient {
     private final JerseyResponseManager jerseyResponseManager;
     private final ModelManager modelManager;
     private final ClientFactory clientFactory;
+    private final HttpClientMetricsFilter metricsFilter;
+    private final NamespaceManager namespaceManager;
+    private final GraphManager graphManager;
 
     JerseyClient(JenaClient jenaClient,
                  EndpointServices endpointServices,
                  ApplicationProperties properties,
                  JerseyResponseManager jerseyResponseManager,
                  ModelManager modelManager,
-                 ClientFactory clientFactory) {
+                 ClientFactory clientFactory,
+                 HttpClientMetricsFilter metricsFilter,
+                 NamespaceManager namespaceManager,
+                 GraphManager graphManager) {
         this.jenaClient = jenaClient;
         this.endpointServices = endpointServices;
         this.properties = properties;
         this.jerseyResponseManager = jerseyResponseManager;
         this.modelManager = modelManager;
         this.clientFactory = clientFactory;
+        this.metricsFilter = metricsFilter;
+        this.namespaceManager = namespaceManager;
+        this.graphManager = graphManager;
     }
 
     public Response getResponseFromURL(String url,
                                        String accept) {
         logger.debug("Getting " + accept + " response from " + url);
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(metricsFilter);
         client.property(ClientProperties.CONNECT_TIMEOUT, 180000);
         client.property(ClientProperties.READ_TIMEOUT, 180000);
         WebTarget target = client.target(url);
@@ -83,7 +93,7 @@ public class JerseyClient {
     public Response getResponseFromService(String id,
                                            String service,
                                            String ctype) {
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(metricsFilter);
         WebTarget target = client.target(service).queryParam("graph", id);
         logger.debug("Getting response from " + target.getUri().toString());
         return target.request(ctype).get();
@@ -92,7 +102,7 @@ public class JerseyClient {
 
 
     /**
-     * Returns Export graph as Jersey Response
+     * Returns Export graph as Jersey Response. A lazily materialized export graph is rebuilt first if it is stale.
      *
      * @param graph ID of the graph
      * @param raw   If true returns content as text
@@ -107,6 +117,8 @@ public class JerseyClient {
 
         try {
 
+            graphManager.materializeExportGraph(graph);
+
             ContentType contentType = ContentType.create(ctype);
 
             Lang rdfLang = RDFLanguages.contentTypeToLang(contentType);
@@ -115,20 +127,53 @@ public class JerseyClient {
                 return jerseyResponseManager.notFound();
             }
 
-            RDFFormat format = RDFWriterRegistry.defaultSerialization(rdfLang);
-
-            Model model = jenaClient.getModelFromCore(graph + "#ExportGraph");
+            RDFFormat streamingFormat = modelManager.getStreamingFormat(rdfLang);
 
             ResponseBuilder rb;
 
-            if (model != null && model.size() > 0) {
-                rb = Response.ok();
+            if (streamingFormat != null) {
+                // Triples are passed from Fuseki to the client one by one instead of loading the graph
+                InputStream exportGraph = jenaClient.getGraphStream(endpointServices.getCoreReadWriteAddress(), graph + "#ExportGraph", Lang.NTRIPLES.getHeaderString());
+                PushbackInputStream input = exportGraph != null ? new PushbackInputStream(exportGraph) : null;
+                int first;
+                try {
+                    first = input != null ? input.read() : -1;
+                } catch (IOException ex) {
+                    // Closing the stream releases the Fuseki connection
+                    input.close();
+                    throw ex;
+                }
+
+                if (first == -1) {
+                    if (input != null) {
+                        input.close();
+                    }
+                    rb = Response.noContent();
+                } else {
+                    input.unread(first);
+                    rb = Response.ok(modelManager.writeStreamToStream(streamingFormat, writer -> {
+                        try (InputStream in = input) {
+                            RDFParser.source(in).lang(Lang.NTRIPLES).parse(writer);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }));
+                }
             } else {
-                rb = Response.noContent();
+                Model model = jenaClient.getModelFromCore(graph + "#ExportGraph");
+
+                if (model != null && model.size() > 0) {
+                    // Export graphs are maintained with SPARQL updates, prefixes are those of the model graph
+                    Map<String, String> prefixes = namespaceManager.getModelNamespaceMap(graph, null);
+                    if (prefixes != null) {
+                        model.setNsPrefixes(prefixes);
+                    }
+                    rb = Response.ok(modelManager.writeModelToStream(model, RDFWriterRegistry.defaultSerialization(rdfLang)));
+                } else {
+                    rb = Response.noContent();
+                }
             }
 
-            rb.entity(modelManager.writeModelToString(model, format));
-
             if (!raw) {
                 rb.type(contentType.getContentTypeStr());
             } else {
@@ -153,6 +198,11 @@ public class JerseyClient {
     public Response getGraphsAsResponse(String service,
                                         String ctype) {
 
+        if ("core".equals(service)) {
+            // The dump contains the export graphs of all models
+            graphManager.materializeExportGraphs();
+        }
+
         Response response = getResponseFromURL(endpointServices.getEndpoint() + "/" + service + "/", ctype);
 
         logger.info(ctype + " from " + endpointServices.getEndpoint() + "/" + service + "/ response: " + response.getStatus());
@@ -201,7 +251,7 @@ public class JerseyClient {
 
         if (ctype == null) ctype = "application/ld+json";
 
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(metricsFilter);
         client.property(ClientProperties.CONNECT_TIMEOUT, 180000);
         client.property(ClientProperties.READ_TIMEOUT, 180000);
         WebTarget target = client.target(service).queryParam("graph", id);
@@ -232,7 +282,7 @@ public class JerseyClient {
                                                 boolean raw) {
         try {
 
-            Client client = ClientBuilder.newClient();
+            Client client = ClientBuilder.newClient().register(metricsFilter);
             client.property(ClientProperties.CONNECT_TIMEOUT, 180000);
             client.property(ClientProperties.READ_TIMEOUT, 180000);
             WebTarget target = client.target(service).queryParam("graph", id);
@@ -278,7 +328,7 @@ public class JerseyClient {
                                                         boolean raw) {
         try {
 
-            Client client = ClientBuilder.newClient();
+            Client client = ClientBuilder.newClient().register(metricsFilter);
             client.property(ClientProperties.CONNECT_TIMEOUT, 180000);
             client.property(ClientProperties.READ_TIMEOUT, 180000);
             WebTarget target = client.target(service).queryParam("graph", id);
@@ -319,7 +369,7 @@ public class JerseyClient {
 
         String url = properties.getPrivateTerminologyAPI() + "v1/integration/terminology/conceptSuggestion";
 
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(metricsFilter);
         WebTarget target = client.target(url);
 
         Response response = target.request().post(Entity.entity(body, "application/json"));
@@ -333,55 +383,52 @@ public class JerseyClient {
 
     public Response constructNonEmptyGraphFromService(String query,
                                                       String service) {
+        return nonEmptyGraphResponse(jenaClient.constructFromService(query, service));
+    }
+
+    public Response constructNonEmptyGraphFromService(QueryTemplate.Binding query,
+                                                      String service) {
+        return nonEmptyGraphResponse(jenaClient.constructFromService(query, service));
+    }
 
-        Model constructModel = jenaClient.constructFromService(query, service);
+    private Response nonEmptyGraphResponse(Model constructModel) {
 
         if (constructModel.size() <= 0) {
             return jerseyResponseManager.notFound();
         }
 
         ResponseBuilder rb = Response.ok();
-        rb.entity(modelManager.writeModelToJSONLDString(constructModel));
+        rb.entity(modelManager.writeModelToStream(constructModel, RDFFormat.JSONLD));
         return rb.build();
 
     }
 
     public void setNamespacesToModel(Model namespaceModel) {
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-        String selectResources = "SELECT DISTINCT ?ns ?prefix WHERE {"
-            + "GRAPH ?g { "
-            + "?g a owl:Ontology . "
-            + "?g dcap:preferredXMLNamespaceName ?ns . "
-            + "?g dcap:preferredXMLNamespacePrefix ?prefix . }}";
-
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setCommandText(selectResources);
-
-        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
-
-        while (results.hasNext()) {
-            QuerySolution soln = results.nextSolution();
-            String namespace = soln.getLiteral("ns").getString();
-            String prefix = soln.getLiteral("prefix").getString();
-            namespaceModel.setNsPrefix(prefix, namespace);
-        }
+        namespaceModel.setNsPrefixes(namespaceManager.getCoreNamespaceMap());
     }
 
     public Response constructGraphFromServiceWithNamespaces(String query,
                                                             String service) {
+        return graphResponseWithNamespaces(jenaClient.constructFromService(query, service));
+    }
+
+    public Response constructGraphFromServiceWithNamespaces(QueryTemplate.Binding query,
+                                                            String service) {
+        return graphResponseWithNamespaces(jenaClient.constructFromService(query, service));
+    }
+
+    private Response graphResponseWithNamespaces(Model constructModel) {
 
-        Model constructModel = jenaClient.constructFromService(query, service);
         setNamespacesToModel(constructModel);
 
         if (constructModel.size() <= 0) {
             ResponseBuilder rb = Response.ok().type("application/ld+json");
-            rb.entity(modelManager.writeModelToJSONLDString(constructModel));
+            rb.entity(modelManager.writeModelToStream(constructModel, RDFFormat.JSONLD));
             return rb.build();
         }
 
         ResponseBuilder rb = Response.ok();
-        String responseString = modelManager.writeModelToJSONLDString(constructModel);
-        rb.entity(responseString);
+        rb.entity(modelManager.writeModelToStream(constructModel, RDFFormat.JSONLD));
         return rb.build();
     }
 
@@ -392,13 +439,12 @@ public class JerseyClient {
 
         if (constructModel.size() <= 0) {
             ResponseBuilder rb = Response.ok().type("application/ld+json");
-            rb.entity(modelManager.writeModelToJSONLDString(constructModel));
+            rb.entity(modelManager.writeModelToStream(constructModel, RDFFormat.JSONLD));
             return rb.build();
         }
 
         ResponseBuilder rb = Response.ok();
-        String responseString = modelManager.writeModelToJSONLDString(constructModel);
-        rb.entity(responseString);
+        rb.entity(modelManager.writeModelToStream(constructModel, RDFFormat.JSONLD));
         return rb.build();
 
     }
@@ -417,7 +463,7 @@ public class JerseyClient {
         }
 
         ResponseBuilder rb = Response.ok().type("application/ld+json");
-        rb.entity(modelManager.writeModelToJSONLDString(graph));
+        rb.entity(modelManager.writeModelToStream(graph, RDFFormat.JSONLD));
         return rb.build();
     }
 }
@@ -130,6 +130,10 @@ public class JerseyResponseManager {
         return Response.status(404).entity(ErrorMessage.NOTFOUND).build();
     }
 
+    public Response preconditionFailed() {
+        return Response.status(Response.Status.PRECONDITION_FAILED).entity(ErrorMessage.MODIFIED).build();
+    }
+
     public Response depedencies() {
         return Response.status(403).entity(ErrorMessage.DEPEDENCIES).build();
     }
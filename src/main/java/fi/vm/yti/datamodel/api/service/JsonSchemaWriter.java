@@ -6,11 +6,10 @@ package fi.vm.yti.datamodel.api.service;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 
 import org.apache.jena.query.ParameterizedSparqlString;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetRewindable;
 import org.apache.jena.sparql.resultset.ResultSetPeekable;
 
 import java.io.StringWriter;
@@ -44,13 +43,19 @@ public class JsonSchemaWriter {
     private final EndpointServices endpointServices;
     private final JsonWriterFactory jsonWriterFactory;
     private final GraphManager graphManager;
+    private final ValueListManager valueListManager;
+    private final JenaClient jenaClient;
 
     JsonSchemaWriter(EndpointServices endpointServices,
                      JsonWriterFactory jsonWriterFactory,
-                     GraphManager graphManager) {
+                     GraphManager graphManager,
+                     ValueListManager valueListManager,
+                     JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.jsonWriterFactory = jsonWriterFactory;
         this.graphManager = graphManager;
+        this.valueListManager = valueListManager;
+        this.jenaClient = jenaClient;
     }
 
     private static final Map<String, String> DATATYPE_MAP =
@@ -114,9 +119,9 @@ public class JsonSchemaWriter {
 
         boolean classMetadata = false;
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) return null;
 
@@ -196,9 +201,10 @@ public class JsonSchemaWriter {
             pss.setIri("resourceID", classID);
             if (lang != null) pss.setLiteral("lang", lang);
 
-            try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+            try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-                ResultSet results = qexec.execSelect();
+                ResultSetRewindable results = ResultSetFactory.copyResults(select.getResults());
+                ValueListManager.ValueLists valueLists = valueListManager.getValueLists(results, classID);
 
                 if (results.hasNext()) {
 
@@ -236,12 +242,12 @@ public class JsonSchemaWriter {
                         }
 
                         if (soln.contains("valueList")) {
-                            JsonArray valueList = getValueList(classID, soln.getResource("property").toString());
+                            JsonArray valueList = valueLists.getValueList(classID, soln.getResource("property").toString());
                             if (valueList != null) {
                                 predicate.add("enum", valueList);
                             }
                         } else if (soln.contains("schemeList")) {
-                            JsonArray schemeList = getSchemeValueList(soln.getResource("schemeList").toString());
+                            JsonArray schemeList = valueLists.getSchemeValueList(soln.getResource("schemeList").toString());
                             if (schemeList != null) {
                                 predicate.add("enum", schemeList);
                             }
@@ -358,87 +364,6 @@ public class JsonSchemaWriter {
         return stringWriter.getBuffer().toString();
     }
 
-    public JsonArray getSchemeValueList(String schemeID) {
-        JsonArrayBuilder builder = Json.createArrayBuilder();
-
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
-        String selectList =
-            "SELECT ?value "
-                + "WHERE { "
-                + "GRAPH ?scheme { "
-                + "?code dcterms:identifier ?value . "
-                + "} "
-                + "} ORDER BY ?value";
-
-        pss.setIri("scheme", schemeID);
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setCommandText(selectList);
-
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getSchemesSparqlAddress(), pss.toString())) {
-
-            ResultSet results = qexec.execSelect();
-
-            if (!results.hasNext()) return null;
-
-            int i = 0;
-            while (results.hasNext()) {
-                if (++i == Integer.MAX_VALUE) {
-                    throw new RuntimeException("Too many items for iteration");
-                }
-                QuerySolution soln = results.next();
-                if (soln.contains("value")) {
-                    builder.add(soln.getLiteral("value").getString());
-                }
-            }
-
-        }
-
-        return builder.build();
-    }
-
-    public JsonArray getValueList(String classID,
-                                  String propertyID) {
-        JsonArrayBuilder builder = Json.createArrayBuilder();
-
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
-        String selectList =
-            "SELECT ?value "
-                + "WHERE { "
-                + "GRAPH ?resource { "
-                + "?resource sh:property ?property . "
-                + "?property sh:in/rdf:rest*/rdf:first ?value"
-                + "} "
-                + "} ";
-
-        pss.setIri("resource", classID);
-        pss.setIri("property", propertyID);
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setCommandText(selectList);
-
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.toString())) {
-
-            ResultSet results = qexec.execSelect();
-
-            if (!results.hasNext()) return null;
-
-            int i = 0;
-            while (results.hasNext()) {
-                if (++i == Integer.MAX_VALUE) {
-                    throw new RuntimeException("Too many items for iteration");
-                }
-                QuerySolution soln = results.next();
-                if (soln.contains("value")) {
-                    builder.add(soln.getLiteral("value").getString());
-                }
-            }
-        }
-
-        return builder.build();
-    }
-
-
     /*
     Ways to describe codelists, by "type"-list.
 
@@ -472,9 +397,9 @@ public class JsonSchemaWriter {
         pss.setCommandText(selectResources);
         pss.setIri("graph", graph);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) return null;
             else {
@@ -548,9 +473,10 @@ public class JsonSchemaWriter {
         pss.setCommandText(selectResources);
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSetRewindable results = ResultSetFactory.copyResults(select.getResults());
+            ValueListManager.ValueLists valueLists = valueListManager.getValueLists(results, null);
             ResultSetPeekable pResults = ResultSetFactory.makePeekable(results);
 
             if (!pResults.hasNext()) {
@@ -626,12 +552,12 @@ public class JsonSchemaWriter {
                             }
 
                             if (soln.contains("valueList")) {
-                                JsonArray valueList = getValueList(soln.getResource("resource").toString(), soln.getResource("property").toString());
+                                JsonArray valueList = valueLists.getValueList(soln.getResource("resource").toString(), soln.getResource("property").toString());
                                 if (valueList != null) {
                                     predicate.add("enum", valueList);
                                 }
                             } else if (soln.contains("schemeList")) {
-                                JsonArray schemeList = getSchemeValueList(soln.getResource("schemeList").toString());
+                                JsonArray schemeList = valueLists.getSchemeValueList(soln.getResource("schemeList").toString());
                                 if (schemeList != null) {
                                     predicate.add("enum", schemeList);
                                 }
@@ -859,9 +785,9 @@ public class JsonSchemaWriter {
 
         pss.setCommandText(selectClass);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.toString())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) {
                 logger.debug("No results from model: " + modelID);
@@ -958,9 +884,9 @@ public class JsonSchemaWriter {
 
         pss.setCommandText(selectClass);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) return null;
 
@@ -1035,9 +961,9 @@ public class JsonSchemaWriter {
         pss.setIri("modelPartGraph", modelID + "#HasPartGraph");
         pss.setCommandText(selectResources);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
             ResultSetPeekable pResults = ResultSetFactory.makePeekable(results);
 
             if (!pResults.hasNext()) {
@@ -14,9 +14,12 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.ws.rs.core.StreamingOutput;
+
 import org.apache.jena.graph.Graph;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
@@ -31,6 +34,9 @@ import org.apache.jena.riot.system.ErrorHandlerFactory;
 import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.PrefixMapFactory;
 import org.apache.jena.riot.system.RiotLib;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.shared.PropertyNotFoundException;
 import org.apache.jena.sparql.graph.GraphFactory;
 import org.apache.jena.vocabulary.OWL;
@@ -71,6 +77,65 @@ public class ModelManager {
         return writer.toString();
     }
 
+    /**
+     * Writes jena model directly to the response, without an intermediate string
+     *
+     * @param model  model to be written
+     * @param format serialization
+     * @return response entity
+     */
+    public StreamingOutput writeModelToStream(Model model,
+                                              RDFFormat format) {
+        return output -> RDFDataMgr.write(output, model, format);
+    }
+
+    /**
+     * Returns serialization of the language that can be written triple by triple, such as N-Triples or Turtle
+     * blocks, or null if the language must be written from a complete model
+     *
+     * @param lang RDF language
+     * @return streaming serialization or null
+     */
+    public RDFFormat getStreamingFormat(Lang lang) {
+        if (Lang.TURTLE.equals(lang)) {
+            return RDFFormat.TURTLE_BLOCKS;
+        }
+        if (Lang.TRIG.equals(lang)) {
+            return RDFFormat.TRIG_BLOCKS;
+        }
+        RDFFormat format = lang != null ? RDFWriterRegistry.defaultSerialization(lang) : null;
+        return format != null && StreamRDFWriter.registered(format) ? format : null;
+    }
+
+    /**
+     * Writes triples to the response as the source produces them, so memory use does not depend on the size of
+     * the graph. Common prefixes are declared before the first triple.
+     *
+     * @param format streaming serialization, see {@link #getStreamingFormat(Lang)}
+     * @param source sends triples to the given stream
+     * @return response entity
+     */
+    public StreamingOutput writeStreamToStream(RDFFormat format,
+                                               Consumer<StreamRDF> source) {
+        return output -> {
+            StreamRDF writer = StreamRDFWriter.getWriterStream(output, format);
+            writer.start();
+            LDHelper.PREFIX_MAP.forEach(writer::prefix);
+            // Parsers start and finish their destination, the writer is finished here
+            source.accept(new StreamRDFWrapper(writer) {
+
+                @Override
+                public void start() {
+                }
+
+                @Override
+                public void finish() {
+                }
+            });
+            writer.finish();
+        };
+    }
+
     public JsonNode toFramedJsonNode(Model model,
                                      LinkedHashMap<String, Object> frame) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
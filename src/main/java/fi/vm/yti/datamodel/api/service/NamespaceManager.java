@@ -3,6 +3,7 @@
  */
 package fi.vm.yti.datamodel.api.service;
 
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 
 import org.apache.commons.lang3.StringUtils;
@@ -15,6 +16,7 @@ import org.apache.jena.rdf.model.*;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.RiotException;
+import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.slf4j.Logger;
@@ -27,6 +29,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public final class NamespaceManager {
@@ -35,14 +39,21 @@ public final class NamespaceManager {
 
     private final EndpointServices endpointServices;
     private final JenaClient jenaClient;
+    private final GraphRegistry graphRegistry;
+    private final ApplicationProperties properties;
+    private final Map<String, ModelNamespaces> modelNamespaces = new ConcurrentHashMap<>();
 
     private static final List<String> ACCEPT_TYPES = List.of("application/rdf+xml;q=1.0", "text/turtle", "application/n-triples", "application/ld+json", "text/trig", "application/n-quads", "application/trix+xml", "application/rdf+thrift", "application/rdf+protobuf");
 
     @Autowired
     NamespaceManager(EndpointServices endpointServices,
-                     JenaClient jenaClient) {
+                     JenaClient jenaClient,
+                     GraphRegistry graphRegistry,
+                     ApplicationProperties properties) {
         this.endpointServices = endpointServices;
         this.jenaClient = jenaClient;
+        this.graphRegistry = graphRegistry;
+        this.properties = properties;
     }
 
     /**
@@ -148,13 +159,22 @@ public final class NamespaceManager {
     }
 
     /**
-     * Returns namespaces from the graph
+     * Returns namespaces from the graph. Prefixes of models and of resources defined in known models are taken from
+     * the cached prefixes of the model, so the graph is only downloaded for graphs not in the graph registry.
      *
-     * @param graph Graph of the model
+     * @param graph Graph of the model or resource
      * @return Returns prefix-map
      */
     public Map<String, String> getCoreNamespaceMap(String graph) {
 
+        GraphRegistry.ModelNamespace modelNamespace = graphRegistry.getModel(graph);
+        if (modelNamespace == null) {
+            modelNamespace = graphRegistry.getModelOfResource(graph);
+        }
+        if (modelNamespace != null) {
+            return getModelNamespaceMap(modelNamespace.getGraph(), modelNamespace.getModified());
+        }
+
         Model model = jenaClient.getModelFromCore(graph);
 
         if (model == null) {
@@ -166,12 +186,80 @@ public final class NamespaceManager {
     }
 
     /**
-     * Queries and returns all prefixes and namespaces used by models
+     * Returns prefixes stored with the model graph. The prefixes are cached together with the modification time of
+     * the model and the graph is only fetched when the given modification time differs from the cached one.
+     *
+     * @param model    Graph of the model
+     * @param modified dcterms:modified of the model as known by the caller, or null to use the one in the graph
+     *                 registry
+     * @return Returns prefix-map or null if the model does not exist
+     */
+    public Map<String, String> getModelNamespaceMap(String model,
+                                                    String modified) {
+        if (modified == null) {
+            GraphRegistry.ModelNamespace modelNamespace = graphRegistry.getModel(model);
+            modified = modelNamespace != null ? modelNamespace.getModified() : null;
+        }
+        ModelNamespaces cached = modelNamespaces.get(model);
+        if (cached != null && (modified == null || Objects.equals(cached.modified, modified))) {
+            return cached.prefixes;
+        }
+
+        Model graph = jenaClient.getModelFromCore(model);
+
+        if (graph == null) {
+            modelNamespaces.remove(model);
+            return null;
+        }
+
+        return setModelNamespaceMap(model, graph);
+    }
+
+    /**
+     * Caches prefixes of the model graph when the model is created or updated
+     *
+     * @param model Graph of the model
+     * @param graph Model graph as stored
+     * @return Returns prefix-map
+     */
+    public Map<String, String> setModelNamespaceMap(String model,
+                                                    Model graph) {
+        Statement modifiedStatement = graph.getProperty(ResourceFactory.createResource(model), DCTerms.modified);
+        String modified = modifiedStatement != null && modifiedStatement.getObject().isLiteral() ? modifiedStatement.getLiteral().getLexicalForm() : null;
+        Map<String, String> prefixes = Map.copyOf(graph.getNsPrefixMap());
+        modelNamespaces.put(model, new ModelNamespaces(prefixes, modified));
+        return prefixes;
+    }
+
+    public void invalidateModelNamespaceMap(String model) {
+        modelNamespaces.remove(model);
+    }
+
+    private static class ModelNamespaces {
+
+        private final Map<String, String> prefixes;
+        private final String modified;
+
+        private ModelNamespaces(Map<String, String> prefixes,
+                                String modified) {
+            this.prefixes = prefixes;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Returns all prefixes and namespaces used by models. Answered from the graph registry when it was loaded
+     * recently enough, otherwise core is queried and the registry entries, which include changes made through this
+     * node, are merged in.
      *
      * @return Prefix map
      */
     public Map<String, String> getCoreNamespaceMap() {
 
+        if (graphRegistry.isCurrent(properties.getGraphRegistryMaxAgeMs())) {
+            return graphRegistry.getNamespaceMap();
+        }
+
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
         String selectResources
             = "SELECT ?namespace ?prefix WHERE { "
@@ -185,20 +273,17 @@ public final class NamespaceManager {
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
         pss.setCommandText(selectResources);
 
-        Map namespaceMap = new HashMap<String, String>();
-
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        Map<String, String> namespaceMap = new HashMap<>();
 
-            ResultSet results = qexec.execSelect();
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
 
-            while (results.hasNext()) {
-                QuerySolution soln = results.nextSolution();
-                namespaceMap.put(soln.getLiteral("prefix").toString(), soln.getLiteral("namespace").toString());
-            }
+        while (results.hasNext()) {
+            QuerySolution soln = results.nextSolution();
+            namespaceMap.put(soln.getLiteral("prefix").toString(), soln.getLiteral("namespace").toString());
         }
 
+        namespaceMap.putAll(graphRegistry.getNamespaceMap());
         return namespaceMap;
-
     }
 
     @Deprecated
@@ -246,9 +331,9 @@ public final class NamespaceManager {
 
         String type = null;
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getImportsSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getImportsSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             while (results.hasNext()) {
                 QuerySolution soln = results.nextSolution();
@@ -22,11 +22,10 @@ import javax.json.JsonWriter;
 import javax.json.JsonWriterFactory;
 
 import org.apache.jena.query.ParameterizedSparqlString;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetRewindable;
 import org.apache.jena.sparql.resultset.ResultSetPeekable;
 import org.apache.jena.util.SplitIRI;
 import org.slf4j.Logger;
@@ -77,6 +76,8 @@ public class OpenAPIWriter {
     private final JsonWriterFactory jsonWriterFactory;
     private final GraphManager graphManager;
     private final ApplicationProperties config;
+    private final ValueListManager valueListManager;
+    private final JenaClient jenaClient;
 
     @Autowired
     private MessageSource messageSource;
@@ -84,11 +85,15 @@ public class OpenAPIWriter {
     OpenAPIWriter(EndpointServices endpointServices,
                   JsonWriterFactory jsonWriterFactory,
                   GraphManager graphManager,
-                  ApplicationProperties config) {
+                  ApplicationProperties config,
+                  ValueListManager valueListManager,
+                  JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.jsonWriterFactory = jsonWriterFactory;
         this.graphManager = graphManager;
         this.config = config;
+        this.valueListManager = valueListManager;
+        this.jenaClient = jenaClient;
     }
 
     public String jsonObjectToPrettyString(JsonObject object) {
@@ -99,82 +104,6 @@ public class OpenAPIWriter {
         return stringWriter.getBuffer().toString();
     }
 
-    public JsonArray getSchemeValueList(String schemeID) {
-        JsonArrayBuilder builder = Json.createArrayBuilder();
-
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
-        String selectList =
-            "SELECT ?value "
-                + "WHERE { "
-                + "GRAPH ?scheme { "
-                + "?code dcterms:identifier ?value . "
-                + "} "
-                + "} ORDER BY ?value";
-
-        pss.setIri("scheme", schemeID);
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setCommandText(selectList);
-
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getSchemesSparqlAddress(), pss.toString())) {
-
-            ResultSet results = qexec.execSelect();
-
-            if (!results.hasNext()) return null;
-
-            while (results.hasNext()) {
-                QuerySolution soln = results.next();
-                if (soln.contains("value")) {
-                    builder.add(soln.getLiteral("value").getString());
-                }
-            }
-
-        }
-
-        return builder.build();
-    }
-
-    public JsonArray getValueList(String classID,
-                                  String propertyID) {
-        JsonArrayBuilder builder = Json.createArrayBuilder();
-
-        ParameterizedSparqlString pss = new ParameterizedSparqlString();
-
-        String selectList =
-            "SELECT ?value "
-                + "WHERE { "
-                + "GRAPH ?resource { "
-                + "?resource sh:property ?property . "
-                + "?property sh:in/rdf:rest*/rdf:first ?value"
-                + "} "
-                + "} ";
-
-        pss.setIri("resource", classID);
-        pss.setIri("property", propertyID);
-        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
-        pss.setCommandText(selectList);
-
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.toString())) {
-
-            ResultSet results = qexec.execSelect();
-
-            if (!results.hasNext()) return null;
-
-            int i = 0;
-            while (results.hasNext()) {
-                if (++i == Integer.MAX_VALUE) {
-                    throw new RuntimeException("Too many items for iteration");
-                }
-                QuerySolution soln = results.next();
-                if (soln.contains("value")) {
-                    builder.add(soln.getLiteral("value").getString());
-                }
-            }
-        }
-
-        return builder.build();
-    }
-
     public Map<String, Object> getClassDefinitions(String modelID,
                                                    String lang,
                                                    String resourceID) {
@@ -244,9 +173,10 @@ public class OpenAPIWriter {
         pss.setCommandText(selectResources);
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSetRewindable results = ResultSetFactory.copyResults(select.getResults());
+            ValueListManager.ValueLists valueLists = valueListManager.getValueLists(results, resourceID);
             ResultSetPeekable pResults = ResultSetFactory.makePeekable(results);
 
             if (!pResults.hasNext()) {
@@ -323,12 +253,12 @@ public class OpenAPIWriter {
                             }
 
                             if (soln.contains("valueList")) {
-                                JsonArray valueList = getValueList(classId, soln.getResource("property").toString());
+                                JsonArray valueList = valueLists.getValueList(classId, soln.getResource("property").toString());
                                 if (valueList != null) {
                                     predicate.add("enum", valueList);
                                 }
                             } else if (soln.contains("schemeList")) {
-                                JsonArray schemeList = getSchemeValueList(soln.getResource("schemeList").toString());
+                                JsonArray schemeList = valueLists.getSchemeValueList(soln.getResource("schemeList").toString());
                                 if (schemeList != null) {
                                     predicate.add("enum", schemeList);
                                 }
@@ -746,9 +676,9 @@ public class OpenAPIWriter {
 
         pss.setCommandText(selectClass);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.toString())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
             if (!results.hasNext()) {
                 logger.debug("No results from model: " + modelID);
                 return null;
@@ -0,0 +1,124 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * In-memory map from contributor organization to the models it contributes to. Searches read an immutable
+ * snapshot without locking. The snapshot is reloaded from core by the scheduled organization job and patched
+ * when models are created, updated or removed through this node.
+ */
+@Service
+public class OrganizationModelCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrganizationModelCache.class.getName());
+
+    private static final String MODEL_ORGANIZATIONS_QUERY =
+        "SELECT ?graph ?org WHERE { "
+            + "GRAPH ?graph { "
+            + "?graph a owl:Ontology . "
+            + "?graph dcterms:contributor ?org . "
+            + "}}";
+
+    private final EndpointServices endpointServices;
+    private final JenaClient jenaClient;
+
+    private volatile Map<String, Set<String>> modelsByOrganization;
+
+    @Autowired
+    OrganizationModelCache(EndpointServices endpointServices,
+                           JenaClient jenaClient) {
+        this.endpointServices = endpointServices;
+        this.jenaClient = jenaClient;
+    }
+
+    /**
+     * Returns models contributed by any of the given organizations
+     *
+     * @param orgs organization UUIDs
+     * @return model IDs
+     */
+    public Set<String> getModels(Collection<String> orgs) {
+        Map<String, Set<String>> snapshot = modelsByOrganization;
+        if (snapshot == null) {
+            snapshot = refresh();
+        }
+        Set<String> modelIds = new HashSet<>();
+        for (String org : orgs) {
+            modelIds.addAll(snapshot.getOrDefault(org, Collections.emptySet()));
+        }
+        return modelIds;
+    }
+
+    public synchronized Map<String, Set<String>> refresh() {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setCommandText(MODEL_ORGANIZATIONS_QUERY);
+
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+
+        Map<String, Set<String>> models = new HashMap<>();
+        while (results.hasNext()) {
+            QuerySolution soln = results.nextSolution();
+            if (soln.contains("org") && soln.get("org").isURIResource()) {
+                String org = soln.getResource("org").getURI().replace("urn:uuid:", "");
+                models.computeIfAbsent(org, o -> new HashSet<>()).add(soln.getResource("graph").getURI());
+            }
+        }
+
+        logger.debug("Loaded models of " + models.size() + " organizations");
+        modelsByOrganization = freeze(models);
+        return modelsByOrganization;
+    }
+
+    /**
+     * Replaces contributor organizations of the model
+     *
+     * @param model model ID
+     * @param orgs  organization UUIDs
+     */
+    public synchronized void updateModel(String model,
+                                         Collection<String> orgs) {
+        if (modelsByOrganization == null) {
+            return;
+        }
+        Map<String, Set<String>> models = thaw(modelsByOrganization);
+        models.values().forEach(modelIds -> modelIds.remove(model));
+        orgs.forEach(org -> models.computeIfAbsent(org, o -> new HashSet<>()).add(model));
+        modelsByOrganization = freeze(models);
+    }
+
+    public synchronized void removeModel(String model) {
+        updateModel(model, Collections.emptySet());
+    }
+
+    private static Map<String, Set<String>> thaw(Map<String, Set<String>> snapshot) {
+        Map<String, Set<String>> models = new HashMap<>();
+        snapshot.forEach((org, modelIds) -> models.put(org, new HashSet<>(modelIds)));
+        return models;
+    }
+
+    private static Map<String, Set<String>> freeze(Map<String, Set<String>> models) {
+        Map<String, Set<String>> snapshot = new HashMap<>();
+        models.forEach((org, modelIds) -> {
+            if (!modelIds.isEmpty()) {
+                snapshot.put(org, Set.copyOf(modelIds));
+            }
+        });
+        return Collections.unmodifiableMap(snapshot);
+    }
+}
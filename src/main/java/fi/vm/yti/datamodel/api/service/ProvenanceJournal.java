@@ -0,0 +1,411 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.jena.query.QueryParseException;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+
+/**
+ * Write-ahead journal for provenance updates. Updates are appended to a local file and acknowledged once they
+ * are on disk. A background writer sends them to the provenance dataset in batches and keeps retrying while
+ * the dataset is unavailable. A batch rejected by the dataset is sent again record by record, and records that are
+ * rejected on their own are logged and skipped. Updates that were not yet sent are replayed on restart.
+ * <p>
+ * Journal records are length prefixed SPARQL updates. The checkpoint file holds the offset up to which the
+ * journal has been applied. The journal is truncated whenever the writer has caught up.
+ * <p>
+ * The journal directory must be on persistent storage. If no journal directory is configured, the journal cannot
+ * be opened or the journal stays full for longer than the configured maximum wait, updates are sent synchronously.
+ */
+@Service
+public class ProvenanceJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvenanceJournal.class.getName());
+    private static final String JOURNAL_FILE = "provenance.journal";
+    private static final String CHECKPOINT_FILE = "provenance.checkpoint";
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private final EndpointServices endpointServices;
+    private final JenaClient jenaClient;
+    private final ApplicationProperties properties;
+
+    private FileChannel journal;
+    private Path checkpoint;
+    private Thread writer;
+    private volatile boolean running;
+
+    /* Journal offsets, guarded by this */
+    private long appended;
+    private long applied;
+
+    @Autowired
+    ProvenanceJournal(EndpointServices endpointServices,
+                      JenaClient jenaClient,
+                      ApplicationProperties properties) {
+        this.endpointServices = endpointServices;
+        this.jenaClient = jenaClient;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void open() {
+        String dir = properties.getProvenanceJournalDir();
+        if (dir == null || dir.isEmpty()) {
+            logger.info("Provenance journal is disabled, provenance is written synchronously");
+            return;
+        }
+        try {
+            openJournal(Paths.get(dir));
+        } catch (IOException | NumberFormatException ex) {
+            logger.error("Could not open provenance journal in " + dir + ", provenance is written synchronously", ex);
+            closeJournal();
+            return;
+        }
+
+        if (appended > applied) {
+            logger.info("Replaying " + (appended - applied) + " bytes of provenance journal");
+        }
+
+        running = true;
+        writer = new Thread(this::drain, "provenance-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the journal and checkpoint files and drops a partially written record. Does not start the writer.
+     *
+     * @param dir journal directory
+     */
+    synchronized void openJournal(Path dir) throws IOException {
+        Path directory = Files.createDirectories(dir);
+        journal = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = directory.resolve(CHECKPOINT_FILE);
+        // The journal is truncated before the checkpoint is reset, so a checkpoint past the end of the journal
+        // means that the writer had caught up
+        applied = Math.min(readCheckpoint(), journal.size());
+        appended = recover(applied);
+        writeCheckpoint(applied);
+    }
+
+    synchronized long getAppliedOffset() {
+        return applied;
+    }
+
+    synchronized long getAppendedOffset() {
+        return appended;
+    }
+
+    @PreDestroy
+    void close() {
+        running = false;
+        if (writer != null) {
+            synchronized (this) {
+                notifyAll();
+            }
+            try {
+                writer.join(SHUTDOWN_TIMEOUT_MS);
+                // Unsent records are replayed on next start
+                writer.interrupt();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeJournal();
+    }
+
+    /**
+     * Appends the update to the journal. Returns once the update is on disk. Waits while the unsent part of
+     * the journal is larger than the configured maximum, for at most the configured maximum wait, after which
+     * the update is sent synchronously.
+     *
+     * @param request update to the provenance dataset
+     */
+    public void append(UpdateRequest request) {
+        if (!running) {
+            send(request);
+            return;
+        }
+
+        byte[] bytes = request.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        record.putInt(bytes.length).put(bytes).flip();
+        long maxBytes = properties.getProvenanceJournalMaxSizeMb() * 1024L * 1024L;
+
+        synchronized (this) {
+            try {
+                if (waitForSpace(maxBytes)) {
+                    long position = appended;
+                    while (record.hasRemaining()) {
+                        position += journal.write(record, position);
+                    }
+                    journal.force(false);
+                    appended = position;
+                    notifyAll();
+                    return;
+                }
+                logger.warn("Provenance journal is still full, writing synchronously");
+            } catch (IOException ex) {
+                logger.error("Could not append to provenance journal, writing synchronously", ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        send(request);
+    }
+
+    /**
+     * Sends the update to the provenance dataset
+     */
+    void send(UpdateRequest request) {
+        jenaClient.updateToService(request, endpointServices.getProvSparqlUpdateAddress());
+    }
+
+    /**
+     * Waits for at most the configured maximum wait until the unsent part of the journal fits the maximum size.
+     * Called holding the lock.
+     *
+     * @return false if the journal is still full or has been closed
+     */
+    private boolean waitForSpace(long maxBytes) throws InterruptedException {
+        if (appended - applied > maxBytes) {
+            logger.warn("Provenance journal is full, waiting for the provenance writer");
+            long deadline = System.currentTimeMillis() + properties.getProvenanceJournalMaxWaitMs();
+            long remaining = deadline - System.currentTimeMillis();
+            while (running && appended - applied > maxBytes && remaining > 0) {
+                wait(Math.min(remaining, MIN_RETRY_DELAY_MS));
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        return running && appended - applied <= maxBytes;
+    }
+
+    private static final class JournalRecord {
+
+        private final long position;
+        private final UpdateRequest update;
+
+        private JournalRecord(long position,
+                              UpdateRequest update) {
+            this.position = position;
+            this.update = update;
+        }
+    }
+
+    /**
+     * @return true if the update may succeed when it is sent again later
+     */
+    static boolean isTransient(RuntimeException ex) {
+        return ex instanceof FusekiUnavailableException || FusekiResilience.isTransient(ex);
+    }
+
+    private void drain() {
+        long delay = MIN_RETRY_DELAY_MS;
+        while (running) {
+            long from;
+            long to;
+            synchronized (this) {
+                while (running && applied == appended) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                from = applied;
+                to = appended;
+            }
+            if (!running) {
+                return;
+            }
+
+            try {
+                List<JournalRecord> records = new ArrayList<>();
+                long end = readBatch(from, to, records);
+                sendBatch(records);
+                markApplied(end);
+                delay = MIN_RETRY_DELAY_MS;
+            } catch (IOException | RuntimeException ex) {
+                logger.warn("Could not write provenance, retrying in " + delay + " ms: " + ex.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * Sends the records as one update. If the dataset rejects the update, the records are sent one by one and
+     * the records rejected on their own are skipped. Transient failures are thrown, to be retried later, after
+     * marking the records sent before the failure as applied.
+     */
+    private void sendBatch(List<JournalRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        UpdateRequest batch = new UpdateRequest();
+        records.forEach(record -> record.update.getOperations().forEach(batch::add));
+        try {
+            send(batch);
+            return;
+        } catch (RuntimeException ex) {
+            if (isTransient(ex)) {
+                throw ex;
+            }
+            if (records.size() == 1) {
+                logSkipped(records.get(0), ex);
+                return;
+            }
+            logger.warn("Provenance batch of " + records.size() + " records was rejected, sending the records one by one: " + ex.getMessage());
+        }
+        for (JournalRecord record : records) {
+            try {
+                send(record.update);
+            } catch (RuntimeException ex) {
+                if (isTransient(ex)) {
+                    markApplied(record.position);
+                    throw ex;
+                }
+                logSkipped(record, ex);
+            }
+        }
+    }
+
+    private static void logSkipped(JournalRecord record,
+                                   RuntimeException ex) {
+        logger.error("Skipping provenance journal record at " + record.position + " rejected by the provenance dataset: " + ex.getMessage() + "\n" + record.update);
+    }
+
+    /**
+     * Reads up to the configured batch size of records. Records that cannot be parsed are skipped.
+     *
+     * @return offset after the last record read
+     */
+    private long readBatch(long from,
+                           long to,
+                           List<JournalRecord> records) throws IOException {
+        int batchSize = properties.getProvenanceJournalBatchSize();
+        long position = from;
+        for (int i = 0; i < batchSize && position < to; i++) {
+            byte[] record = readRecord(position);
+            long end = position + Integer.BYTES + record.length;
+            try {
+                records.add(new JournalRecord(position, UpdateFactory.create(new String(record, StandardCharsets.UTF_8))));
+            } catch (QueryParseException ex) {
+                logger.error("Skipping invalid provenance journal record at " + position + ": " + ex.getMessage());
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    private byte[] readRecord(long position) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, position);
+        ByteBuffer record = ByteBuffer.allocate(length.flip().getInt());
+        readFully(record, position + Integer.BYTES);
+        return record.array();
+    }
+
+    private void readFully(ByteBuffer buffer,
+                           long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = journal.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of provenance journal");
+            }
+        }
+    }
+
+    /**
+     * Records that the journal has been applied up to the offset. Once everything has been applied, the journal is
+     * truncated before the checkpoint is reset.
+     */
+    synchronized void markApplied(long offset) throws IOException {
+        applied = offset;
+        if (applied == appended) {
+            journal.truncate(0);
+            applied = 0;
+            appended = 0;
+        }
+        writeCheckpoint(applied);
+        notifyAll();
+    }
+
+    /**
+     * Drops a partially written record left by a crash
+     *
+     * @return offset after the last complete record
+     */
+    long recover(long from) throws IOException {
+        long size = journal.size();
+        long position = from;
+        while (position + Integer.BYTES <= size) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, position);
+            long next = position + Integer.BYTES + length.flip().getInt();
+            if (next > size) {
+                break;
+            }
+            position = next;
+        }
+        if (position < size) {
+            logger.warn("Dropping " + (size - position) + " bytes of incomplete provenance journal record");
+            journal.truncate(position);
+        }
+        return position;
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        String offset = Files.readString(checkpoint).trim();
+        return offset.isEmpty() ? 0 : Long.parseLong(offset);
+    }
+
+    private void writeCheckpoint(long offset) throws IOException {
+        Path tmp = checkpoint.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, Long.toString(offset));
+        Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                logger.warn("Could not close provenance journal", ex);
+            }
+            journal = null;
+        }
+    }
+}
@@ -6,7 +6,12 @@ package fi.vm.yti.datamodel.api.service;
 import fi.vm.yti.datamodel.api.config.ApplicationProperties;
 import fi.vm.yti.datamodel.api.utils.LDHelper;
 
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.iri.IRI;
+import org.apache.jena.modify.request.QuadDataAcc;
+import org.apache.jena.modify.request.UpdateDataInsert;
+import org.apache.jena.modify.request.UpdateDrop;
 import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
@@ -15,9 +20,7 @@ import org.apache.jena.rdf.model.NodeIterator;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
-import org.apache.jena.update.UpdateException;
-import org.apache.jena.update.UpdateExecutionFactory;
-import org.apache.jena.update.UpdateProcessor;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.vocabulary.DCTerms;
 import org.slf4j.Logger;
@@ -25,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Calendar;
 import java.util.UUID;
 
 @Service
@@ -36,14 +40,17 @@ public class ProvenanceManager {
     private final EndpointServices endpointServices;
     private final ApplicationProperties properties;
     private final JenaClient jenaClient;
+    private final ProvenanceJournal provenanceJournal;
 
     @Autowired
     ProvenanceManager(EndpointServices endpointServices,
                       ApplicationProperties properties,
-                      JenaClient jenaClient) {
+                      JenaClient jenaClient,
+                      ProvenanceJournal provenanceJournal) {
         this.endpointServices = endpointServices;
         this.properties = properties;
         this.jenaClient = jenaClient;
+        this.provenanceJournal = provenanceJournal;
     }
 
     public boolean getProvMode() {
@@ -58,7 +65,25 @@ public class ProvenanceManager {
      */
     public void putToProvenanceGraph(Model model,
                                      String id) {
-        jenaClient.putModelToProv(id, model);
+        provenanceJournal.append(putToProvenanceGraphRequest(model, id));
+    }
+
+    /**
+     * Returns update that replaces the graph in provenance with the model
+     *
+     * @param model Jena model
+     * @param id    IRI of the graph as String
+     * @return UpdateRequest of the graph
+     */
+    public UpdateRequest putToProvenanceGraphRequest(Model model,
+                                                     String id) {
+        Node graph = NodeFactory.createURI(id);
+        QuadDataAcc quads = new QuadDataAcc();
+        model.getGraph().find().forEachRemaining(triple -> quads.addQuad(new Quad(graph, triple)));
+        UpdateRequest request = new UpdateRequest();
+        request.add(new UpdateDrop(graph, true));
+        request.add(new UpdateDataInsert(quads));
+        return request;
     }
 
     /**
@@ -73,24 +98,27 @@ public class ProvenanceManager {
                                                   Model model,
                                                   String provUUID,
                                                   UUID user) {
-        putToProvenanceGraph(model, provUUID);
-        createProvenanceActivity(id, provUUID, user);
+        UpdateRequest request = putToProvenanceGraphRequest(model, provUUID);
+        createProvenanceActivityRequest(id, provUUID, user).getOperations().forEach(request::add);
+        provenanceJournal.append(request);
     }
 
 
+    /**
+     * Returns query that removes the activity graph and the entity graphs generated by it. Entities are resolved
+     * when the query is executed so that the query can be queued with other provenance updates.
+     *
+     * @param activityUri ID of the resource
+     * @return SPARQL update
+     */
     public String buildRemoveProvEntityQuery(String activityUri) {
-        Model provModel = jenaClient.getModelFromProv(activityUri);
-        String newQuery = "DROP SILENT GRAPH <" + activityUri + ">;\n";
-        if(provModel!=null && provModel.size()>1) {
-            NodeIterator previousVersionObjects = provModel.listObjectsOfProperty(LDHelper.curieToProperty("prov:generated"));
-            while (previousVersionObjects.hasNext()) {
-                String entityUri = previousVersionObjects.next().asResource().getURI();
-                newQuery += "DROP SILENT GRAPH <" + entityUri + ">;\n";
-            }
-        } else {
-            logger.warn("No provenance for "+activityUri);
-        }
-        return newQuery;
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("activity", activityUri);
+        pss.setCommandText("DELETE { GRAPH ?entity { ?s ?p ?o . } } "
+            + "WHERE { GRAPH ?activity { ?activity prov:generated ?entity . } GRAPH ?entity { ?s ?p ?o . } } ;\n"
+            + "DROP SILENT GRAPH ?activity ;\n");
+        return pss.toString();
     }
 
     public String buildRemoveProvModelQuery(String modelId) {
@@ -127,16 +155,15 @@ public class ProvenanceManager {
 
         logger.debug(pss.toString());
 
-        UpdateRequest queryObj = pss.asUpdate();
-        UpdateProcessor qexec = UpdateExecutionFactory.createRemoteForm(queryObj, endpointServices.getProvSparqlUpdateAddress());
-
-        try {
-            qexec.execute();
-        } catch (UpdateException ex) {
-            logger.warn(ex.toString());
-        }
+        provenanceJournal.append(pss.asUpdate());
     }
 
+    /**
+     * Creates Provenance activities for the resources of a new model version
+     *
+     * @param modelId ID of the new model
+     * @param user    UUID of the committing user
+     */
     public void createProvenanceActivityForNewVersionModel(String modelId, UUID user) {
         Model hasPartGraph = jenaClient.getModelFromCore(modelId+"#HasPartGraph");
         if(hasPartGraph!=null && hasPartGraph.size()>1) {
@@ -186,7 +213,7 @@ public class ProvenanceManager {
             + "?graph dcterms:identifier ?versionID . }"
             + "}"
             + "WHERE { "
-            + "BIND(now() as ?creation)"
+            + "BIND(?timestamp as ?creation)"
             + "OPTIONAL { "
              + "GRAPH ?graph {"
              + "?graph ?oldpredicate ?oldresource . }"
@@ -201,6 +228,7 @@ public class ProvenanceManager {
         pss.setIri("modelGraph", modelGraph);
         pss.setIri("user", "urn:uuid:" + user.toString());
         pss.setIri("jsonld", provUUID);
+        pss.setLiteral("timestamp", timestamp());
         pss.setCommandText(query);
         return pss.asUpdate();
     }
@@ -208,8 +236,7 @@ public class ProvenanceManager {
     public void createProvenanceActivity(String graph,
                                          String provUUID,
                                          UUID user) {
-        UpdateRequest queryObj = createProvenanceActivityRequest(graph, provUUID, user);
-        jenaClient.updateToService(queryObj, endpointServices.getProvSparqlUpdateAddress());
+        provenanceJournal.append(createProvenanceActivityRequest(graph, provUUID, user));
     }
 
     public UpdateRequest createProvEntityRequest(String graph,
@@ -238,7 +265,7 @@ public class ProvenanceManager {
             + "GRAPH ?graph { "
             + "?graph prov:used ?oldEntity . "
             + "}"
-            + "BIND(now() as ?creation)"
+            + "BIND(?timestamp as ?creation)"
             + "}";
 
         ParameterizedSparqlString pss = new ParameterizedSparqlString();
@@ -247,6 +274,7 @@ public class ProvenanceManager {
         pss.setIri("graph", graph);
         pss.setIri("user", "urn:uuid:" + user.toString());
         pss.setIri("jsonld", provUUID);
+        pss.setLiteral("timestamp", timestamp());
         pss.setCommandText(query);
         return pss.asUpdate();
     }
@@ -254,8 +282,7 @@ public class ProvenanceManager {
     public void createProvEntity(String graph,
                                  String provUUID,
                                  UUID user) {
-        UpdateRequest queryObj = createProvEntityRequest(graph, user, provUUID);
-        jenaClient.updateToService(queryObj, endpointServices.getProvSparqlUpdateAddress());
+        provenanceJournal.append(createProvEntityRequest(graph, user, provUUID));
     }
 
     /**
@@ -272,11 +299,12 @@ public class ProvenanceManager {
                                        UUID user,
                                        String provUUID,
                                        IRI oldIdIRI) {
-        putToProvenanceGraph(model, provUUID);
-        createProvEntity(graph, provUUID, user);
+        UpdateRequest request = putToProvenanceGraphRequest(model, provUUID);
+        createProvEntityRequest(graph, user, provUUID).getOperations().forEach(request::add);
         if (oldIdIRI != null) {
-            renameID(oldIdIRI.toString(), graph);
+            renameIDRequest(oldIdIRI.toString(), graph).getOperations().forEach(request::add);
         }
+        provenanceJournal.append(request);
     }
 
     /**
@@ -329,7 +357,13 @@ public class ProvenanceManager {
 
     public void renameID(String oldid,
                          String newid) {
-        UpdateRequest queryObj = renameIDRequest(oldid, newid);
-        jenaClient.updateToService(queryObj, endpointServices.getProvSparqlUpdateAddress());
+        provenanceJournal.append(renameIDRequest(oldid, newid));
+    }
+
+    /**
+     * Time of the edit. Provenance updates may be executed later, so now() cannot be used in the updates.
+     */
+    private static Calendar timestamp() {
+        return Calendar.getInstance();
     }
 }
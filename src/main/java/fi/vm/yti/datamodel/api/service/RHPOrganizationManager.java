@@ -12,8 +12,6 @@ import javax.ws.rs.core.Response;
 
 import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.sparql.vocabulary.FOAF;
 import org.apache.jena.vocabulary.DCTerms;
@@ -35,15 +33,21 @@ public class RHPOrganizationManager {
     private final EndpointServices endpointServices;
     private final ApplicationProperties properties;
     private final GraphManager graphManager;
+    private final JenaClient jenaClient;
+
+    /* Child organization ids by parent id, loaded with the organizations. Null until the first successful load. */
+    private volatile Map<String, List<String>> childOrganizations;
 
     RHPOrganizationManager(ClientFactory clientFactory,
                            EndpointServices endpointServices,
                            ApplicationProperties properties,
-                           GraphManager graphManager) {
+                           GraphManager graphManager,
+                           JenaClient jenaClient) {
         this.clientFactory = clientFactory;
         this.endpointServices = endpointServices;
         this.properties = properties;
         this.graphManager = graphManager;
+        this.jenaClient = jenaClient;
     }
 
     public Response getOrganizations() {
@@ -83,7 +87,19 @@ public class RHPOrganizationManager {
         return new ArrayList<>(uniqOrgList);
     }
 
+    /**
+     * Returns child organizations from the organization hierarchy loaded by {@link #initOrganizationsFromRHP()}.
+     * Falls back to group management if organizations have not been loaded.
+     */
     public List<String> getChildOrganizations(String parentId) {
+        Map<String, List<String>> children = childOrganizations;
+        if (children != null) {
+            return children.getOrDefault(parentId, Collections.emptyList());
+        }
+        return getChildOrganizationsFromRHP(parentId);
+    }
+
+    private List<String> getChildOrganizationsFromRHP(String parentId) {
         String service = properties.getPrivateGroupManagementAPI() + "childorganizations?parentId=" + parentId;
         Response response = clientFactory.create().target(service).request("application/json").get();
 
@@ -241,11 +257,25 @@ public class RHPOrganizationManager {
         Model graph = getOrganizationModelFromRHP();
         if (graph != null) {
             graphManager.putToGraph(graph, "urn:yti:organizations");
+            childOrganizations = getChildOrganizationMap(graph);
         } else {
             logger.debug("No organizations initialized in group management!");
         }
     }
 
+    private Map<String, List<String>> getChildOrganizationMap(Model organizations) {
+        Property parentOrganizationProperty = ResourceFactory.createProperty(LDHelper.PREFIX_MAP.get("iow") + "parentOrganization");
+        Map<String, List<String>> children = new HashMap<>();
+        organizations.listStatements(null, parentOrganizationProperty, (RDFNode) null).forEachRemaining(statement -> {
+            if (statement.getObject().isURIResource()) {
+                String parentId = statement.getResource().getURI().replace("urn:uuid:", "");
+                String childId = statement.getSubject().getURI().replace("urn:uuid:", "");
+                children.computeIfAbsent(parentId, id -> new ArrayList<>()).add(childId);
+            }
+        });
+        return Collections.unmodifiableMap(children);
+    }
+
     public void initTestOrganizations() {
         Model model = ModelFactory.createDefaultModel();
         model.setNsPrefix("dcterms", "http://purl.org/dc/terms/");
@@ -273,8 +303,8 @@ public class RHPOrganizationManager {
         pss.setCommandText(queryString);
         Query query = pss.asQuery();
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), query)) {
-            boolean b = qexec.execAsk();
+        try {
+            boolean b = jenaClient.askQuery(endpointServices.getCoreSparqlAddress(), query);
             logger.info("EXISTS " + sparqlOrgList + ":" + b);
             return b;
         } catch (Exception ex) {
@@ -16,8 +16,6 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.jena.query.DatasetAccessor;
-import org.apache.jena.query.DatasetAccessorFactory;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
@@ -103,14 +101,20 @@ public final class TerminologyManager {
     private final EndpointServices endpointServices;
     private final ApplicationProperties properties;
     private final ModelManager modelManager;
+    private final HttpClientMetricsFilter metricsFilter;
+    private final JenaClient jenaClient;
 
     @Autowired
     TerminologyManager(EndpointServices endpointServices,
                        ApplicationProperties properties,
-                       ModelManager modelManager) {
+                       ModelManager modelManager,
+                       HttpClientMetricsFilter metricsFilter,
+                       JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.properties = properties;
         this.modelManager = modelManager;
+        this.metricsFilter = metricsFilter;
+        this.jenaClient = jenaClient;
     }
 
     public String createConceptSuggestionJson(String terminologyUri,
@@ -142,12 +146,10 @@ public final class TerminologyManager {
                                                          Query query) {
 
         logger.info("Constructing resource with concept: " + StringUtils.normalizeSpace(conceptUri));
-        DatasetAccessor testAcc = DatasetAccessorFactory.createHTTP(endpointServices.getCoreReadAddress());
-
         Model conceptModel = searchConceptFromTerminologyIntegrationAPIAsModel(null, null, conceptUri);
 
         assert conceptModel != null;
-        conceptModel.add(testAcc.getModel(modelUri));
+        conceptModel.add(jenaClient.getModelFromCore(modelUri));
 
         try (QueryExecution qexec = QueryExecutionFactory.create(query, conceptModel)) {
             return qexec.execConstruct();
@@ -168,7 +170,7 @@ public final class TerminologyManager {
 
         String url = properties.getDefaultTerminologyAPI() + "v1/integration/containers";
 
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(metricsFilter);
         WebTarget target = client.target(url);
 
         if (includeIncomplete) {
@@ -218,7 +220,7 @@ public final class TerminologyManager {
         String url = properties.getDefaultTerminologyAPI() + "v1/integration/resources";
 
 
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient().register(metricsFilter);
 
         WebTarget target = client.target(url)
             .queryParam("includeIncomplete", true);
@@ -0,0 +1,170 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetRewindable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Iterables;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * Fetches sh:in value lists and dcam:memberOf code scheme values for schema exports. Instead of querying each
+ * property separately, the lists referenced by a whole result set are fetched with one VALUES bound query per
+ * kind (split into chunks of VALUES_CHUNK) and joined in memory.
+ */
+@Service
+public class ValueListManager {
+
+    private static final int VALUES_CHUNK = 500;
+
+    private final EndpointServices endpointServices;
+    private final JenaClient jenaClient;
+
+    @Autowired
+    ValueListManager(EndpointServices endpointServices,
+                     JenaClient jenaClient) {
+        this.endpointServices = endpointServices;
+        this.jenaClient = jenaClient;
+    }
+
+    /**
+     * Fetches value lists referenced by the result rows through ?valueList and ?schemeList. The result set is
+     * reset afterwards so it can be iterated again.
+     *
+     * @param results    result set containing ?property and optionally ?valueList and ?schemeList
+     * @param resourceID resource defining the properties, or null to read it from ?resource of each row
+     * @return value lists
+     */
+    public ValueLists getValueLists(ResultSetRewindable results,
+                                    String resourceID) {
+        Map<String, Set<String>> propertiesByResource = new LinkedHashMap<>();
+        Set<String> schemes = new LinkedHashSet<>();
+
+        while (results.hasNext()) {
+            QuerySolution soln = results.next();
+            if (soln.contains("valueList") && soln.contains("property")) {
+                String resource = resourceID != null ? resourceID : (soln.contains("resource") ? soln.getResource("resource").toString() : null);
+                if (resource != null) {
+                    propertiesByResource.computeIfAbsent(resource, r -> new LinkedHashSet<>()).add(soln.getResource("property").toString());
+                }
+            } else if (soln.contains("schemeList")) {
+                schemes.add(soln.getResource("schemeList").toString());
+            }
+        }
+        results.reset();
+
+        return new ValueLists(fetchValueLists(propertiesByResource), fetchSchemeValueLists(schemes));
+    }
+
+    private Map<String, JsonArray> fetchValueLists(Map<String, Set<String>> propertiesByResource) {
+        Map<String, JsonArrayBuilder> target = new HashMap<>();
+        List<String> pairs = new ArrayList<>();
+        propertiesByResource.forEach((resource, properties) -> properties.forEach(property -> pairs.add("(<" + resource + "> <" + property + ">)")));
+
+        for (List<String> chunk : Iterables.partition(pairs, VALUES_CHUNK)) {
+            String selectList =
+                "SELECT ?resource ?property ?value "
+                    + "WHERE { "
+                    + "VALUES (?resource ?property) { " + String.join(" ", chunk) + " } "
+                    + "GRAPH ?resource { "
+                    + "?resource sh:property ?property . "
+                    + "?property sh:in/rdf:rest*/rdf:first ?value"
+                    + "} "
+                    + "} ";
+
+            ParameterizedSparqlString pss = new ParameterizedSparqlString();
+            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+            pss.setCommandText(selectList);
+
+            ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+            while (results.hasNext()) {
+                QuerySolution soln = results.next();
+                if (soln.contains("value")) {
+                    target.computeIfAbsent(key(soln.getResource("resource").toString(), soln.getResource("property").toString()), k -> Json.createArrayBuilder())
+                        .add(soln.getLiteral("value").getString());
+                }
+            }
+        }
+        return build(target);
+    }
+
+    private Map<String, JsonArray> fetchSchemeValueLists(Collection<String> schemes) {
+        Map<String, JsonArrayBuilder> target = new HashMap<>();
+        for (List<String> chunk : Iterables.partition(schemes, VALUES_CHUNK)) {
+            String selectList =
+                "SELECT ?scheme ?value "
+                    + "WHERE { "
+                    + "VALUES ?scheme { " + LDHelper.concatStringWithReplace(chunk, " ", "<@this>") + " } "
+                    + "GRAPH ?scheme { "
+                    + "?code dcterms:identifier ?value . "
+                    + "} "
+                    + "} ORDER BY ?scheme ?value";
+
+            ParameterizedSparqlString pss = new ParameterizedSparqlString();
+            pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+            pss.setCommandText(selectList);
+
+            ResultSet results = jenaClient.selectQuery(endpointServices.getSchemesSparqlAddress(), pss.asQuery());
+            while (results.hasNext()) {
+                QuerySolution soln = results.next();
+                if (soln.contains("value")) {
+                    target.computeIfAbsent(soln.getResource("scheme").toString(), k -> Json.createArrayBuilder())
+                        .add(soln.getLiteral("value").getString());
+                }
+            }
+        }
+        return build(target);
+    }
+
+    private static Map<String, JsonArray> build(Map<String, JsonArrayBuilder> builders) {
+        Map<String, JsonArray> lists = new HashMap<>();
+        builders.forEach((key, builder) -> lists.put(key, builder.build()));
+        return lists;
+    }
+
+    private static String key(String resource,
+                              String property) {
+        return resource + " " + property;
+    }
+
+    /**
+     * Value lists of one export. A missing list is returned as null, as an empty query result was before.
+     */
+    public static class ValueLists {
+
+        private final Map<String, JsonArray> valueLists;
+        private final Map<String, JsonArray> schemeValueLists;
+
+        private ValueLists(Map<String, JsonArray> valueLists,
+                           Map<String, JsonArray> schemeValueLists) {
+            this.valueLists = valueLists;
+            this.schemeValueLists = schemeValueLists;
+        }
+
+        public JsonArray getValueList(String resourceID,
+                                      String propertyID) {
+            return valueLists.get(key(resourceID, propertyID));
+        }
+
+        public JsonArray getSchemeValueList(String schemeID) {
+            return schemeValueLists.get(schemeID);
+        }
+    }
+}
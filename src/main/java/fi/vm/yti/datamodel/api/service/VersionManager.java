@@ -0,0 +1,204 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+/**
+ * Versions of models, resources and model positions used for optimistic concurrency control. Versions are returned
+ * as ETags on reads and successful writes and checked against If-Match on writes, so that a write based on an outdated read fails with 412
+ * before anything is written.
+ * <p>
+ * Model and resource versions are derived from dcterms:identifier and dcterms:modified of the graph, which change on
+ * every save. Position graphs carry no metadata of their own, so their versions are stored in a separate graph.
+ * Writes without If-Match are not checked.
+ * <p>
+ * Writes hold the lock of the written graph from the If-Match check until the new version has been read, so two
+ * writes through this node based on the same version cannot both pass the check.
+ */
+@Service
+public class VersionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersionManager.class.getName());
+    static final String POSITION_VERSIONS_GRAPH = "urn:yti:metamodel:positionVersions";
+
+    private final EndpointServices endpointServices;
+    private final JenaClient jenaClient;
+    private final Striped<Lock> graphLocks = Striped.lazyWeakLock(256);
+
+    @Autowired
+    VersionManager(EndpointServices endpointServices,
+                   JenaClient jenaClient) {
+        this.endpointServices = endpointServices;
+        this.jenaClient = jenaClient;
+    }
+
+    /**
+     * @param graph model or resource IRI
+     * @return current version of the graph, or null if the graph does not exist
+     */
+    public EntityTag getVersion(String graph) {
+        String query = "SELECT ?identifier ?modified WHERE { " +
+            "GRAPH ?graph { ?graph a ?type . " +
+            "OPTIONAL { ?graph dcterms:identifier ?identifier . } " +
+            "OPTIONAL { ?graph dcterms:modified ?modified . } " +
+            "}} LIMIT 1";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("graph", graph);
+        pss.setCommandText(query);
+
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        if (!results.hasNext()) {
+            return null;
+        }
+        QuerySolution soln = results.next();
+        return entityTag(graph + "\n" + lexicalForm(soln, "identifier") + "\n" + lexicalForm(soln, "modified"));
+    }
+
+    /**
+     * @param model model IRI
+     * @return current version of the position graph of the model, or null if positions have not been saved since
+     * versions were introduced
+     */
+    public EntityTag getPositionsVersion(String model) {
+        String query = "SELECT ?version WHERE { GRAPH ?versionGraph { ?positionGraph dcterms:identifier ?version . }} LIMIT 1";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("versionGraph", POSITION_VERSIONS_GRAPH);
+        pss.setIri("positionGraph", model + "#PositionGraph");
+        pss.setCommandText(query);
+
+        ResultSet results = jenaClient.selectQuery(endpointServices.getCoreSparqlAddress(), pss.asQuery());
+        if (!results.hasNext()) {
+            return null;
+        }
+        return entityTag(model + "#PositionGraph\n" + lexicalForm(results.next(), "version"));
+    }
+
+    /**
+     * Records a new version for the position graph of the model
+     *
+     * @param model model IRI
+     * @return new version of the position graph
+     */
+    public EntityTag updatePositionsVersion(String model) {
+        String version = "urn:uuid:" + UUID.randomUUID().toString();
+        String query = "DELETE { GRAPH ?versionGraph { ?positionGraph dcterms:identifier ?oldVersion . }} " +
+            "INSERT { GRAPH ?versionGraph { ?positionGraph dcterms:identifier ?version . }} " +
+            "WHERE { OPTIONAL { GRAPH ?versionGraph { ?positionGraph dcterms:identifier ?oldVersion . }}}";
+
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setIri("versionGraph", POSITION_VERSIONS_GRAPH);
+        pss.setIri("positionGraph", model + "#PositionGraph");
+        pss.setLiteral("version", version);
+        pss.setCommandText(query);
+
+        jenaClient.updateToService(pss.asUpdate(), endpointServices.getCoreSparqlUpdateAddress());
+        return entityTag(model + "#PositionGraph\n" + version);
+    }
+
+    /**
+     * Locks the graph for a write. The If-Match check, the write and reading the new version are done while
+     * holding the lock, and the lock is released by closing it.
+     *
+     * @param graph model, resource or position graph IRI
+     * @return held lock
+     */
+    public GraphLock lock(String graph) {
+        Lock lock = graphLocks.get(graph);
+        lock.lock();
+        return lock::unlock;
+    }
+
+    /**
+     * Lock of a written graph, released when closed
+     */
+    public interface GraphLock extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Checks If-Match of a write against the current version. The current version is looked up only if the request
+     * has If-Match. Only strong tags match, and "*" matches any existing version.
+     *
+     * @param headers request headers
+     * @param current supplier of the current version, which returns null if there is no version
+     * @return false if the write must be rejected with 412
+     */
+    public boolean ifMatch(HttpHeaders headers,
+                           Supplier<EntityTag> current) {
+        String ifMatch = headers != null ? headers.getHeaderString(HttpHeaders.IF_MATCH) : null;
+        if (ifMatch == null || ifMatch.trim().isEmpty()) {
+            return true;
+        }
+        EntityTag version = current.get();
+        if (version == null) {
+            logger.debug("If-Match " + ifMatch + " given but there is no current version");
+            return false;
+        }
+        for (String value : ifMatch.split(",")) {
+            String tag = value.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            try {
+                EntityTag expected = EntityTag.valueOf(tag);
+                if (!expected.isWeak() && expected.getValue().equals(version.getValue())) {
+                    return true;
+                }
+            } catch (IllegalArgumentException ex) {
+                logger.debug("Invalid If-Match value: " + tag);
+            }
+        }
+        logger.info("Rejecting write based on outdated version " + ifMatch);
+        return false;
+    }
+
+    /**
+     * Adds the version as ETag to a successful response
+     *
+     * @param response response to tag
+     * @param version  version, or null
+     * @return tagged response
+     */
+    public Response tag(Response response,
+                        EntityTag version) {
+        if (version == null || response.getStatus() != Response.Status.OK.getStatusCode()) {
+            return response;
+        }
+        return Response.fromResponse(response).tag(version).build();
+    }
+
+    private static EntityTag entityTag(String content) {
+        return new EntityTag(Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).toString());
+    }
+
+    private static String lexicalForm(QuerySolution soln,
+                                      String var) {
+        return soln.contains(var) && soln.get(var).isLiteral() ? soln.getLiteral(var).getLexicalForm() : "";
+    }
+}
@@ -0,0 +1,74 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.vm.yti.datamodel.api.model.VersionStatusDTO;
+
+/**
+ * Progress of one model versioning. Updated by the request that creates the version and read by the status
+ * endpoint, so all state is either volatile or atomic.
+ */
+class VersionProgress {
+
+    static final String READING = "READING";
+    static final String WRITING = "WRITING";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+
+    private final String model;
+    private final String newModel;
+    private final long started = System.currentTimeMillis();
+    private volatile String phase = READING;
+    private volatile long finished;
+    private volatile String error;
+    private final AtomicInteger graphsTotal = new AtomicInteger();
+    private final AtomicInteger graphsRead = new AtomicInteger();
+
+    VersionProgress(String model,
+                    String newModel) {
+        this.model = model;
+        this.newModel = newModel;
+    }
+
+    void addGraphsTotal(int graphs) {
+        graphsTotal.addAndGet(graphs);
+    }
+
+    void graphsRead(int graphs) {
+        graphsRead.addAndGet(graphs);
+    }
+
+    void writing() {
+        phase = WRITING;
+    }
+
+    void finish() {
+        finished = System.currentTimeMillis();
+        phase = DONE;
+    }
+
+    void fail(Exception ex) {
+        error = ex.getMessage();
+        finished = System.currentTimeMillis();
+        phase = FAILED;
+    }
+
+    VersionStatusDTO toStatus() {
+        VersionStatusDTO status = new VersionStatusDTO();
+        String currentPhase = phase;
+        status.setModel(model);
+        status.setNewModel(newModel);
+        status.setPhase(currentPhase);
+        status.setRunning(READING.equals(currentPhase) || WRITING.equals(currentPhase));
+        status.setStarted(new Date(started));
+        if (finished > 0) {
+            status.setFinished(new Date(finished));
+            status.setSuccessful(DONE.equals(currentPhase));
+        }
+        status.setGraphsTotal(graphsTotal.get());
+        status.setGraphsRead(graphsRead.get());
+        status.setError(error);
+        return status;
+    }
+}
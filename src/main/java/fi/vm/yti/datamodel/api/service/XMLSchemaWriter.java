@@ -65,11 +65,14 @@ public class XMLSchemaWriter {
 
     private final EndpointServices endpointServices;
     private final GraphManager graphManager;
+    private final JenaClient jenaClient;
 
     XMLSchemaWriter(EndpointServices endpointServices,
-                    GraphManager graphManager) {
+                    GraphManager graphManager,
+                    JenaClient jenaClient) {
         this.endpointServices = endpointServices;
         this.graphManager = graphManager;
+        this.jenaClient = jenaClient;
     }
 
     public String newClassSchema(String classID,
@@ -107,8 +110,8 @@ public class XMLSchemaWriter {
         boolean classMetadata = false;
 
         Element complexType;
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
-            ResultSet results = qexec.execSelect();
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) {
                 logger.debug("Resource results is null");
@@ -173,9 +176,9 @@ public class XMLSchemaWriter {
             pss.setCommandText(selectResources);
             if (lang != null) pss.setLiteral("lang", lang);
 
-            try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+            try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-                ResultSet results = qexec.execSelect();
+                ResultSet results = select.getResults();
 
                 if (results.hasNext()) {
 
@@ -229,9 +232,9 @@ public class XMLSchemaWriter {
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
         pss.setCommandText(selectClass);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.toString())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
 
             if (!results.hasNext()) {
                 logger.info("No model found:" + modelID);
@@ -298,9 +301,9 @@ public class XMLSchemaWriter {
         pss.setCommandText(selectResources);
         pss.setNsPrefixes(LDHelper.PREFIX_MAP);
 
-        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
+        try (JenaClient.QueryStream<ResultSet> select = jenaClient.openSelect(endpointServices.getCoreSparqlAddress(), pss.asQuery())) {
 
-            ResultSet results = qexec.execSelect();
+            ResultSet results = select.getResults();
             ResultSetPeekable pResults = ResultSetFactory.makePeekable(results);
 
             if (pResults.hasNext()) {
@@ -20,6 +20,7 @@ final public class ErrorMessage {
     final public static String INVALIDVOCABULARY = toJs("{'errorMessage':'Invalid SKOSMOS ID'}");
     final public static String INVALIDPARAMETER = toJs("{'errorMessage':'Invalid API parameters'}");
     final public static String NOTACCEPTED = toJs("{'errorMessage':'Not accepted'}");
+    final public static String MODIFIED = toJs("{'errorMessage':'Resource has been modified'}");
 
     private static String toJs(String jsonString) {
         return jsonString.replaceAll("'", "\"");
@@ -3,6 +3,8 @@
  */
 package fi.vm.yti.datamodel.api.utils;
 
+import java.util.List;
+
 /**
  * @author malonen
  */
@@ -619,4 +621,20 @@ public class QueryLibrary {
             + "} WHERE { "
             + commonExternalClassQuery);
 
+    final public static QueryTemplate fullModelTemplate = QueryTemplate.compile("fullModel", fullModelQuery, "graph");
+    final public static QueryTemplate fullModelsByGroupTemplate = QueryTemplate.compile("fullModelsByGroup", fullModelsByGroupQuery, "groupCode");
+    final public static QueryTemplate listClassesTemplate = QueryTemplate.compile("listClasses", listClassesQuery, "library", "hasPartGraph");
+    final public static QueryTemplate classTemplate = QueryTemplate.compile("class", classQuery, "graph", "library");
+    final public static QueryTemplate requiredClassTemplate = QueryTemplate.compile("requiredClass", requiredClassQuery, "library");
+    final public static QueryTemplate listPredicatesTemplate = QueryTemplate.compile("listPredicates", listPredicatesQuery, "library", "hasPartGraph");
+    final public static QueryTemplate predicateTemplate = QueryTemplate.compile("predicate", predicateQuery, "graph", "library");
+    final public static QueryTemplate requiredPredicateTemplate = QueryTemplate.compile("requiredPredicate", requiredPredicateQuery, "library");
+
+    /**
+     * @return compiled query templates
+     */
+    public static List<QueryTemplate> templates() {
+        return List.of(fullModelTemplate, fullModelsByGroupTemplate, listClassesTemplate, classTemplate, requiredClassTemplate,
+            listPredicatesTemplate, predicateTemplate, requiredPredicateTemplate);
+    }
 }
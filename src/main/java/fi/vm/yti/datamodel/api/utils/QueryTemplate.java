@@ -0,0 +1,230 @@
+/*
+ * Licensed under the European Union Public Licence (EUPL) V.1.1
+ */
+package fi.vm.yti.datamodel.api.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.iri.IRI;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.util.FmtUtils;
+
+/**
+ * SPARQL query that is parsed once and bound for each request. The query is parsed when the template is compiled,
+ * so a broken query fails at startup, and the places of the parameters in the query text are located once. Binding
+ * only concatenates the text with the formatted values, where ParameterizedSparqlString searches the whole query
+ * for every parameter and the query is parsed again before it is sent.
+ * <p>
+ * Parameters that are not bound are left as variables.
+ */
+public final class QueryTemplate {
+
+    private static final String DEFAULT_PROLOG = prolog(LDHelper.PREFIX_MAP);
+    private static final String IRI_EXCLUDED = "<>\"{}|^`\\";
+
+    private final String name;
+    private final String[] parameters;
+    private final String[] segments;
+    private final int[] slots;
+
+    private QueryTemplate(String name,
+                          String[] parameters,
+                          String[] segments,
+                          int[] slots) {
+        this.name = name;
+        this.parameters = parameters;
+        this.segments = segments;
+        this.slots = slots;
+    }
+
+    /**
+     * Parses the query and locates its parameters
+     *
+     * @param name       name of the template used in metrics and errors
+     * @param query      query text, which may use the prefixes of {@link LDHelper#PREFIX_MAP}
+     * @param parameters names of the variables that can be bound
+     * @return compiled template
+     * @throws org.apache.jena.query.QueryParseException if the query is not valid
+     * @throws IllegalArgumentException                  if a parameter is not used in the query
+     */
+    public static QueryTemplate compile(String name,
+                                        String query,
+                                        String... parameters) {
+        QueryFactory.create(DEFAULT_PROLOG + query);
+
+        List<String> segments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        boolean[] used = new boolean[parameters.length];
+        int segmentStart = 0;
+        int i = 0;
+
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipString(query, i);
+            } else if (c == '<') {
+                i = skipIri(query, i);
+            } else if (c == '#') {
+                int end = query.indexOf('\n', i);
+                i = end < 0 ? query.length() : end + 1;
+            } else if ((c == '?' || c == '$') && i + 1 < query.length() && isNameChar(query.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < query.length() && isNameChar(query.charAt(end))) {
+                    end++;
+                }
+                int parameter = Arrays.asList(parameters).indexOf(query.substring(i + 1, end));
+                if (parameter >= 0) {
+                    segments.add(query.substring(segmentStart, i));
+                    slots.add(parameter);
+                    used[parameter] = true;
+                    segmentStart = end;
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        segments.add(query.substring(segmentStart));
+
+        for (int p = 0; p < parameters.length; p++) {
+            if (!used[p]) {
+                throw new IllegalArgumentException("Parameter ?" + parameters[p] + " is not used in query template " + name);
+            }
+        }
+
+        return new QueryTemplate(name, parameters.clone(), segments.toArray(new String[0]), slots.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Binding bind() {
+        return new Binding();
+    }
+
+    /**
+     * Parameter values for one execution of the template
+     */
+    public final class Binding {
+
+        private final String[] values = new String[parameters.length];
+        private String prolog = DEFAULT_PROLOG;
+
+        private Binding() {
+        }
+
+        public Binding iri(String parameter,
+                           String iri) {
+            if (iri == null) {
+                throw new IllegalArgumentException("No IRI given for ?" + parameter);
+            }
+            for (int i = 0; i < iri.length(); i++) {
+                char c = iri.charAt(i);
+                if (c <= ' ' || IRI_EXCLUDED.indexOf(c) >= 0) {
+                    throw new IllegalArgumentException("Invalid IRI for ?" + parameter + ": " + iri);
+                }
+            }
+            return set(parameter, "<" + iri + ">");
+        }
+
+        public Binding iri(String parameter,
+                           IRI iri) {
+            return iri(parameter, iri.toString());
+        }
+
+        public Binding literal(String parameter,
+                               String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("No literal given for ?" + parameter);
+            }
+            return set(parameter, FmtUtils.stringForNode(NodeFactory.createLiteral(value)));
+        }
+
+        /**
+         * Replaces the default prefixes. The prefixes also end up in the prefixes of constructed models.
+         *
+         * @param prefixes prefix-map
+         */
+        public Binding prefixes(Map<String, String> prefixes) {
+            this.prolog = prolog(prefixes);
+            return this;
+        }
+
+        public String getTemplateName() {
+            return name;
+        }
+
+        private Binding set(String parameter,
+                            String value) {
+            int index = Arrays.asList(parameters).indexOf(parameter);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown parameter ?" + parameter + " in query template " + name);
+            }
+            values[index] = value;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder query = new StringBuilder(prolog.length() + segments.length * 64);
+            query.append(prolog).append(segments[0]);
+            for (int i = 0; i < slots.length; i++) {
+                String value = values[slots[i]];
+                query.append(value != null ? value : "?" + parameters[slots[i]]).append(segments[i + 1]);
+            }
+            return query.toString();
+        }
+    }
+
+    private static String prolog(Map<String, String> prefixes) {
+        StringBuilder prolog = new StringBuilder();
+        prefixes.forEach((prefix, namespace) -> prolog.append("PREFIX ").append(prefix).append(": <").append(namespace).append(">\n"));
+        return prolog.toString();
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * @return index after the string literal starting at start
+     */
+    private static int skipString(String query,
+                                  int start) {
+        char quote = query.charAt(start);
+        String delimiter = query.startsWith(String.valueOf(quote).repeat(3), start) ? String.valueOf(quote).repeat(3) : String.valueOf(quote);
+        int i = start + delimiter.length();
+        while (i < query.length()) {
+            if (query.charAt(i) == '\\') {
+                i += 2;
+            } else if (query.startsWith(delimiter, i)) {
+                return i + delimiter.length();
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return index after the IRI starting at start, or after the character if it is a less than operator
+     */
+    private static int skipIri(String query,
+                               int start) {
+        for (int i = start + 1; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '>') {
+                return i + 1;
+            }
+            if (c <= ' ' || IRI_EXCLUDED.indexOf(c) >= 0) {
+                break;
+            }
+        }
+        return start + 1;
+    }
+}
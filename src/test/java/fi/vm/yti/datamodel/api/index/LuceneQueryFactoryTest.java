@@ -0,0 +1,139 @@
+package fi.vm.yti.datamodel.api.index;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.BadRequestException;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MatchPhraseQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.junit.Test;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LuceneQueryFactoryTest {
+
+    private static final Pattern plainQueryPattern = Pattern.compile(LuceneQueryFactory.plainQueryPatternString, Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern asteriskQueryPattern = Pattern.compile(LuceneQueryFactory.asteriskQueryPatternString, Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern complexQueryPattern = Pattern.compile(LuceneQueryFactory.complexQueryPatternString, Pattern.UNICODE_CHARACTER_CLASS);
+
+    @Test
+    public void plainPatternAcceptsWords() {
+        assertTrue(plainQueryPattern.matcher("henkil\u00f6").matches());
+        assertTrue(plainQueryPattern.matcher("first second").matches());
+        assertTrue(plainQueryPattern.matcher("e-mail").matches());
+        assertTrue(plainQueryPattern.matcher("and or").matches());
+    }
+
+    @Test
+    public void plainPatternRejectsOperators() {
+        assertFalse(plainQueryPattern.matcher("first AND second").matches());
+        assertFalse(plainQueryPattern.matcher("OR second").matches());
+        assertFalse(plainQueryPattern.matcher("-first").matches());
+        assertFalse(plainQueryPattern.matcher("first*").matches());
+        assertFalse(plainQueryPattern.matcher("\"first second\"").matches());
+    }
+
+    @Test
+    public void asteriskPatternAcceptsWildcards() {
+        assertTrue(asteriskQueryPattern.matcher("first*").matches());
+        assertTrue(asteriskQueryPattern.matcher("*first").matches());
+        assertTrue(asteriskQueryPattern.matcher("fi*st second*").matches());
+        assertTrue(asteriskQueryPattern.matcher("e-*").matches());
+    }
+
+    @Test
+    public void asteriskPatternRejectsOtherSyntax() {
+        assertFalse(asteriskQueryPattern.matcher("first**").matches());
+        assertFalse(asteriskQueryPattern.matcher("*").matches());
+        assertFalse(asteriskQueryPattern.matcher("first* AND second").matches());
+        assertFalse(asteriskQueryPattern.matcher("first?").matches());
+        assertFalse(asteriskQueryPattern.matcher("label:first").matches());
+    }
+
+    @Test
+    public void complexPatternAcceptsQuerySyntax() {
+        assertTrue(complexQueryPattern.matcher("first AND (second OR third*)").matches());
+        assertTrue(complexQueryPattern.matcher("\"first second\"~2").matches());
+        assertTrue(complexQueryPattern.matcher("label:first").matches());
+        assertFalse(complexQueryPattern.matcher("first; second").matches());
+    }
+
+    @Test
+    public void plainQueryMatchesEachWord() {
+        BoolQueryBuilder query = (BoolQueryBuilder) factory(false).buildLabelQuery(" first  second ", null);
+
+        List<QueryBuilder> words = query.must();
+        assertEquals(2, words.size());
+        BoolQueryBuilder first = (BoolQueryBuilder) words.get(0);
+        assertEquals("1", first.minimumShouldMatch());
+        assertEquals(3, first.should().size());
+        MatchPhraseQueryBuilder ngram = (MatchPhraseQueryBuilder) first.should().get(2);
+        assertEquals("labelNgram", ngram.fieldName());
+        assertEquals("first", ngram.value());
+    }
+
+    @Test
+    public void shortWordIsNotMatchedAgainstNgrams() {
+        BoolQueryBuilder query = (BoolQueryBuilder) factory(false).buildLabelQuery("ab", null);
+
+        BoolQueryBuilder word = (BoolQueryBuilder) query.must().get(0);
+        assertEquals(2, word.should().size());
+        word.should().forEach(clause -> assertFalse(clause instanceof MatchPhraseQueryBuilder));
+    }
+
+    @Test
+    public void plainQueryBoostsLanguage() {
+        BoolQueryBuilder query = (BoolQueryBuilder) factory(false).buildLabelQuery("first", "fi");
+
+        BoolQueryBuilder word = (BoolQueryBuilder) query.must().get(0);
+        MatchQueryBuilder boosted = (MatchQueryBuilder) word.should().get(word.should().size() - 1);
+        assertEquals("label.fi", boosted.fieldName());
+        assertEquals(10f, boosted.boost(), 0f);
+    }
+
+    @Test
+    public void asteriskQueryIsQueryString() {
+        QueryStringQueryBuilder query = (QueryStringQueryBuilder) factory(false).buildLabelQuery("fir*", "fi");
+
+        assertEquals("fir*", query.queryString());
+        assertTrue(query.fields().containsKey("label.*"));
+        assertEquals(10f, query.fields().get("label.fi"), 0f);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void complexQueryIsRejectedByDefault() {
+        factory(false).buildLabelQuery("first AND second", null);
+    }
+
+    @Test
+    public void complexQueryIsQueryStringWhenAllowed() {
+        QueryStringQueryBuilder query = (QueryStringQueryBuilder) factory(true).buildLabelQuery("first AND second", null);
+
+        assertEquals("+first +second", query.queryString());
+        assertEquals(1, query.fields().size());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void unparseableComplexQueryIsRejected() {
+        factory(true).buildLabelQuery("first AND (second", null);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void emptyQueryIsRejected() {
+        factory(false).buildLabelQuery("  ", null);
+    }
+
+    private static LuceneQueryFactory factory(boolean allowComplexQueries) {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.setAllowComplexElasticQueries(allowComplexQueries);
+        return new LuceneQueryFactory(properties);
+    }
+}
@@ -0,0 +1,246 @@
+package fi.vm.yti.datamodel.api.index;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import fi.vm.yti.datamodel.api.index.model.IndexClassDTO;
+import fi.vm.yti.datamodel.api.service.EndpointServices;
+import fi.vm.yti.datamodel.api.service.ModelManager;
+import fi.vm.yti.datamodel.api.service.TestDatasets;
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+import static fi.vm.yti.datamodel.api.service.TestDatasets.turtle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SearchIndexManagerTest {
+
+    private static final String GENERATION = "_v1";
+    private static final String MODEL = "http://uri.suomi.fi/datamodel/ns/test";
+    private static final String OTHER_MODEL = "http://uri.suomi.fi/datamodel/ns/other";
+    private static final String DELETED_MODEL = "http://uri.suomi.fi/datamodel/ns/deleted";
+    private static final String CLASS = MODEL + "#Class";
+
+    private Dataset core;
+    private ApplicationProperties properties;
+    private ElasticConnector esManager;
+    private BulkIndexer indexer;
+    private List<DeleteByQueryRequest> deleteRequests;
+    private SearchIndexManager searchIndexManager;
+
+    @Before
+    public void setUp() throws IOException {
+        core = DatasetFactory.create();
+        core.addNamedModel(MODEL, model(MODEL, "2019-01-01T12:00:00Z"));
+        core.addNamedModel(OTHER_MODEL, model(OTHER_MODEL, "2020-01-01T12:00:00Z"));
+        core.addNamedModel(CLASS, turtle("<" + CLASS + "> a sh:NodeShape ; sh:name \"Class\"@fi ; "
+            + "owl:versionInfo \"DRAFT\" ; rdfs:isDefinedBy <" + MODEL + "> ; "
+            + "dcterms:created \"2020-01-01T12:00:00Z\"^^xsd:dateTime ; "
+            + "dcterms:modified \"2100-01-01T12:00:00Z\"^^xsd:dateTime ."));
+
+        properties = new ApplicationProperties();
+        esManager = mock(ElasticConnector.class);
+        indexer = mock(BulkIndexer.class);
+        when(esManager.getIndicesForAlias("dm_resources")).thenReturn(Set.of("dm_resources" + GENERATION));
+        when(esManager.getIndicesForAlias("dm_models")).thenReturn(Set.of("dm_models" + GENERATION));
+        when(esManager.getDocument("dm_sync", "state")).thenReturn(state(GENERATION, SearchIndexManager.MAPPING_VERSION));
+        when(esManager.getFieldValues(eq("dm_models"), any(), eq("id"))).thenReturn(indexed(MODEL, OTHER_MODEL));
+        when(esManager.createBulkIndexer(anyString())).thenReturn(indexer);
+
+        deleteRequests = new ArrayList<>();
+        when(esManager.deleteByQuery(any())).thenAnswer(invocation -> {
+            deleteRequests.add(invocation.getArgument(0));
+            return 0L;
+        });
+
+        EndpointServices endpointServices = TestDatasets.endpointServices();
+        searchIndexManager = new SearchIndexManager(esManager, TestDatasets.jenaClient(endpointServices, Map.of(endpointServices.getCoreSparqlAddress(), core)),
+            null, new ObjectMapper(), mock(ModelManager.class), null, null, null, null, properties, null);
+    }
+
+    @Test
+    public void disabledSyncIsNotRun() throws IOException {
+        properties.setElasticIncrementalSync(false);
+
+        assertFalse(searchIndexManager.syncIndexes());
+        verify(esManager, never()).getDocument(anyString(), anyString());
+    }
+
+    @Test
+    public void missingStateNeedsReindex() throws IOException {
+        when(esManager.getDocument("dm_sync", "state")).thenReturn(null);
+
+        assertFalse(searchIndexManager.syncIndexes());
+        verify(esManager, never()).saveDocument(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void stateOfOtherGenerationNeedsReindex() throws IOException {
+        when(esManager.getDocument("dm_sync", "state")).thenReturn(state("_v0", SearchIndexManager.MAPPING_VERSION));
+
+        assertFalse(searchIndexManager.syncIndexes());
+        verify(esManager, never()).saveDocument(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void stateOfOldMappingsNeedsReindex() throws IOException {
+        when(esManager.getDocument("dm_sync", "state")).thenReturn(state(GENERATION, SearchIndexManager.MAPPING_VERSION - 1));
+
+        assertFalse(searchIndexManager.syncIndexes());
+        verify(esManager, never()).saveDocument(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void modifiedModelIsIndexed() throws IOException {
+        long before = System.currentTimeMillis();
+
+        assertTrue(searchIndexManager.syncIndexes());
+
+        ArgumentCaptor<IndexClassDTO> indexed = ArgumentCaptor.forClass(IndexClassDTO.class);
+        verify(indexer).add(eq(CLASS), indexed.capture());
+        assertEquals(MODEL, indexed.getValue().getIsDefinedBy());
+
+        assertEquals(1, deleteRequests.size());
+        BoolQueryBuilder query = (BoolQueryBuilder) deleteRequests.get(0).getSearchRequest().source().query();
+        assertEquals(MODEL, ((TermQueryBuilder) query.must().get(0)).value());
+        assertEquals(Set.of(LDHelper.encode(CLASS)), ((IdsQueryBuilder) query.mustNot().get(0)).ids());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> saved = ArgumentCaptor.forClass(Map.class);
+        verify(esManager).saveDocument(eq("dm_sync"), eq("state"), saved.capture());
+        assertEquals(GENERATION, saved.getValue().get("generation"));
+        assertTrue((Long) saved.getValue().get("syncedUntil") >= before);
+    }
+
+    @Test
+    public void unmodifiedModelIsNotIndexed() throws IOException {
+        core.removeNamedModel(CLASS);
+
+        assertTrue(searchIndexManager.syncIndexes());
+
+        verify(esManager, never()).createBulkIndexer(anyString());
+        assertTrue(deleteRequests.isEmpty());
+        verify(esManager).saveDocument(eq("dm_sync"), eq("state"), any());
+    }
+
+    @Test
+    public void modelModifiedDuringOverlapIsIndexed() throws IOException {
+        core.removeNamedModel(CLASS);
+        core.replaceNamedModel(OTHER_MODEL, model(OTHER_MODEL, "2020-01-01T11:59:30Z"));
+        when(esManager.getDocument("dm_sync", "state")).thenReturn(state(GENERATION, SearchIndexManager.MAPPING_VERSION, "2020-01-01T12:00:00Z"));
+
+        assertTrue(searchIndexManager.syncIndexes());
+
+        assertEquals(1, deleteRequests.size());
+        BoolQueryBuilder query = (BoolQueryBuilder) deleteRequests.get(0).getSearchRequest().source().query();
+        assertEquals(OTHER_MODEL, ((TermQueryBuilder) query.must().get(0)).value());
+    }
+
+    @Test
+    public void deletedModelIsRemoved() throws IOException {
+        core.removeNamedModel(CLASS);
+        when(esManager.getFieldValues(eq("dm_models"), any(), eq("id"))).thenReturn(indexed(MODEL, OTHER_MODEL, DELETED_MODEL));
+
+        assertTrue(searchIndexManager.syncIndexes());
+
+        verify(esManager).removeFromIndex(DELETED_MODEL, "dm_models");
+        verify(esManager, never()).removeFromIndex(MODEL, "dm_models");
+        assertEquals(1, deleteRequests.size());
+        assertEquals(DELETED_MODEL, ((TermQueryBuilder) deleteRequests.get(0).getSearchRequest().source().query()).value());
+    }
+
+    @Test
+    public void nothingIsRemovedWithoutModelsInCore() throws IOException {
+        core.removeNamedModel(MODEL);
+        core.removeNamedModel(OTHER_MODEL);
+        core.removeNamedModel(CLASS);
+
+        assertTrue(searchIndexManager.syncIndexes());
+
+        verify(esManager, never()).getFieldValues(anyString(), any(), anyString());
+        verify(esManager, never()).removeFromIndex(anyString(), anyString());
+    }
+
+    @Test
+    public void failedSyncNeedsReindex() throws IOException {
+        when(esManager.getFieldValues(eq("dm_models"), any(), eq("id"))).thenThrow(new IOException("unavailable"));
+
+        assertFalse(searchIndexManager.syncIndexes());
+        verify(esManager, never()).saveDocument(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void modelDeletedDuringReindexIsRemoved() throws IOException {
+        when(esManager.createIndex(anyString(), anyString())).thenReturn(true);
+        // Deleted from core after the new generation read it, but before it was published
+        doAnswer(invocation -> {
+            core.removeNamedModel(OTHER_MODEL);
+            return null;
+        }).when(esManager).swapAliases(any());
+
+        searchIndexManager.reindex();
+
+        verify(esManager).swapAliases(any());
+        verify(esManager).removeFromIndex(OTHER_MODEL, "dm_models");
+        verify(esManager, never()).removeFromIndex(MODEL, "dm_models");
+    }
+
+    private static Map<String, Object> state(String generation,
+                                             int mappingVersion) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("generation", generation);
+        state.put("syncedUntil", System.currentTimeMillis());
+        state.put("mappingVersion", mappingVersion);
+        return state;
+    }
+
+    private static Map<String, Object> state(String generation,
+                                             int mappingVersion,
+                                             String syncedUntil) {
+        Map<String, Object> state = state(generation, mappingVersion);
+        state.put("syncedUntil", Instant.parse(syncedUntil).toEpochMilli());
+        return state;
+    }
+
+    private static Map<String, String> indexed(String... modelIds) {
+        Map<String, String> indexed = new HashMap<>();
+        for (String modelId : modelIds) {
+            indexed.put(LDHelper.encode(modelId), modelId);
+        }
+        return indexed;
+    }
+
+    private static Model model(String modelId,
+                               String contentModified) {
+        return turtle("<" + modelId + "> a owl:Ontology, dcap:MetadataVocabulary ; rdfs:label \"Model\"@fi ; "
+            + "iow:contentModified \"" + contentModified + "\"^^xsd:dateTime .");
+    }
+}
@@ -0,0 +1,33 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BackendMetricsTest {
+
+    @Test
+    public void indexGenerationIsReportedByAlias() {
+        assertEquals("dm_models", BackendMetrics.elasticsearchIndex(URI.create("/dm_models_v1612345678/_search")));
+        assertEquals("dm_resources", BackendMetrics.elasticsearchIndex(URI.create("/dm_resources_v1612345678/_bulk")));
+    }
+
+    @Test
+    public void aliasIsReportedAsIs() {
+        assertEquals("dm_models", BackendMetrics.elasticsearchIndex(URI.create("/dm_models/_search")));
+        assertEquals("dm_sync", BackendMetrics.elasticsearchIndex(URI.create("/dm_sync/_doc/state")));
+    }
+
+    @Test
+    public void everyListedGenerationIsReportedByAlias() {
+        assertEquals("dm_models,dm_resources", BackendMetrics.elasticsearchIndex(URI.create("/dm_models_v1,dm_resources_v2/_search")));
+    }
+
+    @Test
+    public void clusterRequestHasNoIndex() {
+        assertEquals("none", BackendMetrics.elasticsearchIndex(URI.create("/_bulk")));
+        assertEquals("none", BackendMetrics.elasticsearchIndex(URI.create("/")));
+    }
+}
@@ -0,0 +1,126 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+
+import static fi.vm.yti.datamodel.api.service.TestDatasets.turtle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExportCacheTest {
+
+    private static final String MODEL = "http://uri.suomi.fi/datamodel/ns/test";
+    private static final String SHAPE = MODEL + "#Shape";
+    private static final String SCHEME = "http://uri.suomi.fi/codelist/test/scheme";
+
+    private Dataset core;
+    private ExportCache cache;
+
+    @Before
+    public void setUp() {
+        core = DatasetFactory.create();
+        core.addNamedModel(MODEL, turtle("<" + MODEL + "> a owl:Ontology ; "
+            + "iow:contentModified \"2020-01-01T12:00:00Z\"^^xsd:dateTime ."));
+        core.addNamedModel(MODEL + "#HasPartGraph", turtle("<" + MODEL + "> dcterms:hasPart <" + SHAPE + "> ."));
+        core.addNamedModel(SHAPE, turtle("<" + SHAPE + "> sh:property [ dcam:memberOf <" + SCHEME + "> ] ."));
+        // The scheme dataset is queried through SERVICE, which the test datasets evaluate against core
+        setSchemeModified("2020-01-01T12:00:00Z");
+
+        EndpointServices endpointServices = TestDatasets.endpointServices();
+        JenaClient jenaClient = TestDatasets.jenaClient(endpointServices, Map.of(endpointServices.getCoreSparqlAddress(), core));
+        cache = new ExportCache(jenaClient, endpointServices, new ApplicationProperties());
+    }
+
+    @Test
+    public void keyIsNullForMissingModel() {
+        assertNull(cache.getKey(MODEL + "/missing", "application/schema+json", "fi", "application/schema+json"));
+    }
+
+    @Test
+    public void keyChangesWhenModelIsModified() {
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+        core.replaceNamedModel(MODEL, turtle("<" + MODEL + "> a owl:Ontology ; "
+            + "iow:contentModified \"2020-02-01T12:00:00Z\"^^xsd:dateTime ."));
+
+        assertNotEquals(key, cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json"));
+    }
+
+    @Test
+    public void keyChangesWhenSchemeIsModified() {
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+        assertEquals(key, cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json"));
+
+        setSchemeModified("2020-02-01T12:00:00Z");
+
+        ExportCache.ExportKey modified = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+        assertNotEquals(key, modified);
+        assertNotEquals(key.getEntityTag(), modified.getEntityTag());
+    }
+
+    @Test
+    public void keyChangesWhenSchemeIsLoaded() {
+        core.removeNamedModel(SCHEME);
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/xml", "fi", "application/xml");
+
+        setSchemeModified("2020-01-01T12:00:00Z");
+
+        assertNotEquals(key, cache.getKey(MODEL, "application/xml", "fi", "application/xml"));
+    }
+
+    @Test
+    public void keyDependsOnContentType() {
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+        ExportCache.ExportKey raw = cache.getKey(MODEL, "application/schema+json", "fi", "text/plain;charset=utf-8");
+
+        assertNotEquals(key, raw);
+        assertNotEquals(key.getEntityTag(), raw.getEntityTag());
+    }
+
+    @Test
+    public void exportIsGeneratedOnce() {
+        AtomicInteger generated = new AtomicInteger();
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+
+        assertEquals("export1", cache.get(key, () -> "export" + generated.incrementAndGet()));
+        assertEquals("export1", cache.get(cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json"), () -> "export" + generated.incrementAndGet()));
+    }
+
+    @Test
+    public void missingExportIsNotCached() {
+        AtomicInteger generated = new AtomicInteger();
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+
+        assertNull(cache.get(key, () -> {
+            generated.incrementAndGet();
+            return null;
+        }));
+        cache.get(key, () -> "export" + generated.incrementAndGet());
+
+        assertEquals(2, generated.get());
+    }
+
+    @Test
+    public void invalidateRemovesExportsOfModel() {
+        AtomicInteger generated = new AtomicInteger();
+        ExportCache.ExportKey key = cache.getKey(MODEL, "application/schema+json", "fi", "application/schema+json");
+        cache.get(key, () -> "export" + generated.incrementAndGet());
+
+        cache.invalidate(MODEL);
+        cache.get(key, () -> "export" + generated.incrementAndGet());
+
+        assertEquals(2, generated.get());
+    }
+
+    private void setSchemeModified(String modified) {
+        core.replaceNamedModel(SCHEME, turtle("<" + SCHEME + "> a iow:FCodeScheme ; "
+            + "dcterms:modified \"" + modified + "\"^^xsd:dateTime ."));
+    }
+}
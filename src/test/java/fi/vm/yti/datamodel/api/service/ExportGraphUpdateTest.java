@@ -0,0 +1,55 @@
+package fi.vm.yti.datamodel.api.service;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.update.UpdateAction;
+import org.junit.Before;
+import org.junit.Test;
+
+import static fi.vm.yti.datamodel.api.service.TestDatasets.turtle;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExportGraphUpdateTest {
+
+    private static final String MODEL = "http://uri.suomi.fi/datamodel/ns/test";
+    private static final String CLASS = MODEL + "#Class";
+
+    private Dataset core;
+
+    @Before
+    public void setUp() {
+        core = DatasetFactory.create();
+        core.addNamedModel(MODEL, turtle("<" + MODEL + "> a owl:Ontology ; rdfs:label \"Old\" ; dcterms:language ( \"fi\" \"en\" ) ."));
+        core.addNamedModel(CLASS, turtle("<" + CLASS + "> a rdfs:Class ; rdfs:isDefinedBy <" + MODEL + "> ."));
+        core.addNamedModel(MODEL + "#HasPartGraph", turtle("<" + MODEL + "> dcterms:hasPart <" + CLASS + "> ."));
+        UpdateAction.execute(GraphManager.rebuildExportGraphRequest(MODEL), core);
+    }
+
+    @Test
+    public void replacesModelStatementsAndKeepsResources() {
+        core.replaceNamedModel(MODEL, turtle("<" + MODEL + "> a owl:Ontology ; rdfs:label \"New\" ; dcterms:language ( \"sv\" ) ."));
+
+        UpdateAction.execute(GraphManager.replaceModelInExportGraphRequest(MODEL), core);
+
+        Model export = core.getNamedModel(MODEL + "#ExportGraph");
+        assertTrue(export.contains(export.getResource(MODEL), export.getProperty("http://www.w3.org/2000/01/rdf-schema#label"), "New"));
+        assertFalse(export.contains(export.getResource(MODEL), export.getProperty("http://www.w3.org/2000/01/rdf-schema#label"), "Old"));
+        assertFalse(export.contains(null, null, "fi"));
+        assertTrue(export.contains(null, null, "sv"));
+        assertTrue(export.contains(export.getResource(CLASS), export.getProperty("http://www.w3.org/2000/01/rdf-schema#isDefinedBy"), export.getResource(MODEL)));
+        assertTrue(export.contains(export.getResource(MODEL), export.getProperty("http://purl.org/dc/terms/hasPart"), export.getResource(CLASS)));
+    }
+
+    @Test
+    public void replacingTwiceGivesSameExportGraph() {
+        UpdateAction.execute(GraphManager.replaceModelInExportGraphRequest(MODEL), core);
+        Model once = ModelFactory.createDefaultModel().add(core.getNamedModel(MODEL + "#ExportGraph"));
+
+        UpdateAction.execute(GraphManager.replaceModelInExportGraphRequest(MODEL), core);
+
+        assertTrue(once.isIsomorphicWith(core.getNamedModel(MODEL + "#ExportGraph")));
+    }
+}
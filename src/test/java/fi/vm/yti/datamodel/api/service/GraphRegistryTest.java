@@ -0,0 +1,151 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+
+import static fi.vm.yti.datamodel.api.service.TestDatasets.turtle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class GraphRegistryTest {
+
+    private static final String MODEL = "http://uri.suomi.fi/datamodel/ns/test";
+    private static final String CLASS = MODEL + "#Class";
+
+    private Dataset core;
+
+    @Before
+    public void setUp() {
+        core = DatasetFactory.create();
+        core.addNamedModel(MODEL, turtle("<" + MODEL + "> a owl:Ontology ; "
+            + "dcap:preferredXMLNamespacePrefix \"test\" ; "
+            + "dcap:preferredXMLNamespaceName \"" + MODEL + "#\" ; "
+            + "iow:contentModified \"2020-01-01T12:00:00Z\"^^xsd:dateTime ."));
+        core.addNamedModel(CLASS, turtle("<" + CLASS + "> rdfs:isDefinedBy <" + MODEL + "> ."));
+    }
+
+    @Test
+    public void refreshLoadsModelsAndResources() {
+        GraphRegistry registry = registry(null);
+        registry.refresh();
+
+        assertTrue(registry.containsGraph(MODEL));
+        assertEquals(MODEL, registry.getModelByPrefix("test").getGraph());
+        assertEquals(MODEL + "#", registry.getNamespaceMap().get("test"));
+        assertEquals(1577880000000L, registry.getModel(MODEL).getContentModified().getTime());
+        assertEquals(MODEL, registry.getModelOfResource(CLASS).getGraph());
+    }
+
+    @Test
+    public void registryIsCurrentAfterRefresh() {
+        GraphRegistry registry = registry(null);
+        assertFalse(registry.isCurrent(60000));
+
+        registry.refresh();
+
+        assertTrue(registry.isCurrent(60000));
+    }
+
+    @Test
+    public void modelRemovedDuringRefreshStaysRemoved() {
+        AtomicInteger selects = new AtomicInteger();
+        GraphRegistry registry = registry(r -> {
+            // Core was read before the model was deleted
+            if (selects.incrementAndGet() == 3) {
+                r.removeModel(MODEL);
+            }
+        });
+        registry.refresh();
+
+        assertFalse(registry.containsGraph(MODEL));
+        assertNull(registry.getModelByPrefix("test"));
+        assertNull(registry.getModelOfResource(CLASS));
+    }
+
+    @Test
+    public void resourceAddedDuringRefreshIsKept() {
+        String resource = MODEL + "#NewClass";
+        AtomicInteger selects = new AtomicInteger();
+        GraphRegistry registry = registry(r -> {
+            if (selects.incrementAndGet() == 1) {
+                r.addResource(resource, MODEL);
+            }
+        });
+        registry.refresh();
+
+        assertTrue(registry.containsGraph(resource));
+        assertNotNull(registry.getModelOfResource(resource));
+    }
+
+    @Test
+    public void changesAreNotReplayedAfterRefresh() {
+        GraphRegistry registry = registry(null);
+        registry.refresh();
+        registry.removeModel(MODEL);
+        assertNull(registry.getModelByPrefix("test"));
+
+        // The model still exists in core, so the next refresh restores it
+        registry.refresh();
+        assertNotNull(registry.getModelByPrefix("test"));
+    }
+
+    @Test
+    public void updateModelRegistersPrefix() {
+        GraphRegistry registry = registry(null);
+        registry.updateModel(MODEL, core.getNamedModel(MODEL));
+
+        assertTrue(registry.containsGraph(MODEL + "#ExportGraph"));
+        assertEquals(MODEL, registry.getModelByPrefix("test").getGraph());
+    }
+
+    @Test
+    public void loadedModelIsCurrentOnlyWithinMaxAge() {
+        GraphRegistry registry = registry(null);
+        registry.refresh();
+
+        assertTrue(registry.getModel(MODEL).isCurrent(60000));
+        assertFalse(registry.getModel(MODEL).isCurrent(-1));
+    }
+
+    @Test
+    public void modelWrittenThroughThisNodeIsCurrent() {
+        GraphRegistry registry = registry(null);
+        registry.refresh();
+        registry.updateContentModified(MODEL, new Date(1580558400000L));
+
+        assertTrue(registry.getModel(MODEL).isCurrent(-1));
+        assertEquals(1580558400000L, registry.getModel(MODEL).getContentModified().getTime());
+    }
+
+    /**
+     * Returns a registry reading the local dataset instead of core
+     *
+     * @param beforeSelect called with the registry before every query, or null
+     */
+    private GraphRegistry registry(Consumer<GraphRegistry> beforeSelect) {
+        EndpointServices endpointServices = TestDatasets.endpointServices();
+        JenaClient jenaClient = TestDatasets.jenaClient(endpointServices, Map.of(endpointServices.getCoreSparqlAddress(), core));
+        GraphRegistry registry = new GraphRegistry(endpointServices, jenaClient);
+        when(jenaClient.selectQuery(anyString(), any(Query.class))).thenAnswer(invocation -> {
+            if (beforeSelect != null) {
+                beforeSelect.accept(registry);
+            }
+            return TestDatasets.select(core, invocation.getArgument(1));
+        });
+        return registry;
+    }
+}
@@ -0,0 +1,91 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+
+import static fi.vm.yti.datamodel.api.service.TestDatasets.turtle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+
+public class OrganizationModelCacheTest {
+
+    private static final String MODEL = "http://uri.suomi.fi/datamodel/ns/test";
+    private static final String OTHER_MODEL = "http://uri.suomi.fi/datamodel/ns/other";
+    private static final String ORG = "7d3a3c00-5a6b-489b-a3ed-63bb58c26a63";
+    private static final String OTHER_ORG = "74776e94-7f51-48dc-aeec-c084c4defa09";
+
+    private Dataset core;
+    private JenaClient jenaClient;
+    private OrganizationModelCache cache;
+
+    @Before
+    public void setUp() {
+        core = DatasetFactory.create();
+        core.addNamedModel(MODEL, turtle("<" + MODEL + "> a owl:Ontology ; dcterms:contributor <urn:uuid:" + ORG + "> ."));
+        core.addNamedModel(OTHER_MODEL, turtle("<" + OTHER_MODEL + "> a owl:Ontology ; "
+            + "dcterms:contributor <urn:uuid:" + ORG + ">, <urn:uuid:" + OTHER_ORG + ">, \"not an organization\" ."));
+        EndpointServices endpointServices = TestDatasets.endpointServices();
+        jenaClient = TestDatasets.jenaClient(endpointServices, Map.of(endpointServices.getCoreSparqlAddress(), core));
+        cache = new OrganizationModelCache(endpointServices, jenaClient);
+    }
+
+    @Test
+    public void modelsAreLoadedOnFirstUse() {
+        assertEquals(Set.of(MODEL, OTHER_MODEL), cache.getModels(List.of(ORG)));
+        assertEquals(Set.of(OTHER_MODEL), cache.getModels(List.of(OTHER_ORG)));
+        verify(jenaClient).selectQuery(anyString(), any(Query.class));
+    }
+
+    @Test
+    public void modelsOfAnyOrganizationAreReturned() {
+        assertEquals(Set.of(MODEL, OTHER_MODEL), cache.getModels(List.of(OTHER_ORG, ORG)));
+        assertTrue(cache.getModels(List.of("unknown")).isEmpty());
+        assertTrue(cache.getModels(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void updateModelReplacesOrganizations() {
+        cache.refresh();
+        cache.updateModel(MODEL, Set.of(OTHER_ORG));
+
+        assertEquals(Set.of(OTHER_MODEL), cache.getModels(List.of(ORG)));
+        assertEquals(Set.of(MODEL, OTHER_MODEL), cache.getModels(List.of(OTHER_ORG)));
+    }
+
+    @Test
+    public void removeModelForgetsModel() {
+        cache.refresh();
+        cache.removeModel(OTHER_MODEL);
+
+        assertEquals(Set.of(MODEL), cache.getModels(List.of(ORG)));
+        assertTrue(cache.getModels(List.of(OTHER_ORG)).isEmpty());
+    }
+
+    @Test
+    public void updateBeforeLoadIsLeftToLoad() {
+        cache.updateModel("http://uri.suomi.fi/datamodel/ns/new", Set.of(ORG));
+
+        assertEquals(Set.of(MODEL, OTHER_MODEL), cache.getModels(List.of(ORG)));
+    }
+
+    @Test
+    public void refreshReadsCore() {
+        cache.refresh();
+        core.removeNamedModel(MODEL);
+        assertEquals(Set.of(MODEL, OTHER_MODEL), cache.getModels(List.of(ORG)));
+
+        cache.refresh();
+        assertEquals(Set.of(OTHER_MODEL), cache.getModels(List.of(ORG)));
+    }
+}
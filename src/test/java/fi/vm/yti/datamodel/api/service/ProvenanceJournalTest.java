@@ -0,0 +1,229 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProvenanceJournalTest {
+
+    private static final String UPDATE = "INSERT DATA { <urn:s> <urn:p> <urn:o> }";
+    private static final String REJECTED_UPDATE = "INSERT DATA { <urn:rejected> <urn:p> <urn:o> }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ApplicationProperties properties;
+    private Path dir;
+    private Path journalFile;
+    private Path checkpointFile;
+    private ProvenanceJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.getRoot().toPath();
+        journalFile = dir.resolve("provenance.journal");
+        checkpointFile = dir.resolve("provenance.checkpoint");
+        properties = new ApplicationProperties();
+        properties.setProvenanceJournalDir(dir.toString());
+    }
+
+    @After
+    public void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void openReplaysFromCheckpoint() throws IOException {
+        long first = writeRecord(UPDATE);
+        long second = writeRecord(UPDATE);
+        Files.writeString(checkpointFile, Long.toString(first));
+
+        journal = new ProvenanceJournal(null, null, properties);
+        journal.openJournal(dir);
+
+        assertEquals(first, journal.getAppliedOffset());
+        assertEquals(first + second, journal.getAppendedOffset());
+    }
+
+    @Test
+    public void recoverDropsIncompleteRecord() throws IOException {
+        long complete = writeRecord(UPDATE) + writeRecord(UPDATE);
+        ByteBuffer partial = ByteBuffer.allocate(Integer.BYTES + 10);
+        partial.putInt(100).put(new byte[10]).flip();
+        append(partial);
+
+        journal = new ProvenanceJournal(null, null, properties);
+        journal.openJournal(dir);
+
+        assertEquals(0, journal.getAppliedOffset());
+        assertEquals(complete, journal.getAppendedOffset());
+        assertEquals(complete, Files.size(journalFile));
+    }
+
+    @Test
+    public void recoverDropsIncompleteLength() throws IOException {
+        long complete = writeRecord(UPDATE);
+        append(ByteBuffer.wrap(new byte[]{ 0, 0 }));
+
+        journal = new ProvenanceJournal(null, null, properties);
+        journal.openJournal(dir);
+
+        assertEquals(complete, journal.recover(0));
+        assertEquals(complete, Files.size(journalFile));
+    }
+
+    @Test
+    public void markAppliedWritesCheckpoint() throws IOException {
+        long first = writeRecord(UPDATE);
+        long second = writeRecord(UPDATE);
+
+        journal = new ProvenanceJournal(null, null, properties);
+        journal.openJournal(dir);
+        journal.markApplied(first);
+
+        assertEquals(Long.toString(first), Files.readString(checkpointFile));
+        assertEquals(first + second, Files.size(journalFile));
+        assertEquals(first, journal.getAppliedOffset());
+    }
+
+    @Test
+    public void markAppliedTruncatesWhenCaughtUp() throws IOException {
+        long size = writeRecord(UPDATE) + writeRecord(UPDATE);
+
+        journal = new ProvenanceJournal(null, null, properties);
+        journal.openJournal(dir);
+        journal.markApplied(size);
+
+        assertEquals(0, Files.size(journalFile));
+        assertEquals("0", Files.readString(checkpointFile));
+        assertEquals(0, journal.getAppliedOffset());
+        assertEquals(0, journal.getAppendedOffset());
+    }
+
+    @Test
+    public void checkpointPastTruncatedJournalReplaysNothing() throws IOException {
+        // Crash after the journal was truncated but before the checkpoint was reset
+        Files.createFile(journalFile);
+        Files.writeString(checkpointFile, "100");
+
+        journal = new ProvenanceJournal(null, null, properties);
+        journal.openJournal(dir);
+
+        assertEquals(0, journal.getAppliedOffset());
+        assertEquals(0, journal.getAppendedOffset());
+        assertEquals("0", Files.readString(checkpointFile));
+    }
+
+    @Test
+    public void rejectedRecordIsSkipped() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        journal = new ProvenanceJournal(null, null, properties) {
+
+            @Override
+            void send(UpdateRequest request) {
+                if (request.toString().contains("urn:rejected")) {
+                    throw new HttpException(400, "Bad Request", "");
+                }
+                sent.add(request.toString());
+            }
+        };
+        writeRecord(UPDATE);
+        writeRecord(REJECTED_UPDATE);
+        writeRecord(UPDATE);
+        journal.open();
+
+        waitUntilApplied();
+
+        assertEquals(2, sent.size());
+        sent.forEach(update -> assertFalse(update.contains("urn:rejected")));
+        assertEquals(0, Files.size(journalFile));
+    }
+
+    @Test
+    public void transientFailureIsRetried() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        journal = new ProvenanceJournal(null, null, properties) {
+
+            @Override
+            void send(UpdateRequest request) {
+                if (sent.isEmpty()) {
+                    sent.add("failed");
+                    throw new HttpException(503, "Service Unavailable", "");
+                }
+                sent.add(request.toString());
+            }
+        };
+        journal.open();
+        journal.append(UpdateFactory.create(UPDATE));
+
+        waitUntilApplied();
+
+        assertEquals(2, sent.size());
+        assertTrue(sent.get(1).contains("urn:s"));
+    }
+
+    @Test
+    public void appendWritesSynchronouslyWhenFull() throws Exception {
+        properties.setProvenanceJournalMaxSizeMb(0);
+        properties.setProvenanceJournalMaxWaitMs(10);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        journal = new ProvenanceJournal(null, null, properties) {
+
+            @Override
+            void send(UpdateRequest request) {
+                if (Thread.currentThread().getName().equals("provenance-journal")) {
+                    throw new HttpException(503, "Service Unavailable", "");
+                }
+                sent.add(request.toString());
+            }
+        };
+        journal.open();
+        journal.append(UpdateFactory.create(UPDATE));
+        journal.append(UpdateFactory.create(UPDATE));
+
+        assertEquals(1, sent.size());
+        assertTrue(journal.getAppendedOffset() > journal.getAppliedOffset());
+    }
+
+    private void waitUntilApplied() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (journal.getAppendedOffset() != 0 || journal.getAppliedOffset() != 0) {
+            assertTrue("Journal was not applied", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private long writeRecord(String update) throws IOException {
+        byte[] bytes = update.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        record.putInt(bytes.length).put(bytes).flip();
+        append(record);
+        return Integer.BYTES + bytes.length;
+    }
+
+    private void append(ByteBuffer bytes) throws IOException {
+        Files.write(journalFile, bytes.array(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,112 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetRewindable;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.OpService;
+import org.apache.jena.sparql.engine.QueryIterator;
+
+import fi.vm.yti.datamodel.api.config.ApplicationProperties;
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * In-memory datasets standing in for the Fuseki services in tests
+ */
+public final class TestDatasets {
+
+    private static final String PREFIXES = prefixes();
+
+    private TestDatasets() {
+    }
+
+    /**
+     * Parses Turtle content, with the prefixes of {@link LDHelper#PREFIX_MAP} declared
+     */
+    public static Model turtle(String content) {
+        return ModelFactory.createDefaultModel().read(new StringReader(PREFIXES + content), null, "TTL");
+    }
+
+    public static EndpointServices endpointServices() {
+        ApplicationProperties properties = new ApplicationProperties();
+        properties.setEndpoint("http://fuseki");
+        return new EndpointServices(properties);
+    }
+
+    /**
+     * Runs the select query against the dataset. SERVICE clauses are evaluated against the same dataset, so graphs of
+     * federated services are added to the dataset of the queried service.
+     */
+    public static ResultSetRewindable select(Dataset dataset,
+                                             Query query) {
+        Op op = Transformer.transform(new TransformCopy() {
+
+            @Override
+            public Op transform(OpService opService,
+                                Op subOp) {
+                return subOp;
+            }
+        }, Algebra.compile(query));
+        QueryIterator results = Algebra.exec(op, dataset.asDatasetGraph());
+        try {
+            return ResultSetFactory.copyResults(ResultSetFactory.create(results, query.getResultVars()));
+        } finally {
+            results.close();
+        }
+    }
+
+    public static Model construct(Dataset dataset,
+                                  String query) {
+        try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+            return qexec.execConstruct();
+        }
+    }
+
+    /**
+     * Returns a mocked JenaClient that answers select and construct queries from the given datasets
+     *
+     * @param endpointServices addresses of the services
+     * @param datasets         datasets by SPARQL query address, queries to other services fail
+     */
+    public static JenaClient jenaClient(EndpointServices endpointServices,
+                                        Map<String, Dataset> datasets) {
+        JenaClient jenaClient = mock(JenaClient.class);
+        when(jenaClient.getEndpointServices()).thenReturn(endpointServices);
+        when(jenaClient.selectQuery(anyString(), any(Query.class)))
+            .thenAnswer(invocation -> select(dataset(datasets, invocation.getArgument(0)), invocation.getArgument(1)));
+        when(jenaClient.constructFromCore(anyString()))
+            .thenAnswer(invocation -> construct(dataset(datasets, endpointServices.getCoreSparqlAddress()), invocation.getArgument(0)));
+        return jenaClient;
+    }
+
+    private static Dataset dataset(Map<String, Dataset> datasets,
+                                   String service) {
+        Dataset dataset = datasets.get(service);
+        if (dataset == null) {
+            throw new IllegalArgumentException("No test dataset for " + service);
+        }
+        return dataset;
+    }
+
+    private static String prefixes() {
+        StringBuilder prefixes = new StringBuilder();
+        LDHelper.PREFIX_MAP.forEach((prefix, namespace) -> prefixes.append("@prefix ").append(prefix).append(": <").append(namespace).append("> . "));
+        return prefixes.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.JsonArray;
+import javax.json.JsonString;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.ResultSetRewindable;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.vm.yti.datamodel.api.utils.LDHelper;
+
+import static fi.vm.yti.datamodel.api.service.TestDatasets.turtle;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ValueListManagerTest {
+
+    private static final String MODEL = "http://uri.suomi.fi/datamodel/ns/test";
+    private static final String SHAPE = MODEL + "#Shape";
+    private static final String OTHER_SHAPE = MODEL + "#OtherShape";
+    private static final String SCHEME = "http://uri.suomi.fi/codelist/test/scheme";
+    private static final String PROPERTIES_QUERY = "SELECT ?resource ?property ?valueList ?schemeList WHERE { "
+        + "GRAPH ?resource { ?resource sh:property ?property . "
+        + "OPTIONAL { ?property sh:in ?valueList . } "
+        + "OPTIONAL { ?property dcam:memberOf ?schemeList . } "
+        + "}} ORDER BY ?resource ?property";
+
+    private Dataset core;
+    private Dataset schemes;
+    private EndpointServices endpointServices;
+    private JenaClient jenaClient;
+    private ValueListManager valueListManager;
+
+    @Before
+    public void setUp() {
+        core = DatasetFactory.create();
+        core.addNamedModel(SHAPE, turtle("<" + SHAPE + "> sh:property <" + SHAPE + "/list>, <" + SHAPE + "/scheme> . "
+            + "<" + SHAPE + "/list> sh:in ( \"a\" \"b\" ) . "
+            + "<" + SHAPE + "/scheme> dcam:memberOf <" + SCHEME + "> ."));
+        core.addNamedModel(OTHER_SHAPE, turtle("<" + OTHER_SHAPE + "> sh:property <" + OTHER_SHAPE + "/list> . "
+            + "<" + OTHER_SHAPE + "/list> sh:in ( \"c\" ) ."));
+        schemes = DatasetFactory.create();
+        schemes.addNamedModel(SCHEME, turtle("<" + SCHEME + "/2> dcterms:identifier \"2\" . "
+            + "<" + SCHEME + "/1> dcterms:identifier \"1\" ."));
+
+        endpointServices = TestDatasets.endpointServices();
+        jenaClient = TestDatasets.jenaClient(endpointServices, Map.of(
+            endpointServices.getCoreSparqlAddress(), core,
+            endpointServices.getSchemesSparqlAddress(), schemes));
+        valueListManager = new ValueListManager(endpointServices, jenaClient);
+    }
+
+    @Test
+    public void valueListsOfAllRowsAreFetched() {
+        ResultSetRewindable results = properties();
+
+        ValueListManager.ValueLists valueLists = valueListManager.getValueLists(results, null);
+
+        assertEquals(Set.of("a", "b"), values(valueLists.getValueList(SHAPE, SHAPE + "/list")));
+        assertEquals(Set.of("c"), values(valueLists.getValueList(OTHER_SHAPE, OTHER_SHAPE + "/list")));
+        assertEquals("1", valueLists.getSchemeValueList(SCHEME).getString(0));
+        assertEquals("2", valueLists.getSchemeValueList(SCHEME).getString(1));
+        verify(jenaClient).selectQuery(eq(endpointServices.getCoreSparqlAddress()), any(Query.class));
+        verify(jenaClient).selectQuery(eq(endpointServices.getSchemesSparqlAddress()), any(Query.class));
+    }
+
+    @Test
+    public void givenResourceIsUsedForAllRows() {
+        ValueListManager.ValueLists valueLists = valueListManager.getValueLists(properties(), SHAPE);
+
+        assertEquals(Set.of("a", "b"), values(valueLists.getValueList(SHAPE, SHAPE + "/list")));
+        assertNull(valueLists.getValueList(OTHER_SHAPE, OTHER_SHAPE + "/list"));
+    }
+
+    @Test
+    public void missingListsAreNull() {
+        ValueListManager.ValueLists valueLists = valueListManager.getValueLists(properties(), null);
+
+        assertNull(valueLists.getValueList(SHAPE, SHAPE + "/scheme"));
+        assertNull(valueLists.getSchemeValueList(SCHEME + "/missing"));
+    }
+
+    @Test
+    public void resultsAreResetForIteration() {
+        ResultSetRewindable results = properties();
+        int rows = results.size();
+
+        valueListManager.getValueLists(results, null);
+
+        assertEquals(0, results.getRowNumber());
+        int iterated = 0;
+        while (results.hasNext()) {
+            results.next();
+            iterated++;
+        }
+        assertEquals(rows, iterated);
+    }
+
+    @Test
+    public void noQueriesWithoutLists() {
+        core.removeNamedModel(SHAPE);
+        core.removeNamedModel(OTHER_SHAPE);
+
+        valueListManager.getValueLists(properties(), null);
+
+        verify(jenaClient, never()).selectQuery(anyString(), any(Query.class));
+    }
+
+    @Test
+    public void schemesAreFetchedInChunks() {
+        StringBuilder shape = new StringBuilder("<" + SHAPE + "> ");
+        for (int i = 0; i < 1001; i++) {
+            shape.append(i == 0 ? "sh:property " : ", ").append("<" + SHAPE + "/p" + i + ">");
+        }
+        shape.append(" . ");
+        for (int i = 0; i < 1001; i++) {
+            shape.append("<" + SHAPE + "/p" + i + "> dcam:memberOf <" + SCHEME + i + "> . ");
+        }
+        core.replaceNamedModel(SHAPE, turtle(shape.toString()));
+        core.removeNamedModel(OTHER_SHAPE);
+        schemes.addNamedModel(SCHEME + "1000", turtle("<" + SCHEME + "1000/code> dcterms:identifier \"code\" ."));
+
+        ValueListManager.ValueLists valueLists = valueListManager.getValueLists(properties(), null);
+
+        verify(jenaClient, times(3)).selectQuery(eq(endpointServices.getSchemesSparqlAddress()), any(Query.class));
+        assertEquals("code", valueLists.getSchemeValueList(SCHEME + "1000").getString(0));
+        assertNull(valueLists.getSchemeValueList(SCHEME + "0"));
+    }
+
+    private ResultSetRewindable properties() {
+        ParameterizedSparqlString pss = new ParameterizedSparqlString();
+        pss.setNsPrefixes(LDHelper.PREFIX_MAP);
+        pss.setCommandText(PROPERTIES_QUERY);
+        return TestDatasets.select(core, pss.asQuery());
+    }
+
+    private static Set<String> values(JsonArray array) {
+        Set<String> values = new HashSet<>();
+        array.getValuesAs(JsonString.class).forEach(value -> values.add(value.getString()));
+        return values;
+    }
+}
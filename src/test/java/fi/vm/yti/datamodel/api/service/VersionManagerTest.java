@@ -0,0 +1,97 @@
+package fi.vm.yti.datamodel.api.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class VersionManagerTest {
+
+    private static final EntityTag CURRENT = new EntityTag("abc123");
+
+    private final VersionManager versionManager = new VersionManager(null, null);
+
+    @Test
+    public void writeWithoutIfMatchIsNotChecked() {
+        AtomicInteger lookups = new AtomicInteger();
+
+        assertTrue(versionManager.ifMatch(headers(null), () -> {
+            lookups.incrementAndGet();
+            return CURRENT;
+        }));
+        assertTrue(versionManager.ifMatch(headers(" "), () -> CURRENT));
+        assertTrue(versionManager.ifMatch(null, () -> CURRENT));
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void currentVersionMatches() {
+        assertTrue(versionManager.ifMatch(headers("\"abc123\""), () -> CURRENT));
+    }
+
+    @Test
+    public void outdatedVersionIsRejected() {
+        assertFalse(versionManager.ifMatch(headers("\"def456\""), () -> CURRENT));
+    }
+
+    @Test
+    public void anyListedVersionMatches() {
+        assertTrue(versionManager.ifMatch(headers("\"def456\", \"abc123\""), () -> CURRENT));
+    }
+
+    @Test
+    public void weakTagDoesNotMatch() {
+        assertFalse(versionManager.ifMatch(headers("W/\"abc123\""), () -> CURRENT));
+    }
+
+    @Test
+    public void wildcardMatchesExistingVersion() {
+        assertTrue(versionManager.ifMatch(headers("*"), () -> CURRENT));
+    }
+
+    @Test
+    public void missingVersionIsRejected() {
+        assertFalse(versionManager.ifMatch(headers("*"), () -> null));
+        assertFalse(versionManager.ifMatch(headers("\"abc123\""), () -> null));
+    }
+
+    @Test
+    public void invalidValueIsIgnored() {
+        assertFalse(versionManager.ifMatch(headers("abc123"), () -> CURRENT));
+        assertTrue(versionManager.ifMatch(headers("\"unterminated, \"abc123\""), () -> CURRENT));
+    }
+
+    @Test
+    public void lockIsHeldUntilClosed() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> other;
+            try (VersionManager.GraphLock lock = versionManager.lock("http://uri.suomi.fi/datamodel/ns/test")) {
+                other = executor.submit(() -> versionManager.lock("http://uri.suomi.fi/datamodel/ns/test").close());
+                Thread.sleep(100);
+                assertFalse(other.isDone());
+            }
+            other.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static HttpHeaders headers(String ifMatch) {
+        HttpHeaders headers = mock(HttpHeaders.class);
+        when(headers.getHeaderString(HttpHeaders.IF_MATCH)).thenReturn(ifMatch);
+        return headers;
+    }
+}
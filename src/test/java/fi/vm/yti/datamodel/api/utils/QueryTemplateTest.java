@@ -0,0 +1,119 @@
+package fi.vm.yti.datamodel.api.utils;
+
+import java.util.Collections;
+
+import org.apache.jena.query.QueryParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryTemplateTest {
+
+    private static final String GRAPH = "http://uri.suomi.fi/datamodel/ns/test";
+
+    @Test
+    public void parameterIsReplaced() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { GRAPH ?graph { ?s ?p $graph } }", "graph");
+
+        assertEquals("SELECT ?s WHERE { GRAPH <" + GRAPH + "> { ?s ?p <" + GRAPH + "> } }", bound(template));
+    }
+
+    @Test
+    public void parameterInStringIsNotReplaced() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { "
+            + "?s rdfs:label \"?graph\" . "
+            + "?s rdfs:comment 'say \\'?graph\\'' . "
+            + "?s skos:note \"\"\"quoted \"?graph\" \"\"\" . "
+            + "?s ?p ?graph }", "graph");
+
+        assertEquals("SELECT ?s WHERE { "
+            + "?s rdfs:label \"?graph\" . "
+            + "?s rdfs:comment 'say \\'?graph\\'' . "
+            + "?s skos:note \"\"\"quoted \"?graph\" \"\"\" . "
+            + "?s ?p <" + GRAPH + "> }", bound(template));
+    }
+
+    @Test
+    public void parameterInIriIsNotReplaced() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { ?s <http://example.org/p?graph=1> ?graph }", "graph");
+
+        assertEquals("SELECT ?s WHERE { ?s <http://example.org/p?graph=1> <" + GRAPH + "> }", bound(template));
+    }
+
+    @Test
+    public void parameterAfterLessThanIsReplaced() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p ?o . FILTER(?o < ?graph && ?o <?graph) }", "graph");
+
+        assertEquals("SELECT ?s WHERE { ?s ?p ?o . FILTER(?o < <" + GRAPH + "> && ?o <<" + GRAPH + ">) }", bound(template));
+    }
+
+    @Test
+    public void parameterInCommentIsNotReplaced() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { # ?graph in a comment\n?s ?p ?graph }", "graph");
+
+        assertEquals("SELECT ?s WHERE { # ?graph in a comment\n?s ?p <" + GRAPH + "> }", bound(template));
+    }
+
+    @Test
+    public void variableWithParameterAsPrefixIsNotReplaced() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { GRAPH ?graphX { ?s ?p ?graph } }", "graph");
+
+        assertEquals("SELECT ?s WHERE { GRAPH ?graphX { ?s ?p <" + GRAPH + "> } }", bound(template));
+    }
+
+    @Test
+    public void unboundParameterIsLeftAsVariable() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { GRAPH ?graph { ?s ?p ?lang } }", "graph", "lang");
+
+        assertEquals("SELECT ?s WHERE { GRAPH ?graph { ?s ?p ?lang } }", template.bind().prefixes(Collections.emptyMap()).toString());
+    }
+
+    @Test
+    public void literalIsEscaped() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { ?s rdfs:label ?label }", "label");
+
+        assertEquals("SELECT ?s WHERE { ?s rdfs:label \"say \\\"hi\\\"\" }", template.bind().prefixes(Collections.emptyMap()).literal("label", "say \"hi\"").toString());
+    }
+
+    @Test
+    public void defaultPrefixesArePrepended() {
+        QueryTemplate template = QueryTemplate.compile("test", "SELECT ?s WHERE { ?s a owl:Ontology }");
+
+        assertTrue(template.bind().toString().contains("PREFIX owl: <http://www.w3.org/2002/07/owl#>"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void iriWithClosingBracketIsRejected() {
+        QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p ?graph }", "graph").bind().iri("graph", GRAPH + "> . ?s ?p <urn:x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void iriWithWhitespaceIsRejected() {
+        QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p ?graph }", "graph").bind().iri("graph", GRAPH + " x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingIriIsRejected() {
+        QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p ?graph }", "graph").bind().iri("graph", (String) null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownParameterIsRejected() {
+        QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p ?graph }", "graph").bind().iri("model", GRAPH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unusedParameterFailsCompilation() {
+        QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p \"?graph\" }", "graph");
+    }
+
+    @Test(expected = QueryParseException.class)
+    public void invalidQueryFailsCompilation() {
+        QueryTemplate.compile("test", "SELECT ?s WHERE { ?s ?p }");
+    }
+
+    private static String bound(QueryTemplate template) {
+        return template.bind().prefixes(Collections.emptyMap()).iri("graph", GRAPH).toString();
+    }
+}